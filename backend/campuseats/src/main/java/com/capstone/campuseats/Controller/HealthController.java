@@ -2,16 +2,28 @@ package com.capstone.campuseats.Controller;
 
 import java.util.Map;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.capstone.campuseats.Service.OutboundHttpGateway;
+
 @RestController
 @RequestMapping("/api")
 public class HealthController {
 
+    @Autowired
+    private OutboundHttpGateway outboundHttpGateway;
+
     @GetMapping("/health")
     public Map<String, String> health() {
         return Map.of("status", "UP");
     }
+
+    // Call counts, failures, latency buckets and circuit state per third-party API
+    @GetMapping("/health/upstreams")
+    public Map<String, Object> upstreams() {
+        return outboundHttpGateway.metrics();
+    }
 }
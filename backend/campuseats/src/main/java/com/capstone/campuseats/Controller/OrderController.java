@@ -2,12 +2,15 @@ package com.capstone.campuseats.Controller;
 
 import java.security.SecureRandom;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -19,14 +22,25 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RequestPart;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
 import org.springframework.web.multipart.MultipartFile;
 
 import com.capstone.campuseats.Entity.CartItem;
 import com.capstone.campuseats.Entity.OrderEntity;
+import com.capstone.campuseats.Service.AuthContextService;
+import com.capstone.campuseats.Service.IdempotencyService;
+import com.capstone.campuseats.Service.OrderEventService;
+import com.capstone.campuseats.Service.OrderLongPollService;
+import com.capstone.campuseats.Service.OrderProjectionService;
 import com.capstone.campuseats.Service.OrderService;
+import com.capstone.campuseats.Service.OrderStateMachine;
+import com.capstone.campuseats.Service.OrderVersionService;
+import com.capstone.campuseats.config.OrderConflictException;
+import com.capstone.campuseats.config.OrderNotFoundException;
 
 @RestController
 @RequestMapping("/api/orders")
@@ -36,23 +50,197 @@ public class OrderController {
     @Autowired
     private OrderService orderService;
 
+    @Autowired
+    private IdempotencyService idempotencyService;
+
+    @Autowired
+    private OrderVersionService orderVersionService;
+
+    @Autowired
+    private OrderLongPollService orderLongPollService;
+
+    @Autowired
+    private OrderEventService orderEventService;
+
+    @Autowired
+    private OrderProjectionService orderProjectionService;
+
+    @Autowired
+    private AuthContextService authContextService;
+
+    private static final long DEFAULT_WATCH_TIMEOUT_MS = 25_000;
+    private static final long MAX_WATCH_TIMEOUT_MS = 55_000;
+
+    // ?view=summary on list endpoints returns only the fields list screens render;
+    // the full document (proof images, add-ons, ...) comes from GET /api/orders/{id}
+    private static final String SUMMARY_VIEW = "summary";
+
     @GetMapping
-    public ResponseEntity<List<OrderEntity>> getAllOrders() {
-        List<OrderEntity> orders = orderService.getAllOrders();
-        return new ResponseEntity<List<OrderEntity>>(orders, HttpStatus.OK);
+    public ResponseEntity<?> getAllOrders(
+            @RequestParam(required = false) String statusGroup,
+            @RequestParam(required = false) String campusId,
+            @RequestParam(required = false) String shopId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String view) {
+        boolean paged = statusGroup != null || campusId != null || shopId != null
+                || from != null || to != null || cursor != null || limit != null;
+
+        // Legacy clients call this without parameters and expect the full list
+        if (!paged) {
+            List<OrderEntity> orders = orderService.getAllOrders();
+            return new ResponseEntity<List<OrderEntity>>(orders, HttpStatus.OK);
+        }
+
+        try {
+            return ResponseEntity.ok(orderService.getOrderPage(statusGroup, campusId, shopId, from, to, cursor, limit,
+                    SUMMARY_VIEW.equals(view)));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            System.err.println("Error fetching order page: " + e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "Internal Server Error"));
+        }
+    }
+
+    // The polled endpoints below answer 304 from OrderVersionService without touching the
+    // database. The version is read before the orders, so a concurrent write can only make
+    // the ETag older than the body, never newer.
+
+    private static String etag(String scope, long version, String view) {
+        return "\"" + scope + "-" + version + (SUMMARY_VIEW.equals(view) ? "-summary" : "") + "\"";
+    }
+
+    private static boolean notModified(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            // Proxies that compress responses turn strong ETags into weak ones
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals(etag) || tag.equals("*")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // no-cache (rather than Spring Security's default no-store) lets browsers keep the body and revalidate
+    private static <T> ResponseEntity<T> withETag(HttpStatus status, String etag, T body) {
+        return ResponseEntity.status(status).eTag(etag).cacheControl(CacheControl.noCache()).body(body);
     }
 
     @GetMapping("/{id}")
-    public ResponseEntity<Optional<OrderEntity>> getOrderById(@PathVariable String id) {
+    public ResponseEntity<Optional<OrderEntity>> getOrderById(@PathVariable String id,
+                                                              @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch) {
+        String etag = etag("o", orderVersionService.orderVersion(id), null);
+        if (notModified(ifNoneMatch, etag)) {
+            return withETag(HttpStatus.NOT_MODIFIED, etag, null);
+        }
         Optional<OrderEntity> order = orderService.getOrderById(id);
 
         if (order.isPresent()) {
-            return new ResponseEntity<>(order, HttpStatus.OK);
+            return withETag(HttpStatus.OK, etag, order);
         } else {
             return new ResponseEntity<>(HttpStatus.NOT_FOUND);
         }
     }
 
+    /**
+     * Long-poll for clients without WebSocket. Pass the last seen version as
+     * ?since= (the number in the "o-<version>" ETag) or the ETag itself as
+     * If-None-Match. Answers with the order as soon as it changes, or 304
+     * after timeoutMs. Without either, the current order is returned at once.
+     */
+    @GetMapping("/{id}/watch")
+    public DeferredResult<ResponseEntity<?>> watchOrder(@PathVariable String id,
+                                                        @RequestParam(required = false) Long since,
+                                                        @RequestParam(required = false) Long timeoutMs,
+                                                        @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch) {
+        long current = orderVersionService.orderVersion(id);
+        long lastSeen = since != null ? since
+                : notModified(ifNoneMatch, etag("o", current, null)) ? current : -1;
+        long timeout = timeoutMs != null
+                ? Math.max(1_000, Math.min(timeoutMs, MAX_WATCH_TIMEOUT_MS))
+                : DEFAULT_WATCH_TIMEOUT_MS;
+
+        String lastSeenEtag = etag("o", lastSeen, null);
+        DeferredResult<ResponseEntity<?>> result = new DeferredResult<>(timeout,
+                () -> withETag(HttpStatus.NOT_MODIFIED, lastSeenEtag, null));
+
+        orderLongPollService.watch(id, lastSeen, result, () -> {
+            try {
+                // Read the version first, as in getOrderById
+                String etag = etag("o", orderVersionService.orderVersion(id), null);
+                Optional<OrderEntity> order = orderService.getOrderById(id);
+                result.setResult(order.isPresent()
+                        ? withETag(HttpStatus.OK, etag, order.get())
+                        : ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "Order not found")));
+            } catch (Exception e) {
+                System.err.println("Error completing order watch: " + e);
+                result.setErrorResult(ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                        .body(Map.of("error", "Internal Server Error")));
+            }
+        });
+        return result;
+    }
+
+    @GetMapping("/{id}/events")
+    public ResponseEntity<?> getOrderEvents(@PathVariable String id) {
+        return ResponseEntity.ok(orderEventService.getEventsForOrder(id));
+    }
+
+    // Read models built from order_events by OrderProjectionService; they trail writes by a few seconds
+
+    @GetMapping("/analytics/user/{uid}")
+    public ResponseEntity<?> getUserOrderSummary(@PathVariable String uid) {
+        return orderProjectionService.getUserOrderSummary(uid)
+                .<ResponseEntity<?>>map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(Map.of("error", "No order summary for this user")));
+    }
+
+    @GetMapping("/analytics/shop/{shopId}/daily")
+    public ResponseEntity<?> getShopDailyOrderCounts(@PathVariable String shopId,
+                                                     @RequestParam(required = false) String from,
+                                                     @RequestParam(required = false) String to) {
+        return ResponseEntity.ok(orderProjectionService.getShopDailyCounts(shopId, from, to));
+    }
+
+    @GetMapping("/analytics/dasher/{dasherId}/earnings")
+    public ResponseEntity<?> getDasherEarnings(@PathVariable String dasherId) {
+        return orderProjectionService.getDasherEarnings(dasherId)
+                .<ResponseEntity<?>>map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(Map.of("error", "No earnings recorded for this dasher")));
+    }
+
+    @GetMapping("/projections")
+    public ResponseEntity<?> getProjectionCheckpoints() {
+        return ResponseEntity.ok(orderProjectionService.getCheckpoints());
+    }
+
+    @PostMapping("/projections/{name}/replay")
+    public ResponseEntity<?> replayProjection(@PathVariable String name, @RequestParam String userId) {
+        String accountType = authContextService.getUserAccountType(userId);
+        if (!"admin".equalsIgnoreCase(accountType) && !"superadmin".equalsIgnoreCase(accountType)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                    .body(Map.of("error", "Only admins can rebuild projections"));
+        }
+        try {
+            orderProjectionService.replay(name);
+            return ResponseEntity.ok(Map.of("message", "Projection " + name + " will be rebuilt from the start of the log"));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
     @GetMapping("/active-lists")
     public ResponseEntity<?> getAllActiveOrders() {
         try {
@@ -84,7 +272,13 @@ public class OrderController {
         }
     }
     @PostMapping("/place-order")
-    public ResponseEntity<?> placeOrder(@RequestBody Map<String, Object> payload) {
+    public ResponseEntity<?> placeOrder(@RequestBody Map<String, Object> payload,
+                                        @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey) {
+        // A retry with the same key gets the original response without placing the order again
+        return idempotencyService.execute("place-order", idempotencyKey, payload, () -> doPlaceOrder(payload));
+    }
+
+    private ResponseEntity<?> doPlaceOrder(Map<String, Object> payload) {
         System.out.println("place order received: " + payload);
         try {
             String uid = (String) payload.get("uid");
@@ -157,11 +351,56 @@ public class OrderController {
             orderService.updateOrderStatus(orderId, status);
 
             return new ResponseEntity<>(Map.of("message", "Order status updated successfully"), HttpStatus.OK);
+        } catch (OrderNotFoundException e) {
+            return new ResponseEntity<>(Map.of("error", e.getMessage()), HttpStatus.NOT_FOUND);
+        } catch (OrderConflictException e) {
+            return new ResponseEntity<>(Map.of("error", e.getMessage()), HttpStatus.CONFLICT);
         } catch (Exception e) {
             return new ResponseEntity<>(Map.of("error", e.getMessage()), HttpStatus.INTERNAL_SERVER_ERROR);
         }
     }
     
+    private static final int MAX_BATCH_SIZE = 100;
+
+    /**
+     * Batch form of update-order-status: {"updates": [{"orderId": "...", "status": "..."}, ...]}.
+     * Always 200 with one result per item ({orderId, success, status, previousStatus} or
+     * {orderId, success: false, code, error}); 400 only if the request itself is malformed.
+     */
+    @PostMapping("/update-order-status/batch")
+    public ResponseEntity<?> updateOrderStatuses(@RequestBody Map<String, Object> payload) {
+        Object updates = payload.get("updates");
+        if (!(updates instanceof List<?> items) || items.isEmpty()) {
+            return ResponseEntity.badRequest().body(Map.of("error", "updates must be a non-empty list"));
+        }
+        if (items.size() > MAX_BATCH_SIZE) {
+            return ResponseEntity.badRequest().body(Map.of("error", "At most " + MAX_BATCH_SIZE + " updates per batch"));
+        }
+
+        List<OrderStateMachine.Transition> transitions = new ArrayList<>();
+        for (Object item : items) {
+            Object orderId = item instanceof Map<?, ?> map ? map.get("orderId") : null;
+            Object status = item instanceof Map<?, ?> map ? map.get("status") : null;
+            if (!(orderId instanceof String id) || id.isEmpty() || !(status instanceof String s) || s.isEmpty()) {
+                return ResponseEntity.badRequest().body(Map.of("error", "Each update needs an orderId and a status"));
+            }
+            transitions.add(new OrderStateMachine.Transition(id, s));
+        }
+
+        try {
+            List<Map<String, Object>> results = orderService.updateOrderStatuses(transitions);
+            long updated = results.stream().filter(result -> Boolean.TRUE.equals(result.get("success"))).count();
+            return ResponseEntity.ok(Map.of(
+                    "results", results,
+                    "updated", updated,
+                    "failed", results.size() - updated));
+        } catch (Exception e) {
+            System.err.println("Error applying batch status update: " + e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "Internal Server Error"));
+        }
+    }
+
     @PostMapping(value = "/update-order-status-with-proof", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     public ResponseEntity<?> updateOrderStatusWithProof(
             @RequestPart("orderId") String orderId,
@@ -193,6 +432,8 @@ public class OrderController {
                 "success", true,
                 "orderId", orderId
             ), HttpStatus.OK);
+        } catch (OrderConflictException e) {
+            return new ResponseEntity<>(Map.of("error", e.getMessage()), HttpStatus.CONFLICT);
         } catch (Exception e) {
             return new ResponseEntity<>(Map.of("error", e.getMessage()), HttpStatus.INTERNAL_SERVER_ERROR);
         }
@@ -220,9 +461,17 @@ public class OrderController {
     }
 
     @GetMapping("/user/{uid}")
-    public ResponseEntity<?> getOrdersByUserId(@PathVariable String uid) {
+    public ResponseEntity<?> getOrdersByUserId(@PathVariable String uid,
+                                               @RequestParam(required = false) String view,
+                                               @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch) {
+        String etag = etag("u", orderVersionService.userVersion(uid), view);
+        if (notModified(ifNoneMatch, etag)) {
+            return withETag(HttpStatus.NOT_MODIFIED, etag, null);
+        }
         try {
-            List<OrderEntity> orders = orderService.getOrdersByUserId(new String(uid));
+            List<OrderEntity> orders = SUMMARY_VIEW.equals(view)
+                    ? orderService.getOrderSummariesByUserId(uid)
+                    : orderService.getOrdersByUserId(new String(uid));
 
             if (orders.isEmpty()) {
                 return ResponseEntity.status(HttpStatus.NOT_FOUND)
@@ -241,7 +490,7 @@ public class OrderController {
                     "orders", nonActiveOrders,
                     "activeOrders", activeOrders);
 
-            return ResponseEntity.ok(response);
+            return withETag(HttpStatus.OK, etag, response);
         } catch (Exception e) {
             System.err.println("Error fetching orders: " + e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -250,12 +499,20 @@ public class OrderController {
     }
 
     @GetMapping("/shop/{shopId}")
-    public ResponseEntity<?> getOrdersByShopId(@PathVariable String shopId) {
+    public ResponseEntity<?> getOrdersByShopId(@PathVariable String shopId,
+                                               @RequestParam(required = false) String view,
+                                               @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch) {
+        String etag = etag("s", orderVersionService.shopVersion(shopId), view);
+        if (notModified(ifNoneMatch, etag)) {
+            return withETag(HttpStatus.NOT_MODIFIED, etag, null);
+        }
         try {
-            List<OrderEntity> orders = orderService.getOrdersByShopId(new String(shopId));
+            List<OrderEntity> orders = SUMMARY_VIEW.equals(view)
+                    ? orderService.getOrderSummariesByShopId(shopId)
+                    : orderService.getOrdersByShopId(new String(shopId));
 
             if (orders.isEmpty()) {
-                return ResponseEntity.ok(Map.of(
+                return withETag(HttpStatus.OK, etag, Map.of(
                     "orders", List.of(),
                     "activeOrders", List.of()
                 ));
@@ -273,7 +530,7 @@ public class OrderController {
                     "orders", nonActiveOrders,
                     "activeOrders", activeOrders);
 
-            return ResponseEntity.ok(response);
+            return withETag(HttpStatus.OK, etag, response);
         } catch (Exception e) {
             System.err.println("Error fetching shop orders: " + e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -300,9 +557,12 @@ public class OrderController {
     }
 
     @GetMapping("/dasher/all-orders-list/{uid}")
-    public ResponseEntity<?> getOrdersForDasher(@PathVariable String uid) {
+    public ResponseEntity<?> getOrdersForDasher(@PathVariable String uid,
+                                                @RequestParam(required = false) String view) {
         try {
-            List<OrderEntity> orders = orderService.getOrdersByDasherId(uid);
+            List<OrderEntity> orders = SUMMARY_VIEW.equals(view)
+                    ? orderService.getOrderSummariesByDasherId(uid)
+                    : orderService.getOrdersByDasherId(uid);
 
             if (orders.isEmpty()) {
                 return ResponseEntity.status(HttpStatus.NOT_FOUND)
@@ -350,9 +610,9 @@ public class OrderController {
     }
 
     @GetMapping("/incoming-orders/dasher")
-    public ResponseEntity<?> getIncomingOrdersForDasher() {
+    public ResponseEntity<?> getIncomingOrdersForDasher(@RequestParam(required = false) String campusId) {
         try {
-            List<OrderEntity> activeOrders = orderService.getOrdersWaitingForDasher();
+            List<OrderEntity> activeOrders = orderService.getOrdersWaitingForDasher(campusId);
 
             if (activeOrders.isEmpty()) {
                 return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "No orders found"));
@@ -366,23 +626,29 @@ public class OrderController {
         }
     }
 
+    @GetMapping("/incoming-orders/dasher/changes")
+    public ResponseEntity<?> getIncomingOrderChangesForDasher(@RequestParam(required = false) String campusId,
+                                                              @RequestParam(defaultValue = "0") long since) {
+        try {
+            return ResponseEntity.ok(orderService.getDispatchBoardChanges(campusId, since));
+        } catch (Exception e) {
+            System.err.println("Error fetching dispatch board changes: " + e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "Internal Server Error"));
+        }
+    }
+
+    // Unpaged; kept for app builds that predate GET /api/orders?statusGroup=... (the web admin screens page through that)
     @GetMapping("/completed-orders")
     public ResponseEntity<?> getCompletedOrders() {
         try {
-            List<OrderEntity> orders = orderService.getAllOrders();
+            List<OrderEntity> completedOrders = orderService.getOrdersByStatusGroup("past");
+            List<OrderEntity> activeOrders = orderService.getOrdersByStatusGroup("active");
 
-            if (orders.isEmpty()) {
+            if (completedOrders.isEmpty() && activeOrders.isEmpty()) {
                 return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "No orders found"));
             }
 
-            List<OrderEntity> completedOrders = orders.stream()
-                    .filter(order -> !order.getStatus().startsWith("active"))
-                    .collect(Collectors.toList());
-
-            List<OrderEntity> activeOrders = orders.stream()
-                    .filter(order -> order.getStatus().startsWith("active"))
-                    .collect(Collectors.toList());
-
             return ResponseEntity.ok(Map.of("completedOrders", completedOrders, "activeOrders", activeOrders));
         } catch (Exception e) {
             System.err.println("Error fetching completed orders: " + e);
@@ -391,6 +657,18 @@ public class OrderController {
         }
     }
 
+    // Completed orders per dasherId, archived orders included (the app's top-dasher board)
+    @GetMapping("/completed-counts/dashers")
+    public ResponseEntity<?> getCompletedOrderCountsByDasher() {
+        try {
+            return ResponseEntity.ok(orderService.getCompletedOrderCountsByDasher());
+        } catch (Exception e) {
+            System.err.println("Error counting completed orders: " + e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "Internal Server Error"));
+        }
+    }
+
     @PostMapping("/remove-dasher")
     public ResponseEntity<?> removeDasherFromOrder(@RequestBody Map<String, Object> payload) {
         try {
@@ -421,9 +699,11 @@ public class OrderController {
     }
 
     @GetMapping("/past-orders")
-    public ResponseEntity<?> getPastOrders() {
+    public ResponseEntity<?> getPastOrders(@RequestParam(required = false) String view) {
         try {
-            List<OrderEntity> orders = orderService.getPastOrders("active");
+            List<OrderEntity> orders = SUMMARY_VIEW.equals(view)
+                    ? orderService.getPastOrderSummaries()
+                    : orderService.getPastOrders("active");
 
             if (orders.isEmpty()) {
                 return ResponseEntity.status(HttpStatus.NOT_FOUND).body(List.of());
@@ -437,9 +717,11 @@ public class OrderController {
     }
 
     @GetMapping("/ongoing-orders")
-    public ResponseEntity<?> getOngoingOrders() {
+    public ResponseEntity<?> getOngoingOrders(@RequestParam(required = false) String view) {
         try {
-            List<OrderEntity> orders = orderService.getOngoingOrders();
+            List<OrderEntity> orders = SUMMARY_VIEW.equals(view)
+                    ? orderService.getOngoingOrderSummaries()
+                    : orderService.getOngoingOrders();
             if (orders.isEmpty()) {
                 return ResponseEntity.status(HttpStatus.NOT_FOUND).body(List.of());
             }
@@ -557,6 +839,8 @@ public class OrderController {
                 "success", true,
                 "orderId", orderId
             ), HttpStatus.OK);
+        } catch (OrderConflictException e) {
+            return new ResponseEntity<>(Map.of("error", e.getMessage()), HttpStatus.CONFLICT);
         } catch (RuntimeException e) {
             return new ResponseEntity<>(Map.of("error", e.getMessage()), HttpStatus.BAD_REQUEST);
         } catch (Exception e) {
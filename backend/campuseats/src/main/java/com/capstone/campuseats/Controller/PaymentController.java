@@ -1,10 +1,12 @@
 package com.capstone.campuseats.Controller;
 
 import com.capstone.campuseats.Entity.CartItem;
+import com.capstone.campuseats.Service.IdempotencyService;
 import com.capstone.campuseats.Service.OrderService;
 import com.capstone.campuseats.Service.PaymentService;
 import com.capstone.campuseats.Service.PaymentVerificationService;
 import com.capstone.campuseats.config.CustomException;
+import com.capstone.campuseats.config.OrderConflictException;
 import lombok.RequiredArgsConstructor;
 
 import org.springframework.http.ResponseEntity;
@@ -25,6 +27,7 @@ public class PaymentController {
     private final PaymentService paymentService;
     private final PaymentVerificationService paymentVerificationService;
     private final OrderService orderService;
+    private final IdempotencyService idempotencyService;
 
     @PostMapping("/confirm-order-completion")
     public ResponseEntity<?> confirmOrderCompletion(@RequestBody Map<String, Object> payload) {
@@ -75,18 +78,38 @@ public class PaymentController {
             }
 
             // Call the service method with the necessary parameters
-            paymentService.confirmOrderCompletion(orderId, dasherId, shopId, userId, paymentMethod, deliveryFee, totalPrice, items, previousNoShowFee, previousNoShowItems, originalNoShowPaymentMethod);
-
-            return ResponseEntity.ok(Map.of("message", "Order completion confirmed successfully"));
+            PaymentService.CompletionResult result = paymentService.confirmOrderCompletion(orderId, dasherId, shopId, userId,
+                    paymentMethod, deliveryFee, totalPrice, items, previousNoShowFee, previousNoShowItems, originalNoShowPaymentMethod);
+
+            // The committed state, so the app can show the new balance without fetching the wallet again
+            Map<String, Object> response = new HashMap<>();
+            response.put("message", "Order completion confirmed successfully");
+            response.put("orderId", orderId);
+            response.put("status", result.order().order().getStatus());
+            response.put("previousStatus", result.order().previousStatus());
+            response.put("paymentId", result.payment().getId());
+            response.put("dasherWallet", result.dasherBalance());
+            if (result.shopBalance() != null) {
+                response.put("shopWallet", result.shopBalance());
+            }
+            return ResponseEntity.ok(response);
         } catch (CustomException e) {
             return ResponseEntity.status(400).body(Map.of("error", e.getMessage()));
+        } catch (OrderConflictException e) {
+            return ResponseEntity.status(409).body(Map.of("error", e.getMessage()));
         } catch (Exception e) {
             return ResponseEntity.status(500).body(Map.of("error", "Internal Server Error"));
         }
     }
 
     @PostMapping("/create-gcash-payment")
-    public ResponseEntity<?> createGcashPayment(@RequestBody Map<String, Object> payload) {
+    public ResponseEntity<?> createGcashPayment(@RequestBody Map<String, Object> payload,
+                                                @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey) {
+        // Retries with the same key return the original charge instead of creating another one at Xendit
+        return idempotencyService.execute("create-gcash-payment", idempotencyKey, payload, () -> doCreateGcashPayment(payload));
+    }
+
+    private ResponseEntity<?> doCreateGcashPayment(Map<String, Object> payload) {
         try {
             float amount = Float.parseFloat(payload.get("amount").toString());
             String description = payload.get("description").toString();
@@ -101,7 +124,12 @@ public class PaymentController {
     }
 
     @PostMapping("/create-gcash-payment/topup")
-    public ResponseEntity<?> createTopupGcashPayment(@RequestBody Map<String, Object> payload) {
+    public ResponseEntity<?> createTopupGcashPayment(@RequestBody Map<String, Object> payload,
+                                                     @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey) {
+        return idempotencyService.execute("create-gcash-topup", idempotencyKey, payload, () -> doCreateTopupGcashPayment(payload));
+    }
+
+    private ResponseEntity<?> doCreateTopupGcashPayment(Map<String, Object> payload) {
         try {
             float amount = Float.parseFloat(payload.get("amount").toString());
             String description = payload.get("description").toString();
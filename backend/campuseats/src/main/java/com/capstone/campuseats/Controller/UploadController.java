@@ -0,0 +1,81 @@
+package com.capstone.campuseats.Controller;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.capstone.campuseats.Service.DirectUploadService;
+import com.capstone.campuseats.Service.LocalBlobStorage;
+import com.capstone.campuseats.config.CustomException;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+@RestController
+@RequestMapping("/api/uploads")
+@CrossOrigin(origins = "${cors.allowed.origins}")
+public class UploadController {
+
+    @Autowired
+    private DirectUploadService directUploadService;
+
+    // Only present when campuseats.storage.backend=local
+    @Autowired(required = false)
+    private LocalBlobStorage localBlobStorage;
+
+    /**
+     * Body: {"purpose": "shop_image|item_image|delivery_proof|cashout_qr",
+     * "targetId": "...", "contentType": "image/jpeg", "size": 123456}.
+     * The client then PUTs the file to uploadUrl with the returned headers
+     * and calls /{uploadId}/complete.
+     */
+    @PostMapping("/presign")
+    public ResponseEntity<?> presign(@RequestBody Map<String, Object> body) {
+        try {
+            Object size = body.get("size");
+            Map<String, Object> upload = directUploadService.presign(
+                    (String) body.get("purpose"),
+                    (String) body.get("targetId"),
+                    (String) body.get("contentType"),
+                    size instanceof Number number ? number.longValue() : null);
+            return new ResponseEntity<>(upload, HttpStatus.OK);
+        } catch (CustomException e) {
+            return new ResponseEntity<>(Map.of("error", e.getMessage()), HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    @PostMapping("/{uploadId}/complete")
+    public ResponseEntity<?> complete(@PathVariable String uploadId) {
+        try {
+            String url = directUploadService.complete(uploadId);
+            return new ResponseEntity<>(Map.of("url", url), HttpStatus.OK);
+        } catch (CustomException e) {
+            return new ResponseEntity<>(Map.of("error", e.getMessage()), HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    // Stand-in for the storage service's upload endpoint when running on local storage
+    @PutMapping("/local/{token}")
+    public ResponseEntity<?> localUpload(@PathVariable String token, HttpServletRequest request) throws IOException {
+        if (localBlobStorage == null) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        long length = request.getContentLengthLong();
+        if (length < 0) {
+            return new ResponseEntity<>(Map.of("error", "Content-Length is required"), HttpStatus.LENGTH_REQUIRED);
+        }
+        if (!localBlobStorage.acceptUpload(token, request.getInputStream(), length)) {
+            return new ResponseEntity<>(Map.of("error", "Upload URL is invalid or expired"), HttpStatus.FORBIDDEN);
+        }
+        return new ResponseEntity<>(HttpStatus.CREATED);
+    }
+}
@@ -0,0 +1,82 @@
+package com.capstone.campuseats.Controller;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.capstone.campuseats.Service.WalletLedgerService;
+import com.capstone.campuseats.config.CustomException;
+
+/**
+ * Wallet history from the ledger. accountType is shop, dasher, platform
+ * (fees, no_show, adjustments) or external (gateway, payout).
+ */
+@RestController
+@RequestMapping("/api/wallets")
+@CrossOrigin(origins = "${cors.allowed.origins}")
+public class WalletController {
+
+    @Autowired
+    private WalletLedgerService walletLedgerService;
+
+    @GetMapping("/{accountType}/{accountId}/balance")
+    public ResponseEntity<?> getBalance(
+            @PathVariable String accountType,
+            @PathVariable String accountId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime at) {
+        try {
+            LocalDateTime asOf = at != null ? at : LocalDateTime.now();
+            double balance = walletLedgerService.balanceAsOf(accountType, accountId, asOf);
+            return new ResponseEntity<>(Map.of("balance", balance, "at", asOf), HttpStatus.OK);
+        } catch (CustomException e) {
+            return new ResponseEntity<>(Map.of("error", e.getMessage()), HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    @GetMapping("/{accountType}/{accountId}/statement")
+    public ResponseEntity<?> getStatement(
+            @PathVariable String accountType,
+            @PathVariable String accountId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit) {
+        try {
+            return new ResponseEntity<>(walletLedgerService.statement(accountType, accountId, from, to, cursor, limit), HttpStatus.OK);
+        } catch (CustomException e) {
+            return new ResponseEntity<>(Map.of("error", e.getMessage()), HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    // One row per day with postings, e.g. for the dasher earnings screen
+    @GetMapping("/{accountType}/{accountId}/daily")
+    public ResponseEntity<?> getDaily(
+            @PathVariable String accountType,
+            @PathVariable String accountId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        try {
+            return new ResponseEntity<>(walletLedgerService.daily(accountType, accountId, from, to), HttpStatus.OK);
+        } catch (CustomException e) {
+            return new ResponseEntity<>(Map.of("error", e.getMessage()), HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    @GetMapping("/reconciliation")
+    public ResponseEntity<?> getReconciliation(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        return new ResponseEntity<>(walletLedgerService.reconciliation(from, to), HttpStatus.OK);
+    }
+}
@@ -0,0 +1,29 @@
+package com.capstone.campuseats.Entity;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Maps the SHA-256 of an upload to the blob already holding it. Processed
+ * images are keyed "<hash>|<profile>" and also list their variants.
+ */
+@Document(collection = "blob_index")
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BlobIndexEntry {
+    @Id
+    private String key;
+    private String url;
+    private Map<String, String> variants;
+    private long size;
+    private String contentType;
+    private LocalDateTime createdAt;
+}
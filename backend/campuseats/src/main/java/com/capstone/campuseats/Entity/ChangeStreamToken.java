@@ -0,0 +1,25 @@
+package com.capstone.campuseats.Entity;
+
+import java.time.LocalDateTime;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Last processed change stream position per watched collection, so a
+ * restarted server resumes where it stopped instead of dropping events.
+ */
+@Document(collection = "change_stream_tokens")
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ChangeStreamToken {
+    @Id
+    private String collection;
+    private String resumeToken; // the token's _data value
+    private LocalDateTime updatedAt;
+}
@@ -27,6 +27,7 @@ public class DasherEntity {
     private String gcashNumber;
     private LocalDateTime createdAt;
     private double wallet;
+    private List<String> appliedCharges; // Gateway charges already credited to wallet (see WalletService.topUp)
     private String campusId; // Campus/School association
 
     // Getters
@@ -0,0 +1,27 @@
+package com.capstone.campuseats.Entity;
+
+import java.time.LocalDateTime;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A dasher's "current order" slot. The id is the dasher id, so inserting a
+ * slot is an atomic claim: a second insert for the same dasher fails with a
+ * duplicate key. Kept outside the dashers collection so that full-document
+ * saves of DasherEntity can never wipe a claim.
+ */
+@Document(collection = "dasher_order_slots")
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class DasherOrderSlot {
+    @Id
+    private String dasherId;
+    private String orderId;
+    private LocalDateTime claimedAt;
+}
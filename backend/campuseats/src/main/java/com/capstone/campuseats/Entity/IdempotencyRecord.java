@@ -0,0 +1,36 @@
+package com.capstone.campuseats.Entity;
+
+import java.util.Date;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Stored outcome of a request sent with an Idempotency-Key header.
+ * MongoDB's TTL monitor deletes records a day after they were created.
+ * startedAt is the lease of the attempt that is in progress.
+ */
+@Document(collection = "idempotency_keys")
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class IdempotencyRecord {
+    public static final String IN_PROGRESS = "in_progress";
+    public static final String COMPLETED = "completed";
+
+    @Id
+    private String id;          // scope + ":" + key
+    private String requestHash; // detects a key reused for a different request
+    private String state;
+    private Date startedAt;     // an in-progress record older than the lease can be taken over
+    private int httpStatus;
+    private String responseBody; // JSON
+
+    @Indexed(expireAfterSeconds = 86400)
+    private Date createdAt;
+}
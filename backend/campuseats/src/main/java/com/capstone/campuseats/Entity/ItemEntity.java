@@ -2,6 +2,7 @@ package com.capstone.campuseats.Entity;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 
 import org.springframework.data.annotation.Id;
 import org.springframework.data.mongodb.core.mapping.Document;
@@ -30,6 +31,7 @@ public class ItemEntity {
     private List<String> categories;
     private float price;
     private String imageUrl;
+    private Map<String, String> imageVariants; // "original" and "w<width>" -> URL
     private LocalDateTime createdAt;
     private List<AddOn> addOns; // New field for add-ons
 
@@ -66,6 +68,10 @@ public class ItemEntity {
         return imageUrl;
     }
 
+    public Map<String, String> getImageVariants() {
+        return imageVariants;
+    }
+
     public LocalDateTime getCreatedAt() {
         return createdAt;
     }
@@ -107,6 +113,10 @@ public class ItemEntity {
         this.imageUrl = imageUrl;
     }
 
+    public void setImageVariants(Map<String, String> imageVariants) {
+        this.imageVariants = imageVariants;
+    }
+
     public void setCreatedAt(LocalDateTime createdAt) {
         this.createdAt = createdAt;
     }
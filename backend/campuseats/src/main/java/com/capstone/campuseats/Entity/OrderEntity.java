@@ -4,6 +4,8 @@ import java.time.LocalDateTime;
 import java.util.List;
 
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import lombok.AllArgsConstructor;
@@ -14,6 +16,15 @@ import lombok.Setter;
 import lombok.experimental.SuperBuilder;
 
 @Document(collection = "orders")
+@CompoundIndexes({
+    // Keyset pagination for the order listing API
+    @CompoundIndex(name = "createdAt_id", def = "{'createdAt': -1, '_id': -1}"),
+    @CompoundIndex(name = "shopId_createdAt_id", def = "{'shopId': 1, 'createdAt': -1, '_id': -1}"),
+    // Phase lookups for dasher polling and per-user admission checks
+    @CompoundIndex(name = "phase_dasherId", def = "{'phase': 1, 'dasherId': 1}"),
+    @CompoundIndex(name = "phase_uid", def = "{'phase': 1, 'uid': 1}"),
+    @CompoundIndex(name = "uid_statusCode_createdAt", def = "{'uid': 1, 'statusCode': 1, 'createdAt': -1}")
+})
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
@@ -25,6 +36,8 @@ public class OrderEntity {
     private String id;
     private String uid;
     private String status;
+    private OrderStatus statusCode; // Normalized form of status, kept in sync by setStatus
+    private OrderPhase phase; // Derived lifecycle phase, kept in sync by setStatus
     private LocalDateTime createdAt;
     private String dasherId;
     private String shopId;
@@ -45,6 +58,9 @@ public class OrderEntity {
     private String customerNoShowGcashQr; // Customer's GCash QR code for refund when reporting dasher no-show
     private String deliveryProofImage; // Dasher's proof of delivery image
     private String paymentReferenceId; // For Xendit charge ID (ewc_...) or PayMongo payment link ID
+    private Long eventSeq; // seq of the last order_events entry for this order
+    private List<String> pendingUploads; // proof image fields still being uploaded in the background
+    private LocalDateTime completionConfirmedAt; // set once when the completion is paid out; a repeat is a conflict
 
     // Getters
     public String getId() {
@@ -122,6 +138,16 @@ public class OrderEntity {
 
     public void setStatus(String status) {
         this.status = status;
+        this.statusCode = OrderStatus.fromValue(status);
+        this.phase = this.statusCode.getPhase();
+    }
+
+    public OrderStatus getStatusCode() {
+        return statusCode;
+    }
+
+    public OrderPhase getPhase() {
+        return phase;
     }
 
     public void setCreatedAt(LocalDateTime createdAt) {
@@ -0,0 +1,55 @@
+package com.capstone.campuseats.Entity;
+
+import java.time.LocalDateTime;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One entry in the append-only order log. offset is global and increasing
+ * (what projections checkpoint on); seq counts the events of one order.
+ * The order's owners and amounts are copied in so projections never have
+ * to load the order itself.
+ */
+@Document(collection = "order_events")
+@CompoundIndex(name = "orderId_seq", def = "{'orderId': 1, 'seq': 1}", unique = true)
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class OrderEvent {
+    public static final String PLACED = "PLACED";
+    public static final String STATUS_CHANGED = "STATUS_CHANGED";
+    public static final String DELETED = "DELETED";
+
+    @Id
+    private Long offset;
+    private String orderId;
+    private long seq;
+    private String type;
+    private String fromStatus;
+    private OrderStatus fromStatusCode;
+    private String toStatus;
+    private OrderStatus toStatusCode;
+    private String uid;
+    private String shopId;
+    private String dasherId;
+    private String paymentMethod;
+    private float totalPrice;
+    private float deliveryFee;
+    private LocalDateTime createdAt;
+
+    /**
+     * True if this event moved the order into status, as opposed to
+     * re-applying the status it already had.
+     */
+    public boolean entered(OrderStatus status) {
+        return toStatusCode == status && fromStatusCode != status;
+    }
+}
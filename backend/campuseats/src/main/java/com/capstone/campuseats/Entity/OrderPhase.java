@@ -0,0 +1,20 @@
+package com.capstone.campuseats.Entity;
+
+import java.util.List;
+
+/**
+ * Coarse lifecycle phase of an order, derived from its status and stored
+ * on the document so hot queries can hit an index instead of a status regex.
+ */
+public enum OrderPhase {
+    ACTIVE,     // still moving through shop / dasher / customer steps
+    DISPUTED,   // under admin review (no-show reports)
+    TERMINAL;   // completed, cancelled, no-show or resolved
+
+    // Phases of an order that is not finished yet (the "active" lists, which include disputes)
+    public static final List<OrderPhase> OPEN = List.of(ACTIVE, DISPUTED);
+
+    public static OrderPhase fromStatus(String status) {
+        return OrderStatus.fromValue(status).getPhase();
+    }
+}
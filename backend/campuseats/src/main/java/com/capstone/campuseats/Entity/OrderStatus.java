@@ -0,0 +1,79 @@
+package com.capstone.campuseats.Entity;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Normalized order status codes. The raw status string stays on the order
+ * for clients; this enum gives one canonical value per spelling
+ * (e.g. "no_show" and "no-show") and maps each status to its phase.
+ */
+public enum OrderStatus {
+    ACTIVE_WAITING_FOR_SHOP("active_waiting_for_shop", OrderPhase.ACTIVE),
+    ACTIVE_SHOP_CONFIRMED("active_shop_confirmed", OrderPhase.ACTIVE),
+    ACTIVE_WAITING_FOR_DASHER("active_waiting_for_dasher", OrderPhase.ACTIVE),
+    ACTIVE_PREPARING("active_preparing", OrderPhase.ACTIVE),
+    ACTIVE_READY_FOR_PICKUP("active_ready_for_pickup", OrderPhase.ACTIVE),
+    ACTIVE_TO_SHOP("active_toShop", OrderPhase.ACTIVE),
+    ACTIVE_PICKED_UP("active_pickedUp", OrderPhase.ACTIVE),
+    ACTIVE_ON_THE_WAY("active_onTheWay", OrderPhase.ACTIVE),
+    ACTIVE_DASHER_ARRIVED("active_dasher_arrived", OrderPhase.ACTIVE),
+    ACTIVE_DELIVERED("active_delivered", OrderPhase.ACTIVE),
+    ACTIVE_WAITING_FOR_CONFIRMATION("active_waiting_for_confirmation", OrderPhase.ACTIVE),
+    ACTIVE_WAITING_FOR_CANCEL_CONFIRMATION("active_waiting_for_cancel_confirmation", OrderPhase.ACTIVE),
+    ACTIVE_WAITING_FOR_SHOP_CANCEL_CONFIRMATION("active_waiting_for_shop_cancel_confirmation", OrderPhase.ACTIVE),
+    ACTIVE_WAITING_FOR_NO_SHOW_CONFIRMATION("active_waiting_for_no_show_confirmation", OrderPhase.DISPUTED),
+    DASHER_NO_SHOW("dasher-no-show", OrderPhase.DISPUTED),
+    COMPLETED("completed", OrderPhase.TERMINAL),
+    CANCELLED_BY_CUSTOMER("cancelled_by_customer", OrderPhase.TERMINAL),
+    CANCELLED_BY_DASHER("cancelled_by_dasher", OrderPhase.TERMINAL),
+    CANCELLED_BY_SHOP("cancelled_by_shop", OrderPhase.TERMINAL),
+    NO_SHOW("no-show", OrderPhase.TERMINAL),
+    NO_SHOW_RESOLVED("no-show-resolved", OrderPhase.TERMINAL),
+    REFUNDED("refunded", OrderPhase.TERMINAL),
+    DECLINED("declined", OrderPhase.TERMINAL),
+    OTHER_ACTIVE(null, OrderPhase.ACTIVE),   // unrecognised "active_*" status
+    OTHER(null, OrderPhase.TERMINAL);        // unrecognised or missing status
+
+    private static final Map<String, OrderStatus> BY_VALUE = new HashMap<>();
+
+    static {
+        for (OrderStatus status : values()) {
+            if (status.value != null) {
+                BY_VALUE.put(status.value, status);
+            }
+        }
+        // Legacy spellings still present in older documents
+        BY_VALUE.put("no_show", NO_SHOW);
+        BY_VALUE.put("no_show_resolved", NO_SHOW_RESOLVED);
+        BY_VALUE.put("cancelled_by_user", CANCELLED_BY_CUSTOMER);
+        BY_VALUE.put("active_waiting_for_cancel_confirmation.", ACTIVE_WAITING_FOR_CANCEL_CONFIRMATION);
+    }
+
+    private final String value;
+    private final OrderPhase phase;
+
+    OrderStatus(String value, OrderPhase phase) {
+        this.value = value;
+        this.phase = phase;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public OrderPhase getPhase() {
+        return phase;
+    }
+
+    public static OrderStatus fromValue(String status) {
+        if (status == null) {
+            return OTHER;
+        }
+        OrderStatus known = BY_VALUE.get(status);
+        if (known != null) {
+            return known;
+        }
+        return status.startsWith("active") ? OTHER_ACTIVE : OTHER;
+    }
+}
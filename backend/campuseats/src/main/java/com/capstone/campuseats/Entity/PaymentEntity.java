@@ -4,6 +4,7 @@ import java.time.LocalDateTime;
 import java.util.List;
 
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import lombok.AllArgsConstructor;
@@ -23,6 +24,7 @@ import lombok.experimental.SuperBuilder;
 public class PaymentEntity {
     @Id
     private String id;
+    @Indexed
     private String orderId;
     private String dasherId;
     private String shopId;
@@ -0,0 +1,24 @@
+package com.capstone.campuseats.Entity;
+
+import java.time.LocalDateTime;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Offset of the last order event a projection has applied.
+ */
+@Document(collection = "projection_checkpoints")
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ProjectionCheckpoint {
+    @Id
+    private String projection;
+    private long lastOffset;
+    private LocalDateTime updatedAt;
+}
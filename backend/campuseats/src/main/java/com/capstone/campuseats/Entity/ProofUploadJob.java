@@ -0,0 +1,59 @@
+package com.capstone.campuseats.Entity;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A proof image spooled to local disk and waiting to be uploaded to blob
+ * storage. Kept in MongoDB so uploads interrupted by a restart are retried.
+ * The spool file is on the local disk of host, so only that host runs the job.
+ */
+@Document(collection = "proof_upload_jobs")
+@CompoundIndex(name = "host_state_nextAttemptAt", def = "{'host': 1, 'state': 1, 'nextAttemptAt': 1}")
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ProofUploadJob {
+    public static final String PENDING = "pending";
+    public static final String UPLOADING = "uploading";
+    public static final String FAILED = "failed";
+
+    @Id
+    private String id;
+    private String orderId;
+    private String blobName;
+    private String spoolPath;
+    private String host;       // instance whose disk holds spoolPath
+    private String contentType;
+    private List<Target> targets; // where the blob URL is written once uploaded
+    private String state;
+    private int attempts;
+    private LocalDateTime nextAttemptAt;
+    private LocalDateTime claimedAt;
+    private String lastError;
+    private LocalDateTime createdAt;
+
+    /**
+     * A document field that receives the URL, on the document whose keyField
+     * equals keyValue. For orders the field is also the entry removed from
+     * pendingUploads.
+     */
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class Target {
+        private String collection;
+        private String keyField;
+        private String keyValue;
+        private String field;
+        private boolean onlyIfEmpty; // keep an existing value
+    }
+}
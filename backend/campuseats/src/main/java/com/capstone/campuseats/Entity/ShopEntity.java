@@ -2,6 +2,7 @@ package com.capstone.campuseats.Entity;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 
 import org.springframework.data.annotation.Id;
 import org.springframework.data.mongodb.core.mapping.Document;
@@ -32,11 +33,13 @@ public class ShopEntity {
     private String name;
     private String desc;
     private String imageUrl;
+    private Map<String, String> imageVariants; // "original" and "w<width>" -> URL
     private String timeOpen;
     private String timeClose;
     private String status;
     private LocalDateTime createdAt;
     private double wallet;
+    private List<String> appliedCharges; // Gateway charges already credited to wallet (see WalletService.topUp)
     private boolean acceptGCASH;
     private Long completedOrderCount;
     private String streamUrl;
@@ -87,6 +90,10 @@ public class ShopEntity {
         return imageUrl;
     }
 
+    public Map<String, String> getImageVariants() {
+        return imageVariants;
+    }
+
     public String getTimeOpen() {
         return timeOpen;
     }
@@ -168,6 +175,10 @@ public class ShopEntity {
         this.imageUrl = imageUrl;
     }
 
+    public void setImageVariants(Map<String, String> imageVariants) {
+        this.imageVariants = imageVariants;
+    }
+
     public void setTimeOpen(String timeOpen) {
         this.timeOpen = timeOpen;
     }
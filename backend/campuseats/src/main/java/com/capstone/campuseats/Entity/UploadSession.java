@@ -0,0 +1,38 @@
+package com.capstone.campuseats.Entity;
+
+import java.time.LocalDateTime;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A presigned direct upload: the blob the client may write and the entity
+ * field its URL goes to once the upload is completed.
+ */
+@Document(collection = "upload_sessions")
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class UploadSession {
+    public static final String ISSUED = "issued";
+    public static final String COMPLETED = "completed";
+
+    @Id
+    private String id;
+    private String purpose; // DirectUploadService.Purpose
+    private String targetId;
+    private String blobName;
+    private String contentType;
+    private long maxBytes;
+    private String status;
+    private String url; // set once completed
+    private LocalDateTime expiresAt;
+    private LocalDateTime createdAt;
+    @Indexed(expireAfterSeconds = 0)
+    private LocalDateTime purgeAt; // kept a day past expiry so late completions get a clear error
+}
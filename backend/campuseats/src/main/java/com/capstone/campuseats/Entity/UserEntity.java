@@ -1,6 +1,7 @@
 package com.capstone.campuseats.Entity;
 
 import java.util.Date;
+import java.util.Map;
 
 import org.springframework.data.annotation.Id;
 import org.springframework.data.mongodb.core.mapping.Document;
@@ -37,6 +38,7 @@ public class UserEntity {
     private String schoolIdNum;
     private String azureOid; // Azure AD Object ID for OAuth authentication
     private String profilePictureUrl; // URL to profile picture in Azure Blob Storage
+    private Map<String, String> profilePictureVariants; // "original" and "w<width>" -> URL
 
     // For backward compatibility
     private String provider; // Authentication provider (e.g., "azure")
@@ -111,6 +113,10 @@ public class UserEntity {
         return profilePictureUrl;
     }
 
+    public Map<String, String> getProfilePictureVariants() {
+        return profilePictureVariants;
+    }
+
     public String getProvider() {
         return provider;
     }
@@ -200,6 +206,10 @@ public class UserEntity {
         this.profilePictureUrl = profilePictureUrl;
     }
 
+    public void setProfilePictureVariants(Map<String, String> profilePictureVariants) {
+        this.profilePictureVariants = profilePictureVariants;
+    }
+
     public void setProvider(String provider) {
         this.provider = provider;
     }
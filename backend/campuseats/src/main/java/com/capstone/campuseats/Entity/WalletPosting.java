@@ -0,0 +1,44 @@
+package com.capstone.campuseats.Entity;
+
+import java.time.LocalDateTime;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One immutable leg of a wallet ledger entry. A wallet change writes two
+ * legs under the same entryId: the wallet itself and the type's contra
+ * account (platform fees, the payment gateway, ...) with the opposite sign.
+ * balanceAfter is the wallet balance the $inc returned; contra legs have none.
+ */
+@Document(collection = "wallet_ledger")
+@CompoundIndexes({
+        @CompoundIndex(name = "account_createdAt", def = "{'accountType': 1, 'accountId': 1, 'createdAt': 1, '_id': 1}"),
+        @CompoundIndex(name = "createdAt", def = "{'createdAt': 1}")
+})
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class WalletPosting {
+    @Id
+    private String id;
+    @Indexed
+    private String entryId;
+    private String accountType; // shop, dasher, platform or external
+    private String accountId;
+    private WalletPostingType type;
+    private double amount; // signed: credits are positive
+    private Double balanceAfter;
+    @Indexed
+    private String reference; // order, cashout, reimbursement or gateway charge id
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,33 @@
+package com.capstone.campuseats.Entity;
+
+/**
+ * Why a wallet moved. Each type names the non-wallet account on the other
+ * side of the entry, so every movement posts to two accounts and sums to 0.
+ */
+public enum WalletPostingType {
+    ORDER_PAYOUT("external", "gateway"),           // shop's food cost on an online-paid order
+    DELIVERY_FEE("external", "gateway"),           // dasher's share of the delivery fee on an online-paid order
+    ADMIN_FEE("platform", "fees"),                 // admin cut a COD dasher owes
+    COD_REMITTANCE("platform", "no_show"),         // earlier no-show charges a COD dasher collected and owes
+    NO_SHOW_COMPENSATION("platform", "no_show"),   // paid to the dasher of a no-show order
+    TOPUP("external", "gateway"),
+    CASHOUT("external", "payout"),
+    CASHOUT_REFUND("external", "payout"),          // rejected cashout returned to the wallet
+    ADJUSTMENT("platform", "adjustments");         // manual wallet edits
+
+    private final String contraAccountType;
+    private final String contraAccountId;
+
+    WalletPostingType(String contraAccountType, String contraAccountId) {
+        this.contraAccountType = contraAccountType;
+        this.contraAccountId = contraAccountId;
+    }
+
+    public String getContraAccountType() {
+        return contraAccountType;
+    }
+
+    public String getContraAccountId() {
+        return contraAccountId;
+    }
+}
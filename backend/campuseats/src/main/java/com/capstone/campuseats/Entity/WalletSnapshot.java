@@ -0,0 +1,42 @@
+package com.capstone.campuseats.Entity;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Map;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One account's ledger postings for one day, compacted: the balances at
+ * either end and the totals per posting type. Only days with postings
+ * get a snapshot.
+ */
+@Document(collection = "wallet_snapshots")
+@CompoundIndex(name = "account_day", def = "{'accountType': 1, 'accountId': 1, 'day': 1}", unique = true)
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class WalletSnapshot {
+    @Id
+    private String id; // accountType:accountId:day
+    private String accountType;
+    private String accountId;
+    @Indexed
+    private LocalDate day;
+    private double openingBalance;
+    private double closingBalance;
+    private double credits;
+    private double debits; // negative
+    private long postings;
+    private Map<String, Double> totalsByType;
+    private LocalDateTime createdAt;
+}
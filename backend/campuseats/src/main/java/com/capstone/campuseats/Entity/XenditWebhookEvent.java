@@ -0,0 +1,44 @@
+package com.capstone.campuseats.Entity;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A received Xendit webhook, keyed by event type and charge id so a
+ * redelivery of the same event lands on the same document. Failed events
+ * stay here in state failed as the dead-letter list.
+ */
+@Document(collection = "xendit_webhook_events")
+@CompoundIndex(name = "state_nextAttemptAt", def = "{'state': 1, 'nextAttemptAt': 1}")
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class XenditWebhookEvent {
+    public static final String RECEIVED = "received";
+    public static final String PROCESSING = "processing";
+    public static final String DONE = "done";
+    public static final String FAILED = "failed";
+
+    @Id
+    private String id; // "<event>:<charge id>"
+    private String event;
+    private String chargeId;
+    private Map<String, Object> payload;
+    private String state;
+    private int deliveries; // times Xendit sent it
+    private int attempts;
+    private LocalDateTime nextAttemptAt;
+    private LocalDateTime claimedAt;
+    private String lastError;
+    private String outcome;
+    private LocalDateTime receivedAt;
+    private LocalDateTime processedAt;
+}
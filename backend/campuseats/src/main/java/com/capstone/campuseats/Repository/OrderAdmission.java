@@ -0,0 +1,22 @@
+package com.capstone.campuseats.Repository;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * What placeOrder needs to know about a customer's history: whether an
+ * order is still active, and the latest unresolved no-show (if any) whose
+ * charges carry over to the next order.
+ */
+@Getter
+@AllArgsConstructor
+public class OrderAdmission {
+    private boolean activeOrder;
+    private String noShowOrderId;    // null when there is no unresolved no-show
+    private float noShowDeliveryFee;
+    private float noShowItemsTotal;
+
+    public boolean hasUnresolvedNoShow() {
+        return noShowOrderId != null;
+    }
+}
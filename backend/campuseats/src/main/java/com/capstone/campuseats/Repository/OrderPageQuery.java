@@ -0,0 +1,69 @@
+package com.capstone.campuseats.Repository;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.List;
+
+import com.capstone.campuseats.Entity.OrderEntity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * Filter and keyset position for a single page of orders.
+ * Pages are ordered by createdAt descending, then _id descending.
+ */
+@Getter
+@Builder
+@AllArgsConstructor
+public class OrderPageQuery {
+    public static final String GROUP_ALL = "all";
+    public static final String GROUP_ACTIVE = "active";
+    public static final String GROUP_PAST = "past";
+
+    public static final int DEFAULT_LIMIT = 20;
+    public static final int MAX_LIMIT = 100;
+
+    private String statusGroup;
+    private List<String> shopIds; // null means no shop restriction
+    private LocalDateTime from;   // inclusive
+    private LocalDateTime to;     // exclusive
+    private LocalDateTime afterCreatedAt;
+    private String afterId;
+    private int limit;
+    private boolean summary;      // load only the list-view fields
+    private String archiveCollection; // also page through this collection (orders_archive); null for hot orders only
+
+    public static int clampLimit(Integer requested) {
+        if (requested == null || requested <= 0) {
+            return DEFAULT_LIMIT;
+        }
+        return Math.min(requested, MAX_LIMIT);
+    }
+
+    // Cursor format: base64url("<createdAt ISO>|<orderId>")
+    public static String encodeCursor(OrderEntity order) {
+        if (order.getCreatedAt() == null || order.getId() == null) {
+            return null;
+        }
+        String raw = order.getCreatedAt().toString() + "|" + order.getId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static String[] decodeCursor(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = raw.indexOf('|');
+            if (separator <= 0 || separator == raw.length() - 1) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            // Validate the timestamp part eagerly so bad cursors fail as a 400
+            LocalDateTime.parse(raw.substring(0, separator));
+            return new String[] { raw.substring(0, separator), raw.substring(separator + 1) };
+        } catch (IllegalArgumentException | java.time.format.DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.capstone.campuseats.Repository;
 
 import com.capstone.campuseats.Entity.OrderEntity;
+import com.capstone.campuseats.Entity.OrderPhase;
 import com.capstone.campuseats.Entity.ShopEntity;
 
 import org.springframework.data.mongodb.repository.MongoRepository;
@@ -9,7 +10,7 @@ import org.springframework.stereotype.Repository;
 import java.util.List;
 
 @Repository
-public interface OrderRepository extends MongoRepository<OrderEntity, String> {
+public interface OrderRepository extends MongoRepository<OrderEntity, String>, OrderRepositoryCustom {
     List<OrderEntity> findByUid(String uid);
     List<OrderEntity> findByDasherId(String dasherId);
     List<OrderEntity> findByStatusStartingWith(String status);
@@ -22,4 +23,8 @@ public interface OrderRepository extends MongoRepository<OrderEntity, String> {
     
     List<OrderEntity> findByShopId(String shopId);
 
+    // Phase-based lookups backed by the {phase, uid} and {phase, dasherId} indexes
+    boolean existsByUidAndPhase(String uid, OrderPhase phase);
+    boolean existsByDasherIdAndPhase(String dasherId, OrderPhase phase);
+    List<OrderEntity> findByDasherIdAndPhase(String dasherId, OrderPhase phase);
 }
@@ -0,0 +1,50 @@
+package com.capstone.campuseats.Repository;
+
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.data.mongodb.core.query.Criteria;
+
+import com.capstone.campuseats.Entity.OrderEntity;
+
+/**
+ * Custom order queries that have to run their filtering inside MongoDB.
+ */
+public interface OrderRepositoryCustom {
+
+    /**
+     * Fetch one keyset page of orders. Returns up to limit + 1 documents so
+     * the caller can tell whether another page exists.
+     */
+    List<OrderEntity> findOrderPage(OrderPageQuery query);
+
+    /**
+     * Fetch every order in a status group ("active" or "past") without
+     * loading the other group into memory.
+     */
+    List<OrderEntity> findByStatusGroup(String statusGroup);
+
+    /**
+     * Admission check for a new order in one aggregation that only touches
+     * the user's active and no-show orders through the uid indexes.
+     */
+    OrderAdmission findAdmission(String uid);
+
+    /**
+     * List-view variant of a finder: only the fields list screens render are
+     * loaded (no proof images, GCash QR or item add-ons), newest first.
+     */
+    List<OrderEntity> findOrderSummaries(Criteria criteria);
+
+    /**
+     * Same projection against another order collection (orders_archive),
+     * newest first and at most limit documents (0 for no cap).
+     */
+    List<OrderEntity> findOrderSummaries(Criteria criteria, String collectionName, int limit);
+
+    /**
+     * Number of orders matching criteria per value of field (e.g. shopId),
+     * counted inside MongoDB over the hot collection and archiveCollection.
+     */
+    Map<String, Long> countBy(String field, Criteria criteria, String archiveCollection);
+}
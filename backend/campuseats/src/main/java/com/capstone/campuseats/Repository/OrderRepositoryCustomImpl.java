@@ -0,0 +1,207 @@
+package com.capstone.campuseats.Repository;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import com.capstone.campuseats.Entity.OrderEntity;
+import com.capstone.campuseats.Entity.OrderPhase;
+import com.capstone.campuseats.Entity.OrderStatus;
+
+public class OrderRepositoryCustomImpl implements OrderRepositoryCustom {
+
+    // Page order: createdAt descending, then _id descending (MongoDB sorts a missing createdAt last)
+    private static final Comparator<OrderEntity> PAGE_ORDER = Comparator
+            .comparing(OrderEntity::getCreatedAt, Comparator.nullsFirst(Comparator.<LocalDateTime>naturalOrder()))
+            .thenComparing(OrderEntity::getId, Comparator.nullsFirst(Comparator.<String>naturalOrder()))
+            .reversed();
+
+    // Fields returned by the list (summary) views
+    private static final String[] SUMMARY_FIELDS = {
+            "uid", "status", "statusCode", "phase", "createdAt", "dasherId", "shopId",
+            "changeFor", "deliveryFee", "deliverTo", "firstname", "lastname", "mobileNum", "note",
+            "paymentMethod", "totalPrice", "previousNoShowFee", "previousNoShowItems",
+            "items.itemId", "items.name", "items.unitPrice", "items.price", "items.quantity"
+    };
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Override
+    public List<OrderEntity> findOrderPage(OrderPageQuery pageQuery) {
+        List<Criteria> filters = new ArrayList<>();
+
+        Criteria statusCriteria = statusGroupCriteria(pageQuery.getStatusGroup());
+        if (statusCriteria != null) {
+            filters.add(statusCriteria);
+        }
+
+        if (pageQuery.getShopIds() != null) {
+            filters.add(Criteria.where("shopId").in(pageQuery.getShopIds()));
+        }
+
+        if (pageQuery.getFrom() != null || pageQuery.getTo() != null) {
+            Criteria createdAtRange = Criteria.where("createdAt");
+            if (pageQuery.getFrom() != null) {
+                createdAtRange = createdAtRange.gte(pageQuery.getFrom());
+            }
+            if (pageQuery.getTo() != null) {
+                createdAtRange = createdAtRange.lt(pageQuery.getTo());
+            }
+            filters.add(createdAtRange);
+        }
+
+        // Keyset position: strictly after the last (createdAt, _id) already returned
+        if (pageQuery.getAfterCreatedAt() != null && pageQuery.getAfterId() != null) {
+            LocalDateTime afterCreatedAt = pageQuery.getAfterCreatedAt();
+            filters.add(new Criteria().orOperator(
+                    Criteria.where("createdAt").lt(afterCreatedAt),
+                    new Criteria().andOperator(
+                            Criteria.where("createdAt").is(afterCreatedAt),
+                            Criteria.where("_id").lt(pageQuery.getAfterId()))));
+        }
+
+        Query query = new Query();
+        if (!filters.isEmpty()) {
+            query.addCriteria(new Criteria().andOperator(filters));
+        }
+        if (pageQuery.isSummary()) {
+            query.fields().include(SUMMARY_FIELDS);
+        }
+        query.with(Sort.by(Sort.Direction.DESC, "createdAt").and(Sort.by(Sort.Direction.DESC, "_id")));
+        query.limit(pageQuery.getLimit() + 1);
+
+        List<OrderEntity> hot = mongoTemplate.find(query, OrderEntity.class);
+        if (pageQuery.getArchiveCollection() == null) {
+            return hot;
+        }
+
+        // Same keyset query on the archive, merged; an order caught mid-move can briefly be in both
+        Set<String> hotIds = hot.stream().map(OrderEntity::getId).collect(Collectors.toSet());
+        List<OrderEntity> merged = new ArrayList<>(hot);
+        for (OrderEntity order : mongoTemplate.find(query, OrderEntity.class, pageQuery.getArchiveCollection())) {
+            if (!hotIds.contains(order.getId())) {
+                merged.add(order);
+            }
+        }
+        merged.sort(PAGE_ORDER);
+        return merged.size() > pageQuery.getLimit() + 1 ? merged.subList(0, pageQuery.getLimit() + 1) : merged;
+    }
+
+    @Override
+    public List<OrderEntity> findByStatusGroup(String statusGroup) {
+        Query query = new Query();
+        Criteria statusCriteria = statusGroupCriteria(statusGroup);
+        if (statusCriteria != null) {
+            query.addCriteria(statusCriteria);
+        }
+        return mongoTemplate.find(query, OrderEntity.class);
+    }
+
+    @Override
+    public OrderAdmission findAdmission(String uid) {
+        String activePhase = OrderPhase.ACTIVE.name();
+        String noShow = OrderStatus.NO_SHOW.name();
+
+        // The $or branches use the {phase, uid} and {uid, statusCode, createdAt} indexes,
+        // so only the handful of matching orders reach the facet stage
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(new Criteria().andOperator(
+                        Criteria.where("uid").is(uid),
+                        new Criteria().orOperator(
+                                Criteria.where("phase").is(activePhase),
+                                Criteria.where("statusCode").is(noShow)))),
+                Aggregation.sort(Sort.Direction.DESC, "createdAt"),
+                Aggregation.facet(
+                                Aggregation.match(Criteria.where("phase").is(activePhase)),
+                                Aggregation.limit(1),
+                                Aggregation.project("_id")).as("active")
+                        .and(
+                                Aggregation.match(Criteria.where("statusCode").is(noShow)),
+                                Aggregation.limit(1),
+                                Aggregation.project("deliveryFee", "items")).as("noShow"));
+
+        Document result = mongoTemplate.aggregate(aggregation, "orders", Document.class).getUniqueMappedResult();
+        if (result == null) {
+            return new OrderAdmission(false, null, 0f, 0f);
+        }
+
+        boolean active = !result.getList("active", Document.class, List.of()).isEmpty();
+        List<Document> noShows = result.getList("noShow", Document.class, List.of());
+        if (noShows.isEmpty()) {
+            return new OrderAdmission(active, null, 0f, 0f);
+        }
+
+        Document lastNoShow = noShows.get(0);
+        float itemsTotal = 0f;
+        for (Document item : lastNoShow.getList("items", Document.class, List.of())) {
+            itemsTotal += number(item.get("price")) * number(item.get("quantity"));
+        }
+        return new OrderAdmission(active, lastNoShow.get("_id").toString(),
+                number(lastNoShow.get("deliveryFee")), itemsTotal);
+    }
+
+    @Override
+    public List<OrderEntity> findOrderSummaries(Criteria criteria) {
+        Query query = new Query(criteria);
+        query.fields().include(SUMMARY_FIELDS);
+        query.with(Sort.by(Sort.Direction.DESC, "createdAt"));
+        return mongoTemplate.find(query, OrderEntity.class);
+    }
+
+    @Override
+    public List<OrderEntity> findOrderSummaries(Criteria criteria, String collectionName, int limit) {
+        Query query = new Query(criteria);
+        query.fields().include(SUMMARY_FIELDS);
+        query.with(Sort.by(Sort.Direction.DESC, "createdAt"));
+        if (limit > 0) {
+            query.limit(limit);
+        }
+        return mongoTemplate.find(query, OrderEntity.class, collectionName);
+    }
+
+    @Override
+    public Map<String, Long> countBy(String field, Criteria criteria, String archiveCollection) {
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(criteria),
+                Aggregation.group(field).count().as("count"));
+        Map<String, Long> counts = new HashMap<>();
+        for (String collection : List.of(mongoTemplate.getCollectionName(OrderEntity.class), archiveCollection)) {
+            for (Document row : mongoTemplate.aggregate(aggregation, collection, Document.class).getMappedResults()) {
+                Object key = row.get("_id");
+                if (key != null) {
+                    counts.merge(key.toString(), ((Number) row.get("count")).longValue(), Long::sum);
+                }
+            }
+        }
+        return counts;
+    }
+
+    private static float number(Object value) {
+        return value instanceof Number ? ((Number) value).floatValue() : 0f;
+    }
+
+    private Criteria statusGroupCriteria(String statusGroup) {
+        if (OrderPageQuery.GROUP_ACTIVE.equals(statusGroup)) {
+            return Criteria.where("phase").in(OrderPhase.OPEN);
+        }
+        if (OrderPageQuery.GROUP_PAST.equals(statusGroup)) {
+            // nin also matches archived orders written before phase existed
+            return Criteria.where("phase").nin(OrderPhase.OPEN);
+        }
+        return null;
+    }
+}
@@ -7,5 +7,5 @@ import org.springframework.stereotype.Repository;
 
 @Repository
 public interface PaymentRepository extends MongoRepository<PaymentEntity, String> {
-
+    boolean existsByOrderId(String orderId);
 }
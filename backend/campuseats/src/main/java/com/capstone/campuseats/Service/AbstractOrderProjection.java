@@ -0,0 +1,44 @@
+package com.capstone.campuseats.Service;
+
+import java.time.format.DateTimeFormatter;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import com.capstone.campuseats.Entity.OrderEvent;
+import com.capstone.campuseats.Entity.OrderStatus;
+
+public abstract class AbstractOrderProjection implements OrderProjection {
+
+    protected static final DateTimeFormatter DAY = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+
+    @Autowired
+    protected MongoTemplate mongoTemplate;
+
+    /**
+     * Upserts the read-model document unless it has already seen this event.
+     * Each document remembers the last offset applied to it; when the guard
+     * fails the upsert turns into an insert on an existing _id, which is
+     * exactly the "already applied" case.
+     */
+    protected void applyOnce(String id, long offset, Update update) {
+        Query query = new Query(Criteria.where("_id").is(id).and("lastOffset").lt(offset));
+        update.set("lastOffset", offset);
+        try {
+            mongoTemplate.upsert(query, update, getCollection());
+        } catch (DuplicateKeyException e) {
+            // Replayed event
+        }
+    }
+
+    protected static boolean enteredCancelled(OrderEvent event) {
+        return event.entered(OrderStatus.CANCELLED_BY_CUSTOMER)
+                || event.entered(OrderStatus.CANCELLED_BY_DASHER)
+                || event.entered(OrderStatus.CANCELLED_BY_SHOP)
+                || event.entered(OrderStatus.DECLINED);
+    }
+}
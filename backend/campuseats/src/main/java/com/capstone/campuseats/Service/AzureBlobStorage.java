@@ -0,0 +1,171 @@
+package com.capstone.campuseats.Service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.Map;
+import java.util.Optional;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import com.azure.core.util.Context;
+import com.azure.core.util.HttpClientOptions;
+import com.azure.storage.blob.BlobClient;
+import com.azure.storage.blob.BlobContainerClient;
+import com.azure.storage.blob.BlobServiceClientBuilder;
+import com.azure.storage.blob.models.BlobHttpHeaders;
+import com.azure.storage.blob.models.BlobProperties;
+import com.azure.storage.blob.models.BlobRange;
+import com.azure.storage.blob.models.BlobStorageException;
+import com.azure.storage.blob.models.ParallelTransferOptions;
+import com.azure.storage.blob.options.BlobParallelUploadOptions;
+import com.azure.storage.blob.options.BlobUploadFromFileOptions;
+import com.azure.storage.blob.sas.BlobSasPermission;
+import com.azure.storage.blob.sas.BlobServiceSasSignatureValues;
+import com.azure.storage.common.policy.RequestRetryOptions;
+import com.azure.storage.common.policy.RetryPolicyType;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Azure Blob Storage backend: one container client, and so one HTTP
+ * connection pool, for the whole application.
+ */
+@Service
+@ConditionalOnProperty(name = "campuseats.storage.backend", havingValue = "azure", matchIfMissing = true)
+public class AzureBlobStorage implements BlobStorage {
+
+    private static final long MB = 1024L * 1024L;
+
+    @Value("${spring.cloud.azure.storage.blob.container-name}")
+    private String containerName;
+
+    @Value("${azure.blob-storage.connection-string}")
+    private String connectionString;
+
+    @Value("${campuseats.storage.azure.max-connections:32}")
+    private int maxConnections;
+
+    // Files up to this size go in a single PUT; larger ones are split into blocks
+    @Value("${campuseats.storage.azure.single-upload-mb:8}")
+    private long singleUploadMb;
+
+    @Value("${campuseats.storage.azure.block-size-mb:4}")
+    private long blockSizeMb;
+
+    // Blocks of one file uploaded in parallel
+    @Value("${campuseats.storage.azure.block-concurrency:4}")
+    private int blockConcurrency;
+
+    @Value("${campuseats.storage.azure.timeout-seconds:60}")
+    private int timeoutSeconds;
+
+    private BlobContainerClient containerClient;
+    private ParallelTransferOptions transferOptions;
+
+    @PostConstruct
+    public void init() {
+        HttpClientOptions httpOptions = new HttpClientOptions()
+                .setMaximumConnectionPoolSize(maxConnections)
+                .setConnectTimeout(Duration.ofSeconds(10))
+                .setResponseTimeout(Duration.ofSeconds(timeoutSeconds));
+        containerClient = new BlobServiceClientBuilder()
+                .connectionString(connectionString)
+                .clientOptions(httpOptions)
+                .retryOptions(new RequestRetryOptions(RetryPolicyType.EXPONENTIAL, 3, timeoutSeconds, null, null, null))
+                .buildClient()
+                .getBlobContainerClient(containerName);
+        transferOptions = new ParallelTransferOptions()
+                .setMaxSingleUploadSizeLong(singleUploadMb * MB)
+                .setBlockSizeLong(blockSizeMb * MB)
+                .setMaxConcurrency(blockConcurrency);
+    }
+
+    @Override
+    public String upload(String name, MultipartFile file) throws IOException {
+        BlobClient blobClient = containerClient.getBlobClient(name);
+        try (InputStream in = file.getInputStream()) {
+            BlobParallelUploadOptions options = new BlobParallelUploadOptions(in, file.getSize())
+                    .setParallelTransferOptions(transferOptions);
+            if (file.getContentType() != null) {
+                options.setHeaders(new BlobHttpHeaders().setContentType(file.getContentType()));
+            }
+            blobClient.uploadWithResponse(options, null, Context.NONE);
+        }
+        return blobClient.getBlobUrl();
+    }
+
+    @Override
+    public String upload(String name, Path file, String contentType) throws IOException {
+        BlobClient blobClient = containerClient.getBlobClient(name);
+        BlobUploadFromFileOptions options = new BlobUploadFromFileOptions(file.toString())
+                .setParallelTransferOptions(transferOptions);
+        if (contentType != null) {
+            options.setHeaders(new BlobHttpHeaders().setContentType(contentType));
+        }
+        blobClient.uploadFromFileWithResponse(options, null, Context.NONE);
+        return blobClient.getBlobUrl();
+    }
+
+    @Override
+    public String upload(String name, byte[] data, String contentType) throws IOException {
+        BlobClient blobClient = containerClient.getBlobClient(name);
+        BlobParallelUploadOptions options = new BlobParallelUploadOptions(new ByteArrayInputStream(data), data.length)
+                .setParallelTransferOptions(transferOptions);
+        if (contentType != null) {
+            options.setHeaders(new BlobHttpHeaders().setContentType(contentType));
+        }
+        blobClient.uploadWithResponse(options, null, Context.NONE);
+        return blobClient.getBlobUrl();
+    }
+
+    @Override
+    public String url(String name) {
+        return containerClient.getBlobClient(name).getBlobUrl();
+    }
+
+    @Override
+    public PresignedUpload presignUpload(String name, String contentType, Duration ttl) {
+        BlobClient blobClient = containerClient.getBlobClient(name);
+        // Create only, on this one blob: without write permission the PUT fails once the blob exists,
+        // so the file complete() validated cannot be replaced later. The SAS cannot read or list anything.
+        BlobSasPermission permission = new BlobSasPermission().setCreatePermission(true);
+        BlobServiceSasSignatureValues values = new BlobServiceSasSignatureValues(OffsetDateTime.now().plus(ttl), permission);
+        String sas = blobClient.generateSas(values);
+        return new PresignedUpload(blobClient.getBlobUrl() + "?" + sas,
+                Map.of("x-ms-blob-type", "BlockBlob", "Content-Type", contentType));
+    }
+
+    @Override
+    public Optional<BlobInfo> stat(String name) {
+        try {
+            BlobProperties properties = containerClient.getBlobClient(name).getProperties();
+            return Optional.of(new BlobInfo(properties.getBlobSize(), properties.getContentType()));
+        } catch (BlobStorageException e) {
+            if (e.getStatusCode() == 404) {
+                return Optional.empty();
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public byte[] readHead(String name, int length) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(length);
+        containerClient.getBlobClient(name).downloadStreamWithResponse(out, new BlobRange(0, (long) length),
+                null, null, false, null, Context.NONE);
+        return out.toByteArray();
+    }
+
+    @Override
+    public void delete(String name) {
+        containerClient.getBlobClient(name).deleteIfExists();
+    }
+}
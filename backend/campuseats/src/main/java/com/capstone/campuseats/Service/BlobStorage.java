@@ -0,0 +1,53 @@
+package com.capstone.campuseats.Service;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+
+import org.springframework.web.multipart.MultipartFile;
+
+/**
+ * Where uploaded images go. Every service shares one instance, picked with
+ * campuseats.storage.backend: "azure" (default) or "local" for development,
+ * benchmarks and offline tests.
+ *
+ * Uploads overwrite an existing blob of the same name and return the URL the
+ * clients use to fetch it.
+ */
+public interface BlobStorage {
+
+    /**
+     * Streams the multipart file (normally already spooled to a temp file by
+     * the servlet container) without reading it into memory.
+     */
+    String upload(String name, MultipartFile file) throws IOException;
+
+    // contentType may be null
+    String upload(String name, Path file, String contentType) throws IOException;
+
+    String upload(String name, byte[] data, String contentType) throws IOException;
+
+    String url(String name);
+
+    /**
+     * A URL the client can PUT the blob to directly, valid for ttl and only
+     * for this blob name, that cannot overwrite the blob once it exists.
+     * headers must be sent with the PUT.
+     */
+    PresignedUpload presignUpload(String name, String contentType, Duration ttl);
+
+    Optional<BlobInfo> stat(String name);
+
+    // Up to length bytes from the start of the blob, e.g. to check its file signature
+    byte[] readHead(String name, int length) throws IOException;
+
+    void delete(String name);
+
+    record PresignedUpload(String url, Map<String, String> headers) {
+    }
+
+    record BlobInfo(long size, String contentType) {
+    }
+}
@@ -9,8 +9,6 @@ import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
-import java.net.URI;
-import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 
@@ -35,7 +33,8 @@ public class BrevoEmailService {
     @Value("${env.BREVO_API_KEY}")
     private String brevoApiKey;
 
-    private final HttpClient httpClient = HttpClient.newHttpClient();
+    @Autowired
+    private OutboundHttpGateway outboundHttpGateway;
 
     @Async
     public void sendEmail(String name, String to, String token) {
@@ -149,7 +148,7 @@ public class BrevoEmailService {
     }
 
     private void sendBrevoEmail(String to, String subject, String htmlContent, String textContent) 
-            throws IOException, InterruptedException {
+            throws IOException {
         
         log.debug("📤 Preparing to send email via Brevo API to: {}, Subject: {}", to, subject);
         
@@ -172,8 +171,7 @@ public class BrevoEmailService {
             escapeJson(htmlContent),
             escapeJson(textContent));
 
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create("https://api.brevo.com/v3/smtp/email"))
+        HttpRequest request = outboundHttpGateway.request(OutboundHttpGateway.Upstream.BREVO, "/v3/smtp/email")
                 .header("accept", "application/json")
                 .header("api-key", brevoApiKey)
                 .header("content-type", "application/json")
@@ -181,7 +179,8 @@ public class BrevoEmailService {
                 .build();
 
         log.debug("🌐 Sending HTTP request to Brevo API...");
-        HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+        // Not repeated after a timeout, or the recipient could get the email twice
+        HttpResponse<String> response = outboundHttpGateway.send(OutboundHttpGateway.Upstream.BREVO, request, false);
 
         if (response.statusCode() >= 200 && response.statusCode() < 300) {
             log.info("✅ Email sent successfully via Brevo. Status: {}, Response: {}", response.statusCode(), response.body());
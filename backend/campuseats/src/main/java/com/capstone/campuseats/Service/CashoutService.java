@@ -11,19 +11,14 @@ import java.util.Map;
 import java.util.Optional;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
-import com.azure.storage.blob.BlobClient;
-import com.azure.storage.blob.BlobServiceClient;
-import com.azure.storage.blob.BlobServiceClientBuilder;
 import com.capstone.campuseats.Entity.CashoutEntity;
 import com.capstone.campuseats.Repository.CashoutRepository;
 import com.capstone.campuseats.config.CustomException;
 import com.capstone.campuseats.config.ApplicationContextProvider;
 
-import jakarta.annotation.PostConstruct;
 
 @Service
 public class CashoutService {
@@ -39,20 +34,8 @@ public class CashoutService {
         this.dasherService = dasherService;
     }
 
-    @Value("${spring.cloud.azure.storage.blob.container-name}")
-    private String containerName;
-
-    @Value("${azure.blob-storage.connection-string}")
-    private String connectionString;
-
-    private BlobServiceClient blobServiceClient;
-
-    @PostConstruct
-    public void init() {
-        blobServiceClient = new BlobServiceClientBuilder()
-                .connectionString(connectionString)
-                .buildClient();
-    }
+    @Autowired
+    private ContentAddressedStorage contentAddressedStorage;
 
     public List<CashoutEntity> getAllCashouts() {
         return cashoutRepository.findAll();
@@ -92,10 +75,10 @@ public class CashoutService {
                         String userId = cashout.getUserId();
                         if (userId != null) {
                             // Add the amount back to the wallet (refund)
-                            boolean refunded = shopService.updateShopWalletForCashout(userId, -cashout.getAmount());
+                            boolean refunded = shopService.updateShopWalletForCashout(userId, -cashout.getAmount(), cashoutId);
                             
                             if (!refunded) {
-                                refunded = dasherService.updateDasherWalletForCashout(userId, -cashout.getAmount());
+                                refunded = dasherService.updateDasherWalletForCashout(userId, -cashout.getAmount(), cashoutId);
                                 if (refunded) {
                                     System.out.println("✅ Dasher wallet refunded: ₱" + cashout.getAmount() + " (Cashout rejected)");
                                 } else {
@@ -150,18 +133,13 @@ public class CashoutService {
         // Generate a unique ID for each cashout request to maintain transaction history
         // Format: userId_timestamp
         String uniqueCashoutId = userId + "_" + formattedTimestamp;
-        String sanitizedCashoutName = "cashout/" + formattedTimestamp + "_" + userId;
-
-        BlobClient blobClient = blobServiceClient
-                .getBlobContainerClient(containerName)
-                .getBlobClient(sanitizedCashoutName);
 
-        blobClient.upload(image.getInputStream(), image.getSize(), true);
+        // Stored by content hash: the same QR reused across requests is written once
+        String qrURL = contentAddressedStorage.store(image);
 
         // Set a unique ID for each cashout while preserving the user ID association
         cashout.setId(uniqueCashoutId);
         cashout.setUserId(userId); // Store the shop/user ID in the new field
-        String qrURL = blobClient.getBlobUrl();
         cashout.setStatus("pending");
         cashout.setGcashQr(qrURL);
         cashout.setCreatedAt(Instant.now());
@@ -169,9 +147,9 @@ public class CashoutService {
         // Immediately deduct from wallet when cashout is requested (before admin approval)
         // This ensures wallet reflects real-time balance
         try {
-            boolean updated = shopService.updateShopWalletForCashout(userId, cashout.getAmount());
+            boolean updated = shopService.updateShopWalletForCashout(userId, cashout.getAmount(), uniqueCashoutId);
             if (!updated) {
-                updated = dasherService.updateDasherWalletForCashout(userId, cashout.getAmount());
+                updated = dasherService.updateDasherWalletForCashout(userId, cashout.getAmount(), uniqueCashoutId);
                 if (updated) {
                     System.out.println("✅ Dasher wallet immediately deducted: ₱" + cashout.getAmount() + " (Status: pending)");
                 } else {
@@ -180,6 +158,9 @@ public class CashoutService {
             } else {
                 System.out.println("✅ Shop wallet immediately deducted: ₱" + cashout.getAmount() + " (Status: pending)");
             }
+        } catch (CustomException e) {
+            // Wallet doesn't cover the amount; don't record the request
+            throw e;
         } catch (Exception e) {
             System.err.println("❌ Error deducting wallet on cashout request: " + e.getMessage());
             e.printStackTrace();
@@ -224,19 +205,10 @@ public class CashoutService {
 
         // If an image is provided, update the image
         if (image != null && !image.isEmpty()) {
-            DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyyMMddHHmmss").withZone(ZoneId.systemDefault());
-            String formattedTimestamp = formatter.format(Instant.now());
-            String sanitizedCashoutName = "cashout/" + formattedTimestamp + "_" + userId;
-
-            BlobClient blobClient = blobServiceClient
-                    .getBlobContainerClient(containerName)
-                    .getBlobClient(sanitizedCashoutName);
-
             // Upload new image
-            blobClient.upload(image.getInputStream(), image.getSize(), true);
+            String qrURL = contentAddressedStorage.store(image);
 
             // Update QR URL with the new image's URL
-            String qrURL = blobClient.getBlobUrl();
             existingCashout.setGcashQr(qrURL); // Set the new image URL
         } else {
             // No new image provided, keep the existing image URL
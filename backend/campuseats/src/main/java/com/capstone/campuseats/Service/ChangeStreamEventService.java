@@ -0,0 +1,268 @@
+package com.capstone.campuseats.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.messaging.ChangeStreamRequest;
+import org.springframework.data.mongodb.core.messaging.DefaultMessageListenerContainer;
+import org.springframework.data.mongodb.core.messaging.Message;
+import org.springframework.data.mongodb.core.messaging.MessageListenerContainer;
+import org.springframework.data.mongodb.core.messaging.Subscription;
+import org.springframework.stereotype.Service;
+
+import com.capstone.campuseats.Entity.ChangeStreamToken;
+import com.capstone.campuseats.Entity.OrderEntity;
+import com.capstone.campuseats.Entity.OrderLocation;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.FullDocument;
+import com.mongodb.client.model.changestream.OperationType;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Pushes order, wallet and location changes to WebSocket subscribers from
+ * MongoDB change streams instead of from each write path.
+ *
+ * Watches orders, dashers, shops and order_locations. Every change is
+ * mapped to a typed event and published on a single dedicated thread, so
+ * events for the same document keep their order and no request thread
+ * waits on the broker. The resume token of each collection is persisted
+ * (at most once a second, and on shutdown), so a restart replays from the
+ * last saved position rather than dropping changes. Changes made outside
+ * the app, e.g. by admin tooling, are pushed as well.
+ *
+ * Requires a replica set (Atlas, or a local single-node replica set).
+ * Enabled with campuseats.change-streams.enabled=true; once every stream is
+ * confirmed running, WebSocketNotificationService.sendOrderUpdate/
+ * sendWalletUpdate become no-ops so nothing is pushed twice. A stream error
+ * turns the direct pushes back on.
+ */
+@Service
+public class ChangeStreamEventService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChangeStreamEventService.class);
+
+    private static final long TOKEN_SAVE_INTERVAL_MS = 1000;
+    private static final int MAX_TRACKED_ORDERS = 10_000;
+
+    interface ChangeEvent {
+    }
+
+    record OrderChanged(OrderEntity order) implements ChangeEvent {
+    }
+
+    record WalletChanged(String accountId, String accountType, double balance) implements ChangeEvent {
+    }
+
+    record LocationChanged(OrderLocation location) implements ChangeEvent {
+    }
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private WebSocketNotificationService webSocketNotificationService;
+
+    @Autowired
+    private OrderVersionService orderVersionService;
+
+    @Value("${campuseats.change-streams.enabled:false}")
+    private boolean enabled;
+
+    @Value("${campuseats.change-streams.start-timeout-ms:10000}")
+    private long startTimeoutMs;
+
+    private final ExecutorService fanOutExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "change-stream-fanout");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private MessageListenerContainer container;
+
+    // Only touched on the fan-out thread
+    private final Map<String, String> lastOrderState = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > MAX_TRACKED_ORDERS;
+        }
+    };
+    private final Map<String, Double> lastWallet = new ConcurrentHashMap<>();
+    private final Map<String, BsonDocument> pendingTokens = new ConcurrentHashMap<>();
+    private final Map<String, Long> lastTokenSave = new ConcurrentHashMap<>();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            logger.info("Change stream event pipeline disabled; write paths push notifications directly");
+            return;
+        }
+        try {
+            container = new DefaultMessageListenerContainer(mongoTemplate,
+                    new SimpleAsyncTaskExecutor("change-stream-"), this::onStreamError);
+            container.start();
+
+            // Cursors open asynchronously; a standalone server or missing privileges only show up
+            // in the error handler, so direct pushes stay on until every stream is confirmed running
+            List<Subscription> subscriptions = List.of(
+                    subscribe("orders", OrderEntity.class, this::onOrderChange),
+                    subscribe("dashers", Document.class, message -> onWalletChange(message, "dasher")),
+                    subscribe("shops", Document.class, message -> onWalletChange(message, "shop")),
+                    subscribe("order_locations", OrderLocation.class, this::onLocationChange));
+            Duration timeout = Duration.ofMillis(startTimeoutMs);
+            for (Subscription subscription : subscriptions) {
+                if (!subscription.await(timeout)) {
+                    throw new IllegalStateException("change stream did not become active within " + timeout);
+                }
+            }
+
+            webSocketNotificationService.setChangeStreamDriven(true);
+            logger.info("Change stream event pipeline started");
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            // Standalone servers don't support change streams - keep the direct pushes
+            logger.error("Could not start change stream pipeline, falling back to direct pushes: {}", e.getMessage(), e);
+            webSocketNotificationService.setChangeStreamDriven(false);
+            if (container != null) {
+                container.stop();
+            }
+        }
+    }
+
+    // A failed cursor is not reopened, so go back to direct pushes rather than silently stop pushing
+    private void onStreamError(Throwable error) {
+        logger.error("Change stream error, falling back to direct pushes: {}", error.getMessage(), error);
+        webSocketNotificationService.setChangeStreamDriven(false);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (container != null) {
+            container.stop();
+        }
+        fanOutExecutor.shutdown();
+        try {
+            // Let queued events finish so their tokens are the ones flushed below
+            if (!fanOutExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
+                logger.warn("Change stream fan-out did not drain before shutdown");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        pendingTokens.forEach(this::saveToken);
+    }
+
+    private <T> Subscription subscribe(String collection, Class<T> bodyType,
+                               Consumer<Message<ChangeStreamDocument<Document>, T>> handler) {
+        ChangeStreamRequest.ChangeStreamRequestBuilder<T> builder = ChangeStreamRequest.<T>builder();
+        builder.collection(collection)
+                .fullDocumentLookup(FullDocument.UPDATE_LOOKUP)
+                .publishTo(message -> fanOutExecutor.execute(() -> {
+                    try {
+                        handler.accept(message);
+                    } catch (Exception e) {
+                        logger.error("Failed to publish {} change: {}", collection, e.getMessage(), e);
+                    }
+                    recordToken(collection, message.getRaw().getResumeToken());
+                }));
+
+        ChangeStreamToken token = mongoTemplate.findById(collection, ChangeStreamToken.class);
+        if (token != null && token.getResumeToken() != null) {
+            builder.resumeToken(new BsonDocument("_data", new BsonString(token.getResumeToken())));
+            logger.info("Resuming {} change stream from saved token", collection);
+        }
+        return container.register(builder.build(), bodyType);
+    }
+
+    private void onOrderChange(Message<ChangeStreamDocument<Document>, OrderEntity> message) {
+        OrderEntity order = message.getBody();
+        if (order == null || order.getId() == null) {
+            return;
+        }
+        // Also catches writes made outside the app; a second bump for our own writes is harmless
+        orderVersionService.orderChanged(order);
+        // Most writes are full-document saves, so compare with what was last pushed
+        String state = order.getStatus() + "|" + order.getDasherId();
+        if (!state.equals(lastOrderState.put(order.getId(), state))) {
+            publish(new OrderChanged(order));
+        }
+    }
+
+    private void onWalletChange(Message<ChangeStreamDocument<Document>, Document> message, String accountType) {
+        ChangeStreamDocument<Document> raw = message.getRaw();
+        Document account = raw.getFullDocument();
+        if (account == null || raw.getOperationType() == OperationType.INSERT) {
+            return;
+        }
+        Object id = account.get("_id");
+        Object wallet = account.get("wallet");
+        if (id == null || !(wallet instanceof Number)) {
+            return;
+        }
+        double balance = ((Number) wallet).doubleValue();
+        if (!Objects.equals(lastWallet.put(id.toString(), balance), balance)) {
+            publish(new WalletChanged(id.toString(), accountType, balance));
+        }
+    }
+
+    private void onLocationChange(Message<ChangeStreamDocument<Document>, OrderLocation> message) {
+        OrderLocation location = message.getBody();
+        if (location != null && location.getOrderId() != null) {
+            publish(new LocationChanged(location));
+        }
+    }
+
+    private void publish(ChangeEvent event) {
+        if (event instanceof OrderChanged changed) {
+            webSocketNotificationService.publishOrderUpdate(changed.order());
+        } else if (event instanceof WalletChanged changed) {
+            webSocketNotificationService.publishWalletUpdate(changed.accountId(), changed.accountType(), changed.balance());
+        } else if (event instanceof LocationChanged changed) {
+            webSocketNotificationService.publishLocationUpdate(changed.location());
+        }
+    }
+
+    private void recordToken(String collection, BsonDocument resumeToken) {
+        if (resumeToken == null) {
+            return;
+        }
+        pendingTokens.put(collection, resumeToken);
+        long now = System.currentTimeMillis();
+        if (now - lastTokenSave.getOrDefault(collection, 0L) >= TOKEN_SAVE_INTERVAL_MS) {
+            saveToken(collection, resumeToken);
+        }
+    }
+
+    private void saveToken(String collection, BsonDocument resumeToken) {
+        try {
+            String data = resumeToken.getString("_data").getValue();
+            mongoTemplate.save(new ChangeStreamToken(collection, data, LocalDateTime.now()));
+            lastTokenSave.put(collection, System.currentTimeMillis());
+            pendingTokens.remove(collection, resumeToken);
+        } catch (Exception e) {
+            logger.warn("Could not save {} resume token: {}", collection, e.getMessage());
+        }
+    }
+}
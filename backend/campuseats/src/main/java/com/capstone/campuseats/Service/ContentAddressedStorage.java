@@ -0,0 +1,109 @@
+package com.capstone.campuseats.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Optional;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import com.capstone.campuseats.Entity.BlobIndexEntry;
+
+/**
+ * Stores uploads under the SHA-256 of their content, so re-uploading the same
+ * file (a GCash QR reused across cashouts and reimbursements, an item photo
+ * shared by menu variants) reuses the existing blob instead of writing it
+ * again.
+ *
+ * The hash has to be known before the blob is named, so the file is read
+ * once to hash it and, only when it is new, a second time to upload it. Both
+ * reads come from the local temp file. The index entry is written after the
+ * blob, so an entry always points at a complete blob; two concurrent uploads
+ * of the same new file both write identical bytes to the same name.
+ */
+@Service
+public class ContentAddressedStorage {
+
+    private static final String PREFIX = "cas/";
+
+    @Autowired
+    private BlobStorage blobStorage;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    public String store(MultipartFile file) throws IOException {
+        String hash;
+        try (InputStream in = file.getInputStream()) {
+            hash = sha256(in);
+        }
+        Optional<BlobIndexEntry> existing = find(hash);
+        if (existing.isPresent()) {
+            return existing.get().getUrl();
+        }
+        String url = blobStorage.upload(PREFIX + hash, file);
+        record(hash, url, null, file.getSize(), file.getContentType());
+        return url;
+    }
+
+    public String store(Path file, String contentType) throws IOException {
+        String hash;
+        try (InputStream in = Files.newInputStream(file)) {
+            hash = sha256(in);
+        }
+        Optional<BlobIndexEntry> existing = find(hash);
+        if (existing.isPresent()) {
+            return existing.get().getUrl();
+        }
+        String url = blobStorage.upload(PREFIX + hash, file, contentType);
+        record(hash, url, null, Files.size(file), contentType);
+        return url;
+    }
+
+    public Optional<BlobIndexEntry> find(String key) {
+        return Optional.ofNullable(mongoTemplate.findById(key, BlobIndexEntry.class));
+    }
+
+    public void record(String key, String url, Map<String, String> variants, long size, String contentType) {
+        try {
+            mongoTemplate.insert(new BlobIndexEntry(key, url, variants, size, contentType, LocalDateTime.now()));
+        } catch (DuplicateKeyException e) {
+            // A concurrent upload of the same content got there first
+        }
+    }
+
+    // Blob name for content derived from an upload, e.g. cas/<hash>_w480.jpg
+    public static String blobName(String hash, String suffix) {
+        return PREFIX + hash + "_" + suffix;
+    }
+
+    public static String sha256(byte[] data) {
+        return HexFormat.of().formatHex(digest().digest(data));
+    }
+
+    private static String sha256(InputStream in) throws IOException {
+        DigestInputStream digesting = new DigestInputStream(in, digest());
+        digesting.transferTo(OutputStream.nullOutputStream());
+        return HexFormat.of().formatHex(digesting.getMessageDigest().digest());
+    }
+
+    private static MessageDigest digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
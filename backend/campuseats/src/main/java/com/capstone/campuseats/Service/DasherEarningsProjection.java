@@ -0,0 +1,44 @@
+package com.capstone.campuseats.Service;
+
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import com.capstone.campuseats.Entity.OrderEvent;
+import com.capstone.campuseats.Entity.OrderStatus;
+
+/**
+ * Completed deliveries and delivery fees per dasher, in total and per day.
+ * Fees are gross; the admin cut depends on the dasher's rating at payout
+ * time and is not part of the event.
+ */
+@Component
+public class DasherEarningsProjection extends AbstractOrderProjection {
+
+    public static final String COLLECTION = "dasher_earnings";
+
+    @Override
+    public String getName() {
+        return "dasher-earnings";
+    }
+
+    @Override
+    public String getCollection() {
+        return COLLECTION;
+    }
+
+    @Override
+    public void apply(OrderEvent event) {
+        if (event.getDasherId() == null || event.getDasherId().isEmpty() || !event.entered(OrderStatus.COMPLETED)) {
+            return;
+        }
+        String day = event.getCreatedAt().format(DAY);
+        Update update = new Update()
+                .set("dasherId", event.getDasherId())
+                .inc("deliveries", 1)
+                .inc("deliveryFees", event.getDeliveryFee())
+                .inc("daily." + day + ".deliveries", 1)
+                .inc("daily." + day + ".deliveryFees", event.getDeliveryFee())
+                .set("lastDeliveryAt", event.getCreatedAt());
+        applyOnce(event.getDasherId(), event.getOffset(), update);
+    }
+}
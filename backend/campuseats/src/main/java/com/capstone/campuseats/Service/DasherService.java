@@ -1,6 +1,7 @@
 package com.capstone.campuseats.Service;
 
 import java.io.IOException;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.HashMap;
@@ -9,49 +10,132 @@ import java.util.Map;
 import java.util.Optional;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
-import com.azure.storage.blob.BlobClient;
-import com.azure.storage.blob.BlobServiceClient;
-import com.azure.storage.blob.BlobServiceClientBuilder;
 import com.capstone.campuseats.Entity.DasherEntity;
+import com.capstone.campuseats.Entity.DasherOrderSlot;
+import com.capstone.campuseats.Entity.OrderEntity;
+import com.capstone.campuseats.Entity.OrderPhase;
 import com.capstone.campuseats.Entity.UserEntity;
+import com.capstone.campuseats.Entity.WalletPostingType;
 import com.capstone.campuseats.Repository.DasherRepository;
+import com.capstone.campuseats.Repository.OrderRepository;
 import com.capstone.campuseats.Repository.UserRepository;
 import com.capstone.campuseats.config.CustomException;
 import com.capstone.campuseats.Service.WebSocketNotificationService;
 
-import jakarta.annotation.PostConstruct;
 
 @Service
 public class DasherService {
 
+    private static final Duration SLOT_CLAIM_GRACE = Duration.ofSeconds(30);
+
     private final DasherRepository dasherRepository;
     private final WebSocketNotificationService webSocketNotificationService;
     private final UserRepository userRepository;
+    private final OrderRepository orderRepository;
+    private final MongoTemplate mongoTemplate;
 
-    @Value("${spring.cloud.azure.storage.blob.container-name}")
-    private String containerName;
-
-    @Value("${azure.blob-storage.connection-string}")
-    private String connectionString;
+    @Autowired
+    private BlobStorage blobStorage;
 
-    private BlobServiceClient blobServiceClient;
+    @Autowired
+    private WalletService walletService;
 
     @Autowired
-    public DasherService(DasherRepository dasherRepository, WebSocketNotificationService webSocketNotificationService, UserRepository userRepository) {
+    public DasherService(DasherRepository dasherRepository, WebSocketNotificationService webSocketNotificationService, UserRepository userRepository,
+                         OrderRepository orderRepository, MongoTemplate mongoTemplate) {
         this.dasherRepository = dasherRepository;
         this.webSocketNotificationService = webSocketNotificationService;
         this.userRepository = userRepository;
+        this.orderRepository = orderRepository;
+        this.mongoTemplate = mongoTemplate;
     }
 
-    @PostConstruct
-    public void init() {
-        blobServiceClient = new BlobServiceClientBuilder()
-                .connectionString(connectionString)
-                .buildClient();
+    /**
+     * Atomically claims the dasher's current-order slot for orderId.
+     * Returns true if the slot is now held for this order (including when it
+     * already was), false if the dasher is busy with another active order.
+     * A slot left behind by an order that is no longer active, or that went to
+     * another dasher, is cleared and the claim retried once.
+     */
+    public boolean claimOrderSlot(String dasherId, String orderId) {
+        if (tryInsertSlot(dasherId, orderId)) {
+            return true;
+        }
+
+        DasherOrderSlot slot = mongoTemplate.findById(dasherId, DasherOrderSlot.class);
+        if (slot == null) {
+            return tryInsertSlot(dasherId, orderId);
+        }
+        if (orderId.equals(slot.getOrderId())) {
+            return true;
+        }
+        if (!isStale(slot, dasherId)) {
+            return false;
+        }
+
+        // Stale slot - remove it only if nobody replaced it in the meantime
+        releaseOrderSlot(dasherId, slot.getOrderId());
+        return tryInsertSlot(dasherId, orderId);
+    }
+
+    // The slot is inserted before its order's dasherId is set, so an active order with no dasher may
+    // be a claim still in flight; it only counts as abandoned once the grace period has passed
+    private boolean isStale(DasherOrderSlot slot, String dasherId) {
+        Query query = new Query(Criteria.where("_id").is(slot.getOrderId()));
+        query.fields().include("dasherId", "phase");
+        OrderEntity order = mongoTemplate.findOne(query, OrderEntity.class);
+        if (order == null || order.getPhase() != OrderPhase.ACTIVE) {
+            return true;
+        }
+        if (dasherId.equals(order.getDasherId())) {
+            return false;
+        }
+        if (order.getDasherId() != null && !order.getDasherId().isEmpty()) {
+            return true;
+        }
+        return slot.getClaimedAt() == null || slot.getClaimedAt().isBefore(LocalDateTime.now().minus(SLOT_CLAIM_GRACE));
+    }
+
+    /**
+     * Frees the dasher's slot if it is still held for orderId.
+     */
+    public void releaseOrderSlot(String dasherId, String orderId) {
+        if (dasherId == null || dasherId.isEmpty() || orderId == null) {
+            return;
+        }
+        mongoTemplate.remove(new Query(Criteria.where("_id").is(dasherId).and("orderId").is(orderId)),
+                DasherOrderSlot.class);
+    }
+
+    private boolean tryInsertSlot(String dasherId, String orderId) {
+        try {
+            mongoTemplate.insert(new DasherOrderSlot(dasherId, orderId, LocalDateTime.now()));
+            return true;
+        } catch (DuplicateKeyException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Seeds slots for dashers that already had an active order before slots existed.
+     * Called by OrderPhaseBackfillService at startup, once every order has a phase.
+     */
+    public void seedOrderSlots() {
+        Query assigned = new Query(Criteria.where("phase").is(OrderPhase.ACTIVE)
+                .and("dasherId").nin(null, ""));
+        assigned.fields().include("dasherId");
+        for (OrderEntity order : mongoTemplate.find(assigned, OrderEntity.class)) {
+            tryInsertSlot(order.getDasherId(), order.getId());
+        }
     }
 
     public List<DasherEntity> getAllDashers() {
@@ -105,30 +189,18 @@ public class DasherService {
     }
 
     public boolean updateDasherStatus(String dasherId, String status) {
-        Optional<DasherEntity> dasherOptional = dasherRepository.findById(dasherId);
-        if (dasherOptional.isPresent()) {
-            DasherEntity dasher = dasherOptional.get();
-            dasher.setStatus(status);
-            dasherRepository.save(dasher);
-            return true;
-        }
-        return false;
+        // $set rather than save() so a concurrent wallet $inc isn't overwritten
+        return mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(dasherId)),
+                new Update().set("status", status), DasherEntity.class).getMatchedCount() > 0;
     }
 
     public boolean updateDasherWallet(String dasherId, double amountPaid) {
-        Optional<DasherEntity> dasherOptional = dasherRepository.findById(dasherId);
-        if (dasherOptional.isPresent()) {
-            DasherEntity dasher = dasherOptional.get();
-            double oldWallet = dasher.getWallet();
-            dasher.setWallet(oldWallet + amountPaid); // Add the amount for topups
-            dasherRepository.save(dasher);
-            
-            // Send real-time wallet update notification
-            webSocketNotificationService.sendWalletUpdate(dasherId, "dasher", dasher.getWallet());
-            
-            return true;
-        }
-        return false;
+        return updateDasherWallet(dasherId, amountPaid, WalletPostingType.ADJUSTMENT, null);
+    }
+
+    public boolean updateDasherWallet(String dasherId, double amountPaid, WalletPostingType type, String reference) {
+        // Add the amount for topups; WalletService sends the wallet update notification
+        return walletService.adjust(WalletService.DASHER, dasherId, amountPaid, type, reference).isPresent();
     }
 
     /**
@@ -136,24 +208,16 @@ public class DasherService {
      * This method is called from CashoutService when a cashout status is changed to 'accepted'
      * 
      * @param dasherId The ID of the dasher to update
-     * @param amount The cashout amount to deduct from the dasher's wallet
-     * @return true if the wallet was updated successfully, false otherwise
+     * @param amount The cashout amount to deduct from the dasher's wallet (negative to refund)
+     * @param cashoutId The cashout the ledger postings refer to
+     * @return true if the wallet was updated successfully, false if the dasher doesn't exist
+     * @throws CustomException if the wallet doesn't cover the amount
      */
-    public boolean updateDasherWalletForCashout(String dasherId, double amount) {
-        Optional<DasherEntity> dasherOptional = dasherRepository.findById(dasherId);
-        if (dasherOptional.isPresent()) {
-            DasherEntity dasher = dasherOptional.get();
-            // Ensure wallet doesn't go negative
-            double newBalance = Math.max(0.0, dasher.getWallet() - amount);
-            dasher.setWallet(newBalance);
-            dasherRepository.save(dasher);
-            
-            // Send real-time wallet update notification
-            webSocketNotificationService.sendWalletUpdate(dasherId, "dasher", newBalance);
-            
-            return true;
+    public boolean updateDasherWalletForCashout(String dasherId, double amount, String cashoutId) {
+        if (amount > 0) {
+            return walletService.debit(WalletService.DASHER, dasherId, amount, WalletPostingType.CASHOUT, cashoutId).isPresent();
         }
-        return false;
+        return walletService.adjust(WalletService.DASHER, dasherId, -amount, WalletPostingType.CASHOUT_REFUND, cashoutId).isPresent();
     }
 
     public DasherEntity createDasher(DasherEntity dasher, MultipartFile image, String userId) throws IOException {
@@ -178,13 +242,8 @@ public class DasherService {
         String formattedTimestamp = dasher.getCreatedAt().format(formatter);
         String sanitizedDasherName = "dasher/" + formattedTimestamp + "_" + userId;
 
-        BlobClient blobClient = blobServiceClient
-                .getBlobContainerClient(containerName)
-                .getBlobClient(sanitizedDasherName);
-
-        blobClient.upload(image.getInputStream(), image.getSize(), true);
+        String schoolId = blobStorage.upload(sanitizedDasherName, image);
 
-        String schoolId = blobClient.getBlobUrl();
         dasher.setStatus("pending");
         dasher.setSchoolId(schoolId);
         dasher.setWallet(0);
@@ -193,40 +252,35 @@ public class DasherService {
     }
 
     public DasherEntity updateDasher(String dasherId, DasherEntity dasher, MultipartFile image) throws IOException {
-        Optional<DasherEntity> optionalDasher = dasherRepository.findById(dasherId);
-        if (optionalDasher.isEmpty()) {
+        if (!dasherRepository.existsById(dasherId)) {
             throw new CustomException("Dasher not found.");
         }
 
-        DasherEntity existingDasher = optionalDasher.get();
+        // Only the form's fields are $set, so a concurrent wallet $inc or cashout debit isn't overwritten
+        Update update = new Update()
+                .set("availableStartTime", dasher.getAvailableStartTime())
+                .set("availableEndTime", dasher.getAvailableEndTime())
+                .set("daysAvailable", dasher.getDaysAvailable())
+                .set("gcashName", dasher.getGcashName())
+                .set("gcashNumber", dasher.getGcashNumber());
 
         if (image != null) {
             DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
             String formattedTimestamp = LocalDateTime.now().format(formatter);
             String sanitizedDasherName = "dasher/" + formattedTimestamp + "_" + dasherId;
 
-            BlobClient blobClient = blobServiceClient
-                    .getBlobContainerClient(containerName)
-                    .getBlobClient(sanitizedDasherName);
+            String schoolId = blobStorage.upload(sanitizedDasherName, image);
 
-            blobClient.upload(image.getInputStream(), image.getSize(), true);
-
-            String schoolId = blobClient.getBlobUrl();
             System.out.println("schoolId URL: " + schoolId);
-            existingDasher.setSchoolId(schoolId);
-            System.out.println("schoolId URL after set: " + existingDasher.getSchoolId());
+            update.set("schoolId", schoolId);
         }
 
-        existingDasher.setAvailableStartTime(dasher.getAvailableStartTime());
-        existingDasher.setAvailableEndTime(dasher.getAvailableEndTime());
-        existingDasher.setDaysAvailable(dasher.getDaysAvailable());
-        existingDasher.setGcashName(dasher.getGcashName());
-        existingDasher.setStatus(existingDasher.getStatus());
-        existingDasher.setGcashNumber(dasher.getGcashNumber());
-
-        System.out.println("user: " + existingDasher);
-        System.out.println("test df: " + existingDasher.getGcashNumber());
-        return dasherRepository.save(existingDasher);
+        DasherEntity updatedDasher = mongoTemplate.findAndModify(new Query(Criteria.where("_id").is(dasherId)), update,
+                FindAndModifyOptions.options().returnNew(true), DasherEntity.class);
+        if (updatedDasher == null) {
+            throw new CustomException("Dasher not found.");
+        }
+        return updatedDasher;
     }
 
     /**
@@ -237,14 +291,9 @@ public class DasherService {
      * @return true if assignment was successful, false otherwise
      */
     public boolean assignCampus(String dasherId, String campusId) {
-        Optional<DasherEntity> dasherOptional = dasherRepository.findById(dasherId);
-        if (dasherOptional.isPresent()) {
-            DasherEntity dasher = dasherOptional.get();
-            dasher.setCampusId(campusId);
-            dasherRepository.save(dasher);
-            return true;
-        }
-        return false;
+        // $set rather than save() so a concurrent wallet $inc isn't overwritten
+        return mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(dasherId)),
+                new Update().set("campusId", campusId), DasherEntity.class).getMatchedCount() > 0;
     }
 
 }
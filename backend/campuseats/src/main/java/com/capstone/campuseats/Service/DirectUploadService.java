@@ -0,0 +1,224 @@
+package com.capstone.campuseats.Service;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.UUID;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import com.capstone.campuseats.Entity.CashoutEntity;
+import com.capstone.campuseats.Entity.ItemEntity;
+import com.capstone.campuseats.Entity.OrderEntity;
+import com.capstone.campuseats.Entity.ShopEntity;
+import com.capstone.campuseats.Entity.UploadSession;
+import com.capstone.campuseats.config.CustomException;
+
+/**
+ * Lets clients upload images straight to blob storage instead of through
+ * this server. presign() checks the target and issues a short-lived URL for
+ * one blob; after the client's PUT, complete() checks the blob's size and
+ * file signature and writes its URL to the target entity. Rejected blobs are
+ * deleted.
+ *
+ * Direct uploads skip ImageVariantService and content hashing, since the
+ * server never sees the bytes; the blob is stored as the "original" variant.
+ */
+@Service
+public class DirectUploadService {
+
+    private static final Logger logger = LoggerFactory.getLogger(DirectUploadService.class);
+
+    private static final Map<String, String> CONTENT_TYPES = Map.of(
+            "image/jpeg", "jpg",
+            "image/png", "png",
+            "image/webp", "webp",
+            "image/heic", "heic");
+    private static final int SIGNATURE_BYTES = 12;
+
+    public enum Purpose {
+        SHOP_IMAGE, ITEM_IMAGE, DELIVERY_PROOF, CASHOUT_QR
+    }
+
+    @Autowired
+    private BlobStorage blobStorage;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private OrderStateMachine orderStateMachine;
+
+    @Value("${campuseats.uploads.direct.ttl-seconds:600}")
+    private long ttlSeconds;
+
+    @Value("${campuseats.uploads.direct.max-bytes:26214400}")
+    private long maxBytes;
+
+    public Map<String, Object> presign(String purposeName, String targetId, String contentType, Long size) {
+        Purpose purpose = parsePurpose(purposeName);
+        String extension = contentType != null ? CONTENT_TYPES.get(contentType.toLowerCase()) : null;
+        if (extension == null) {
+            throw new CustomException("Unsupported content type: " + contentType);
+        }
+        if (size != null && (size <= 0 || size > maxBytes)) {
+            throw new CustomException("File must be between 1 byte and " + maxBytes + " bytes.");
+        }
+        if (targetId == null || !targetExists(purpose, targetId)) {
+            throw new CustomException(purpose + " target not found: " + targetId);
+        }
+
+        String id = UUID.randomUUID().toString();
+        String blobName = "direct/" + purpose.name().toLowerCase() + "/" + id + "." + extension;
+        Duration ttl = Duration.ofSeconds(ttlSeconds);
+        LocalDateTime now = LocalDateTime.now();
+        UploadSession session = new UploadSession(id, purpose.name(), targetId, blobName, contentType.toLowerCase(),
+                maxBytes, UploadSession.ISSUED, null, now.plus(ttl), now, now.plus(ttl).plusDays(1));
+        mongoTemplate.insert(session);
+
+        BlobStorage.PresignedUpload upload = blobStorage.presignUpload(blobName, session.getContentType(), ttl);
+        return Map.of(
+                "uploadId", id,
+                "uploadUrl", upload.url(),
+                "method", "PUT",
+                "headers", upload.headers(),
+                "maxBytes", maxBytes,
+                "expiresAt", session.getExpiresAt());
+    }
+
+    /**
+     * Validates the uploaded blob and attaches it. Completing an already
+     * completed session returns the same URL.
+     */
+    public String complete(String uploadId) {
+        UploadSession session = mongoTemplate.findById(uploadId, UploadSession.class);
+        if (session == null) {
+            throw new CustomException("Upload not found: " + uploadId);
+        }
+        if (UploadSession.COMPLETED.equals(session.getStatus())) {
+            return session.getUrl();
+        }
+
+        // The SAS stops accepting writes at expiry, but the blob written before it is still valid
+        BlobStorage.BlobInfo info = blobStorage.stat(session.getBlobName())
+                .orElseThrow(() -> new CustomException("Nothing was uploaded for " + uploadId));
+        if (info.size() <= 0 || info.size() > session.getMaxBytes()) {
+            reject(session, "File is empty or larger than " + session.getMaxBytes() + " bytes.");
+        }
+        byte[] head;
+        try {
+            head = blobStorage.readHead(session.getBlobName(), SIGNATURE_BYTES);
+        } catch (IOException e) {
+            throw new CustomException("Could not read the uploaded file.");
+        }
+        if (!matchesSignature(session.getContentType(), head)) {
+            reject(session, "Uploaded file is not a valid " + session.getContentType() + " image.");
+        }
+
+        String url = blobStorage.url(session.getBlobName());
+        attach(Purpose.valueOf(session.getPurpose()), session.getTargetId(), url);
+
+        // Only the first completion flips the status; a concurrent one already attached the same URL
+        mongoTemplate.findAndModify(
+                new Query(Criteria.where("_id").is(uploadId).and("status").is(UploadSession.ISSUED)),
+                new Update().set("status", UploadSession.COMPLETED).set("url", url),
+                FindAndModifyOptions.options().returnNew(true), UploadSession.class);
+        logger.info("Direct upload {} attached to {} {}", uploadId, session.getPurpose(), session.getTargetId());
+        return url;
+    }
+
+    private void attach(Purpose purpose, String targetId, String url) {
+        switch (purpose) {
+            case SHOP_IMAGE:
+                updateOrFail(ShopEntity.class, targetId, new Update()
+                        .set("imageUrl", url).set("imageVariants", Map.of(ImageVariantService.ORIGINAL, url)));
+                break;
+            case ITEM_IMAGE:
+                updateOrFail(ItemEntity.class, targetId, new Update()
+                        .set("imageUrl", url).set("imageVariants", Map.of(ImageVariantService.ORIGINAL, url)));
+                break;
+            case CASHOUT_QR:
+                updateOrFail(CashoutEntity.class, targetId, new Update().set("gcashQr", url));
+                break;
+            case DELIVERY_PROOF:
+                // Through the state machine so order pollers see a new version
+                if (orderStateMachine.updateIf(targetId, null, new Update().set("deliveryProofImage", url)).isEmpty()) {
+                    throw new CustomException("Order not found: " + targetId);
+                }
+                break;
+        }
+    }
+
+    private void updateOrFail(Class<?> entity, String id, Update update) {
+        if (mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(id)), update, entity).getMatchedCount() == 0) {
+            throw new CustomException(entity.getSimpleName() + " not found: " + id);
+        }
+    }
+
+    private boolean targetExists(Purpose purpose, String targetId) {
+        Query query = new Query(Criteria.where("_id").is(targetId));
+        switch (purpose) {
+            case SHOP_IMAGE:
+                return mongoTemplate.exists(query, ShopEntity.class);
+            case ITEM_IMAGE:
+                return mongoTemplate.exists(query, ItemEntity.class);
+            case CASHOUT_QR:
+                return mongoTemplate.exists(query, CashoutEntity.class);
+            case DELIVERY_PROOF:
+                return mongoTemplate.exists(query, OrderEntity.class);
+            default:
+                return false;
+        }
+    }
+
+    private void reject(UploadSession session, String message) {
+        blobStorage.delete(session.getBlobName());
+        throw new CustomException(message);
+    }
+
+    private static Purpose parsePurpose(String name) {
+        try {
+            return Purpose.valueOf(name.toUpperCase());
+        } catch (IllegalArgumentException | NullPointerException e) {
+            throw new CustomException("Unknown upload purpose: " + name + ". Expected one of " + Arrays.toString(Purpose.values()));
+        }
+    }
+
+    private static boolean matchesSignature(String contentType, byte[] head) {
+        switch (contentType) {
+            case "image/jpeg":
+                return startsWith(head, 0, 0xFF, 0xD8, 0xFF);
+            case "image/png":
+                return startsWith(head, 0, 0x89, 'P', 'N', 'G');
+            case "image/webp":
+                return startsWith(head, 0, 'R', 'I', 'F', 'F') && startsWith(head, 8, 'W', 'E', 'B', 'P');
+            case "image/heic":
+                return startsWith(head, 4, 'f', 't', 'y', 'p');
+            default:
+                return false;
+        }
+    }
+
+    private static boolean startsWith(byte[] data, int offset, int... expected) {
+        if (data.length < offset + expected.length) {
+            return false;
+        }
+        for (int i = 0; i < expected.length; i++) {
+            if ((data[offset + i] & 0xFF) != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,293 @@
+package com.capstone.campuseats.Service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import com.capstone.campuseats.Entity.OrderEntity;
+import com.capstone.campuseats.Entity.OrderPhase;
+import com.capstone.campuseats.Entity.ShopEntity;
+import com.capstone.campuseats.Repository.ShopRepository;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * In-memory board of orders waiting for a dasher, kept per campus.
+ *
+ * An order is on the board while it is active, unassigned and past shop
+ * approval (the same rule getOrdersWaitingForDasher used to query for).
+ * OrderService calls onOrderChanged/remove whenever an order moves, and the
+ * board is rebuilt from MongoDB on startup. Each campus keeps a sorted,
+ * immutable snapshot for reads plus a short log of deltas so dashers can
+ * catch up without refetching the whole list. Every delta is also recorded,
+ * under its own version, on a board spanning all campuses, which is what
+ * clients that don't send a campus read and poll.
+ */
+@Service
+public class DispatchBoardService {
+
+    private static final Logger logger = LoggerFactory.getLogger(DispatchBoardService.class);
+
+    // Orders whose shop has no campus are grouped here
+    public static final String NO_CAMPUS = "";
+
+    private static final int MAX_DELTAS = 256;
+
+    // Oldest first; among orders placed at the same moment, higher delivery fee first
+    private static final Comparator<OrderEntity> BOARD_ORDER = Comparator
+            .comparing(OrderEntity::getCreatedAt, Comparator.nullsLast(Comparator.naturalOrder()))
+            .thenComparing(Comparator.comparingDouble(OrderEntity::getDeliveryFee).reversed())
+            .thenComparing(OrderEntity::getId);
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private ShopRepository shopRepository;
+
+    @Autowired
+    private WebSocketNotificationService webSocketNotificationService;
+
+    private final Map<String, Board> boards = new ConcurrentHashMap<>();
+    private final Board allCampuses = new Board();
+    private final Map<String, String> campusByOrderId = new ConcurrentHashMap<>();
+    private final Map<String, String> campusByShopId = new ConcurrentHashMap<>();
+
+    private static final class Board {
+        private final Map<String, OrderEntity> ordersById = new HashMap<>();
+        private final ArrayDeque<Map<String, Object>> deltas = new ArrayDeque<>();
+        // Seeded from the clock so versions keep increasing across restarts
+        private long version = System.currentTimeMillis();
+        private volatile List<OrderEntity> snapshot = List.of();
+    }
+
+    @PostConstruct
+    public void rebuild() {
+        // Matched on status rather than phase so it works before the phase backfill has run
+        Query waiting = new Query(Criteria.where("status").regex("^active")
+                .nin("active_waiting_for_shop", "active_waiting_for_no_show_confirmation")
+                .and("dasherId").in(null, ""));
+        List<OrderEntity> orders = mongoTemplate.find(waiting, OrderEntity.class);
+
+        boards.clear();
+        campusByOrderId.clear();
+        synchronized (allCampuses) {
+            allCampuses.ordersById.clear();
+            for (OrderEntity order : orders) {
+                String campusId = campusOf(order);
+                Board board = boards.computeIfAbsent(campusId, id -> new Board());
+                board.ordersById.put(order.getId(), order);
+                allCampuses.ordersById.put(order.getId(), order);
+                campusByOrderId.put(order.getId(), campusId);
+            }
+            refreshSnapshot(allCampuses);
+        }
+        boards.values().forEach(this::refreshSnapshot);
+        logger.info("Dispatch board loaded {} waiting orders across {} campuses", orders.size(), boards.size());
+    }
+
+    public static boolean isWaitingForDasher(OrderEntity order) {
+        return order.getPhase() == OrderPhase.ACTIVE
+                && (order.getDasherId() == null || order.getDasherId().isEmpty())
+                && !"active_waiting_for_shop".equals(order.getStatus());
+    }
+
+    /**
+     * Puts the order on, updates it on, or takes it off the board depending on its current state.
+     */
+    public void onOrderChanged(OrderEntity order) {
+        publish(applyChange(order));
+    }
+
+    /**
+     * Same as onOrderChanged for several orders. Every delta is still logged
+     * and versioned on its own, but each campus topic gets a single message:
+     * the delta itself, or {type: BATCH, campusId, changes: [...]} when there
+     * are several.
+     */
+    public void onOrdersChanged(Collection<OrderEntity> orders) {
+        List<Map<String, Object>> deltas = new ArrayList<>();
+        for (OrderEntity order : orders) {
+            deltas.addAll(applyChange(order));
+        }
+        publish(deltas);
+    }
+
+    public void remove(String orderId) {
+        publish(applyRemove(orderId));
+    }
+
+    /**
+     * Waiting orders for one campus, or for every campus when campusId is null.
+     */
+    public List<OrderEntity> getWaitingOrders(String campusId) {
+        if (campusId == null) {
+            return allCampuses.snapshot;
+        }
+        Board board = boards.get(campusId);
+        return board != null ? board.snapshot : List.of();
+    }
+
+    /**
+     * Changes on a campus board, or on the all-campus board when campusId is
+     * null, after sinceVersion. Falls back to the full list when the caller
+     * is too far behind for the retained deltas.
+     */
+    public Map<String, Object> getChangesSince(String campusId, long sinceVersion) {
+        Board board = campusId != null ? boards.computeIfAbsent(campusId, id -> new Board()) : allCampuses;
+        Map<String, Object> response = new HashMap<>();
+        response.put("campusId", campusId);
+        synchronized (board) {
+            response.put("version", board.version);
+            // Deltas are consecutive, so the caller is covered if it saw the one before the oldest kept
+            Map<String, Object> oldest = board.deltas.peekFirst();
+            long oldestKnown = oldest != null ? (long) oldest.get("version") - 1 : board.version;
+            boolean covered = sinceVersion >= oldestKnown && sinceVersion <= board.version;
+            if (covered) {
+                List<Map<String, Object>> changes = new ArrayList<>();
+                for (Map<String, Object> delta : board.deltas) {
+                    if ((long) delta.get("version") > sinceVersion) {
+                        changes.add(delta);
+                    }
+                }
+                response.put("full", false);
+                response.put("changes", changes);
+                return response;
+            }
+            response.put("full", true);
+            response.put("orders", board.snapshot);
+            return response;
+        }
+    }
+
+    private List<Map<String, Object>> applyChange(OrderEntity order) {
+        if (order == null || order.getId() == null) {
+            return List.of();
+        }
+        if (!isWaitingForDasher(order)) {
+            return applyRemove(order.getId());
+        }
+
+        List<Map<String, Object>> deltas = new ArrayList<>();
+        String campusId = campusOf(order);
+        String previousCampus = campusByOrderId.put(order.getId(), campusId);
+        if (previousCampus != null && !previousCampus.equals(campusId)) {
+            addIfPresent(deltas, removeFromBoard(previousCampus, order.getId()));
+        }
+
+        Board board = boards.computeIfAbsent(campusId, id -> new Board());
+        synchronized (board) {
+            String type = board.ordersById.put(order.getId(), order) == null ? "ADDED" : "UPDATED";
+            deltas.add(recordDelta(board, campusId, type, order.getId(), order));
+        }
+        return deltas;
+    }
+
+    private List<Map<String, Object>> applyRemove(String orderId) {
+        String campusId = campusByOrderId.remove(orderId);
+        List<Map<String, Object>> deltas = new ArrayList<>();
+        if (campusId != null) {
+            addIfPresent(deltas, removeFromBoard(campusId, orderId));
+        }
+        return deltas;
+    }
+
+    private static void addIfPresent(List<Map<String, Object>> deltas, Map<String, Object> delta) {
+        if (delta != null) {
+            deltas.add(delta);
+        }
+    }
+
+    // Returns the REMOVED delta, or null if the order was not on the board
+    private Map<String, Object> removeFromBoard(String campusId, String orderId) {
+        Board board = boards.get(campusId);
+        if (board == null) {
+            return null;
+        }
+        synchronized (board) {
+            if (board.ordersById.remove(orderId) == null) {
+                return null;
+            }
+            return recordDelta(board, campusId, "REMOVED", orderId, null);
+        }
+    }
+
+    private void publish(List<Map<String, Object>> deltas) {
+        Map<String, List<Map<String, Object>>> byCampus = new LinkedHashMap<>();
+        for (Map<String, Object> delta : deltas) {
+            byCampus.computeIfAbsent((String) delta.get("campusId"), id -> new ArrayList<>()).add(delta);
+        }
+        byCampus.forEach((campusId, changes) -> webSocketNotificationService.sendDispatchBoardDelta(campusId,
+                changes.size() == 1
+                        ? changes.get(0)
+                        : Map.of("type", "BATCH", "campusId", campusId, "changes", changes)));
+    }
+
+    // Caller holds the board lock
+    private Map<String, Object> recordDelta(Board board, String campusId, String type, String orderId, OrderEntity order) {
+        board.version++;
+        Map<String, Object> delta = new HashMap<>();
+        delta.put("type", type);
+        delta.put("campusId", campusId);
+        delta.put("orderId", orderId);
+        delta.put("version", board.version);
+        if (order != null) {
+            delta.put("order", order);
+        }
+        append(board, delta);
+        refreshSnapshot(board);
+
+        // Board locks are always taken before the all-campus lock
+        synchronized (allCampuses) {
+            allCampuses.version++;
+            Map<String, Object> global = new HashMap<>(delta);
+            global.put("version", allCampuses.version);
+            append(allCampuses, global);
+            if (order != null) {
+                allCampuses.ordersById.put(orderId, order);
+            } else {
+                allCampuses.ordersById.remove(orderId);
+            }
+            refreshSnapshot(allCampuses);
+        }
+        return delta;
+    }
+
+    private static void append(Board board, Map<String, Object> delta) {
+        board.deltas.addLast(delta);
+        if (board.deltas.size() > MAX_DELTAS) {
+            board.deltas.removeFirst();
+        }
+    }
+
+    private void refreshSnapshot(Board board) {
+        List<OrderEntity> sorted = new ArrayList<>(board.ordersById.values());
+        sorted.sort(BOARD_ORDER);
+        board.snapshot = List.copyOf(sorted);
+    }
+
+    private String campusOf(OrderEntity order) {
+        String shopId = order.getShopId();
+        if (shopId == null) {
+            return NO_CAMPUS;
+        }
+        return campusByShopId.computeIfAbsent(shopId, id -> shopRepository.findById(id)
+                .map(ShopEntity::getCampusId)
+                .filter(campusId -> !campusId.isEmpty())
+                .orElse(NO_CAMPUS));
+    }
+}
@@ -0,0 +1,202 @@
+package com.capstone.campuseats.Service;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+
+import com.capstone.campuseats.Entity.IdempotencyRecord;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Replays the original response for requests retried with the same
+ * Idempotency-Key header, so a retry never reaches the handler twice.
+ *
+ * The first request with a key claims it by inserting an in-progress record
+ * (the unique _id makes concurrent retries lose), runs the handler and stores
+ * the response. Completed responses are also kept in a small in-memory LRU
+ * so hot retries don't hit MongoDB. Server errors are not stored, so the
+ * client can retry them for real.
+ *
+ * An in-progress record is a lease: if the instance holding it dies, a
+ * retry after campuseats.idempotency.lease-ms takes it over with a
+ * conditional update instead of getting 409 until the record expires. The
+ * lease must outlast the slowest handler (outbound calls included).
+ */
+@Service
+public class IdempotencyService {
+
+    public static final String HEADER = "Idempotency-Key";
+
+    private static final int MAX_CACHED_RESPONSES = 1000;
+    private static final int MAX_KEY_LENGTH = 128;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${campuseats.idempotency.lease-ms:120000}")
+    private long leaseMs;
+
+    private final Map<String, IdempotencyRecord> completedCache = Collections.synchronizedMap(
+            new LinkedHashMap<>(128, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, IdempotencyRecord> eldest) {
+                    return size() > MAX_CACHED_RESPONSES;
+                }
+            });
+
+    public ResponseEntity<?> execute(String scope, String key, Object request, Supplier<ResponseEntity<?>> handler) {
+        if (key == null || key.isBlank()) {
+            return handler.get();
+        }
+        if (key.length() > MAX_KEY_LENGTH) {
+            return ResponseEntity.badRequest().body(Map.of("error", HEADER + " is too long"));
+        }
+
+        String id = scope + ":" + key;
+        String requestHash = hash(request);
+
+        IdempotencyRecord cached = completedCache.get(id);
+        if (cached != null) {
+            return replay(cached, requestHash);
+        }
+
+        Date lease = new Date();
+        ResponseEntity<?> rejected = claim(id, requestHash, lease);
+        if (rejected != null) {
+            return rejected;
+        }
+
+        ResponseEntity<?> response;
+        try {
+            response = handler.get();
+        } catch (RuntimeException e) {
+            release(id, lease);
+            throw e;
+        }
+
+        if (response.getStatusCode().is5xxServerError()) {
+            release(id, lease);
+            return response;
+        }
+
+        try {
+            String body = objectMapper.writeValueAsString(response.getBody());
+            int status = response.getStatusCode().value();
+            mongoTemplate.updateFirst(leaseHeld(id, lease),
+                    new Update().set("state", IdempotencyRecord.COMPLETED)
+                            .set("httpStatus", status)
+                            .set("responseBody", body),
+                    IdempotencyRecord.class);
+            completedCache.put(id, new IdempotencyRecord(id, requestHash, IdempotencyRecord.COMPLETED, lease, status, body, new Date()));
+        } catch (Exception e) {
+            System.err.println("Failed to store idempotent response for " + id + ": " + e.getMessage());
+            release(id, lease);
+        }
+        return response;
+    }
+
+    /**
+     * Claims the key with lease as its start time. Returns null once claimed,
+     * otherwise the response to send instead of running the handler.
+     */
+    private ResponseEntity<?> claim(String id, String requestHash, Date lease) {
+        // Two rounds: a record that expires between our insert and our read is simply claimed again
+        for (int attempt = 0; attempt < 2; attempt++) {
+            try {
+                mongoTemplate.insert(new IdempotencyRecord(id, requestHash, IdempotencyRecord.IN_PROGRESS, lease, 0, null, new Date()));
+                return null;
+            } catch (DuplicateKeyException e) {
+                IdempotencyRecord existing = mongoTemplate.findById(id, IdempotencyRecord.class);
+                if (existing == null) {
+                    continue;
+                }
+                if (IdempotencyRecord.COMPLETED.equals(existing.getState())) {
+                    completedCache.put(id, existing);
+                    return replay(existing, requestHash);
+                }
+                if (existing.getRequestHash() != null && !existing.getRequestHash().equals(requestHash)) {
+                    return ResponseEntity.unprocessableEntity()
+                            .body(Map.of("error", HEADER + " was already used for a different request"));
+                }
+                if (takeOver(id, existing, lease)) {
+                    return null;
+                }
+                return ResponseEntity.status(HttpStatus.CONFLICT)
+                        .body(Map.of("error", "A request with this " + HEADER + " is still being processed"));
+            }
+        }
+        return ResponseEntity.status(HttpStatus.CONFLICT)
+                .body(Map.of("error", "A request with this " + HEADER + " is still being processed"));
+    }
+
+    // Only the lease we read can be replaced, so of several retries racing for an abandoned key one wins
+    private boolean takeOver(String id, IdempotencyRecord existing, Date lease) {
+        Date startedAt = existing.getStartedAt() != null ? existing.getStartedAt() : existing.getCreatedAt();
+        if (startedAt != null && startedAt.getTime() > System.currentTimeMillis() - leaseMs) {
+            return false;
+        }
+        Query abandoned = new Query(Criteria.where("_id").is(id)
+                .and("state").is(IdempotencyRecord.IN_PROGRESS)
+                .and("startedAt").is(existing.getStartedAt()));
+        return mongoTemplate.updateFirst(abandoned, new Update().set("startedAt", lease), IdempotencyRecord.class)
+                .getModifiedCount() > 0;
+    }
+
+    private static Query leaseHeld(String id, Date lease) {
+        return new Query(Criteria.where("_id").is(id)
+                .and("state").is(IdempotencyRecord.IN_PROGRESS)
+                .and("startedAt").is(lease));
+    }
+
+    private ResponseEntity<?> replay(IdempotencyRecord record, String requestHash) {
+        if (record.getRequestHash() != null && !record.getRequestHash().equals(requestHash)) {
+            return ResponseEntity.unprocessableEntity()
+                    .body(Map.of("error", HEADER + " was already used for a different request"));
+        }
+        try {
+            Object body = record.getResponseBody() != null
+                    ? objectMapper.readValue(record.getResponseBody(), Object.class)
+                    : null;
+            return ResponseEntity.status(record.getHttpStatus())
+                    .header("Idempotent-Replayed", "true")
+                    .body(body);
+        } catch (JsonProcessingException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "Could not replay stored response"));
+        }
+    }
+
+    // Leaves the record alone if another request has taken the lease over meanwhile
+    private void release(String id, Date lease) {
+        mongoTemplate.remove(leaseHeld(id, lease), IdempotencyRecord.class);
+    }
+
+    private String hash(Object request) {
+        try {
+            byte[] json = objectMapper.writeValueAsBytes(request);
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(json));
+        } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,297 @@
+package com.capstone.campuseats.Service;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import javax.imageio.IIOException;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import com.capstone.campuseats.Entity.BlobIndexEntry;
+import com.capstone.campuseats.config.CustomException;
+
+/**
+ * Turns an uploaded photo into a recompressed original plus fixed-width JPEG
+ * variants. The image is decoded once, and each variant is scaled from the
+ * next larger one. Results are indexed by the upload's hash and profile, so
+ * the same photo uploaded again is neither decoded nor written.
+ *
+ * Phone cameras record rotation as an EXIF tag instead of rotating the
+ * pixels. Re-encoding drops the tag, so the rotation is applied here first.
+ */
+@Service
+public class ImageVariantService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ImageVariantService.class);
+
+    public static final String ORIGINAL = "original";
+
+    private static final int MAX_ORIGINAL_WIDTH = 2048;
+    private static final long MAX_PIXELS = 40_000_000L;
+    private static final float ORIGINAL_QUALITY = 0.85f;
+    private static final float VARIANT_QUALITY = 0.8f;
+    private static final String JPEG = "image/jpeg";
+
+    /**
+     * Widths stored for each kind of image; the first is the one written to
+     * the entity's main image URL.
+     */
+    public enum Profile {
+        SHOP_BANNER(800, 320),
+        ITEM_PHOTO(480, 160),
+        PROFILE_PICTURE(256, 96);
+
+        private final int[] widths;
+
+        Profile(int... widths) {
+            this.widths = widths;
+        }
+
+        public int displayWidth() {
+            return widths[0];
+        }
+    }
+
+    /**
+     * url is the display variant; variants maps "original" and "w<width>" to
+     * their URLs.
+     */
+    public record StoredImage(String url, Map<String, String> variants) {
+    }
+
+    @Autowired
+    private BlobStorage blobStorage;
+
+    @Autowired
+    private ContentAddressedStorage contentAddressedStorage;
+
+    /**
+     * Stores the variants under names derived from the content hash. Files
+     * ImageIO cannot decode, e.g. HEIC or CMYK JPEG, are stored unchanged as
+     * the only variant.
+     */
+    public StoredImage store(MultipartFile file, Profile profile) throws IOException {
+        byte[] bytes = file.getBytes();
+        String hash = ContentAddressedStorage.sha256(bytes);
+        String key = hash + "|" + profile.name();
+        Optional<BlobIndexEntry> existing = contentAddressedStorage.find(key);
+        if (existing.isPresent()) {
+            return new StoredImage(existing.get().getUrl(), existing.get().getVariants());
+        }
+
+        BufferedImage decoded = decode(bytes);
+        if (decoded == null) {
+            logger.warn("Could not decode {} ({}), storing it unprocessed", file.getOriginalFilename(), file.getContentType());
+            String url = contentAddressedStorage.store(file);
+            Map<String, String> variants = new LinkedHashMap<>();
+            variants.put(ORIGINAL, url);
+            return new StoredImage(url, variants);
+        }
+
+        BufferedImage image = toRgb(orient(decoded, exifOrientation(bytes)));
+        Map<String, String> variants = new LinkedHashMap<>();
+
+        BufferedImage original = scaleToWidth(image, Math.min(image.getWidth(), MAX_ORIGINAL_WIDTH));
+        String originalName = ContentAddressedStorage.blobName(hash, ORIGINAL + ".jpg");
+        variants.put(ORIGINAL, blobStorage.upload(originalName, encodeJpeg(original, ORIGINAL_QUALITY), JPEG));
+
+        // Widths are listed largest first, so each variant scales down from the previous one
+        BufferedImage source = original;
+        for (int width : profile.widths) {
+            String variantKey = "w" + width;
+            if (width >= source.getWidth()) {
+                // Never upscale; a small upload is its own variant
+                variants.put(variantKey, variants.get(ORIGINAL));
+                continue;
+            }
+            source = scaleToWidth(source, width);
+            String variantName = ContentAddressedStorage.blobName(hash, variantKey + ".jpg");
+            variants.put(variantKey, blobStorage.upload(variantName, encodeJpeg(source, VARIANT_QUALITY), JPEG));
+        }
+        String url = variants.get("w" + profile.displayWidth());
+        contentAddressedStorage.record(key, url, variants, bytes.length, file.getContentType());
+        return new StoredImage(url, variants);
+    }
+
+    private static BufferedImage decode(byte[] bytes) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(new ByteArrayInputStream(bytes))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                // Check the header before allocating the pixels
+                if ((long) reader.getWidth(0) * reader.getHeight(0) > MAX_PIXELS) {
+                    throw new CustomException("Image is too large.");
+                }
+                return reader.read(0);
+            } catch (IIOException e) {
+                // A reader exists but can't decode this variant, e.g. CMYK or YCCK JPEGs
+                logger.debug("ImageIO could not decode the image: {}", e.getMessage());
+                return null;
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private static BufferedImage toRgb(BufferedImage image) {
+        if (image.getType() == BufferedImage.TYPE_INT_RGB) {
+            return image;
+        }
+        // JPEG has no alpha; flatten transparent PNGs onto white
+        BufferedImage rgb = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = rgb.createGraphics();
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, image.getWidth(), image.getHeight());
+        g.drawImage(image, 0, 0, null);
+        g.dispose();
+        return rgb;
+    }
+
+    private static BufferedImage scaleToWidth(BufferedImage image, int width) {
+        if (width >= image.getWidth()) {
+            return image;
+        }
+        int height = Math.max(1, (int) Math.round((double) image.getHeight() * width / image.getWidth()));
+        // Halve in steps so bilinear filtering doesn't skip pixels on big reductions
+        BufferedImage current = image;
+        while (current.getWidth() / 2 >= width) {
+            current = draw(current, current.getWidth() / 2, Math.max(1, current.getHeight() / 2));
+        }
+        return draw(current, width, height);
+    }
+
+    private static BufferedImage draw(BufferedImage image, int width, int height) {
+        BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = scaled.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        g.drawImage(image, 0, 0, width, height, null);
+        g.dispose();
+        return scaled;
+    }
+
+    private static byte[] encodeJpeg(BufferedImage image, float quality) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ImageOutputStream out = ImageIO.createImageOutputStream(bytes)) {
+            writer.setOutput(out);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+            param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return bytes.toByteArray();
+    }
+
+    // Rotations only; the mirrored orientations (2, 4, 5, 7) don't come from cameras
+    private static BufferedImage orient(BufferedImage image, int orientation) {
+        int w = image.getWidth();
+        int h = image.getHeight();
+        AffineTransform transform = new AffineTransform();
+        switch (orientation) {
+            case 3:
+                transform.translate(w, h);
+                transform.rotate(Math.PI);
+                break;
+            case 6:
+                transform.translate(h, 0);
+                transform.rotate(Math.PI / 2);
+                break;
+            case 8:
+                transform.translate(0, w);
+                transform.rotate(-Math.PI / 2);
+                break;
+            default:
+                return image;
+        }
+        boolean swap = orientation != 3;
+        BufferedImage rotated = new BufferedImage(swap ? h : w, swap ? w : h, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = rotated.createGraphics();
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, rotated.getWidth(), rotated.getHeight());
+        g.drawImage(image, transform, null);
+        g.dispose();
+        return rotated;
+    }
+
+    /**
+     * Reads the EXIF orientation tag from a JPEG, or returns 1 (upright) when
+     * there is none.
+     */
+    private static int exifOrientation(byte[] b) {
+        if (b.length < 4 || (b[0] & 0xFF) != 0xFF || (b[1] & 0xFF) != 0xD8) {
+            return 1;
+        }
+        int pos = 2;
+        while (pos + 4 <= b.length && (b[pos] & 0xFF) == 0xFF) {
+            int marker = b[pos + 1] & 0xFF;
+            int length = ((b[pos + 2] & 0xFF) << 8) | (b[pos + 3] & 0xFF);
+            if (marker == 0xDA) {
+                break; // image data starts; no more metadata
+            }
+            int exif = pos + 4;
+            if (marker == 0xE1 && exif + 14 <= b.length
+                    && b[exif] == 'E' && b[exif + 1] == 'x' && b[exif + 2] == 'i' && b[exif + 3] == 'f') {
+                int tiff = exif + 6;
+                boolean little = b[tiff] == 'I';
+                int ifd = tiff + readInt(b, tiff + 4, little);
+                if (ifd < tiff || ifd + 2 > b.length) {
+                    return 1;
+                }
+                int entries = readShort(b, ifd, little);
+                for (int i = 0; i < entries; i++) {
+                    int entry = ifd + 2 + i * 12;
+                    if (entry + 12 > b.length) {
+                        break;
+                    }
+                    if (readShort(b, entry, little) == 0x0112) {
+                        return readShort(b, entry + 8, little);
+                    }
+                }
+                return 1;
+            }
+            pos += 2 + length;
+        }
+        return 1;
+    }
+
+    private static int readShort(byte[] b, int i, boolean little) {
+        return little
+                ? (b[i] & 0xFF) | ((b[i + 1] & 0xFF) << 8)
+                : ((b[i] & 0xFF) << 8) | (b[i + 1] & 0xFF);
+    }
+
+    private static int readInt(byte[] b, int i, boolean little) {
+        return little
+                ? (b[i] & 0xFF) | ((b[i + 1] & 0xFF) << 8) | ((b[i + 2] & 0xFF) << 16) | ((b[i + 3] & 0xFF) << 24)
+                : ((b[i] & 0xFF) << 24) | ((b[i + 1] & 0xFF) << 16) | ((b[i + 2] & 0xFF) << 8) | (b[i + 3] & 0xFF);
+    }
+}
@@ -1,23 +1,17 @@
 package com.capstone.campuseats.Service;
 
-import com.azure.storage.blob.BlobClient;
-import com.azure.storage.blob.BlobServiceClient;
-import com.azure.storage.blob.BlobServiceClientBuilder;
 import com.capstone.campuseats.Entity.ItemEntity;
 import com.capstone.campuseats.Entity.ShopEntity;
 import com.capstone.campuseats.Repository.ItemRepository;
 import com.capstone.campuseats.Repository.ShopRepository;
 import com.capstone.campuseats.config.CustomException;
-import jakarta.annotation.PostConstruct;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -31,21 +25,8 @@ public class ItemService {
     @Autowired
     private ShopRepository shopRepository;
 
-    @Value("${spring.cloud.azure.storage.blob.container-name}")
-    private String containerName;
-
-    @Value("${azure.blob-storage.connection-string}")
-    private String connectionString;
-
-    private BlobServiceClient blobServiceClient;
-
-
-    @PostConstruct
-    public void init() {
-        blobServiceClient = new BlobServiceClientBuilder()
-                .connectionString(connectionString)
-                .buildClient();
-    }
+    @Autowired
+    private ImageVariantService imageVariantService;
 
     public List<ItemEntity> getAllItems() {
         return itemRepository.findAll();
@@ -78,24 +59,9 @@ public class ItemService {
 
         // Handle image upload
         if (image != null) {
-            // Format the timestamp
-            DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
-            String formattedTimestamp = item.getCreatedAt().format(formatter);
-
-            // Sanitize item name (optional)
-            String sanitizedItemName = item.getName().replaceAll("[^a-zA-Z0-9-_\\.]", "_");
-
-            // Create the blob filename
-            String blobFilename = "shop/items/" + shopId + "/" + sanitizedItemName + ".png";
-
-            BlobClient blobClient = blobServiceClient
-                    .getBlobContainerClient(containerName)
-                    .getBlobClient(blobFilename);
-
-            blobClient.upload(image.getInputStream(), image.getSize(), true);
-
-            String imageUrl = blobClient.getBlobUrl();
-            item.setImageUrl(imageUrl);
+            ImageVariantService.StoredImage stored = imageVariantService.store(image, ImageVariantService.Profile.ITEM_PHOTO);
+            item.setImageUrl(stored.url());
+            item.setImageVariants(stored.variants());
         }
         String stringId = UUID.randomUUID().toString();
         item.setId(stringId);
@@ -120,25 +86,10 @@ public class ItemService {
         // Handle image upload if new image is provided
 
         if (image != null) {
-            // Format the timestamp
-            DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
-            String formattedTimestamp = LocalDateTime.now().format(formatter);
-
-            // Sanitize item name (optional)
-            String sanitizedItemName = item.getName().replaceAll("[^a-zA-Z0-9-_\\.]", "_");
-
-            // Create the blob filename
-            String blobFilename = "shop/items/" + existingItem.getShopId() + "/" + sanitizedItemName + ".png";
-
-            BlobClient blobClient = blobServiceClient
-                    .getBlobContainerClient(containerName)
-                    .getBlobClient(blobFilename);
-
-            blobClient.upload(image.getInputStream(), image.getSize(), true);
-
-            String imageUrl = blobClient.getBlobUrl();
-            existingItem.setImageUrl(imageUrl);
-            System.out.println("new image: "+imageUrl);
+            ImageVariantService.StoredImage stored = imageVariantService.store(image, ImageVariantService.Profile.ITEM_PHOTO);
+            existingItem.setImageUrl(stored.url());
+            existingItem.setImageVariants(stored.variants());
+            System.out.println("new image: "+stored.url());
             System.out.println("old image: "+existingItem.getImageUrl());
         }else {
             System.out.println("hi");
@@ -0,0 +1,177 @@
+package com.capstone.campuseats.Service;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Filesystem backend for development, benchmarking and offline tests. Blobs
+ * are written under campuseats.storage.local.root and served back by WebConfig
+ * at /files/**.
+ *
+ * Presigned uploads are PUT to UploadController's /api/uploads/local/{token},
+ * which stands in for the storage service's own endpoint; tokens live in
+ * memory only.
+ *
+ * Copies go through FileChannel.transferFrom, which lets the kernel move the
+ * bytes when the source is a file, and each blob is written to a temp file and
+ * renamed so readers never see a partial image.
+ */
+@Service
+@ConditionalOnProperty(name = "campuseats.storage.backend", havingValue = "local")
+public class LocalBlobStorage implements BlobStorage {
+
+    @Value("${campuseats.storage.local.root:${java.io.tmpdir}/campuseats-blobs}")
+    private String rootDir;
+
+    @Value("${campuseats.storage.local.base-url:http://localhost:8080/files}")
+    private String baseUrl;
+
+    @Value("${campuseats.storage.local.upload-url:http://localhost:8080/api/uploads/local}")
+    private String uploadUrl;
+
+    private Path root;
+
+    private record PendingUpload(String name, Instant expiresAt) {
+    }
+
+    private final Map<String, PendingUpload> pendingUploads = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() throws IOException {
+        root = Path.of(rootDir).toAbsolutePath().normalize();
+        Files.createDirectories(root);
+    }
+
+    @Override
+    public String upload(String name, MultipartFile file) throws IOException {
+        try (InputStream in = file.getInputStream(); ReadableByteChannel source = Channels.newChannel(in)) {
+            write(name, source, file.getSize());
+        }
+        return url(name);
+    }
+
+    @Override
+    public String upload(String name, Path file, String contentType) throws IOException {
+        try (FileChannel source = FileChannel.open(file, StandardOpenOption.READ)) {
+            write(name, source, source.size());
+        }
+        return url(name);
+    }
+
+    @Override
+    public String upload(String name, byte[] data, String contentType) throws IOException {
+        write(name, Channels.newChannel(new ByteArrayInputStream(data)), data.length);
+        return url(name);
+    }
+
+    @Override
+    public String url(String name) {
+        return baseUrl + "/" + name;
+    }
+
+    @Override
+    public PresignedUpload presignUpload(String name, String contentType, Duration ttl) {
+        Instant now = Instant.now();
+        pendingUploads.values().removeIf(pending -> pending.expiresAt().isBefore(now));
+        String token = UUID.randomUUID().toString();
+        pendingUploads.put(token, new PendingUpload(name, now.plus(ttl)));
+        return new PresignedUpload(uploadUrl + "/" + token, Map.of("Content-Type", contentType));
+    }
+
+    /**
+     * Receives the body of a presigned PUT. Returns false if the token is
+     * unknown or expired; a token is good for one PUT.
+     */
+    public boolean acceptUpload(String token, InputStream body, long length) throws IOException {
+        PendingUpload pending = pendingUploads.remove(token);
+        if (pending == null || pending.expiresAt().isBefore(Instant.now())) {
+            return false;
+        }
+        write(pending.name(), Channels.newChannel(body), length);
+        return true;
+    }
+
+    @Override
+    public Optional<BlobInfo> stat(String name) {
+        Path file = resolve(name);
+        if (!Files.isRegularFile(file)) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(new BlobInfo(Files.size(file), Files.probeContentType(file)));
+        } catch (IOException e) {
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public byte[] readHead(String name, int length) throws IOException {
+        try (InputStream in = Files.newInputStream(resolve(name))) {
+            return in.readNBytes(length);
+        }
+    }
+
+    @Override
+    public void delete(String name) {
+        try {
+            Files.deleteIfExists(resolve(name));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public Path getRoot() {
+        return root;
+    }
+
+    private void write(String name, ReadableByteChannel source, long size) throws IOException {
+        Path target = resolve(name);
+        Files.createDirectories(target.getParent());
+        Path temp = Files.createTempFile(target.getParent(), ".upload-", ".part");
+        try {
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                long position = 0;
+                while (position < size) {
+                    long copied = out.transferFrom(source, position, size - position);
+                    if (copied <= 0) {
+                        throw new IOException("Upload of " + name + " ended after " + position + " of " + size + " bytes");
+                    }
+                    position += copied;
+                }
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private Path resolve(String name) {
+        Path target = root.resolve(name).normalize();
+        if (!target.startsWith(root) || target.equals(root)) {
+            throw new IllegalArgumentException("Invalid blob name: " + name);
+        }
+        return target;
+    }
+}
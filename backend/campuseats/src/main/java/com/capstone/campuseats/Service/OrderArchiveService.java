@@ -0,0 +1,147 @@
+package com.capstone.campuseats.Service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.capstone.campuseats.Entity.OrderEntity;
+import com.capstone.campuseats.Entity.OrderPhase;
+import com.capstone.campuseats.Entity.OrderStatus;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Cold storage for order history. A nightly job moves terminal orders older
+ * than campuseats.archive.min-age-days from orders into orders_archive,
+ * tagging each with its month bucket ("yyyy-MM"), so the hot collection and
+ * its indexes only carry recent and in-flight orders.
+ *
+ * Unresolved no-shows stay hot because placeOrder still charges them to the
+ * customer's next order. History reads in OrderService merge both tiers.
+ */
+@Service
+public class OrderArchiveService {
+
+    private static final Logger logger = LoggerFactory.getLogger(OrderArchiveService.class);
+
+    public static final String ARCHIVE_COLLECTION = "orders_archive";
+    private static final String HOT_COLLECTION = "orders";
+    private static final DateTimeFormatter MONTH_BUCKET = DateTimeFormatter.ofPattern("yyyy-MM");
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Value("${campuseats.archive.min-age-days:90}")
+    private int minAgeDays;
+
+    @Value("${campuseats.archive.batch-size:500}")
+    private int batchSize;
+
+    @PostConstruct
+    public void ensureIndexes() {
+        IndexOperations indexes = mongoTemplate.indexOps(ARCHIVE_COLLECTION);
+        indexes.ensureIndex(new Index().on("uid", Sort.Direction.ASC).on("createdAt", Sort.Direction.DESC).named("uid_createdAt"));
+        indexes.ensureIndex(new Index().on("shopId", Sort.Direction.ASC).on("createdAt", Sort.Direction.DESC).named("shopId_createdAt"));
+        indexes.ensureIndex(new Index().on("dasherId", Sort.Direction.ASC).on("createdAt", Sort.Direction.DESC).named("dasherId_createdAt"));
+        indexes.ensureIndex(new Index().on("archiveMonth", Sort.Direction.ASC).named("archiveMonth"));
+    }
+
+    @Scheduled(cron = "${campuseats.archive.cron:0 30 3 * * *}")
+    public void archiveOnSchedule() {
+        try {
+            long moved = archiveOlderThan(LocalDateTime.now().minusDays(minAgeDays));
+            if (moved > 0) {
+                logger.info("Archived {} orders older than {} days", moved, minAgeDays);
+            }
+        } catch (Exception e) {
+            logger.error("Order archival failed: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Moves archivable orders created before cutoff in batches. Each batch is
+     * upserted into the archive before it is deleted from the hot collection,
+     * so an interrupted run is simply picked up again by the next one.
+     */
+    public long archiveOlderThan(LocalDateTime cutoff) {
+        Criteria archivable = Criteria.where("phase").is(OrderPhase.TERMINAL)
+                .and("statusCode").ne(OrderStatus.NO_SHOW)
+                .and("createdAt").lt(cutoff);
+
+        long moved = 0;
+        while (true) {
+            List<Document> batch = mongoTemplate.find(new Query(archivable).limit(batchSize), Document.class, HOT_COLLECTION);
+            if (batch.isEmpty()) {
+                return moved;
+            }
+
+            BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ARCHIVE_COLLECTION);
+            List<Object> ids = new ArrayList<>(batch.size());
+            for (Document order : batch) {
+                order.put("archiveMonth", monthOf(order.get("createdAt")));
+                bulk.replaceOne(new Query(Criteria.where("_id").is(order.get("_id"))), order,
+                        FindAndReplaceOptions.options().upsert());
+                ids.add(order.get("_id"));
+            }
+            bulk.execute();
+
+            // Re-check the phase so an order that changed in the meantime is never dropped
+            moved += mongoTemplate.remove(new Query(Criteria.where("_id").in(ids).and("phase").is(OrderPhase.TERMINAL)),
+                    HOT_COLLECTION).getDeletedCount();
+
+            if (batch.size() < batchSize) {
+                return moved;
+            }
+        }
+    }
+
+    public Optional<OrderEntity> findArchivedById(String id) {
+        return Optional.ofNullable(mongoTemplate.findById(id, OrderEntity.class, ARCHIVE_COLLECTION));
+    }
+
+    /**
+     * Archived orders matching criteria, newest first.
+     */
+    public List<OrderEntity> findArchived(Criteria criteria) {
+        return findArchived(criteria, 0);
+    }
+
+    /**
+     * Newest limit archived orders matching criteria (0 for no cap), for
+     * reads whose criteria aren't narrowed to one user, shop or dasher.
+     */
+    public List<OrderEntity> findArchived(Criteria criteria, int limit) {
+        Query query = new Query(criteria).with(Sort.by(Sort.Direction.DESC, "createdAt"));
+        if (limit > 0) {
+            query.limit(limit);
+        }
+        return mongoTemplate.find(query, OrderEntity.class, ARCHIVE_COLLECTION);
+    }
+
+    private static String monthOf(Object createdAt) {
+        if (createdAt instanceof Date date) {
+            return date.toInstant().atZone(ZoneId.systemDefault()).format(MONTH_BUCKET);
+        }
+        return "unknown";
+    }
+}
@@ -0,0 +1,174 @@
+package com.capstone.campuseats.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import com.capstone.campuseats.Entity.OrderEntity;
+import com.capstone.campuseats.Entity.OrderEvent;
+import com.capstone.campuseats.Entity.OrderStatus;
+
+/**
+ * Appends to the order_events log. The per-order seq comes from the order's
+ * eventSeq, which OrderStateMachine increments in the same findAndModify as
+ * the status change, so it is gap-free and ordered per order without extra
+ * locking. The global offset comes from a counter document; a batch
+ * reserves all of its offsets with one increment.
+ *
+ * Appending happens after the order write and never fails the caller; a
+ * failed append is logged and leaves a gap that projections skip.
+ */
+@Service
+public class OrderEventService {
+
+    private static final Logger logger = LoggerFactory.getLogger(OrderEventService.class);
+
+    private static final String COUNTERS_COLLECTION = "counters";
+    private static final String OFFSET_COUNTER = "order_events";
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    /**
+     * A transition OrderStateMachine applied: the order as it was, its new
+     * status and the update that moved it.
+     */
+    public record AppliedTransition(OrderEntity before, String toStatus, Update update) {
+    }
+
+    public void appendPlaced(OrderEntity order) {
+        appendAll(List.of(event(order, OrderEvent.PLACED, null, order.getStatus(), order.getEventSeq())));
+    }
+
+    /**
+     * Records a transition applied by OrderStateMachine. before is the order as
+     * it was, update the $set/$inc that moved it; fields the update changed
+     * (assigned dasher, final delivery fee) are taken from the update.
+     */
+    public void appendTransition(OrderEntity before, String toStatus, Update update) {
+        appendTransitions(List.of(new AppliedTransition(before, toStatus, update)));
+    }
+
+    /**
+     * Records the transitions of one bulkTransition with a single counter
+     * update and a single insert, in list order.
+     */
+    public void appendTransitions(List<AppliedTransition> transitions) {
+        List<OrderEvent> events = new ArrayList<>(transitions.size());
+        for (AppliedTransition transition : transitions) {
+            events.add(transitionEvent(transition.before(), transition.toStatus(), transition.update()));
+        }
+        appendAll(events);
+    }
+
+    private OrderEvent transitionEvent(OrderEntity before, String toStatus, Update update) {
+        OrderEntity after = copyOwners(before);
+        Object setFields = update.getUpdateObject().get("$set");
+        if (setFields instanceof Document set) {
+            if (set.containsKey("dasherId")) {
+                after.setDasherId((String) set.get("dasherId"));
+            }
+            if (set.get("deliveryFee") instanceof Number fee) {
+                after.setDeliveryFee(fee.floatValue());
+            }
+        }
+        long seq = (before.getEventSeq() != null ? before.getEventSeq() : 0) + 1;
+        return event(after, OrderEvent.STATUS_CHANGED, before.getStatus(), toStatus, seq);
+    }
+
+    public void appendDeleted(OrderEntity order) {
+        long seq = (order.getEventSeq() != null ? order.getEventSeq() : 0) + 1;
+        appendAll(List.of(event(order, OrderEvent.DELETED, order.getStatus(), null, seq)));
+    }
+
+    public List<OrderEvent> getEventsForOrder(String orderId) {
+        Query query = new Query(Criteria.where("orderId").is(orderId)).with(Sort.by("seq"));
+        return mongoTemplate.find(query, OrderEvent.class);
+    }
+
+    /**
+     * Events after the given offset, oldest first.
+     */
+    public List<OrderEvent> readAfter(long offset, int limit) {
+        Query query = new Query(Criteria.where("_id").gt(offset))
+                .with(Sort.by("_id"))
+                .limit(limit);
+        return mongoTemplate.find(query, OrderEvent.class);
+    }
+
+    // Built without an offset; appendAll assigns it
+    private static OrderEvent event(OrderEntity order, String type, String fromStatus, String toStatus, Long seq) {
+        return OrderEvent.builder()
+                .orderId(order.getId())
+                .seq(seq != null ? seq : 1)
+                .type(type)
+                .fromStatus(fromStatus)
+                .fromStatusCode(fromStatus != null ? OrderStatus.fromValue(fromStatus) : null)
+                .toStatus(toStatus)
+                .toStatusCode(toStatus != null ? OrderStatus.fromValue(toStatus) : null)
+                .uid(order.getUid())
+                .shopId(order.getShopId())
+                .dasherId(order.getDasherId())
+                .paymentMethod(order.getPaymentMethod())
+                .totalPrice(order.getTotalPrice())
+                .deliveryFee(order.getDeliveryFee())
+                .createdAt(LocalDateTime.now())
+                .build();
+    }
+
+    private void appendAll(List<OrderEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        try {
+            long offset = reserveOffsets(events.size());
+            for (OrderEvent event : events) {
+                event.setOffset(offset++);
+            }
+            if (events.size() == 1) {
+                mongoTemplate.insert(events.get(0));
+            } else {
+                // Unordered, so one failed event leaves a gap instead of dropping the rest
+                mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, OrderEvent.class).insert(events).execute();
+            }
+        } catch (Exception e) {
+            logger.error("Failed to append {} event(s), first {} for order {}: {}", events.size(),
+                    events.get(0).getType(), events.get(0).getOrderId(), e.getMessage(), e);
+        }
+    }
+
+    // First of count consecutive offsets
+    private long reserveOffsets(int count) {
+        Document counter = mongoTemplate.findAndModify(
+                new Query(Criteria.where("_id").is(OFFSET_COUNTER)),
+                new Update().inc("value", (long) count),
+                FindAndModifyOptions.options().returnNew(true).upsert(true),
+                Document.class, COUNTERS_COLLECTION);
+        return ((Number) counter.get("value")).longValue() - count + 1;
+    }
+
+    private static OrderEntity copyOwners(OrderEntity order) {
+        OrderEntity copy = new OrderEntity();
+        copy.setId(order.getId());
+        copy.setUid(order.getUid());
+        copy.setShopId(order.getShopId());
+        copy.setDasherId(order.getDasherId());
+        copy.setPaymentMethod(order.getPaymentMethod());
+        copy.setTotalPrice(order.getTotalPrice());
+        copy.setDeliveryFee(order.getDeliveryFee());
+        return copy;
+    }
+}
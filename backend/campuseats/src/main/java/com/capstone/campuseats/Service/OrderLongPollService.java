@@ -0,0 +1,78 @@
+package com.capstone.campuseats.Service;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Parks long-poll requests for an order until OrderVersionService reports a
+ * change to it. Parked requests hold no thread; when the order changes, the
+ * waiters are run on a small pool so the writer's thread never loads orders
+ * or writes responses.
+ */
+@Service
+public class OrderLongPollService {
+
+    @Autowired
+    private OrderVersionService orderVersionService;
+
+    private final Map<String, Set<Runnable>> waiters = new ConcurrentHashMap<>();
+
+    private final ExecutorService completionExecutor = Executors.newFixedThreadPool(2, runnable -> {
+        Thread thread = new Thread(runnable, "order-long-poll");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PostConstruct
+    public void init() {
+        orderVersionService.addOrderListener(this::onOrderChanged);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        completionExecutor.shutdownNow();
+    }
+
+    /**
+     * Runs onChange once the order's version differs from sinceVersion, or right
+     * away if it already does. Nothing runs if deferred completes first (timeout).
+     */
+    public void watch(String orderId, long sinceVersion, DeferredResult<?> deferred, Runnable onChange) {
+        Runnable waiter = () -> {
+            if (!deferred.isSetOrExpired()) {
+                onChange.run();
+            }
+        };
+        waiters.compute(orderId, (id, parked) -> {
+            Set<Runnable> set = parked != null ? parked : ConcurrentHashMap.newKeySet();
+            set.add(waiter);
+            return set;
+        });
+        deferred.onCompletion(() -> waiters.computeIfPresent(orderId, (id, parked) -> {
+            parked.remove(waiter);
+            return parked.isEmpty() ? null : parked;
+        }));
+
+        // Versions are bumped before listeners run, so this catches a change that raced the registration
+        if (orderVersionService.orderVersion(orderId) != sinceVersion) {
+            completionExecutor.execute(waiter);
+        }
+    }
+
+    private void onOrderChanged(String orderId) {
+        Set<Runnable> parked = waiters.remove(orderId);
+        if (parked != null) {
+            parked.forEach(completionExecutor::execute);
+        }
+    }
+}
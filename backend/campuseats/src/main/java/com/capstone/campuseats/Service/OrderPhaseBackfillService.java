@@ -0,0 +1,80 @@
+package com.capstone.campuseats.Service;
+
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import com.capstone.campuseats.Entity.OrderEntity;
+import com.capstone.campuseats.Entity.OrderStatus;
+
+/**
+ * Backfills statusCode/phase on orders written before those fields existed.
+ * Runs once at startup, after the beans are created but before the web
+ * server starts, because the state machine guards and order admission query
+ * statusCode/phase and would miss legacy orders until it finishes. It issues
+ * one updateMany per distinct status value, so it never loads the documents
+ * themselves, and once every order has a phase it is a single empty distinct.
+ * Dasher order slots are seeded right after it, since that query selects on phase.
+ */
+@Service
+public class OrderPhaseBackfillService implements SmartInitializingSingleton {
+
+    private static final Logger logger = LoggerFactory.getLogger(OrderPhaseBackfillService.class);
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private OrderVersionService orderVersionService;
+
+    @Autowired
+    private DasherService dasherService;
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        try {
+            long updated = backfill();
+            if (updated > 0) {
+                orderVersionService.invalidateAll();
+                logger.info("Order phase backfill updated {} orders", updated);
+            }
+        } catch (Exception e) {
+            logger.error("Order phase backfill failed: {}", e.getMessage(), e);
+        }
+        try {
+            dasherService.seedOrderSlots();
+        } catch (Exception e) {
+            logger.error("Failed to seed dasher order slots: {}", e.getMessage(), e);
+        }
+    }
+
+    public long backfill() {
+        Query missingPhase = new Query(Criteria.where("phase").exists(false));
+        List<String> statuses = mongoTemplate.findDistinct(missingPhase, "status", OrderEntity.class, String.class);
+
+        long updated = 0;
+        for (String status : statuses) {
+            OrderStatus statusCode = OrderStatus.fromValue(status);
+            Query query = new Query(Criteria.where("phase").exists(false).and("status").is(status));
+            Update update = new Update()
+                    .set("statusCode", statusCode)
+                    .set("phase", statusCode.getPhase());
+            updated += mongoTemplate.updateMulti(query, update, OrderEntity.class).getModifiedCount();
+        }
+
+        // Documents with no status at all are not returned by distinct
+        Query missingStatus = new Query(Criteria.where("phase").exists(false).and("status").is(null));
+        updated += mongoTemplate.updateMulti(missingStatus,
+                new Update().set("statusCode", OrderStatus.OTHER).set("phase", OrderStatus.OTHER.getPhase()),
+                OrderEntity.class).getModifiedCount();
+        return updated;
+    }
+}
@@ -0,0 +1,19 @@
+package com.capstone.campuseats.Service;
+
+import com.capstone.campuseats.Entity.OrderEvent;
+
+/**
+ * A read model built from the order_events log. OrderProjectionService feeds
+ * each projection the events in offset order and checkpoints its progress;
+ * apply must tolerate seeing an event again after a crash (see
+ * AbstractOrderProjection.applyOnce).
+ */
+public interface OrderProjection {
+
+    String getName();
+
+    // Collection holding the read model; dropped when the projection is replayed
+    String getCollection();
+
+    void apply(OrderEvent event);
+}
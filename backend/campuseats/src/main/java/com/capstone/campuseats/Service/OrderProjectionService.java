@@ -0,0 +1,141 @@
+package com.capstone.campuseats.Service;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.capstone.campuseats.Entity.OrderEvent;
+import com.capstone.campuseats.Entity.ProjectionCheckpoint;
+
+/**
+ * Feeds the order_events log into every OrderProjection bean and serves the
+ * resulting read models.
+ *
+ * Each projection has its own checkpoint and catches up every few seconds.
+ * Offsets are allocated before the insert, so a later offset can become
+ * visible before an earlier one; the runner stops at a gap until it is
+ * GAP_WAIT old and then treats the missing offset as a failed append.
+ */
+@Service
+public class OrderProjectionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(OrderProjectionService.class);
+
+    private static final int BATCH_SIZE = 500;
+    private static final long GAP_WAIT_SECONDS = 10;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private OrderEventService orderEventService;
+
+    @Autowired
+    private List<OrderProjection> projections;
+
+    @Scheduled(fixedDelayString = "${campuseats.projections.poll-ms:2000}")
+    public synchronized void catchUpAll() {
+        for (OrderProjection projection : projections) {
+            try {
+                catchUp(projection);
+            } catch (Exception e) {
+                logger.error("Projection {} failed, retrying on the next run: {}", projection.getName(), e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Drops the projection's read model and rebuilds it from the start of the
+     * log on the next run. Projections $inc their counters, so a partial
+     * replay over the existing model would count events twice, and one over
+     * a dropped model would lose everything before the offset.
+     */
+    public synchronized void replay(String name) {
+        OrderProjection projection = find(name)
+                .orElseThrow(() -> new IllegalArgumentException("Unknown projection: " + name));
+        mongoTemplate.dropCollection(projection.getCollection());
+        saveCheckpoint(projection, 0);
+        logger.info("Projection {} reset to replay from the start of the log", name);
+    }
+
+    // Last applied offset per projection
+    public Map<String, Long> getCheckpoints() {
+        return projections.stream().collect(Collectors.toMap(OrderProjection::getName, this::loadCheckpoint));
+    }
+
+    public Optional<Document> getUserOrderSummary(String uid) {
+        return Optional.ofNullable(mongoTemplate.findById(uid, Document.class, UserOrderSummaryProjection.COLLECTION));
+    }
+
+    public List<Document> getShopDailyCounts(String shopId, String fromDay, String toDay) {
+        Criteria criteria = Criteria.where("shopId").is(shopId);
+        if (fromDay != null || toDay != null) {
+            // yyyy-MM-dd strings sort chronologically
+            Criteria day = criteria.and("day");
+            if (fromDay != null) {
+                day.gte(fromDay);
+            }
+            if (toDay != null) {
+                day.lte(toDay);
+            }
+        }
+        Query query = new Query(criteria).with(Sort.by("day"));
+        return mongoTemplate.find(query, Document.class, ShopDailyOrderProjection.COLLECTION);
+    }
+
+    public Optional<Document> getDasherEarnings(String dasherId) {
+        return Optional.ofNullable(mongoTemplate.findById(dasherId, Document.class, DasherEarningsProjection.COLLECTION));
+    }
+
+    private void catchUp(OrderProjection projection) {
+        long checkpoint = loadCheckpoint(projection);
+        long start = checkpoint;
+        while (true) {
+            List<OrderEvent> batch = orderEventService.readAfter(checkpoint, BATCH_SIZE);
+            boolean stalled = false;
+            for (OrderEvent event : batch) {
+                if (event.getOffset() != checkpoint + 1
+                        && event.getCreatedAt().isAfter(LocalDateTime.now().minusSeconds(GAP_WAIT_SECONDS))) {
+                    // The missing offset may still be in flight
+                    stalled = true;
+                    break;
+                }
+                projection.apply(event);
+                checkpoint = event.getOffset();
+            }
+            if (checkpoint != start) {
+                saveCheckpoint(projection, checkpoint);
+                start = checkpoint;
+            }
+            if (stalled || batch.size() < BATCH_SIZE) {
+                return;
+            }
+        }
+    }
+
+    private Optional<OrderProjection> find(String name) {
+        return projections.stream().filter(p -> p.getName().equals(name)).findFirst();
+    }
+
+    private long loadCheckpoint(OrderProjection projection) {
+        ProjectionCheckpoint checkpoint = mongoTemplate.findById(projection.getName(), ProjectionCheckpoint.class);
+        return checkpoint != null ? checkpoint.getLastOffset() : 0;
+    }
+
+    private void saveCheckpoint(OrderProjection projection, long offset) {
+        mongoTemplate.save(new ProjectionCheckpoint(projection.getName(), offset, LocalDateTime.now()));
+    }
+}
@@ -5,35 +5,46 @@ import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
 import com.capstone.campuseats.Entity.ReimburseEntity;
 import com.capstone.campuseats.Repository.ReimburseRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
-import com.azure.storage.blob.BlobClient;
-import com.azure.storage.blob.BlobServiceClient;
-import com.azure.storage.blob.BlobServiceClientBuilder;
-
-import jakarta.annotation.PostConstruct;
-
 import com.capstone.campuseats.Controller.NotificationController;
 import com.capstone.campuseats.Entity.DasherEntity;
 import com.capstone.campuseats.Entity.OrderEntity;
+import com.capstone.campuseats.Entity.OrderPhase;
+import com.capstone.campuseats.Entity.OrderStatus;
+import com.capstone.campuseats.Entity.ProofUploadJob;
+import com.capstone.campuseats.Entity.ShopEntity;
 import com.capstone.campuseats.Entity.UserEntity;
+import com.capstone.campuseats.Entity.WalletPostingType;
 import com.capstone.campuseats.Repository.DasherRepository;
+import com.capstone.campuseats.Repository.OrderAdmission;
+import com.capstone.campuseats.Repository.OrderPageQuery;
 import com.capstone.campuseats.Repository.OrderRepository;
+import com.capstone.campuseats.Repository.ShopRepository;
 import com.capstone.campuseats.Repository.UserRepository;
 import com.capstone.campuseats.Service.WebSocketNotificationService;
+import com.capstone.campuseats.config.OrderConflictException;
+import com.capstone.campuseats.config.OrderNotFoundException;
 
 @Service
 public class OrderService {
@@ -61,131 +72,116 @@ public class OrderService {
 
     @Autowired
     private ReimburseRepository reimburseRepository;
-    
-    @Value("${spring.cloud.azure.storage.blob.container-name}")
-    private String containerName;
 
-    @Value("${azure.blob-storage.connection-string}")
-    private String connectionString;
+    @Autowired
+    private ShopRepository shopRepository;
 
-    private BlobServiceClient blobServiceClient;
+    @Autowired
+    private OrderStateMachine orderStateMachine;
 
-    @PostConstruct
-    public void init() {
-        blobServiceClient = new BlobServiceClientBuilder()
-                .connectionString(connectionString)
-                .buildClient();
-    }
+    @Autowired
+    private DasherService dasherService;
+
+    @Autowired
+    private DispatchBoardService dispatchBoardService;
+
+    @Autowired
+    private OrderArchiveService orderArchiveService;
+
+    @Autowired
+    private OrderVersionService orderVersionService;
+
+    @Autowired
+    private OrderEventService orderEventService;
+
+    @Autowired
+    private ProofUploadService proofUploadService;
+
+    @Autowired
+    private WalletService walletService;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    // Archived orders added to the unfiltered past-orders list, newest first
+    @Value("${campuseats.archive.past-orders-limit:500}")
+    private int pastOrdersArchiveLimit;
 
     public Optional<OrderEntity> getOrderById(String id) {
-        return orderRepository.findById(id);
+        Optional<OrderEntity> order = orderRepository.findById(id);
+        return order.isPresent() ? order : orderArchiveService.findArchivedById(id);
     }
 
     public OrderEntity placeOrder(OrderEntity order) {
-        List<OrderEntity> existingOrders = orderRepository.findByUid(order.getUid());
-
-        // Check if the user has an active order
-        // Exclude orders that are waiting for no-show confirmation or are dasher no-shows
-        // as these are essentially completed/disputed orders, not active deliveries
-        boolean activeOrderExists = existingOrders.stream()
-                .anyMatch(existingOrder -> {
-                    String status = existingOrder.getStatus();
-                    return status.startsWith("active") 
-                        && !status.equals("active_waiting_for_no_show_confirmation")
-                        && !status.equals("dasher-no-show");
-                });
-
-        if (activeOrderExists) {
+        // One indexed round trip for both admission checks, however many orders the user has placed
+        OrderAdmission admission = orderRepository.findAdmission(order.getUid());
+
+        // Orders waiting for no-show confirmation or marked dasher no-show are in the
+        // DISPUTED phase, as these are essentially completed/disputed orders, not active deliveries
+        if (admission.isActiveOrder()) {
             throw new RuntimeException("An active order already exists for this user");
         }
-        
-        // Check if the user has any unresolved no-show orders
-        // Search for both formats of no-show status (hyphen and underscore)
-        List<OrderEntity> noShowOrdersHyphen = orderRepository.findByUidAndStatus(order.getUid(), "no-show");
-        List<OrderEntity> noShowOrdersUnderscore = orderRepository.findByUidAndStatus(order.getUid(), "no_show");
-        
-        // Combine both lists
-        List<OrderEntity> noShowOrders = new ArrayList<>();
-        noShowOrders.addAll(noShowOrdersHyphen);
-        noShowOrders.addAll(noShowOrdersUnderscore);
-        
-        // Filter out any that might have been resolved but still have the status
-        noShowOrders = noShowOrders.stream()
-                .filter(noShowOrder -> !"no-show-resolved".equals(noShowOrder.getStatus()) 
-                        && !"no_show_resolved".equals(noShowOrder.getStatus()))
-                .collect(Collectors.toList());
-        float previousNoShowFee = 0.0f;
-        float previousNoShowItems = 0.0f;
-        
-        if (!noShowOrders.isEmpty()) {
-            // Get the most recent no-show order
-            OrderEntity lastNoShowOrder = noShowOrders.stream()
-                    .max(Comparator.comparing(OrderEntity::getCreatedAt))
-                    .orElse(null);
-            
-            if (lastNoShowOrder != null) {
-                // Add the delivery fee from the no-show order to the current order
-                previousNoShowFee = lastNoShowOrder.getDeliveryFee();
-                order.setPreviousNoShowFee(previousNoShowFee);
-                
-                // Calculate the total cost of items from the no-show order
-                if (lastNoShowOrder.getItems() != null && !lastNoShowOrder.getItems().isEmpty()) {
-                    previousNoShowItems = (float) lastNoShowOrder.getItems().stream()
-                            .mapToDouble(item -> item.getPrice() * item.getQuantity())
-                            .sum();
-                    order.setPreviousNoShowItems(previousNoShowItems);
-                    
-                    System.out.println("Adding previous no-show items cost of " + previousNoShowItems + 
-                            " to order for user " + order.getUid());
-                }
-                
-                // Update the total price to include both previous no-show fee and items
-                order.setTotalPrice(order.getTotalPrice() + previousNoShowFee + previousNoShowItems);
-                
-                System.out.println("Adding previous no-show fee of " + previousNoShowFee + 
+
+        // Carry over the charges of the most recent unresolved no-show (either spelling)
+        if (admission.hasUnresolvedNoShow()) {
+            // Add the delivery fee from the no-show order to the current order
+            float previousNoShowFee = admission.getNoShowDeliveryFee();
+            order.setPreviousNoShowFee(previousNoShowFee);
+
+            // Total cost of items from the no-show order
+            float previousNoShowItems = admission.getNoShowItemsTotal();
+            if (previousNoShowItems > 0) {
+                order.setPreviousNoShowItems(previousNoShowItems);
+
+                System.out.println("Adding previous no-show items cost of " + previousNoShowItems +
                         " to order for user " + order.getUid());
             }
+
+            // Update the total price to include both previous no-show fee and items
+            order.setTotalPrice(order.getTotalPrice() + previousNoShowFee + previousNoShowItems);
+
+            System.out.println("Adding previous no-show fee of " + previousNoShowFee +
+                    " to order for user " + order.getUid());
         }
 
-        // Fetch active dashers
-        List<DasherEntity> activeDashers = dasherRepository.findByStatus("active");
-        System.out.println("activeDashers: " + activeDashers);
-        
         // Set the order status to waiting for shop
         // Orders will only be visible to dashers after shop approval
         order.setStatus("active_waiting_for_shop");
         order.setCreatedAt(LocalDateTime.now());
 
-        return orderRepository.save(order);
-    }
+        order.setEventSeq(1L);
 
-    public void updateOrderStatus(String orderId, String status) {
-        Optional<OrderEntity> orderOptional = orderRepository.findById(orderId);
+        OrderEntity savedOrder = orderRepository.save(order);
+        orderVersionService.orderChanged(savedOrder);
+        orderEventService.appendPlaced(savedOrder);
+        return savedOrder;
+    }
 
-        if (orderOptional.isEmpty()) {
-            throw new RuntimeException("Order not found");
+    public OrderStateMachine.Result updateOrderStatus(String orderId, String status) {
+        // Handle shop approval flow - when web frontend says "active_shop_confirmed" on an order
+        // still waiting for the shop, it goes straight to active_waiting_for_dasher
+        Optional<OrderStateMachine.Result> approval = Optional.empty();
+        if (status.equals("active_shop_confirmed")) {
+            approval = orderStateMachine.tryTransition(orderId, List.of("active_waiting_for_shop"),
+                    "active_waiting_for_dasher", null);
         }
 
-        OrderEntity order = orderOptional.get();
+        // Otherwise a single conditional update; throws OrderConflictException if the
+        // order has already moved somewhere this status can't follow
+        OrderStateMachine.Result result = approval.isPresent()
+                ? approval.get()
+                : orderStateMachine.transition(orderId, status);
+
+        OrderEntity order = result.order();
+        OrderEntity savedOrder = order;
         System.out.println("order: " + order);
 
         // Capture the previous status before updating
-        String previousStatus = order.getStatus();
-
-        // Handle shop approval flow - when web frontend says "active_shop_confirmed", we change it to active_waiting_for_dasher
-        if (status.equals("active_shop_confirmed") && order.getStatus().equals("active_waiting_for_shop")) {
-            // Shop is approving the order - change status to active_waiting_for_dasher first
-            order.setStatus("active_waiting_for_dasher");
-        } else {
-            // Handle normal status updates
-            order.setStatus(status);
-        }
-        
-        order.setDasherId(order.getDasherId());
-        OrderEntity savedOrder = orderRepository.save(order);
+        String previousStatus = result.previousStatus();
         
         // Send WebSocket notification for order update
         webSocketNotificationService.sendOrderUpdate(savedOrder);
+        dispatchBoardService.onOrderChanged(savedOrder);
         
         // If order is now waiting for dasher, notify all active dashers about new available order
         if (savedOrder.getStatus().equals("active_waiting_for_dasher")) {
@@ -193,155 +189,234 @@ public class OrderService {
         }
 
         // Constructing the message based on order status
-        String notificationMessage;
+        String notificationMessage = statusNotificationMessage(status);
+        if (status.equals("cancelled_by_customer")) {
+            // Check if the order was already confirmed by the shop before customer cancellation
+            // and send notification to the shop owner
+            if (previousStatus != null && 
+                (previousStatus.equals("active_shop_confirmed") || 
+                 previousStatus.equals("active_waiting_for_dasher") ||
+                 previousStatus.equals("active_preparing") ||
+                 previousStatus.startsWith("active_"))) {
+                
+                // Send notification to the shop owner (shopId is the shop owner's userId)
+                String shopOwnerId = order.getShopId();
+                if (shopOwnerId != null) {
+                    String shopNotificationMessage = "A customer has cancelled order #" + order.getId() + 
+                            " that was already confirmed. Please check your orders.";
+                    webSocketNotificationService.sendUserNotification(shopOwnerId, shopNotificationMessage);
+                    System.out.println("Sent cancellation notification to shop owner: " + shopOwnerId + 
+                            " for order: " + order.getId());
+                }
+            }
+        } else if (status.equals("completed")) {
+            System.out.println("hello! order: " + order);
+            sendOrderReceipt(order);
+            
+            // Process previous no-show fee and items when order is completed
+            if (order.getPreviousNoShowFee() > 0 || order.getPreviousNoShowItems() > 0) {
+                System.out.println("Processing previous no-show charges for user: " + order.getUid());
+                
+                // Get all no-show orders for this user
+                List<OrderEntity> noShowOrders = orderRepository.findByUidAndStatus(order.getUid(), "no-show");
+                
+                if (!noShowOrders.isEmpty()) {
+                    // Get the most recent no-show order
+                    OrderEntity mostRecentNoShowOrder = noShowOrders.stream()
+                            .max(Comparator.comparing(OrderEntity::getCreatedAt))
+                            .orElse(null);
+                    
+                    if (mostRecentNoShowOrder != null) {
+                        // Calculate total no-show charges
+                        float totalNoShowCharges = order.getPreviousNoShowFee() + order.getPreviousNoShowItems();
+                        
+                        System.out.println("📊 Previous no-show charges collected: ₱" + totalNoShowCharges);
+                        System.out.println("   - Delivery fee: ₱" + order.getPreviousNoShowFee());
+                        System.out.println("   - Items cost: ₱" + order.getPreviousNoShowItems());
+                        System.out.println("   - Current order payment method: " + order.getPaymentMethod());
+                        
+                        // Check the payment method of the CURRENT order
+                        if ("gcash".equalsIgnoreCase(order.getPaymentMethod())) {
+                            // GCash: Check if original no-show was COD or GCash
+                            if ("cash".equalsIgnoreCase(mostRecentNoShowOrder.getPaymentMethod())) {
+                                // Original was COD, dasher was already paid immediately
+                                System.out.println("   - 💳 GCash payment: Funds stay with admin (reimbursing admin for COD no-show already paid to dasher)");
+                            } else {
+                                // Original was GCash, dasher will be reimbursed by admin separately
+                                System.out.println("   - 💳 GCash payment: Funds stay with admin (dasher will be reimbursed separately for GCash no-show)");
+                            }
+                        } else if ("cash".equalsIgnoreCase(order.getPaymentMethod())) {
+                            // COD: Check if original no-show was COD or GCash
+                            if ("cash".equalsIgnoreCase(mostRecentNoShowOrder.getPaymentMethod())) {
+                                // Original was COD, dasher was already paid immediately at time of no-show
+                                System.out.println("   - 💵 COD payment: Original dasher was paid immediately (COD no-show)");
+                                System.out.println("   - Current dasher must remit ₱" + totalNoShowCharges + " to admin");
+                            } else {
+                                // Original was GCash, dasher was NOT paid yet, pay them now
+                                if (mostRecentNoShowOrder.getDasherId() != null) {
+                                    if (walletService.adjust(WalletService.DASHER, mostRecentNoShowOrder.getDasherId(), totalNoShowCharges,
+                                            WalletPostingType.NO_SHOW_COMPENSATION, mostRecentNoShowOrder.getId()).isPresent()) {
+                                        System.out.println("   - 💵 COD payment: Paid original dasher ₱" + totalNoShowCharges + " (GCash no-show, now paid via COD)");
+                                    }
+                                }
+                            }
+                        }
+                        
+                        // Add a note to the order for accounting purposes
+                        String noteAddition = "\n[System: Previous no-show charges of ₱" + 
+                                order.getPreviousNoShowFee() + " (delivery) + ₱" +
+                                order.getPreviousNoShowItems() + " (items) = ₱" + totalNoShowCharges +
+                                " collected via " + order.getPaymentMethod().toUpperCase() + ". " +
+                                "Original no-show order: " + mostRecentNoShowOrder.getId() + " (" + 
+                                mostRecentNoShowOrder.getPaymentMethod().toUpperCase() + ")]";
+                                
+                        String currentNote = order.getNote();
+                        order.setNote(currentNote != null ? currentNote + noteAddition : noteAddition);
+                    }
+                    
+                    // Mark all no-show orders as resolved
+                    for (OrderEntity noShowOrder : noShowOrders) {
+                        if (orderStateMachine.tryTransition(noShowOrder.getId(), List.of("no-show"),
+                                "no-show-resolved", null).isPresent()) {
+                            System.out.println("Marked no-show order " + noShowOrder.getId() + " as resolved");
+                        }
+                    }
+                }
+            }
+        }
+        // Send notification when order status is updated
+        notificationController.sendNotification(notificationMessage);
+        return result;
+    }
+
+    // Statuses whose side effects (receipt, no-show payouts, shop alert) only the single-order path handles
+    private static final Set<String> UNBATCHED_STATUSES = Set.of("completed", "cancelled_by_customer");
+
+    /**
+     * Applies several status changes at once for shop-side batch actions.
+     * The transitions go out as one bulkWrite; WebSocket board updates and
+     * the global notification are coalesced so a batch of ten "preparing"
+     * orders sends the "Order is being prepared." broadcast once.
+     * Returns one result per requested item, in order.
+     */
+    public List<Map<String, Object>> updateOrderStatuses(List<OrderStateMachine.Transition> requested) {
+        List<Map<String, Object>> results = new ArrayList<>();
+        List<OrderStateMachine.Transition> batched = new ArrayList<>();
+        List<Integer> batchedIndex = new ArrayList<>();
+
+        for (int i = 0; i < requested.size(); i++) {
+            OrderStateMachine.Transition item = requested.get(i);
+            results.add(null);
+            if (UNBATCHED_STATUSES.contains(item.targetStatus())) {
+                results.set(i, updateOrderStatusForBatch(item));
+            } else {
+                batched.add(item);
+                batchedIndex.add(i);
+            }
+        }
+        if (batched.isEmpty()) {
+            return results;
+        }
+
+        List<OrderStateMachine.BulkOutcome> outcomes = orderStateMachine.bulkTransition(batched,
+                // Same shop approval shortcut as updateOrderStatus
+                (order, status) -> status.equals("active_shop_confirmed") && "active_waiting_for_shop".equals(order.getStatus())
+                        ? "active_waiting_for_dasher"
+                        : status);
+
+        List<OrderEntity> changed = new ArrayList<>();
+        Set<String> messages = new LinkedHashSet<>();
+        for (int j = 0; j < outcomes.size(); j++) {
+            OrderStateMachine.BulkOutcome outcome = outcomes.get(j);
+            Map<String, Object> result = new HashMap<>();
+            result.put("orderId", outcome.orderId());
+            if (outcome.succeeded()) {
+                OrderEntity order = outcome.result().order();
+                result.put("success", true);
+                result.put("status", order.getStatus());
+                result.put("previousStatus", outcome.result().previousStatus());
+                changed.add(order);
+                webSocketNotificationService.sendOrderUpdate(order);
+                if (order.getStatus().equals("active_waiting_for_dasher")) {
+                    webSocketNotificationService.sendNewOrderToDashers(order);
+                }
+                messages.add(statusNotificationMessage(batched.get(j).targetStatus()));
+            } else {
+                result.put("success", false);
+                result.put("code", outcome.notFound() ? 404 : 409);
+                result.put("error", outcome.error());
+            }
+            results.set(batchedIndex.get(j), result);
+        }
+
+        dispatchBoardService.onOrdersChanged(changed);
+        for (String message : messages) {
+            notificationController.sendNotification(message);
+        }
+        return results;
+    }
+
+    private Map<String, Object> updateOrderStatusForBatch(OrderStateMachine.Transition item) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("orderId", item.orderId());
+        try {
+            OrderStateMachine.Result transition = updateOrderStatus(item.orderId(), item.targetStatus());
+            result.put("success", true);
+            result.put("status", transition.order().getStatus());
+            result.put("previousStatus", transition.previousStatus());
+        } catch (OrderNotFoundException e) {
+            result.put("success", false);
+            result.put("code", 404);
+            result.put("error", e.getMessage());
+        } catch (OrderConflictException e) {
+            result.put("success", false);
+            result.put("code", 409);
+            result.put("error", e.getMessage());
+        } catch (Exception e) {
+            result.put("success", false);
+            result.put("code", 500);
+            result.put("error", e.getMessage());
+        }
+        return result;
+    }
+
+    private static String statusNotificationMessage(String status) {
         switch (status) {
             case "active_toShop":
-                notificationMessage = "Dasher is on the way to the shop.";
-                break;
+                return "Dasher is on the way to the shop.";
             case "active_waiting_for_shop":
-                notificationMessage = "Dasher is waiting for the shop to confirm the order.";
-                break;
+                return "Dasher is waiting for the shop to confirm the order.";
             case "cancelled_by_dasher":
-                notificationMessage = "Order has been cancelled by the Dasher.";
-                break;
+                return "Order has been cancelled by the Dasher.";
             case "cancelled_by_shop":
-                notificationMessage = "Order has been cancelled by the Shop.";
-                break;
+                return "Order has been cancelled by the Shop.";
             case "active_shop_confirmed":
-                notificationMessage = "Order has been confirmed by the shop.";
-                break;
+                return "Order has been confirmed by the shop.";
             case "active_preparing":
-                notificationMessage = "Order is being prepared.";
-                break;
+                return "Order is being prepared.";
             case "active_waiting_for_dasher":
-                notificationMessage = "Looking for a Dasher to be assigned.";
-                break;
+                return "Looking for a Dasher to be assigned.";
             case "no-show":
-                notificationMessage = "You did not show up for the delivery.";
-                break;
+                return "You did not show up for the delivery.";
             case "active_onTheWay":
-                notificationMessage = "Dasher is on the way to deliver your order.";
-                break;
+                return "Dasher is on the way to deliver your order.";
             case "active_delivered":
-                notificationMessage = "Order has been delivered.";
-                break;
+                return "Order has been delivered.";
             case "active_pickedUp":
-                notificationMessage = "Order has been picked up.";
-                break;
+                return "Order has been picked up.";
             case "active_waiting_for_confirmation":
-                notificationMessage = "Order is waiting for confirmation.";
-                break;
+                return "Order is waiting for confirmation.";
             case "cancelled_by_customer":
-                notificationMessage = "Order has been cancelled.";
-                
-                // Check if the order was already confirmed by the shop before customer cancellation
-                // and send notification to the shop owner
-                if (previousStatus != null && 
-                    (previousStatus.equals("active_shop_confirmed") || 
-                     previousStatus.equals("active_waiting_for_dasher") ||
-                     previousStatus.equals("active_preparing") ||
-                     previousStatus.startsWith("active_"))) {
-                    
-                    // Send notification to the shop owner (shopId is the shop owner's userId)
-                    String shopOwnerId = order.getShopId();
-                    if (shopOwnerId != null) {
-                        String shopNotificationMessage = "A customer has cancelled order #" + order.getId() + 
-                                " that was already confirmed. Please check your orders.";
-                        webSocketNotificationService.sendUserNotification(shopOwnerId, shopNotificationMessage);
-                        System.out.println("Sent cancellation notification to shop owner: " + shopOwnerId + 
-                                " for order: " + order.getId());
-                    }
-                }
-                break;
+                return "Order has been cancelled.";
             case "active_waiting_for_cancel_confirmation.":
-                notificationMessage = "Order is waiting for cancellation confirmation.";
-                break;
+                return "Order is waiting for cancellation confirmation.";
             case "completed":
-                notificationMessage = "Order has been completed.";
-                System.out.println("hello! order: " + order);
-                sendOrderReceipt(order);
-                
-                // Process previous no-show fee and items when order is completed
-                if (order.getPreviousNoShowFee() > 0 || order.getPreviousNoShowItems() > 0) {
-                    System.out.println("Processing previous no-show charges for user: " + order.getUid());
-                    
-                    // Get all no-show orders for this user
-                    List<OrderEntity> noShowOrders = orderRepository.findByUidAndStatus(order.getUid(), "no-show");
-                    
-                    if (!noShowOrders.isEmpty()) {
-                        // Get the most recent no-show order
-                        OrderEntity mostRecentNoShowOrder = noShowOrders.stream()
-                                .max(Comparator.comparing(OrderEntity::getCreatedAt))
-                                .orElse(null);
-                        
-                        if (mostRecentNoShowOrder != null) {
-                            // Calculate total no-show charges
-                            float totalNoShowCharges = order.getPreviousNoShowFee() + order.getPreviousNoShowItems();
-                            
-                            System.out.println("📊 Previous no-show charges collected: ₱" + totalNoShowCharges);
-                            System.out.println("   - Delivery fee: ₱" + order.getPreviousNoShowFee());
-                            System.out.println("   - Items cost: ₱" + order.getPreviousNoShowItems());
-                            System.out.println("   - Current order payment method: " + order.getPaymentMethod());
-                            
-                            // Check the payment method of the CURRENT order
-                            if ("gcash".equalsIgnoreCase(order.getPaymentMethod())) {
-                                // GCash: Check if original no-show was COD or GCash
-                                if ("cash".equalsIgnoreCase(mostRecentNoShowOrder.getPaymentMethod())) {
-                                    // Original was COD, dasher was already paid immediately
-                                    System.out.println("   - 💳 GCash payment: Funds stay with admin (reimbursing admin for COD no-show already paid to dasher)");
-                                } else {
-                                    // Original was GCash, dasher will be reimbursed by admin separately
-                                    System.out.println("   - 💳 GCash payment: Funds stay with admin (dasher will be reimbursed separately for GCash no-show)");
-                                }
-                            } else if ("cash".equalsIgnoreCase(order.getPaymentMethod())) {
-                                // COD: Check if original no-show was COD or GCash
-                                if ("cash".equalsIgnoreCase(mostRecentNoShowOrder.getPaymentMethod())) {
-                                    // Original was COD, dasher was already paid immediately at time of no-show
-                                    System.out.println("   - 💵 COD payment: Original dasher was paid immediately (COD no-show)");
-                                    System.out.println("   - Current dasher must remit ₱" + totalNoShowCharges + " to admin");
-                                } else {
-                                    // Original was GCash, dasher was NOT paid yet, pay them now
-                                    if (mostRecentNoShowOrder.getDasherId() != null) {
-                                        DasherEntity originalDasher = dasherRepository.findById(mostRecentNoShowOrder.getDasherId()).orElse(null);
-                                        if (originalDasher != null) {
-                                            originalDasher.setWallet(originalDasher.getWallet() + totalNoShowCharges);
-                                            dasherRepository.save(originalDasher);
-                                            System.out.println("   - 💵 COD payment: Paid original dasher ₱" + totalNoShowCharges + " (GCash no-show, now paid via COD)");
-                                        }
-                                    }
-                                }
-                            }
-                            
-                            // Add a note to the order for accounting purposes
-                            String noteAddition = "\n[System: Previous no-show charges of ₱" + 
-                                    order.getPreviousNoShowFee() + " (delivery) + ₱" +
-                                    order.getPreviousNoShowItems() + " (items) = ₱" + totalNoShowCharges +
-                                    " collected via " + order.getPaymentMethod().toUpperCase() + ". " +
-                                    "Original no-show order: " + mostRecentNoShowOrder.getId() + " (" + 
-                                    mostRecentNoShowOrder.getPaymentMethod().toUpperCase() + ")]";
-                                    
-                            String currentNote = order.getNote();
-                            order.setNote(currentNote != null ? currentNote + noteAddition : noteAddition);
-                        }
-                        
-                        // Mark all no-show orders as resolved
-                        for (OrderEntity noShowOrder : noShowOrders) {
-                            noShowOrder.setStatus("no-show-resolved");
-                            orderRepository.save(noShowOrder);
-                            System.out.println("Marked no-show order " + noShowOrder.getId() + " as resolved");
-                        }
-                    }
-                }
-                break;
+                return "Order has been completed.";
             case "active_waiting_for_shop_cancel_confirmation":
-                notificationMessage = "Your order is being cancelled by the shop. Please hold on for confirmation.";
-                break;
+                return "Your order is being cancelled by the shop. Please hold on for confirmation.";
             default:
-                notificationMessage = "Order status updated to " + status + ".";
-                break;
+                return "Order status updated to " + status + ".";
         }
-        // Send notification when order status is updated
-        notificationController.sendNotification(notificationMessage);
     }
 
     private void sendOrderReceipt(OrderEntity order) {
@@ -358,66 +433,41 @@ public class OrderService {
     }
 
     public ResponseEntity<Map<String, Object>> assignDasher(String orderId, String dasherId) {
-        Optional<OrderEntity> orderOptional = orderRepository.findById(orderId);
-        if (orderOptional.isEmpty()) {
-            return ResponseEntity.status(HttpStatus.NOT_FOUND)
-                    .body(Map.of("message", "Order not found", "success", false));
+        // Claim the dasher's current-order slot first; a single insert that fails
+        // if they are still on another delivery
+        if (!dasherService.claimOrderSlot(dasherId, orderId)) {
+            return ResponseEntity.badRequest().body(Map.of("message", "Dasher has an ongoing order", "success", false));
         }
 
-        OrderEntity order = orderOptional.get();
-        if (order.getDasherId() != null && !order.getDasherId().equals(dasherId)) {
-            return ResponseEntity.badRequest()
-                    .body(Map.of("message", "Order is already assigned to another dasher", "success", false));
-        }
-        
-        // Allow dasher assignment for orders in various active states
-        // This supports shops preparing orders proactively before dasher assignment
-        String currentStatus = order.getStatus();
-        boolean isValidForAssignment = currentStatus.equals("active_waiting_for_dasher") ||
-                                      currentStatus.equals("active_shop_confirmed") ||
-                                      currentStatus.equals("active_preparing") ||
-                                      currentStatus.equals("active_ready_for_pickup");
-        
-        if (!isValidForAssignment) {
-            return ResponseEntity.badRequest()
-                    .body(Map.of("message", "Order status '" + currentStatus + "' is not valid for dasher assignment", "success", false));
-        }
-
-        List<OrderEntity> dasherOrders = orderRepository.findByDasherId(dasherId);
-        // Check if dasher has an ongoing order
-        // Exclude orders that are waiting for no-show confirmation or are dasher no-shows
-        // as these are essentially completed/disputed orders, not active deliveries
-        boolean ongoingOrderExists = dasherOrders.stream()
-                .anyMatch(dasherOrder -> {
-                    String status = dasherOrder.getStatus();
-                    return status.startsWith("active") 
-                        && !status.equals("active_waiting_for_no_show_confirmation")
-                        && !status.equals("dasher-no-show");
-                });
-
-        if (ongoingOrderExists) {
-            return ResponseEntity.badRequest().body(Map.of("message", "Dasher has an ongoing order", "success", false));
+        // Claim the order itself - exactly one conditional update can win it.
+        // Normal flow moves the order to active_toShop. If the shop is already
+        // preparing or ready, only the dasher is set and the shop's status is kept.
+        Criteria unassigned = Criteria.where("dasherId").in(null, "", dasherId);
+        OrderEntity savedOrder = orderStateMachine.tryTransition(orderId,
+                        List.of("active_waiting_for_dasher", "active_shop_confirmed"), unassigned,
+                        "active_toShop", new Update().set("dasherId", dasherId))
+                .map(OrderStateMachine.Result::order)
+                .or(() -> orderStateMachine.updateIf(orderId,
+                        new Criteria().andOperator(
+                                Criteria.where("status").in("active_preparing", "active_ready_for_pickup"),
+                                unassigned),
+                        new Update().set("dasherId", dasherId)))
+                .orElse(null);
+
+        if (savedOrder == null) {
+            return rejectDasherClaim(orderId, dasherId);
         }
+        savedOrder.setDasherId(dasherId);
+        System.out.println("✅ Dasher " + dasherId + " claimed order " + orderId + " (" + savedOrder.getStatus() + ")");
+
+        // Everyone else drops the order from their incoming list
+        webSocketNotificationService.sendOrderTakenToDashers(orderId, dasherId);
+        dispatchBoardService.remove(orderId);
 
         // Fetch dasher details
         Optional<DasherEntity> dasherOptional = dasherRepository.findById(dasherId);
         String dasherName = dasherOptional.map(DasherEntity::getGcashName).orElse("Unknown Dasher");
 
-        order.setDasherId(dasherId);
-        
-        // Only update status if shop hasn't already progressed the order
-        // If shop already preparing or ready, keep their status
-        if (currentStatus.equals("active_preparing") || currentStatus.equals("active_ready_for_pickup")) {
-            // Keep shop's status - they've already progressed
-            System.out.println("✅ Keeping shop's status: " + currentStatus + " for order: " + orderId);
-        } else {
-            // Normal flow - set to toShop
-            order.setStatus("active_toShop");
-            System.out.println("✅ Setting status to active_toShop for order: " + orderId);
-        }
-        
-        OrderEntity savedOrder = orderRepository.save(order);
-
         // Send WebSocket notifications for order and dasher updates
         webSocketNotificationService.sendOrderUpdate(savedOrder);
         
@@ -435,46 +485,122 @@ public class OrderService {
         return ResponseEntity.ok(Map.of("message", "Dasher assigned successfully", "success", true));
     }
 
+    private ResponseEntity<Map<String, Object>> rejectDasherClaim(String orderId, String dasherId) {
+        Optional<OrderEntity> orderOptional = orderRepository.findById(orderId);
+        if (orderOptional.isEmpty()) {
+            dasherService.releaseOrderSlot(dasherId, orderId);
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(Map.of("message", "Order not found", "success", false));
+        }
+
+        OrderEntity order = orderOptional.get();
+        if (dasherId.equals(order.getDasherId())) {
+            // Already ours but past the assignable statuses - keep the slot
+            return ResponseEntity.badRequest()
+                    .body(Map.of("message", "Order status '" + order.getStatus() + "' is not valid for dasher assignment", "success", false));
+        }
+
+        dasherService.releaseOrderSlot(dasherId, orderId);
+        if (order.getDasherId() != null && !order.getDasherId().isEmpty()) {
+            webSocketNotificationService.sendOrderTakenToSpecificDasher(dasherId, orderId);
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(Map.of("message", "Order has already been taken by another dasher", "success", false));
+        }
+        return ResponseEntity.badRequest()
+                .body(Map.of("message", "Order status '" + order.getStatus() + "' is not valid for dasher assignment", "success", false));
+    }
+
+    // History reads merge the hot collection with orders_archive
+
     public List<OrderEntity> getOrdersByUserId(String uid) {
-        return orderRepository.findByUid(uid);
+        return withArchived(orderRepository.findByUid(uid), Criteria.where("uid").is(uid));
     }
 
     public List<OrderEntity> getOrdersByShopId(String shopId) {
-        return orderRepository.findByShopId(shopId);
+        return withArchived(orderRepository.findByShopId(shopId), Criteria.where("shopId").is(shopId));
     }
 
     public List<OrderEntity> getActiveOrders() {
-        return orderRepository.findByStatusStartingWith("active_waiting_for_dasher");
+        return mongoTemplate.find(new Query(Criteria.where("phase").is(OrderPhase.ACTIVE)
+                .and("statusCode").is(OrderStatus.ACTIVE_WAITING_FOR_DASHER)), OrderEntity.class);
     }
 
     public List<OrderEntity> getOrdersByDasherId(String dasherId) {
-        return orderRepository.findByDasherId(dasherId);
+        return withArchived(orderRepository.findByDasherId(dasherId), Criteria.where("dasherId").is(dasherId));
     }
 
-    public List<OrderEntity> getOrdersWaitingForDasher() {
+    // Summary variants for list screens: same orders, list-view fields only
+
+    public List<OrderEntity> getOrderSummariesByUserId(String uid) {
+        return summariesWithArchived(Criteria.where("uid").is(uid));
+    }
+
+    public List<OrderEntity> getOrderSummariesByShopId(String shopId) {
+        return summariesWithArchived(Criteria.where("shopId").is(shopId));
+    }
+
+    public List<OrderEntity> getOrderSummariesByDasherId(String dasherId) {
+        return summariesWithArchived(Criteria.where("dasherId").is(dasherId));
+    }
+
+    public List<OrderEntity> getPastOrderSummaries() {
+        return summariesWithArchived(Criteria.where("phase").nin(OrderPhase.OPEN), pastOrdersArchiveLimit);
+    }
+
+    private List<OrderEntity> summariesWithArchived(Criteria criteria) {
+        return summariesWithArchived(criteria, 0);
+    }
+
+    private List<OrderEntity> summariesWithArchived(Criteria criteria, int archiveLimit) {
+        return mergeHistory(orderRepository.findOrderSummaries(criteria),
+                orderRepository.findOrderSummaries(criteria, OrderArchiveService.ARCHIVE_COLLECTION, archiveLimit));
+    }
+
+    private List<OrderEntity> withArchived(List<OrderEntity> hot, Criteria criteria) {
+        return mergeHistory(hot, orderArchiveService.findArchived(criteria));
+    }
+
+    // Hot orders first; an order caught mid-move can briefly exist in both tiers
+    private List<OrderEntity> mergeHistory(List<OrderEntity> hot, List<OrderEntity> archived) {
+        if (archived.isEmpty()) {
+            return hot;
+        }
+        Set<String> hotIds = hot.stream().map(OrderEntity::getId).collect(Collectors.toSet());
+        List<OrderEntity> merged = new ArrayList<>(hot);
+        for (OrderEntity order : archived) {
+            if (!hotIds.contains(order.getId())) {
+                merged.add(order);
+            }
+        }
+        return merged;
+    }
+
+    public List<OrderEntity> getOngoingOrderSummaries() {
+        return orderRepository.findOrderSummaries(ongoingCriteria());
+    }
+
+    // Open orders a dasher has taken on, past shop approval; uses the {phase, dasherId} index
+    private static Criteria ongoingCriteria() {
+        return Criteria.where("phase").in(OrderPhase.OPEN)
+                .and("dasherId").ne(null)
+                .and("statusCode").ne(OrderStatus.ACTIVE_WAITING_FOR_SHOP);
+    }
+
+    public List<OrderEntity> getOrdersWaitingForDasher(String campusId) {
         // Return ALL active orders without a dasher assigned, regardless of status
         // This allows shops to prepare orders proactively before dasher assignment
-        // Filter by: status starts with "active" AND dasherId is null
         // EXCLUDE orders still waiting for shop approval (active_waiting_for_shop)
-        List<OrderEntity> allActiveOrders = orderRepository.findByStatusStartingWith("active");
-        
-        // Filter to only include orders without a dasher assigned
-        // AND exclude orders waiting for shop approval
-        return allActiveOrders.stream()
-                .filter(order -> {
-                    boolean hasNoDasher = order.getDasherId() == null || order.getDasherId().isEmpty();
-                    boolean notWaitingForShop = !order.getStatus().equals("active_waiting_for_shop");
-                    return hasNoDasher && notWaitingForShop;
-                })
-                .collect(Collectors.toList());
+        // Served from the in-memory dispatch board; campusId null means every campus
+        return dispatchBoardService.getWaitingOrders(campusId);
+    }
+
+    public Map<String, Object> getDispatchBoardChanges(String campusId, long sinceVersion) {
+        return dispatchBoardService.getChangesSince(campusId, sinceVersion);
     }
 
     public List<OrderEntity> getActiveOrdersForDasher(String uid) {
-        List<OrderEntity> activeOrders = orderRepository.findByDasherIdAndStatusStartingWith(new String(uid), "active");
-        // Filter out orders waiting for no-show confirmation as these are under admin review
-        return activeOrders.stream()
-                .filter(order -> !order.getStatus().equals("active_waiting_for_no_show_confirmation"))
-                .collect(Collectors.toList());
+        // Orders waiting for no-show confirmation are DISPUTED (under admin review), not ACTIVE
+        return orderRepository.findByDasherIdAndPhase(uid, OrderPhase.ACTIVE);
     }
 
     public List<OrderEntity> getNoShowOrdersForDasher(String dasherId) {
@@ -494,21 +620,119 @@ public class OrderService {
         return orders;
     }
 
+    /**
+     * Returns one keyset page of orders, filtered inside MongoDB.
+     *
+     * @param statusGroup "active", "past" or "all"
+     * @param campusId restricts to orders from shops on this campus
+     * @param shopId restricts to a single shop
+     * @param from inclusive lower bound on createdAt
+     * @param to exclusive upper bound on createdAt
+     * @param cursor opaque cursor returned as nextCursor by the previous page
+     * @param limit page size, clamped to OrderPageQuery.MAX_LIMIT
+     */
+    public Map<String, Object> getOrderPage(String statusGroup, String campusId, String shopId,
+                                            LocalDateTime from, LocalDateTime to, String cursor, Integer limit,
+                                            boolean summary) {
+        String group = statusGroup == null || statusGroup.isEmpty() ? OrderPageQuery.GROUP_ALL : statusGroup;
+        if (!group.equals(OrderPageQuery.GROUP_ALL)
+                && !group.equals(OrderPageQuery.GROUP_ACTIVE)
+                && !group.equals(OrderPageQuery.GROUP_PAST)) {
+            throw new IllegalArgumentException("Unknown status group: " + statusGroup);
+        }
+        int pageSize = OrderPageQuery.clampLimit(limit);
+
+        // Orders don't carry a campusId, so resolve the campus to its shops first
+        List<String> shopIds = null;
+        if (campusId != null && !campusId.isEmpty()) {
+            shopIds = shopRepository.findByCampusId(campusId).stream()
+                    .map(ShopEntity::getId)
+                    .collect(Collectors.toList());
+            if (shopId != null && !shopId.isEmpty()) {
+                shopIds = shopIds.contains(shopId) ? List.of(shopId) : List.of();
+            }
+        } else if (shopId != null && !shopId.isEmpty()) {
+            shopIds = List.of(shopId);
+        }
+
+        LocalDateTime afterCreatedAt = null;
+        String afterId = null;
+        if (cursor != null && !cursor.isEmpty()) {
+            String[] position = OrderPageQuery.decodeCursor(cursor);
+            afterCreatedAt = LocalDateTime.parse(position[0]);
+            afterId = position[1];
+        }
+
+        List<OrderEntity> orders;
+        if (shopIds != null && shopIds.isEmpty()) {
+            orders = new ArrayList<>();
+        } else {
+            orders = orderRepository.findOrderPage(OrderPageQuery.builder()
+                    .statusGroup(group)
+                    .shopIds(shopIds)
+                    .from(from)
+                    .to(to)
+                    .afterCreatedAt(afterCreatedAt)
+                    .afterId(afterId)
+                    .limit(pageSize)
+                    .summary(summary)
+                    // Archived orders are all terminal, so only the active group can skip them
+                    .archiveCollection(group.equals(OrderPageQuery.GROUP_ACTIVE) ? null : OrderArchiveService.ARCHIVE_COLLECTION)
+                    .build());
+        }
+
+        boolean hasMore = orders.size() > pageSize;
+        if (hasMore) {
+            orders = orders.subList(0, pageSize);
+        }
+        String nextCursor = hasMore ? OrderPageQuery.encodeCursor(orders.get(orders.size() - 1)) : null;
+
+        Map<String, Object> page = new HashMap<>();
+        page.put("orders", orders);
+        page.put("nextCursor", nextCursor);
+        page.put("hasMore", hasMore && nextCursor != null);
+        page.put("limit", pageSize);
+        return page;
+    }
+
+    public List<OrderEntity> getOrdersByStatusGroup(String statusGroup) {
+        List<OrderEntity> orders = orderRepository.findByStatusGroup(statusGroup);
+        if (!OrderPageQuery.GROUP_PAST.equals(statusGroup)) {
+            return orders;
+        }
+        // Unpaged, so capped like /past-orders; GET /api/orders?statusGroup=past pages through all of it
+        return mergeHistory(orders, orderArchiveService.findArchived(new Criteria(), pastOrdersArchiveLimit));
+    }
+
+    // Completed orders per dasher across both tiers, for the leaderboards
+    public Map<String, Long> getCompletedOrderCountsByDasher() {
+        return orderRepository.countBy("dasherId", Criteria.where("status").is("completed"), OrderArchiveService.ARCHIVE_COLLECTION);
+    }
+
     public ResponseEntity<?> removeDasherFromOrder(String orderId) {
-        Optional<OrderEntity> orderOptional = orderRepository.findById(orderId);
-        if (orderOptional.isEmpty()) {
+        // Active orders go back to 'active_waiting_for_dasher' in the same update that clears dasherId
+        Update release = new Update().set("dasherId", null);
+        OrderEntity before;
+        try {
+            before = orderStateMachine.transition(orderId, "active_waiting_for_dasher", release).order();
+        } catch (OrderConflictException e) {
+            // Past pickup the dasher holds the food, so only disputed or finished orders just lose the dasher
+            before = orderStateMachine.updateIf(orderId, Criteria.where("phase").ne(OrderPhase.ACTIVE),
+                    new Update().set("dasherId", null)).orElse(null);
+            if (before == null && orderRepository.existsById(orderId)) {
+                return ResponseEntity.status(HttpStatus.CONFLICT)
+                        .body(Map.of("message", "Order is already picked up; its dasher cannot be removed", "success", false));
+            }
+        } catch (OrderNotFoundException e) {
+            before = null;
+        }
+        if (before == null) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND)
                     .body(Map.of("message", "Order not found", "success", false));
         }
-        OrderEntity order = orderOptional.get();
-        // Set dasherId to null
-        order.setDasherId(null);
-        // Optionally, update the order status if necessary
-        // For example, set the status back to 'active_waiting_for_dasher' if needed
-        if (order.getStatus().startsWith("active")) {
-            order.setStatus("active_waiting_for_dasher");
-        }
-        orderRepository.save(order);
+        dasherService.releaseOrderSlot(before.getDasherId(), orderId);
+        before.setDasherId(null);
+        dispatchBoardService.onOrderChanged(before);
         return ResponseEntity.ok(Map.of("message", "Dasher removed successfully", "success", true));
     }
 
@@ -517,6 +741,13 @@ public class OrderService {
     }
 
     public List<OrderEntity> getPastOrders(String status) {
+        // Only the "active" prefix is used by callers; filter it inside MongoDB
+        if ("active".equals(status)) {
+            // Everything archived is terminal, so only the newest archived orders are added;
+            // the archive grows without bound and older history is read per user, shop or dasher
+            return mergeHistory(orderRepository.findByStatusGroup(OrderPageQuery.GROUP_PAST),
+                    orderArchiveService.findArchived(new Criteria(), pastOrdersArchiveLimit));
+        }
         List<OrderEntity> allOrders = orderRepository.findAll();
         return allOrders.stream()
                 .filter(order -> !order.getStatus().startsWith(status))
@@ -524,19 +755,13 @@ public class OrderService {
     }
 
     public List<OrderEntity> getOngoingOrders() {
-        return orderRepository.findByStatusStartingWith("active")
-                .stream()
-                .filter(order -> order.getDasherId() != null && !order.getStatus().equals("active_waiting_for_shop"))
-                .collect(Collectors.toList());
+        return mongoTemplate.find(new Query(ongoingCriteria()), OrderEntity.class);
     }
 
     public List<String> getShopIdsSortedByOrderCount() {
-        // Get all orders
-        List<OrderEntity> orders = orderRepository.findAll();
-
-        // Group orders by shopId and count them
-        Map<String, Long> orderCountByShopId = orders.stream()
-                .collect(Collectors.groupingBy(OrderEntity::getShopId, Collectors.counting()));
+        // Counted inside MongoDB over hot and archived orders
+        Map<String, Long> orderCountByShopId = orderRepository.countBy("shopId", new Criteria(),
+                OrderArchiveService.ARCHIVE_COLLECTION);
 
         // Sort the shopIds by the order count in descending order
         return orderCountByShopId.entrySet().stream()
@@ -546,14 +771,8 @@ public class OrderService {
     }
 
     public boolean updateOrderMobileNum(String orderId, String mobileNum) {
-        Optional<OrderEntity> orderOptional = orderRepository.findById(orderId);
-        if (orderOptional.isPresent()) {
-            OrderEntity order = orderOptional.get();
-            order.setMobileNum(mobileNum);
-            orderRepository.save(order);
-            return true;
-        }
-        return false;
+        // $set only the field so a concurrent status transition isn't overwritten
+        return orderStateMachine.updateIf(orderId, null, new Update().set("mobileNum", mobileNum)).isPresent();
     }
     
     public List<OrderEntity> getOrdersByUidAndStatus(String uid, String status) {
@@ -563,47 +782,27 @@ public class OrderService {
     // These fields need to be with the other autowired fields at the top of the class
     
     public void updateOrderStatusWithProof(String orderId, String status, MultipartFile proofImage, MultipartFile locationProofImage) throws IOException {
-        Optional<OrderEntity> orderOptional = orderRepository.findById(orderId);
-
-        if (orderOptional.isEmpty()) {
+        if (!orderRepository.existsById(orderId)) {
             throw new RuntimeException("Order not found");
         }
 
-        OrderEntity order = orderOptional.get();
-        
-        // Store the user ID for later reference - we'll need to update their record
-        String userId = order.getUid();
-        
-        // Initialize URLs for proof images
-        String noShowProofUrl = null;
-        String locationProofUrl = null;
-
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
         String formattedTimestamp = LocalDateTime.now().format(formatter);
-        
-        // Upload no-show proof image
-        if (proofImage != null && !proofImage.isEmpty()) {
-            String sanitizedFileName = "noShowProof/" + formattedTimestamp + "_" + orderId;
-            BlobClient blobClient = blobServiceClient
-                    .getBlobContainerClient(containerName)
-                    .getBlobClient(sanitizedFileName);
-            
-            blobClient.upload(proofImage.getInputStream(), proofImage.getSize(), true);
-            noShowProofUrl = blobClient.getBlobUrl();
-            order.setNoShowProofImage(noShowProofUrl);
+
+        // Spool the images; they upload in the background once the status change is committed
+        List<ProofUploadService.ProofUpload> uploads = new ArrayList<>();
+        boolean hasNoShowProof = proofImage != null && !proofImage.isEmpty();
+        if (hasNoShowProof) {
+            uploads.add(new ProofUploadService.ProofUpload(proofImage, "noShowProof/" + formattedTimestamp + "_" + orderId,
+                    List.of(ProofUploadService.orderField(orderId, "noShowProofImage"),
+                            ProofUploadService.reimbursementField(orderId, "noShowProof"))));
         }
-        
-        // Upload location proof image
         if (locationProofImage != null && !locationProofImage.isEmpty()) {
-            String sanitizedFileName = "locationProof/" + formattedTimestamp + "_" + orderId;
-            BlobClient blobClient = blobServiceClient
-                    .getBlobContainerClient(containerName)
-                    .getBlobClient(sanitizedFileName);
-            
-            blobClient.upload(locationProofImage.getInputStream(), locationProofImage.getSize(), true);
-            locationProofUrl = blobClient.getBlobUrl();
+            uploads.add(new ProofUploadService.ProofUpload(locationProofImage, "locationProof/" + formattedTimestamp + "_" + orderId,
+                    List.of(ProofUploadService.reimbursementField(orderId, "locationProof"))));
         }
-        
+        List<ProofUploadJob> uploadJobs = proofUploadService.prepare(orderId, uploads);
+
         // Standardize the no-show status format to ensure consistency
         // We'll use no-show format with hyphen as the standard
         String standardizedStatus = status;
@@ -611,12 +810,25 @@ public class OrderService {
             standardizedStatus = "no-show";
         }
 
-        // Update the order status
-        order.setStatus(standardizedStatus);
-        orderRepository.save(order);
+        // Update the order status and mark the proof as pending, only if the order can still take this status
+        Update proofUpdate = new Update();
+        if (hasNoShowProof) {
+            proofUpdate.addToSet("pendingUploads", "noShowProofImage");
+        }
+        OrderEntity order;
+        try {
+            order = orderStateMachine.transition(orderId, standardizedStatus, proofUpdate).order();
+        } catch (RuntimeException e) {
+            proofUploadService.discard(uploadJobs);
+            throw e;
+        }
+        dispatchBoardService.onOrderChanged(order);
+
+        // Store the user ID for later reference - we'll need to update their record
+        String userId = order.getUid();
         
         // Create reimbursement request for admin approval (no immediate payment)
-        if (("no_show".equals(status) || "no-show".equals(status)) && noShowProofUrl != null) {
+        if (("no_show".equals(status) || "no-show".equals(status)) && hasNoShowProof) {
             // Check if reimbursement already exists for this order
             Optional<ReimburseEntity> existingReimburse = reimburseRepository.findByOrderId(orderId);
             if (!existingReimburse.isPresent()) {
@@ -636,12 +848,8 @@ public class OrderService {
                 reimburse.setStatus("pending"); // Always pending, waiting for admin approval
                 reimburse.setCreatedAt(LocalDateTime.now());
                 
-                // Set proof URLs
-                reimburse.setNoShowProof(noShowProofUrl);
-                if (locationProofUrl != null) {
-                    reimburse.setLocationProof(locationProofUrl);
-                }
-                
+                // Proof URLs are filled in by ProofUploadService once the uploads finish
+
                 // Save the reimbursement entity
                 reimburseRepository.save(reimburse);
                 
@@ -658,6 +866,7 @@ public class OrderService {
                 System.out.println("Reimbursement already exists for order: " + orderId);
             }
         }
+        proofUploadService.start(uploadJobs);
         
         // Send notification when order status is updated to no-show
         notificationController.sendNotification("You did not show up for the delivery. Proof has been uploaded.");
@@ -686,6 +895,9 @@ public class OrderService {
         Optional<OrderEntity> orderOptional = orderRepository.findById(orderId);
         if (orderOptional.isPresent()) {
             orderRepository.deleteById(orderId);
+            dispatchBoardService.remove(orderId);
+            orderVersionService.orderChanged(orderOptional.get());
+            orderEventService.appendDeleted(orderOptional.get());
             System.out.println("Order with ID " + orderId + " deleted from database");
             return true;
         } else {
@@ -714,60 +926,54 @@ public class OrderService {
             throw new RuntimeException("No dasher assigned to this order");
         }
         
-        // Initialize URLs for proof images
-        String customerNoShowProofUrl = null;
-        String customerGcashQrUrl = null;
-
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
         String formattedTimestamp = LocalDateTime.now().format(formatter);
-        
-        // Upload customer no-show proof image
+
+        // Spool the images; they upload in the background once the report is committed
+        List<ProofUploadService.ProofUpload> uploads = new ArrayList<>();
+        List<String> pendingFields = new ArrayList<>();
         if (proofImage != null && !proofImage.isEmpty()) {
-            String sanitizedFileName = "customerNoShowProof/" + formattedTimestamp + "_" + orderId;
-            BlobClient blobClient = blobServiceClient
-                    .getBlobContainerClient(containerName)
-                    .getBlobClient(sanitizedFileName);
-            
-            blobClient.upload(proofImage.getInputStream(), proofImage.getSize(), true);
-            customerNoShowProofUrl = blobClient.getBlobUrl();
-            order.setCustomerNoShowProofImage(customerNoShowProofUrl);
-            System.out.println("✅ Customer no-show proof uploaded successfully: " + customerNoShowProofUrl);
+            uploads.add(new ProofUploadService.ProofUpload(proofImage, "customerNoShowProof/" + formattedTimestamp + "_" + orderId,
+                    List.of(ProofUploadService.orderField(orderId, "customerNoShowProofImage"),
+                            ProofUploadService.reimbursementField(orderId, "noShowProof"))));
+            pendingFields.add("customerNoShowProofImage");
         } else {
             System.out.println("⚠️ No customer proof image received or it's empty");
         }
-        
-        // Upload customer GCash QR code
         if (gcashQr != null && !gcashQr.isEmpty()) {
-            String sanitizedGcashFileName = "customerGcashQr/" + formattedTimestamp + "_" + orderId;
-            BlobClient gcashBlobClient = blobServiceClient
-                    .getBlobContainerClient(containerName)
-                    .getBlobClient(sanitizedGcashFileName);
-            
-            gcashBlobClient.upload(gcashQr.getInputStream(), gcashQr.getSize(), true);
-            customerGcashQrUrl = gcashBlobClient.getBlobUrl();
-            order.setCustomerNoShowGcashQr(customerGcashQrUrl);
-            System.out.println("✅ Customer GCash QR uploaded successfully: " + customerGcashQrUrl);
+            uploads.add(new ProofUploadService.ProofUpload(gcashQr, "customerGcashQr/" + formattedTimestamp + "_" + orderId,
+                    List.of(ProofUploadService.orderField(orderId, "customerNoShowGcashQr"),
+                            ProofUploadService.reimbursementField(orderId, "gcashQr"))));
+            pendingFields.add("customerNoShowGcashQr");
         } else {
             System.out.println("⚠️ No GCash QR image received or it's empty");
         }
+        List<ProofUploadJob> uploadJobs = proofUploadService.prepare(orderId, uploads);
+
+        // Update the order status to waiting for no-show confirmation (pending admin review),
+        // conditional on the order still being in a state a no-show report can follow
+        Update reportUpdate = new Update();
+        if (!pendingFields.isEmpty()) {
+            reportUpdate.addToSet("pendingUploads").each(pendingFields.toArray());
+        }
 
-        // Update the order status to waiting for no-show confirmation (pending admin review)
-        order.setStatus("active_waiting_for_no_show_confirmation");
-        
         // Keep the dasherId in the order for admin tracking purposes
         // The dasher is released through status update below, not by removing dasherId
-        OrderEntity savedOrder = orderRepository.save(order);
+        try {
+            orderStateMachine.transition(orderId, "active_waiting_for_no_show_confirmation", reportUpdate);
+        } catch (RuntimeException e) {
+            proofUploadService.discard(uploadJobs);
+            throw e;
+        }
+        dispatchBoardService.remove(orderId);
         
         // Update dasher status back to 'active' so they can accept new orders
         try {
-            Optional<DasherEntity> dasherOptional = dasherRepository.findById(dasherId);
-            if (dasherOptional.isPresent()) {
-                DasherEntity dasher = dasherOptional.get();
-                
-                // Only update status if they were in 'ongoing order' state
-                if ("ongoing order".equals(dasher.getStatus())) {
-                    dasher.setStatus("active");
-                    dasherRepository.save(dasher);
+            if (dasherRepository.existsById(dasherId)) {
+                // Only update status if they were in 'ongoing order' state; $set so a wallet $inc isn't overwritten
+                if (mongoTemplate.updateFirst(
+                        new Query(Criteria.where("_id").is(dasherId).and("status").is("ongoing order")),
+                        new Update().set("status", "active"), DasherEntity.class).getMatchedCount() > 0) {
                     System.out.println("Dasher status updated to 'active' after customer no-show report: " + dasherId);
                 }
                 
@@ -797,14 +1003,8 @@ public class OrderService {
             reimburse.setCreatedAt(LocalDateTime.now());
             reimburse.setType("customer-report"); // Mark as customer-reported no-show
             
-            // Set proof URLs
-            if (customerNoShowProofUrl != null) {
-                reimburse.setNoShowProof(customerNoShowProofUrl);
-            }
-            if (customerGcashQrUrl != null) {
-                reimburse.setGcashQr(customerGcashQrUrl);
-            }
-            
+            // Proof URLs are filled in by ProofUploadService once the uploads finish
+
             // Save the reimbursement entity
             reimburseRepository.save(reimburse);
             
@@ -812,6 +1012,7 @@ public class OrderService {
         } else {
             System.out.println("Reimbursement already exists for order: " + orderId);
         }
+        proofUploadService.start(uploadJobs);
         
         // Record offense for the dasher
         try {
@@ -833,35 +1034,22 @@ public class OrderService {
     }
     
     public void uploadDeliveryProof(String orderId, MultipartFile proofImage) throws IOException {
-        Optional<OrderEntity> orderOptional = orderRepository.findById(orderId);
-
-        if (orderOptional.isEmpty()) {
+        if (!orderRepository.existsById(orderId)) {
             throw new RuntimeException("Order not found");
         }
 
-        OrderEntity order = orderOptional.get();
-        
-        // Initialize URL for proof image
-        String deliveryProofUrl = null;
-
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
         String formattedTimestamp = LocalDateTime.now().format(formatter);
         
-        // Upload delivery proof image
+        // Queue the delivery proof; the URL is written to the order when the upload finishes
         if (proofImage != null && !proofImage.isEmpty()) {
-            String sanitizedFileName = "deliveryProof/" + formattedTimestamp + "_" + orderId;
-            BlobClient blobClient = blobServiceClient
-                    .getBlobContainerClient(containerName)
-                    .getBlobClient(sanitizedFileName);
-            
-            blobClient.upload(proofImage.getInputStream(), proofImage.getSize(), true);
-            deliveryProofUrl = blobClient.getBlobUrl();
-            order.setDeliveryProofImage(deliveryProofUrl);
+            List<ProofUploadJob> uploadJobs = proofUploadService.prepare(orderId, List.of(
+                    new ProofUploadService.ProofUpload(proofImage, "deliveryProof/" + formattedTimestamp + "_" + orderId,
+                            List.of(ProofUploadService.orderField(orderId, "deliveryProofImage")))));
+            orderStateMachine.updateIf(orderId, null, new Update().addToSet("pendingUploads", "deliveryProofImage"));
+            proofUploadService.start(uploadJobs);
             
-            // Save the order with the delivery proof
-            orderRepository.save(order);
-            
-            System.out.println("Uploaded delivery proof for order: " + orderId);
+            System.out.println("Queued delivery proof upload for order: " + orderId);
         } else {
             throw new RuntimeException("Proof image is required");
         }
@@ -892,21 +1080,18 @@ public class OrderService {
             DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
             String formattedTimestamp = LocalDateTime.now().format(formatter);
             
-            String sanitizedFileName = "dasherCounterProof/" + formattedTimestamp + "_" + orderId;
-            BlobClient blobClient = blobServiceClient
-                    .getBlobContainerClient(containerName)
-                    .getBlobClient(sanitizedFileName);
-            
-            blobClient.upload(counterProofImage.getInputStream(), counterProofImage.getSize(), true);
-            String counterProofUrl = blobClient.getBlobUrl();
-            
-            // If delivery proof already exists, keep it; otherwise set it
-            if (order.getDeliveryProofImage() == null || order.getDeliveryProofImage().isEmpty()) {
-                order.setDeliveryProofImage(counterProofUrl);
-            }
-            orderRepository.save(order);
+            // If delivery proof already exists, keep it; otherwise it is set once the upload finishes
+            ProofUploadJob.Target deliveryProof = ProofUploadService.orderField(orderId, "deliveryProofImage");
+            deliveryProof.setOnlyIfEmpty(true);
+            List<ProofUploadJob> uploadJobs = proofUploadService.prepare(orderId, List.of(
+                    new ProofUploadService.ProofUpload(counterProofImage, "dasherCounterProof/" + formattedTimestamp + "_" + orderId,
+                            List.of(deliveryProof))));
+            orderStateMachine.updateIf(orderId,
+                    Criteria.where("deliveryProofImage").in(null, ""),
+                    new Update().addToSet("pendingUploads", "deliveryProofImage"));
+            proofUploadService.start(uploadJobs);
             
-            System.out.println("Dasher counter-proof uploaded for order: " + orderId);
+            System.out.println("Queued dasher counter-proof upload for order: " + orderId);
             
             // Notify customer that dasher has responded
             try {
@@ -0,0 +1,351 @@
+package com.capstone.campuseats.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import com.capstone.campuseats.Entity.OrderEntity;
+import com.capstone.campuseats.Entity.OrderPhase;
+import com.capstone.campuseats.Entity.OrderStatus;
+import com.capstone.campuseats.config.OrderConflictException;
+import com.capstone.campuseats.config.OrderNotFoundException;
+
+/**
+ * Declares which order status transitions are legal and applies them as a
+ * single conditional findAndModify, so concurrent shop, dasher and customer
+ * actions can't overwrite each other.
+ *
+ * Legal moves are listed explicitly in TRANSITIONS. Shop and dasher steps
+ * run in parallel (a shop may be preparing before a dasher is assigned, and
+ * the dasher then reports toShop), so the pre-pickup statuses may move among
+ * each other. After pickup the order only moves forward. Re-applying the
+ * current status is allowed for ACTIVE and DISPUTED orders, so client
+ * retries are harmless, but never for TERMINAL ones: a repeated "completed"
+ * or "cancelled" is a conflict instead of re-running its side effects.
+ *
+ * Leaving the ACTIVE phase also frees the assigned dasher's order slot.
+ */
+@Service
+public class OrderStateMachine {
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private DasherService dasherService;
+
+    @Autowired
+    private OrderVersionService orderVersionService;
+
+    @Autowired
+    private OrderEventService orderEventService;
+
+    /**
+     * Outcome of a transition: the status the order had before the update and
+     * the order with its new status applied. Other fields set through the
+     * extra Update are only in the database; callers mirror them if needed.
+     */
+    public record Result(String previousStatus, OrderEntity order) {
+    }
+
+    private static final Map<OrderStatus, Set<OrderStatus>> TRANSITIONS = new EnumMap<>(OrderStatus.class);
+
+    static {
+        // Ways out of any status before the food is picked up
+        Set<OrderStatus> cancellations = EnumSet.of(OrderStatus.CANCELLED_BY_CUSTOMER, OrderStatus.CANCELLED_BY_SHOP,
+                OrderStatus.CANCELLED_BY_DASHER, OrderStatus.ACTIVE_WAITING_FOR_CANCEL_CONFIRMATION,
+                OrderStatus.ACTIVE_WAITING_FOR_SHOP_CANCEL_CONFIRMATION);
+        // Shop and dasher progress before pickup, in whichever order the two sides report it
+        Set<OrderStatus> beforePickup = EnumSet.of(OrderStatus.ACTIVE_SHOP_CONFIRMED, OrderStatus.ACTIVE_WAITING_FOR_DASHER,
+                OrderStatus.ACTIVE_TO_SHOP, OrderStatus.ACTIVE_PREPARING, OrderStatus.ACTIVE_READY_FOR_PICKUP);
+        // What can follow once the dasher has reached the customer
+        Set<OrderStatus> atCustomer = EnumSet.of(OrderStatus.ACTIVE_WAITING_FOR_CONFIRMATION, OrderStatus.COMPLETED,
+                OrderStatus.ACTIVE_WAITING_FOR_NO_SHOW_CONFIRMATION, OrderStatus.NO_SHOW);
+
+        allow(OrderStatus.ACTIVE_WAITING_FOR_SHOP, cancellations, OrderStatus.ACTIVE_SHOP_CONFIRMED,
+                OrderStatus.ACTIVE_WAITING_FOR_DASHER, OrderStatus.DECLINED);
+        for (OrderStatus status : beforePickup) {
+            allow(status, beforePickup);
+            allow(status, cancellations, OrderStatus.ACTIVE_PICKED_UP, OrderStatus.ACTIVE_WAITING_FOR_NO_SHOW_CONFIRMATION);
+        }
+        allow(OrderStatus.ACTIVE_PICKED_UP, atCustomer, OrderStatus.ACTIVE_ON_THE_WAY, OrderStatus.ACTIVE_DASHER_ARRIVED,
+                OrderStatus.ACTIVE_DELIVERED, OrderStatus.ACTIVE_WAITING_FOR_CANCEL_CONFIRMATION, OrderStatus.CANCELLED_BY_DASHER);
+        allow(OrderStatus.ACTIVE_ON_THE_WAY, atCustomer, OrderStatus.ACTIVE_DASHER_ARRIVED, OrderStatus.ACTIVE_DELIVERED,
+                OrderStatus.ACTIVE_WAITING_FOR_CANCEL_CONFIRMATION, OrderStatus.CANCELLED_BY_DASHER);
+        allow(OrderStatus.ACTIVE_DASHER_ARRIVED, atCustomer, OrderStatus.ACTIVE_DELIVERED);
+        allow(OrderStatus.ACTIVE_DELIVERED, atCustomer);
+        allow(OrderStatus.ACTIVE_WAITING_FOR_CONFIRMATION, atCustomer);
+        allow(OrderStatus.ACTIVE_WAITING_FOR_CANCEL_CONFIRMATION, Set.of(), OrderStatus.CANCELLED_BY_CUSTOMER,
+                OrderStatus.CANCELLED_BY_DASHER, OrderStatus.REFUNDED);
+        allow(OrderStatus.ACTIVE_WAITING_FOR_SHOP_CANCEL_CONFIRMATION, Set.of(), OrderStatus.CANCELLED_BY_SHOP,
+                OrderStatus.REFUNDED);
+
+        // Admin review of no-show reports ends in one of the outcomes below
+        Set<OrderStatus> reviewOutcomes = EnumSet.of(OrderStatus.COMPLETED, OrderStatus.NO_SHOW, OrderStatus.REFUNDED,
+                OrderStatus.CANCELLED_BY_CUSTOMER, OrderStatus.CANCELLED_BY_DASHER, OrderStatus.CANCELLED_BY_SHOP);
+        allow(OrderStatus.ACTIVE_WAITING_FOR_NO_SHOW_CONFIRMATION, reviewOutcomes, OrderStatus.DASHER_NO_SHOW);
+        allow(OrderStatus.DASHER_NO_SHOW, reviewOutcomes);
+
+        allow(OrderStatus.NO_SHOW, Set.of(), OrderStatus.NO_SHOW_RESOLVED);
+
+        // Unrecognised legacy active statuses can still be finished or cancelled, but not sent back to the shop
+        allow(OrderStatus.OTHER_ACTIVE, cancellations, OrderStatus.ACTIVE_WAITING_FOR_DASHER, OrderStatus.ACTIVE_PICKED_UP,
+                OrderStatus.ACTIVE_ON_THE_WAY, OrderStatus.ACTIVE_DELIVERED, OrderStatus.ACTIVE_WAITING_FOR_CONFIRMATION,
+                OrderStatus.ACTIVE_WAITING_FOR_NO_SHOW_CONFIRMATION, OrderStatus.COMPLETED, OrderStatus.NO_SHOW);
+    }
+
+    private static void allow(OrderStatus from, Set<OrderStatus> targets, OrderStatus... moreTargets) {
+        Set<OrderStatus> allowed = TRANSITIONS.computeIfAbsent(from, status -> EnumSet.noneOf(OrderStatus.class));
+        allowed.addAll(targets);
+        allowed.addAll(Arrays.asList(moreTargets));
+    }
+
+    public static boolean canTransition(OrderStatus from, OrderStatus to) {
+        if (from == to) {
+            return from.getPhase() != OrderPhase.TERMINAL;
+        }
+        return TRANSITIONS.getOrDefault(from, Set.of()).contains(to);
+    }
+
+    /**
+     * Moves the order to targetStatus from whatever legal status it is in now.
+     */
+    public Result transition(String orderId, String targetStatus) {
+        return transition(orderId, targetStatus, null);
+    }
+
+    public Result transition(String orderId, String targetStatus, Update extraFields) {
+        return tryTransitionIf(orderId, targetStatus, null, extraFields)
+                .orElseThrow(() -> failure(orderId, "Order cannot move to '" + targetStatus + "' from its current status"));
+    }
+
+    /**
+     * Moves the order to targetStatus from whatever legal status it is in now,
+     * only while extraGuard also matches; empty if either doesn't.
+     */
+    public Optional<Result> tryTransitionIf(String orderId, String targetStatus, Criteria extraGuard, Update extraFields) {
+        OrderStatus target = OrderStatus.fromValue(targetStatus);
+        List<OrderStatus> sources = new ArrayList<>();
+        for (OrderStatus source : OrderStatus.values()) {
+            if (canTransition(source, target)) {
+                sources.add(source);
+            }
+        }
+        Criteria guard = Criteria.where("statusCode").in(sources);
+        if (extraGuard != null) {
+            guard = new Criteria().andOperator(guard, extraGuard);
+        }
+        return tryTransition(orderId, guard, targetStatus, extraFields);
+    }
+
+    /**
+     * Moves the order to targetStatus only if its status is one of expectedStatuses.
+     */
+    public Result transition(String orderId, Collection<String> expectedStatuses, String targetStatus, Update extraFields) {
+        return tryTransition(orderId, expectedStatuses, targetStatus, extraFields)
+                .orElseThrow(() -> failure(orderId, "Order is no longer in status " + expectedStatuses));
+    }
+
+    /**
+     * Like transition with expected statuses, but returns empty instead of throwing.
+     */
+    public Optional<Result> tryTransition(String orderId, Collection<String> expectedStatuses, String targetStatus, Update extraFields) {
+        return tryTransition(orderId, expectedStatuses, null, targetStatus, extraFields);
+    }
+
+    /**
+     * Same as above with an additional guard on other fields, e.g. the assigned dasher.
+     */
+    public Optional<Result> tryTransition(String orderId, Collection<String> expectedStatuses, Criteria extraGuard,
+                                          String targetStatus, Update extraFields) {
+        OrderStatus target = OrderStatus.fromValue(targetStatus);
+        for (String expected : expectedStatuses) {
+            if (!canTransition(OrderStatus.fromValue(expected), target)) {
+                throw new IllegalArgumentException("Illegal order transition: " + expected + " -> " + targetStatus);
+            }
+        }
+        Criteria guard = Criteria.where("status").in(expectedStatuses);
+        if (extraGuard != null) {
+            guard = new Criteria().andOperator(guard, extraGuard);
+        }
+        return tryTransition(orderId, guard, targetStatus, extraFields);
+    }
+
+    /**
+     * Applies a $set to the order only if it still matches guard. Returns the
+     * order as it was before the update, or empty if nothing matched.
+     */
+    public Optional<OrderEntity> updateIf(String orderId, Criteria guard, Update update) {
+        Query query = new Query(Criteria.where("_id").is(orderId));
+        if (guard != null) {
+            query.addCriteria(guard);
+        }
+        OrderEntity before = mongoTemplate.findAndModify(query, update,
+                FindAndModifyOptions.options().returnNew(false), OrderEntity.class);
+        orderVersionService.orderChanged(before);
+        return Optional.ofNullable(before);
+    }
+
+    /**
+     * One requested status change in a batch.
+     */
+    public record Transition(String orderId, String targetStatus) {
+    }
+
+    /**
+     * Per-item outcome of bulkTransition: result on success, otherwise an
+     * error and whether the order exists at all.
+     */
+    public record BulkOutcome(String orderId, Result result, String error, boolean notFound) {
+        public boolean succeeded() {
+            return result != null;
+        }
+    }
+
+    /**
+     * Applies many transitions with one read and one unordered bulkWrite.
+     * targetFor maps the stored order and the requested status to the status
+     * to apply. Each update is guarded on the status and eventSeq that were
+     * read, so an order that moved in between is reported as a conflict
+     * instead of being overwritten. Outcomes are in request order.
+     */
+    public List<BulkOutcome> bulkTransition(List<Transition> transitions,
+                                            BiFunction<OrderEntity, String, String> targetFor) {
+        List<String> ids = transitions.stream().map(Transition::orderId).distinct().toList();
+        Map<String, OrderEntity> current = mongoTemplate.find(new Query(Criteria.where("_id").in(ids)), OrderEntity.class)
+                .stream().collect(Collectors.toMap(OrderEntity::getId, Function.identity()));
+
+        BulkOutcome[] outcomes = new BulkOutcome[transitions.size()];
+        Map<Integer, Update> queued = new LinkedHashMap<>();
+        Map<Integer, String> targets = new LinkedHashMap<>();
+        Set<String> seen = new HashSet<>();
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, OrderEntity.class);
+
+        for (int i = 0; i < transitions.size(); i++) {
+            String orderId = transitions.get(i).orderId();
+            OrderEntity order = current.get(orderId);
+            if (!seen.add(orderId)) {
+                outcomes[i] = new BulkOutcome(orderId, null, "Order appears more than once in the batch", false);
+                continue;
+            }
+            if (order == null) {
+                outcomes[i] = new BulkOutcome(orderId, null, "Order not found", true);
+                continue;
+            }
+            String targetStatus = targetFor.apply(order, transitions.get(i).targetStatus());
+            if (!canTransition(OrderStatus.fromValue(order.getStatus()), OrderStatus.fromValue(targetStatus))) {
+                outcomes[i] = new BulkOutcome(orderId, null,
+                        "Order cannot move to '" + targetStatus + "' from '" + order.getStatus() + "'", false);
+                continue;
+            }
+            Update update = transitionUpdate(targetStatus, null);
+            bulk.updateOne(new Query(Criteria.where("_id").is(orderId)
+                    .and("status").is(order.getStatus())
+                    .and("eventSeq").is(order.getEventSeq())), update);
+            queued.put(i, update);
+            targets.put(i, targetStatus);
+        }
+        if (queued.isEmpty()) {
+            return List.of(outcomes);
+        }
+
+        int matched = bulk.execute().getMatchedCount();
+        Set<String> applied = null; // null means every queued update matched
+        if (matched < queued.size()) {
+            // The bulk result has counts only, so find which orders took our update
+            List<String> queuedIds = queued.keySet().stream().map(i -> transitions.get(i).orderId()).toList();
+            Query reread = new Query(Criteria.where("_id").in(queuedIds));
+            reread.fields().include("status", "eventSeq");
+            Map<String, OrderEntity> after = mongoTemplate.find(reread, OrderEntity.class).stream()
+                    .collect(Collectors.toMap(OrderEntity::getId, Function.identity()));
+            applied = new HashSet<>();
+            for (Map.Entry<Integer, String> entry : targets.entrySet()) {
+                OrderEntity before = current.get(transitions.get(entry.getKey()).orderId());
+                OrderEntity now = after.get(before.getId());
+                long expectedSeq = (before.getEventSeq() != null ? before.getEventSeq() : 0) + 1;
+                if (now != null && entry.getValue().equals(now.getStatus())
+                        && now.getEventSeq() != null && now.getEventSeq() == expectedSeq) {
+                    applied.add(before.getId());
+                }
+            }
+        }
+
+        List<Integer> succeeded = new ArrayList<>();
+        List<OrderEventService.AppliedTransition> events = new ArrayList<>();
+        for (Map.Entry<Integer, Update> entry : queued.entrySet()) {
+            int i = entry.getKey();
+            OrderEntity before = current.get(transitions.get(i).orderId());
+            if (applied != null && !applied.contains(before.getId())) {
+                outcomes[i] = new BulkOutcome(before.getId(), null, "Order changed while the batch was being applied", false);
+                continue;
+            }
+            succeeded.add(i);
+            events.add(new OrderEventService.AppliedTransition(before, targets.get(i), entry.getValue()));
+        }
+        // All events in one append, before the side effects below update the pre-images
+        orderEventService.appendTransitions(events);
+        for (int i : succeeded) {
+            OrderEntity before = current.get(transitions.get(i).orderId());
+            orderVersionService.orderChanged(before);
+            outcomes[i] = new BulkOutcome(before.getId(), settle(before, targets.get(i)), null, false);
+        }
+        return List.of(outcomes);
+    }
+
+    private Optional<Result> tryTransition(String orderId, Criteria guard, String targetStatus, Update extraFields) {
+        Update update = transitionUpdate(targetStatus, extraFields);
+        return updateIf(orderId, guard, update).map(before -> afterTransition(before, targetStatus, update));
+    }
+
+    private static Update transitionUpdate(String targetStatus, Update extraFields) {
+        OrderStatus target = OrderStatus.fromValue(targetStatus);
+        Update update = extraFields != null ? extraFields : new Update();
+        return update.set("status", targetStatus)
+                .set("statusCode", target)
+                .set("phase", target.getPhase())
+                .inc("eventSeq", 1);
+    }
+
+    // Side effects of an applied transition; before is the pre-image and becomes the result
+    private Result afterTransition(OrderEntity before, String targetStatus, Update update) {
+        orderEventService.appendTransition(before, targetStatus, update);
+        return settle(before, targetStatus);
+    }
+
+    private Result settle(OrderEntity before, String targetStatus) {
+        // A dasher whose order leaves the active phase is free for the next one
+        if (OrderStatus.fromValue(targetStatus).getPhase() != OrderPhase.ACTIVE) {
+            dasherService.releaseOrderSlot(before.getDasherId(), before.getId());
+        }
+        String previousStatus = before.getStatus();
+        before.setStatus(targetStatus);
+        return new Result(previousStatus, before);
+    }
+
+    private RuntimeException failure(String orderId, String conflictMessage) {
+        if (!mongoTemplate.exists(new Query(Criteria.where("_id").is(orderId)), OrderEntity.class)) {
+            return new OrderNotFoundException("Order not found");
+        }
+        return new OrderConflictException(conflictMessage);
+    }
+}
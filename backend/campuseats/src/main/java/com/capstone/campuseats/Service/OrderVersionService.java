@@ -0,0 +1,125 @@
+package com.capstone.campuseats.Service;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.capstone.campuseats.Entity.OrderEntity;
+
+/**
+ * In-memory change counters for orders and for the users and shops that
+ * own them, used as ETags by the order polling endpoints.
+ *
+ * Every bump takes the next value of one global counter (seeded from the
+ * clock, so values keep increasing across restarts), which means a version
+ * handed out for a key is never handed out again after that key changes.
+ * Keys that were never bumped, or were evicted, report the floor: the
+ * highest version that can no longer be told apart. That is always safe,
+ * because any later change to such a key gets a value above the floor.
+ *
+ * Counters are per instance; every order write path has to call
+ * orderChanged (OrderStateMachine covers the status and field updates).
+ * Changes made inside a transaction are published once it commits.
+ */
+@Service
+public class OrderVersionService {
+
+    private static final int MAX_TRACKED_KEYS = 100_000;
+
+    private final AtomicLong counter = new AtomicLong(System.currentTimeMillis());
+    private long floor = counter.get();
+
+    private final Map<String, Long> versions = new LinkedHashMap<>(1024) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            if (size() > MAX_TRACKED_KEYS) {
+                floor = Math.max(floor, eldest.getValue());
+                return true;
+            }
+            return false;
+        }
+    };
+
+    private final List<Consumer<String>> orderListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Called with the order id after each bump, on the writer's thread; listeners must not block.
+     */
+    public void addOrderListener(Consumer<String> listener) {
+        orderListeners.add(listener);
+    }
+
+    public long orderVersion(String orderId) {
+        return get("order:" + orderId);
+    }
+
+    public long userVersion(String uid) {
+        return get("user:" + uid);
+    }
+
+    public long shopVersion(String shopId) {
+        return get("shop:" + shopId);
+    }
+
+    public void orderChanged(OrderEntity order) {
+        if (order != null) {
+            orderChanged(order.getId(), order.getUid(), order.getShopId());
+        }
+    }
+
+    public void orderChanged(String orderId, String uid, String shopId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            // A poller handed the new version before the commit would keep the old order under it
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    publish(orderId, uid, shopId);
+                }
+            });
+        } else {
+            publish(orderId, uid, shopId);
+        }
+    }
+
+    private void publish(String orderId, String uid, String shopId) {
+        bump(orderId, uid, shopId);
+        if (orderId != null) {
+            orderListeners.forEach(listener -> listener.accept(orderId));
+        }
+    }
+
+    private synchronized void bump(String orderId, String uid, String shopId) {
+        long version = counter.incrementAndGet();
+        put("order:" + orderId, orderId, version);
+        put("user:" + uid, uid, version);
+        put("shop:" + shopId, shopId, version);
+    }
+
+    /**
+     * Invalidates every version, for bulk writes that don't go through
+     * orderChanged (e.g. the status backfill).
+     */
+    public synchronized void invalidateAll() {
+        versions.clear();
+        floor = counter.incrementAndGet();
+    }
+
+    private synchronized long get(String key) {
+        return versions.getOrDefault(key, floor);
+    }
+
+    // Re-inserting moves the key to the end, so eviction drops the longest-unchanged one
+    private void put(String key, String id, long version) {
+        if (id != null) {
+            versions.remove(key);
+            versions.put(key, version);
+        }
+    }
+}
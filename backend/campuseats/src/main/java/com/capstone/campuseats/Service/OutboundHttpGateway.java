@@ -0,0 +1,339 @@
+package com.capstone.campuseats.Service;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+
+import com.capstone.campuseats.config.CustomException;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * The one way out to third-party HTTP APIs. Each upstream gets a shared
+ * HTTP/2 client (so connections are reused) and its own settings under
+ * campuseats.http.<upstream>.*: base URL, connect and read timeouts, a cap
+ * on concurrent calls, and the number of attempts.
+ *
+ * Retries back off with full jitter. Requests that may not be repeated are
+ * only retried when the connection was never made. After
+ * failure-threshold consecutive failures the upstream's circuit opens and
+ * calls fail fast for open-ms, then a single trial call decides whether it
+ * closes again. A slow upstream therefore costs at most a bounded number of
+ * request threads for a bounded time.
+ *
+ * With campuseats.http.stub=true every upstream points at OutboundStubServer.
+ */
+@Service
+public class OutboundHttpGateway {
+
+    private static final Logger logger = LoggerFactory.getLogger(OutboundHttpGateway.class);
+
+    private static final long BASE_BACKOFF_MS = 100;
+    private static final long MAX_BACKOFF_MS = 2000;
+    private static final long[] LATENCY_BUCKETS_MS = { 50, 100, 250, 500, 1000, 2500, 5000, 10000 };
+
+    public enum Upstream {
+        XENDIT("xendit", "https://api.xendit.co", 3000, 10000, 3, 20),
+        BREVO("brevo", "https://api.brevo.com", 3000, 10000, 3, 5);
+
+        private final String key;
+        private final String defaultBaseUrl;
+        private final long defaultConnectTimeoutMs;
+        private final long defaultReadTimeoutMs;
+        private final int defaultMaxAttempts;
+        private final int defaultMaxConcurrent;
+
+        Upstream(String key, String defaultBaseUrl, long defaultConnectTimeoutMs, long defaultReadTimeoutMs,
+                int defaultMaxAttempts, int defaultMaxConcurrent) {
+            this.key = key;
+            this.defaultBaseUrl = defaultBaseUrl;
+            this.defaultConnectTimeoutMs = defaultConnectTimeoutMs;
+            this.defaultReadTimeoutMs = defaultReadTimeoutMs;
+            this.defaultMaxAttempts = defaultMaxAttempts;
+            this.defaultMaxConcurrent = defaultMaxConcurrent;
+        }
+    }
+
+    @Autowired
+    private Environment environment;
+
+    // Only present when campuseats.http.stub=true
+    @Autowired(required = false)
+    private OutboundStubServer stubServer;
+
+    private ExecutorService executor;
+    private final Map<Upstream, UpstreamClient> clients = new EnumMap<>(Upstream.class);
+
+    @PostConstruct
+    public void init() {
+        // Shared by all clients for connection setup and response handling; callers block on their own threads
+        executor = Executors.newFixedThreadPool(environment.getProperty("campuseats.http.threads", Integer.class, 4), runnable -> {
+            Thread thread = new Thread(runnable, "outbound-http");
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (Upstream upstream : Upstream.values()) {
+            clients.put(upstream, new UpstreamClient(upstream));
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * A request builder for path on upstream, with its read timeout applied.
+     */
+    public HttpRequest.Builder request(Upstream upstream, String path) {
+        UpstreamClient client = clients.get(upstream);
+        return HttpRequest.newBuilder()
+                .uri(URI.create(client.baseUrl + path))
+                .timeout(client.readTimeout);
+    }
+
+    /**
+     * Sends request with retries and the upstream's circuit breaker. idempotent
+     * marks requests that are safe to repeat after a timeout or a 5xx (reads,
+     * or writes carrying an idempotency key). Returns the last response even
+     * if it is an error status; throws once attempts are exhausted without one.
+     */
+    public HttpResponse<String> send(Upstream upstream, HttpRequest request, boolean idempotent) throws IOException {
+        UpstreamClient client = clients.get(upstream);
+        if (!client.permits.tryAcquire()) {
+            client.rejected.increment();
+            throw new CustomException(upstream.key + " is busy, please try again shortly");
+        }
+        try {
+            for (int attempt = 1;; attempt++) {
+                if (!client.allowCall()) {
+                    client.shortCircuited.increment();
+                    throw new CustomException(upstream.key + " is unavailable, please try again shortly");
+                }
+                boolean last = attempt >= client.maxAttempts;
+                client.requests.increment();
+                long started = System.nanoTime();
+                try {
+                    HttpResponse<String> response = client.http.send(request, HttpResponse.BodyHandlers.ofString());
+                    client.recordLatency(started);
+                    int status = response.statusCode();
+                    // 429 means the call was turned away, so any request may repeat it
+                    boolean retryable = status == 429 || (status >= 500 && idempotent);
+                    if (status < 500 && status != 429) {
+                        client.onSuccess();
+                        return response;
+                    }
+                    client.onFailure("http_" + status);
+                    if (last || !retryable) {
+                        return response;
+                    }
+                } catch (ConnectException | HttpConnectTimeoutException e) {
+                    // Nothing reached the upstream, so even a non-idempotent request is safe to repeat
+                    client.recordLatency(started);
+                    client.onFailure("connect");
+                    if (last) {
+                        throw e;
+                    }
+                } catch (HttpTimeoutException e) {
+                    client.recordLatency(started);
+                    client.onFailure("timeout");
+                    if (last || !idempotent) {
+                        throw e;
+                    }
+                } catch (IOException e) {
+                    client.recordLatency(started);
+                    client.onFailure("io");
+                    if (last || !idempotent) {
+                        throw e;
+                    }
+                } catch (RuntimeException e) {
+                    // Counted so a half-open trial that blows up doesn't leave the circuit stuck
+                    client.onFailure("error");
+                    throw e;
+                } catch (InterruptedException e) {
+                    // Same for a trial whose thread is interrupted mid-call; the outer catch restores the flag
+                    client.onFailure("interrupted");
+                    throw e;
+                }
+                client.retries.increment();
+                backoff(attempt);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted calling " + upstream.key, e);
+        } finally {
+            client.permits.release();
+        }
+    }
+
+    /**
+     * Per-upstream counters, latency histogram and breaker state.
+     */
+    public Map<String, Object> metrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        clients.forEach((upstream, client) -> metrics.put(upstream.key, client.metrics()));
+        return metrics;
+    }
+
+    private static void backoff(int attempt) throws InterruptedException {
+        long ceiling = Math.min(MAX_BACKOFF_MS, BASE_BACKOFF_MS << (attempt - 1));
+        Thread.sleep(ThreadLocalRandom.current().nextLong(ceiling + 1));
+    }
+
+    private enum BreakerState {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private class UpstreamClient {
+        final Upstream upstream;
+        final String baseUrl;
+        final Duration readTimeout;
+        final int maxAttempts;
+        final int failureThreshold;
+        final long openMs;
+        final int maxConcurrent;
+        final HttpClient http;
+        final Semaphore permits;
+
+        final LongAdder requests = new LongAdder();
+        final LongAdder retries = new LongAdder();
+        final LongAdder shortCircuited = new LongAdder();
+        final LongAdder rejected = new LongAdder();
+        final Map<String, LongAdder> failures = new ConcurrentHashMap<>();
+        final LongAdder[] latencyBuckets = new LongAdder[LATENCY_BUCKETS_MS.length + 1];
+        final LongAdder latencyTotalMs = new LongAdder();
+        final AtomicLong latencyMaxMs = new AtomicLong();
+
+        private BreakerState state = BreakerState.CLOSED;
+        private int consecutiveFailures;
+        private long openUntil;
+        private boolean trialInFlight;
+
+        UpstreamClient(Upstream upstream) {
+            this.upstream = upstream;
+            String prefix = "campuseats.http." + upstream.key + ".";
+            this.baseUrl = stubServer != null ? stubServer.getBaseUrl()
+                    : environment.getProperty(prefix + "base-url", upstream.defaultBaseUrl);
+            this.readTimeout = Duration.ofMillis(environment.getProperty(prefix + "read-timeout-ms", Long.class, upstream.defaultReadTimeoutMs));
+            this.maxAttempts = Math.max(1, environment.getProperty(prefix + "max-attempts", Integer.class, upstream.defaultMaxAttempts));
+            this.failureThreshold = environment.getProperty(prefix + "failure-threshold", Integer.class, 5);
+            this.openMs = environment.getProperty(prefix + "open-ms", Long.class, 30000L);
+            this.maxConcurrent = environment.getProperty(prefix + "max-concurrent", Integer.class, upstream.defaultMaxConcurrent);
+            this.permits = new Semaphore(maxConcurrent);
+            this.http = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_2)
+                    .connectTimeout(Duration.ofMillis(environment.getProperty(prefix + "connect-timeout-ms", Long.class,
+                            upstream.defaultConnectTimeoutMs)))
+                    .executor(executor)
+                    .build();
+            for (int i = 0; i < latencyBuckets.length; i++) {
+                latencyBuckets[i] = new LongAdder();
+            }
+        }
+
+        synchronized boolean allowCall() {
+            switch (state) {
+                case CLOSED:
+                    return true;
+                case OPEN:
+                    if (System.currentTimeMillis() < openUntil) {
+                        return false;
+                    }
+                    state = BreakerState.HALF_OPEN;
+                    trialInFlight = true;
+                    return true;
+                case HALF_OPEN:
+                default:
+                    if (trialInFlight) {
+                        return false;
+                    }
+                    trialInFlight = true;
+                    return true;
+            }
+        }
+
+        synchronized void onSuccess() {
+            if (state != BreakerState.CLOSED) {
+                logger.info("Circuit for {} closed", upstream.key);
+            }
+            state = BreakerState.CLOSED;
+            consecutiveFailures = 0;
+            trialInFlight = false;
+        }
+
+        void onFailure(String kind) {
+            failures.computeIfAbsent(kind, k -> new LongAdder()).increment();
+            synchronized (this) {
+                consecutiveFailures++;
+                if (state == BreakerState.HALF_OPEN || (state == BreakerState.CLOSED && consecutiveFailures >= failureThreshold)) {
+                    state = BreakerState.OPEN;
+                    openUntil = System.currentTimeMillis() + openMs;
+                    trialInFlight = false;
+                    logger.warn("Circuit for {} opened for {}ms after {} consecutive failures (last: {})",
+                            upstream.key, openMs, consecutiveFailures, kind);
+                }
+            }
+        }
+
+        void recordLatency(long startedNanos) {
+            long ms = (System.nanoTime() - startedNanos) / 1_000_000;
+            int bucket = 0;
+            while (bucket < LATENCY_BUCKETS_MS.length && ms > LATENCY_BUCKETS_MS[bucket]) {
+                bucket++;
+            }
+            latencyBuckets[bucket].increment();
+            latencyTotalMs.add(ms);
+            latencyMaxMs.accumulateAndGet(ms, Math::max);
+        }
+
+        Map<String, Object> metrics() {
+            Map<String, Object> latency = new LinkedHashMap<>();
+            for (int i = 0; i < latencyBuckets.length; i++) {
+                latency.put(i < LATENCY_BUCKETS_MS.length ? "le_" + LATENCY_BUCKETS_MS[i] + "ms" : "gt_"
+                        + LATENCY_BUCKETS_MS[LATENCY_BUCKETS_MS.length - 1] + "ms", latencyBuckets[i].sum());
+            }
+            latency.put("totalMs", latencyTotalMs.sum());
+            latency.put("maxMs", latencyMaxMs.get());
+
+            Map<String, Long> failureCounts = new LinkedHashMap<>();
+            failures.forEach((kind, count) -> failureCounts.put(kind, count.sum()));
+
+            Map<String, Object> metrics = new LinkedHashMap<>();
+            synchronized (this) {
+                metrics.put("circuit", state.name());
+            }
+            metrics.put("baseUrl", baseUrl);
+            metrics.put("requests", requests.sum());
+            metrics.put("retries", retries.sum());
+            metrics.put("failures", failureCounts);
+            metrics.put("shortCircuited", shortCircuited.sum());
+            metrics.put("rejected", rejected.sum());
+            metrics.put("inFlight", maxConcurrent - permits.availablePermits());
+            metrics.put("latency", latency);
+            return metrics;
+        }
+    }
+}
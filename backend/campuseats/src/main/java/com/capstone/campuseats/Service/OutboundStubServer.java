@@ -0,0 +1,119 @@
+package com.capstone.campuseats.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * A loopback HTTP server standing in for Xendit and Brevo, for tests and
+ * local runs without credentials (campuseats.http.stub=true). Calls still
+ * go through OutboundHttpGateway's client, timeouts and breaker; only the
+ * other end is canned. Charges are created PENDING and read back SUCCEEDED.
+ * campuseats.http.stub.latency-ms delays every response, to see how the
+ * app behaves against a slow upstream.
+ */
+@Component
+@ConditionalOnProperty(name = "campuseats.http.stub", havingValue = "true")
+public class OutboundStubServer {
+
+    private static final Logger logger = LoggerFactory.getLogger(OutboundStubServer.class);
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${campuseats.http.stub.port:0}")
+    private int port;
+
+    @Value("${campuseats.http.stub.latency-ms:0}")
+    private long latencyMs;
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    @PostConstruct
+    public void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/ewallets/charges", this::charges);
+        server.createContext("/v3/smtp/email", exchange -> respond(exchange, 201,
+                Map.of("messageId", "<stub-" + UUID.randomUUID() + "@campuseats>")));
+        executor = Executors.newFixedThreadPool(4);
+        server.setExecutor(executor);
+        server.start();
+        logger.warn("Outbound HTTP calls are stubbed at {}", getBaseUrl());
+    }
+
+    @PreDestroy
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    public String getBaseUrl() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    private void charges(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        String path = exchange.getRequestURI().getPath();
+        String query = exchange.getRequestURI().getQuery();
+
+        if ("POST".equals(method) && path.endsWith("/refunds")) {
+            respond(exchange, 200, Map.of("id", "ewr_stub_" + UUID.randomUUID(), "status", "SUCCEEDED"));
+        } else if ("POST".equals(method)) {
+            JsonNode body = objectMapper.readTree(exchange.getRequestBody());
+            String id = "ewc_stub_" + UUID.randomUUID();
+            respond(exchange, 201, Map.of(
+                    "id", id,
+                    "reference_id", body.path("reference_id").asText(""),
+                    "status", "PENDING",
+                    "actions", Map.of(
+                            "mobile_web_checkout_url", getBaseUrl() + "/checkout/" + id,
+                            "desktop_web_checkout_url", getBaseUrl() + "/checkout/" + id)));
+        } else if ("GET".equals(method) && query != null && query.startsWith("reference_id=")) {
+            String referenceId = query.substring("reference_id=".length());
+            respond(exchange, 200, List.of(Map.of("id", "ewc_stub_" + referenceId, "reference_id", referenceId)));
+        } else if ("GET".equals(method)) {
+            String id = path.substring(path.lastIndexOf('/') + 1);
+            respond(exchange, 200, Map.of("id", id, "reference_id", "stub_" + id, "status", "SUCCEEDED"));
+        } else {
+            respond(exchange, 405, Map.of("message", "Method not allowed"));
+        }
+    }
+
+    private void respond(HttpExchange exchange, int status, Object body) throws IOException {
+        if (latencyMs > 0) {
+            try {
+                Thread.sleep(latencyMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        byte[] bytes = objectMapper.writeValueAsBytes(body);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
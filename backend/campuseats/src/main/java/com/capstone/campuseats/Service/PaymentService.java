@@ -3,47 +3,91 @@ package com.capstone.campuseats.Service;
 import com.capstone.campuseats.Entity.*;
 import com.capstone.campuseats.Repository.*;
 import com.capstone.campuseats.config.CustomException;
+import com.capstone.campuseats.config.OrderConflictException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.mongodb.MongoException;
+import jakarta.annotation.PostConstruct;
 import lombok.*;
 
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.mongodb.MongoDatabaseFactory;
+import org.springframework.data.mongodb.MongoTransactionManager;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestTemplate;
 
-import java.net.URI;
-import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.function.Supplier;
 
 @Service
 @RequiredArgsConstructor
 public class PaymentService {
 
+    private static final int COMPLETION_ATTEMPTS = 3;
+
     private final OrderRepository orderRepository;
-    private final ItemRepository itemRepository;
     private final PaymentRepository paymentRepository;
 
-    private final DasherRepository dasherRepository;
     private final ShopRepository shopRepository;
 
     private final RatingRepository ratingRepository;
 
+    private final OrderStateMachine orderStateMachine;
+
+    private final WalletService walletService;
+
+    private final OutboundHttpGateway outboundHttpGateway;
+
+    private final ObjectMapper objectMapper;
+
+    private final MongoTemplate mongoTemplate;
+
+    private final MongoDatabaseFactory mongoDatabaseFactory;
+
+    @Value("${campuseats.orders.completion-transaction:true}")
+    private boolean completionTransaction;
+
+    // Local rather than a bean, so @Transactional elsewhere doesn't start needing a replica set
+    private TransactionTemplate completionTransactions;
+
     @Value("${XENDIT_SECRET:}")
     private String xenditSecret;
 
      @Value("${XENDIT_WEBHOOK_URL:}")
     private String xenditWebhookUrl;
 
-    public void confirmOrderCompletion(String orderId, String dasherId, String shopId, String userId, String paymentMethod, float deliveryFee, float totalPrice, List<CartItem> items, float previousNoShowFee, float previousNoShowItems, String originalNoShowPaymentMethod) {
+    /**
+     * What a completion changed, returned to the dasher app once it has
+     * committed. shopBalance is null when the shop's wallet didn't move (COD).
+     */
+    public record CompletionResult(OrderStateMachine.Result order, Double shopBalance, double dasherBalance,
+            PaymentEntity payment) {
+    }
+
+    @PostConstruct
+    void initCompletionTransactions() {
+        if (completionTransaction) {
+            completionTransactions = new TransactionTemplate(new MongoTransactionManager(mongoDatabaseFactory));
+        }
+    }
+
+    public CompletionResult confirmOrderCompletion(String orderId, String dasherId, String shopId, String userId, String paymentMethod, float deliveryFee, float totalPrice, List<CartItem> items, float previousNoShowFee, float previousNoShowItems, String originalNoShowPaymentMethod) {
         System.out.println("=== PAYMENT SERVICE DEBUG ===");
         System.out.println("Order ID: " + orderId);
         System.out.println("Dasher ID: " + dasherId);
@@ -56,27 +100,10 @@ public class PaymentService {
         System.out.println("Original No-Show Payment Method: " + originalNoShowPaymentMethod);
         System.out.println("==============================");
         
-        Optional<OrderEntity> orderOptional = orderRepository.findById(orderId);
-        if (orderOptional.isEmpty()) {
+        if (!orderRepository.existsById(orderId)) {
             throw new CustomException("Order not found");
         }
 
-        OrderEntity order = orderOptional.get();
-        order.setStatus("completed");
-        order.setDeliveryFee(deliveryFee);
-        orderRepository.save(order);
-
-        // Update item quantities
-        for (CartItem item : items) {
-            Optional<ItemEntity> itemOptional = itemRepository.findById(item.getItemId());
-            if (itemOptional.isPresent()) {
-                ItemEntity itemEntity = itemOptional.get();
-                int newQuantity = itemEntity.getQuantity() - item.getQuantity();
-                itemEntity.setQuantity(newQuantity);
-                itemRepository.save(itemEntity);
-            }
-        }
-
         // Calculate actual food cost (excluding previous no-show charges)
         float actualFoodCost = totalPrice - previousNoShowFee - previousNoShowItems;
         System.out.println("Actual food cost calculation:");
@@ -85,141 +112,111 @@ public class PaymentService {
         System.out.println("- Minus previous no-show items: ₱" + previousNoShowItems);
         System.out.println("- Actual food cost for this shop: ₱" + actualFoodCost);
         
-        // Update shop wallet based on payment method
-        Optional<ShopEntity> shopOptional = shopRepository.findById(shopId);
-        if (shopOptional.isPresent()) {
-            ShopEntity shop = shopOptional.get();
-            
-            if (paymentMethod.equalsIgnoreCase("gcash")) {
-                // For online payments: Shop receives ONLY the actual food cost (not previous no-show charges)
-                shop.setWallet(shop.getWallet() + actualFoodCost);
-                System.out.println("Shop wallet updated (GCash): +" + actualFoodCost + " = " + shop.getWallet());
-                if (previousNoShowFee > 0 || previousNoShowItems > 0) {
-                    System.out.println("Note: Previous no-show charges (₱" + (previousNoShowFee + previousNoShowItems) + ") will be credited to original dasher when order completes");
-                }
-            } else if (paymentMethod.equalsIgnoreCase("cash")) {
-                // For COD: Shop gets paid directly by dasher in person, no system wallet update
-                System.out.println("Shop wallet unchanged (COD): " + shop.getWallet() + " (dasher pays shop directly)");
-            }
-            
-            shopRepository.save(shop);
-        } else {
-            throw new CustomException("Shop not found");
-        }
+        // For online payments the shop receives ONLY the actual food cost (not previous no-show charges);
+        // for COD the dasher pays the shop in person, so its wallet doesn't change
+        boolean creditShop = paymentMethod.equalsIgnoreCase("gcash");
 
         // Handle dasher payment and delivery fee distribution
-        Optional<DasherEntity> dasherOptional = dasherRepository.findById(dasherId);
-        if (dasherOptional.isPresent()) {
-            DasherEntity dasher = dasherOptional.get();
-            System.out.println("DASHER WALLET BEFORE UPDATE: ₱" + dasher.getWallet());
+        // One ledger posting per component, applied together as a single $inc
+        Map<WalletPostingType, Double> dasherWalletChanges = new EnumMap<>(WalletPostingType.class);
 
-            // Fetch ratings for the dasher
-            List<RatingEntity> ratings = ratingRepository.findByDasherId(dasherId);
-            float averageRating = calculateAverageRating(ratings);
+        // Fetch ratings for the dasher
+        List<RatingEntity> ratings = ratingRepository.findByDasherId(dasherId);
+        float averageRating = calculateAverageRating(ratings);
 
-            // Determine the admin fee percentage based on average rating
-            float adminFeePercentage = determineFeePercentage(averageRating);
-            
-            // Calculate fee distribution
-            float adminFee = deliveryFee * adminFeePercentage;          // Admin gets percentage of delivery fee
-            float dasherDeliveryFee = deliveryFee - adminFee;           // Dasher gets remaining delivery fee
-
-            System.out.println("Fee Distribution Calculation:");
-            System.out.println("- Total delivery fee: ₱" + deliveryFee);
-            System.out.println("- Admin fee (" + (adminFeePercentage * 100) + "% of delivery): ₱" + adminFee);
-            System.out.println("- Dasher delivery fee (" + ((1-adminFeePercentage) * 100) + "% of delivery): ₱" + dasherDeliveryFee);
-            System.out.println("- Shop food cost (actual): ₱" + actualFoodCost);
-            if (previousNoShowFee > 0 || previousNoShowItems > 0) {
-                System.out.println("- Previous no-show charges (already paid to original dasher): ₱" + (previousNoShowFee + previousNoShowItems));
-            }
+        // Determine the admin fee percentage based on average rating
+        float adminFeePercentage = determineFeePercentage(averageRating);
+        
+        // Calculate fee distribution
+        float adminFee = deliveryFee * adminFeePercentage;          // Admin gets percentage of delivery fee
+        float dasherDeliveryFee = deliveryFee - adminFee;           // Dasher gets remaining delivery fee
+
+        System.out.println("Fee Distribution Calculation:");
+        System.out.println("- Total delivery fee: ₱" + deliveryFee);
+        System.out.println("- Admin fee (" + (adminFeePercentage * 100) + "% of delivery): ₱" + adminFee);
+        System.out.println("- Dasher delivery fee (" + ((1-adminFeePercentage) * 100) + "% of delivery): ₱" + dasherDeliveryFee);
+        System.out.println("- Shop food cost (actual): ₱" + actualFoodCost);
+        if (previousNoShowFee > 0 || previousNoShowItems > 0) {
+            System.out.println("- Previous no-show charges (already paid to original dasher): ₱" + (previousNoShowFee + previousNoShowItems));
+        }
 
-            if (paymentMethod.equalsIgnoreCase("gcash")) {
-                // For GCash payments: 
-                // Customer paid electronically, so dasher just receives their delivery fee portion
-                dasher.setWallet(dasher.getWallet() + dasherDeliveryFee);
-                System.out.println("GCash payment: Dasher receives ₱" + dasherDeliveryFee + " delivery fee");
-                if (previousNoShowFee > 0 || previousNoShowItems > 0) {
-                    if ("cash".equalsIgnoreCase(originalNoShowPaymentMethod)) {
-                        System.out.println("GCash payment: Previous no-show charges ₱" + (previousNoShowFee + previousNoShowItems) + 
-                                         " stay with admin (reimbursing admin for COD no-show already paid to original dasher)");
-                    } else if ("gcash".equalsIgnoreCase(originalNoShowPaymentMethod)) {
-                        System.out.println("GCash payment: Previous no-show charges ₱" + (previousNoShowFee + previousNoShowItems) + 
-                                         " stay with admin (original dasher will be reimbursed separately for GCash no-show)");
-                    } else {
-                        System.out.println("GCash payment: Previous no-show charges ₱" + (previousNoShowFee + previousNoShowItems) + " stay with admin");
-                    }
-                }
-                
-            } else if (paymentMethod.equalsIgnoreCase("cash")) {
-                // For Cash on Delivery (COD):
-                // 1. Dasher uses personal money to buy food from shop (actualFoodCost)
-                // 2. Dasher collected full amount (totalPrice + deliveryFee) from customer
-                // 3. Dasher keeps delivery fee portion after admin cut
-                // 4. Dasher owes system: admin fee (+ previous no-show charges only if original was GCash)
-                // 5. Shop gets paid directly by dasher in cash, not through system wallet
-                
-                float totalNoShowCharges = previousNoShowFee + previousNoShowItems;
-                double amountOwed;
-                
-                // Check if original no-show was COD or GCash
-                if (totalNoShowCharges > 0 && "cash".equalsIgnoreCase(originalNoShowPaymentMethod)) {
-                    // Original was COD: Original dasher was already paid immediately
-                    // Current dasher collected the no-show charges from customer and must remit to admin
-                    // Add to wallet (collected), then debit (must remit)
-                    amountOwed = adminFee + totalNoShowCharges;  // Admin fee + no-show charges to remit
-                    System.out.println("COD payment breakdown (COD→COD scenario):");
-                    System.out.println("- Dasher uses personal money to buy food: ₱" + actualFoodCost);
-                    System.out.println("- Dasher collected from customer: ₱" + (totalPrice + deliveryFee));
-                    System.out.println("- Dasher collected previous no-show charges: ₱" + totalNoShowCharges);
-                    System.out.println("- Dasher keeps (delivery fee after admin cut): ₱" + dasherDeliveryFee);
-                    System.out.println("- Dasher owes system:");
-                    System.out.println("  * Admin fee: ₱" + adminFee);
-                    System.out.println("  * Previous no-show charges (to remit to admin): ₱" + totalNoShowCharges);
-                    System.out.println("  * Total owed: ₱" + amountOwed);
-                    System.out.println("- Note: Original dasher was already paid ₱" + totalNoShowCharges + " immediately during no-show");
-                } else if (totalNoShowCharges > 0 && "gcash".equalsIgnoreCase(originalNoShowPaymentMethod)) {
-                    // Original was GCash: Original dasher was already paid in OrderService
-                    // Current dasher must remit to admin (who paid the original dasher)
-                    amountOwed = adminFee + totalNoShowCharges;
-                    System.out.println("COD payment breakdown:");
-                    System.out.println("- Dasher uses personal money to buy food: ₱" + actualFoodCost);
-                    System.out.println("- Dasher collected from customer: ₱" + (totalPrice + deliveryFee));
-                    System.out.println("- Dasher keeps (delivery fee after admin cut): ₱" + dasherDeliveryFee);
-                    System.out.println("- Dasher owes system:");
-                    System.out.println("  * Admin fee: ₱" + adminFee);
-                    System.out.println("  * Previous no-show charges (to remit to admin): ₱" + totalNoShowCharges);
-                    System.out.println("  * Total owed: ₱" + amountOwed);
+        if (paymentMethod.equalsIgnoreCase("gcash")) {
+            // For GCash payments: 
+            // Customer paid electronically, so dasher just receives their delivery fee portion
+            dasherWalletChanges.put(WalletPostingType.DELIVERY_FEE, (double) dasherDeliveryFee);
+            System.out.println("GCash payment: Dasher receives ₱" + dasherDeliveryFee + " delivery fee");
+            if (previousNoShowFee > 0 || previousNoShowItems > 0) {
+                if ("cash".equalsIgnoreCase(originalNoShowPaymentMethod)) {
+                    System.out.println("GCash payment: Previous no-show charges ₱" + (previousNoShowFee + previousNoShowItems) + 
+                                     " stay with admin (reimbursing admin for COD no-show already paid to original dasher)");
+                } else if ("gcash".equalsIgnoreCase(originalNoShowPaymentMethod)) {
+                    System.out.println("GCash payment: Previous no-show charges ₱" + (previousNoShowFee + previousNoShowItems) + 
+                                     " stay with admin (original dasher will be reimbursed separately for GCash no-show)");
                 } else {
-                    // No previous no-show charges
-                    amountOwed = adminFee;
-                    System.out.println("COD payment breakdown:");
-                    System.out.println("- Dasher uses personal money to buy food: ₱" + actualFoodCost);
-                    System.out.println("- Dasher collected from customer: ₱" + (totalPrice + deliveryFee));
-                    System.out.println("- Dasher keeps (delivery fee after admin cut): ₱" + dasherDeliveryFee);
-                    System.out.println("- Dasher owes system:");
-                    System.out.println("  * Admin fee: ₱" + adminFee);
-                    System.out.println("  * Total owed: ₱" + amountOwed);
+                    System.out.println("GCash payment: Previous no-show charges ₱" + (previousNoShowFee + previousNoShowItems) + " stay with admin");
                 }
-                
-                double dasherWalletChange = -amountOwed;     // Negative because it's a debt
-                dasher.setWallet(dasher.getWallet() + dasherWalletChange);
-                
-                System.out.println("- Dasher wallet change: ₱" + dasherWalletChange + " (debt to system)");
-                System.out.println("- Shop gets paid directly by dasher: ₱" + actualFoodCost);
-                System.out.println("- Admin receives: ₱" + amountOwed + " when dasher cashes out");
             }
-
-            // Save the updated dasher wallet
-            dasherRepository.save(dasher);
-            System.out.println("DASHER WALLET AFTER UPDATE AND SAVE: ₱" + dasher.getWallet());
             
-            // Verify the save by fetching fresh data
-            Optional<DasherEntity> verifyDasher = dasherRepository.findById(dasherId);
-            if (verifyDasher.isPresent()) {
-                System.out.println("DATABASE VERIFICATION - Dasher wallet in DB: ₱" + verifyDasher.get().getWallet());
+        } else if (paymentMethod.equalsIgnoreCase("cash")) {
+            // For Cash on Delivery (COD):
+            // 1. Dasher uses personal money to buy food from shop (actualFoodCost)
+            // 2. Dasher collected full amount (totalPrice + deliveryFee) from customer
+            // 3. Dasher keeps delivery fee portion after admin cut
+            // 4. Dasher owes system: admin fee (+ previous no-show charges only if original was GCash)
+            // 5. Shop gets paid directly by dasher in cash, not through system wallet
+            
+            float totalNoShowCharges = previousNoShowFee + previousNoShowItems;
+            double amountOwed;
+            
+            // Check if original no-show was COD or GCash
+            if (totalNoShowCharges > 0 && "cash".equalsIgnoreCase(originalNoShowPaymentMethod)) {
+                // Original was COD: Original dasher was already paid immediately
+                // Current dasher collected the no-show charges from customer and must remit to admin
+                // Add to wallet (collected), then debit (must remit)
+                amountOwed = adminFee + totalNoShowCharges;  // Admin fee + no-show charges to remit
+                System.out.println("COD payment breakdown (COD→COD scenario):");
+                System.out.println("- Dasher uses personal money to buy food: ₱" + actualFoodCost);
+                System.out.println("- Dasher collected from customer: ₱" + (totalPrice + deliveryFee));
+                System.out.println("- Dasher collected previous no-show charges: ₱" + totalNoShowCharges);
+                System.out.println("- Dasher keeps (delivery fee after admin cut): ₱" + dasherDeliveryFee);
+                System.out.println("- Dasher owes system:");
+                System.out.println("  * Admin fee: ₱" + adminFee);
+                System.out.println("  * Previous no-show charges (to remit to admin): ₱" + totalNoShowCharges);
+                System.out.println("  * Total owed: ₱" + amountOwed);
+                System.out.println("- Note: Original dasher was already paid ₱" + totalNoShowCharges + " immediately during no-show");
+            } else if (totalNoShowCharges > 0 && "gcash".equalsIgnoreCase(originalNoShowPaymentMethod)) {
+                // Original was GCash: Original dasher was already paid in OrderService
+                // Current dasher must remit to admin (who paid the original dasher)
+                amountOwed = adminFee + totalNoShowCharges;
+                System.out.println("COD payment breakdown:");
+                System.out.println("- Dasher uses personal money to buy food: ₱" + actualFoodCost);
+                System.out.println("- Dasher collected from customer: ₱" + (totalPrice + deliveryFee));
+                System.out.println("- Dasher keeps (delivery fee after admin cut): ₱" + dasherDeliveryFee);
+                System.out.println("- Dasher owes system:");
+                System.out.println("  * Admin fee: ₱" + adminFee);
+                System.out.println("  * Previous no-show charges (to remit to admin): ₱" + totalNoShowCharges);
+                System.out.println("  * Total owed: ₱" + amountOwed);
+            } else {
+                // No previous no-show charges
+                amountOwed = adminFee;
+                System.out.println("COD payment breakdown:");
+                System.out.println("- Dasher uses personal money to buy food: ₱" + actualFoodCost);
+                System.out.println("- Dasher collected from customer: ₱" + (totalPrice + deliveryFee));
+                System.out.println("- Dasher keeps (delivery fee after admin cut): ₱" + dasherDeliveryFee);
+                System.out.println("- Dasher owes system:");
+                System.out.println("  * Admin fee: ₱" + adminFee);
+                System.out.println("  * Total owed: ₱" + amountOwed);
             }
-        } else {
-            throw new CustomException("Dasher not found");
+            
+            // Negative because it's a debt
+            dasherWalletChanges.put(WalletPostingType.ADMIN_FEE, (double) -adminFee);
+            if (amountOwed > adminFee) {
+                dasherWalletChanges.put(WalletPostingType.COD_REMITTANCE, (double) -totalNoShowCharges);
+            }
+            
+            System.out.println("- Dasher wallet change: ₱" + (-amountOwed) + " (debt to system)");
+            System.out.println("- Shop gets paid directly by dasher: ₱" + actualFoodCost);
+            System.out.println("- Admin receives: ₱" + amountOwed + " when dasher cashes out");
         }
 
         // Save payment information
@@ -235,7 +232,93 @@ public class PaymentService {
                 .build();
         String stringId = UUID.randomUUID().toString();
         payment.setId(stringId);
-        paymentRepository.save(payment);
+
+        // Stock, wallets, ledger and payment all commit with the status change or not at all
+        CompletionResult result = inCompletionTransaction(orderId, () -> {
+            // Goes through the state machine so the completion is logged and can't resurrect a cancelled order
+            OrderStateMachine.Result order = settleCompletion(orderId, deliveryFee);
+
+            decrementStock(items);
+
+            // Wallets change with $inc so concurrent updates aren't lost; the returned balance is what the database holds
+            Double shopBalance = null;
+            if (creditShop) {
+                shopBalance = walletService.adjust(WalletService.SHOP, shopId, actualFoodCost,
+                        WalletPostingType.ORDER_PAYOUT, orderId)
+                        .orElseThrow(() -> new CustomException("Shop not found"));
+            } else if (!shopRepository.existsById(shopId)) {
+                throw new CustomException("Shop not found");
+            }
+            double dasherBalance = walletService.adjust(WalletService.DASHER, dasherId, dasherWalletChanges, orderId)
+                    .orElseThrow(() -> new CustomException("Dasher not found"));
+
+            paymentRepository.save(payment);
+            return new CompletionResult(order, shopBalance, dasherBalance, payment);
+        });
+
+        if (result.shopBalance() != null) {
+            System.out.println("Shop wallet updated (GCash): +" + actualFoodCost + " = " + result.shopBalance());
+            if (previousNoShowFee > 0 || previousNoShowItems > 0) {
+                System.out.println("Note: Previous no-show charges (₱" + (previousNoShowFee + previousNoShowItems) + ") will be credited to original dasher when order completes");
+            }
+        } else if (paymentMethod.equalsIgnoreCase("cash")) {
+            System.out.println("Shop wallet unchanged (COD) (dasher pays shop directly)");
+        }
+        System.out.println("DASHER WALLET AFTER UPDATE: ₱" + result.dasherBalance());
+        return result;
+    }
+
+    // Marks the completion as paid out, at most once. The customer usually completes the order before the
+    // dasher confirms, so an already completed order is settled too, unless a payment was recorded for it
+    // before completionConfirmedAt existed
+    private OrderStateMachine.Result settleCompletion(String orderId, float deliveryFee) {
+        Criteria unconfirmed = Criteria.where("completionConfirmedAt").is(null);
+        Update settle = new Update().set("deliveryFee", deliveryFee).set("completionConfirmedAt", LocalDateTime.now());
+        return orderStateMachine.tryTransitionIf(orderId, "completed", unconfirmed, settle)
+                .or(() -> paymentRepository.existsByOrderId(orderId)
+                        ? Optional.empty()
+                        : orderStateMachine.updateIf(orderId,
+                                        new Criteria().andOperator(Criteria.where("status").is("completed"), unconfirmed), settle)
+                                .map(before -> new OrderStateMachine.Result(before.getStatus(), before)))
+                .orElseThrow(() -> new OrderConflictException("Order cannot be completed, or its completion was already confirmed"));
+    }
+
+    /**
+     * Runs a completion in one Mongo transaction, retried when it hits a write
+     * conflict. With campuseats.orders.completion-transaction=false (a
+     * standalone mongod, which has no transactions) the same writes run
+     * one after another instead.
+     */
+    private CompletionResult inCompletionTransaction(String orderId, Supplier<CompletionResult> work) {
+        if (completionTransactions == null) {
+            return work.get();
+        }
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return completionTransactions.execute(status -> work.get());
+            } catch (DataAccessException e) {
+                if (attempt >= COMPLETION_ATTEMPTS || !(e.getMostSpecificCause() instanceof MongoException mongo)
+                        || !mongo.hasErrorLabel(MongoException.TRANSIENT_TRANSACTION_ERROR_LABEL)) {
+                    throw e;
+                }
+                System.out.println("Completion of order " + orderId + " conflicted with another write, retrying (attempt " + (attempt + 1) + ")");
+            }
+        }
+    }
+
+    // One unordered bulkWrite of $inc's, however many items the order has; items that no longer exist are skipped
+    private void decrementStock(List<CartItem> items) {
+        Map<String, Integer> quantities = new LinkedHashMap<>();
+        for (CartItem item : items) {
+            quantities.merge(item.getItemId(), item.getQuantity(), Integer::sum);
+        }
+        if (quantities.isEmpty()) {
+            return;
+        }
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ItemEntity.class);
+        quantities.forEach((itemId, quantity) ->
+                bulk.updateOne(new Query(Criteria.where("_id").is(itemId)), new Update().inc("quantity", -quantity)));
+        bulk.execute();
     }
 
     // Method to calculate average rating
@@ -290,16 +373,9 @@ public class PaymentService {
             System.out.println("Xendit Secret Key present: " + (xenditSecret != null && !xenditSecret.isEmpty()));
             
             // Check for active orders
-            // Exclude orders that are waiting for no-show confirmation or are dasher no-shows
+            // Orders waiting for no-show confirmation or marked dasher no-show are DISPUTED,
             // as these are essentially completed/disputed orders, not active deliveries
-            List<OrderEntity> existingOrders = orderRepository.findByUid(orderId);
-            boolean activeOrderExists = existingOrders.stream()
-                    .anyMatch(order -> {
-                        String status = order.getStatus();
-                        return status.startsWith("active") 
-                            && !status.equals("active_waiting_for_no_show_confirmation")
-                            && !status.equals("dasher-no-show");
-                    });
+            boolean activeOrderExists = orderRepository.existsByUidAndPhase(orderId, OrderPhase.ACTIVE);
 
             if (activeOrderExists) {
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
@@ -307,7 +383,6 @@ public class PaymentService {
             }
 
             // Prepare Xendit API request for e-wallet charge (GCash)
-            ObjectMapper objectMapper = new ObjectMapper();
             ObjectNode rootNode = objectMapper.createObjectNode();
 
             // For e-wallets, Xendit expects the amount as-is (not in centavos)
@@ -347,8 +422,7 @@ public class PaymentService {
             // Only send callback URL header if it's not localhost (for development)
             boolean isLocalhost = xenditWebhookUrl.contains("localhost") || xenditWebhookUrl.contains("127.0.0.1");
             
-            HttpRequest.Builder requestBuilder = HttpRequest.newBuilder()
-                    .uri(URI.create("https://api.xendit.co/ewallets/charges"))
+            HttpRequest.Builder requestBuilder = outboundHttpGateway.request(OutboundHttpGateway.Upstream.XENDIT, "/ewallets/charges")
                     .header("Authorization", "Basic " + auth)
                     .header("Content-Type", "application/json");
             
@@ -366,8 +440,8 @@ public class PaymentService {
             
             System.out.println("Request headers: " + request.headers().map());
 
-            HttpClient client = HttpClient.newHttpClient();
-            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            // Not repeated after a timeout: the charge may already exist
+            HttpResponse<String> response = outboundHttpGateway.send(OutboundHttpGateway.Upstream.XENDIT, request, false);
 
             JsonNode responseBody = objectMapper.readTree(response.body());
             
@@ -434,8 +508,6 @@ public class PaymentService {
 
             System.out.println("=== Creating Xendit GCash Topup Payment ===");
             System.out.println("Platform: " + platform);
-            
-            ObjectMapper objectMapper = new ObjectMapper();
             ObjectNode rootNode = objectMapper.createObjectNode();
 
             rootNode.put("reference_id", "topup_" + System.currentTimeMillis());
@@ -477,8 +549,7 @@ public class PaymentService {
             // Only send callback URL header if it's not localhost (for development)
             boolean isLocalhost = xenditWebhookUrl.contains("localhost") || xenditWebhookUrl.contains("127.0.0.1");
             
-            HttpRequest.Builder requestBuilder = HttpRequest.newBuilder()
-                    .uri(URI.create("https://api.xendit.co/ewallets/charges"))
+            HttpRequest.Builder requestBuilder = outboundHttpGateway.request(OutboundHttpGateway.Upstream.XENDIT, "/ewallets/charges")
                     .header("Authorization", "Basic " + auth)
                     .header("Content-Type", "application/json");
             
@@ -491,8 +562,8 @@ public class PaymentService {
                     .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(rootNode)))
                     .build();
 
-            HttpClient client = HttpClient.newHttpClient();
-            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            // Not repeated after a timeout: the charge may already exist
+            HttpResponse<String> response = outboundHttpGateway.send(OutboundHttpGateway.Upstream.XENDIT, request, false);
 
             JsonNode responseBody = objectMapper.readTree(response.body());
             
@@ -539,7 +610,6 @@ public class PaymentService {
             System.out.println("notes: " + notes);
             
             // Build the request body for Xendit Refund API
-            ObjectMapper objectMapper = new ObjectMapper();
             ObjectNode rootNode = objectMapper.createObjectNode();
 
             rootNode.put("amount", amountInCents);
@@ -552,16 +622,14 @@ public class PaymentService {
             String auth = Base64.getEncoder().encodeToString((xenditSecret + ":").getBytes());
 
             // Prepare the HTTP request to Xendit
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create("https://api.xendit.co/ewallets/charges/" + paymentId + "/refunds"))
+            HttpRequest request = outboundHttpGateway.request(OutboundHttpGateway.Upstream.XENDIT, "/ewallets/charges/" + paymentId + "/refunds")
                     .header("Authorization", "Basic " + auth)
                     .header("Content-Type", "application/json")
                     .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(rootNode)))
                     .build();
 
-            // Send the request
-            HttpClient client = HttpClient.newHttpClient();
-            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            // Send the request; not repeated after a timeout since the refund may already exist
+            HttpResponse<String> response = outboundHttpGateway.send(OutboundHttpGateway.Upstream.XENDIT, request, false);
 
             // Check if the response is successful
             if (response.statusCode() == 200 || response.statusCode() == 201) {
@@ -589,18 +657,15 @@ public class PaymentService {
             String auth = Base64.getEncoder().encodeToString((xenditSecret + ":").getBytes());
 
             // Xendit uses reference_id to query charges
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create("https://api.xendit.co/ewallets/charges?reference_id=" + referenceNumber))
+            HttpRequest request = outboundHttpGateway.request(OutboundHttpGateway.Upstream.XENDIT, "/ewallets/charges?reference_id=" + referenceNumber)
                     .header("Authorization", "Basic " + auth)
                     .header("Content-Type", "application/json")
                     .method("GET", HttpRequest.BodyPublishers.noBody())
                     .build();
 
-            HttpClient client = HttpClient.newHttpClient();
-            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            HttpResponse<String> response = outboundHttpGateway.send(OutboundHttpGateway.Upstream.XENDIT, request, true);
 
             // Parse the response
-            ObjectMapper objectMapper = new ObjectMapper();
             JsonNode responseBody = objectMapper.readTree(response.body());
 
             System.out.println("response: " + responseBody);
@@ -1,72 +1,174 @@
 package com.capstone.campuseats.Service;
 
+import com.capstone.campuseats.Entity.XenditWebhookEvent;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 
-import java.net.URI;
-import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.util.Base64;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Charge status lookups for the apps' GCash polling. Results are cached per
+ * charge (briefly while pending, longer once final) and filled in by the
+ * webhook, so most polls never reach Xendit.
+ */
 @Service
 public class PaymentVerificationService {
 
+    private static final Set<String> FINAL_STATUSES = Set.of("SUCCEEDED", "FAILED", "VOIDED", "REFUNDED");
+    private static final int MAX_CACHED = 10000;
+
     @Value("${XENDIT_SECRET:}")
     private String xenditSecret;
 
+    @Value("${campuseats.payments.verify.pending-ttl-ms:3000}")
+    private long pendingTtlMs;
+
+    @Value("${campuseats.payments.verify.final-ttl-ms:600000}")
+    private long finalTtlMs;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private OutboundHttpGateway outboundHttpGateway;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private final ConcurrentHashMap<String, Verification> cache = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, CompletableFuture<Verification>> inFlight = new ConcurrentHashMap<>();
+
+    // expiresAt 0 marks an error that isn't cached
+    private record Verification(int status, Map<String, Object> body, long expiresAt) {
+        ResponseEntity<?> toResponse() {
+            return ResponseEntity.status(status).body(body);
+        }
+
+        boolean isFinal() {
+            return body.get("status") instanceof String chargeStatus && FINAL_STATUSES.contains(chargeStatus.toUpperCase());
+        }
+    }
+
     /**
-     * Verifies if a payment charge has been paid by checking its status
+     * Verifies if a payment charge has been paid by checking its status.
+     * Answered from the cache while fresh; otherwise concurrent calls for the
+     * same charge share one lookup.
      * @param chargeId The Xendit charge ID
      * @return ResponseEntity containing payment status information
      */
     public ResponseEntity<?> verifyPaymentStatus(String chargeId) {
+        Verification cached = cache.get(chargeId);
+        if (cached != null && cached.expiresAt() > System.currentTimeMillis()) {
+            return cached.toResponse();
+        }
+
+        CompletableFuture<Verification> lookup = new CompletableFuture<>();
+        CompletableFuture<Verification> running = inFlight.putIfAbsent(chargeId, lookup);
+        if (running != null) {
+            return running.join().toResponse();
+        }
+        try {
+            Verification verification = lookup(chargeId);
+            if (verification.expiresAt() > 0) {
+                verification = remember(chargeId, verification);
+            }
+            lookup.complete(verification);
+            return verification.toResponse();
+        } catch (RuntimeException e) {
+            lookup.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(chargeId, lookup);
+        }
+    }
+
+    /**
+     * Called with each charge webhook so the next poll is answered without
+     * asking Xendit.
+     */
+    public void recordWebhookStatus(String chargeId, String status, String referenceId) {
+        if (chargeId == null || status == null) {
+            return;
+        }
+        remember(chargeId, paid(chargeId, status, referenceId));
+    }
+
+    private Verification lookup(String chargeId) {
+        // The webhook may have landed on another instance; its record is shared
+        XenditWebhookEvent event = mongoTemplate.findById("ewallet.charge.succeeded:" + chargeId, XenditWebhookEvent.class);
+        if (event != null && event.getPayload() != null && event.getPayload().get("data") instanceof Map<?, ?> data) {
+            Object referenceId = data.get("reference_id");
+            return paid(chargeId, String.valueOf(data.get("status")), referenceId != null ? referenceId.toString() : "");
+        }
+
         try {
             String auth = Base64.getEncoder().encodeToString((xenditSecret + ":").getBytes());
 
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create("https://api.xendit.co/ewallets/charges/" + chargeId))
+            HttpRequest request = outboundHttpGateway.request(OutboundHttpGateway.Upstream.XENDIT, "/ewallets/charges/" + chargeId)
                     .header("Authorization", "Basic " + auth)
                     .header("Content-Type", "application/json")
                     .method("GET", HttpRequest.BodyPublishers.noBody())
                     .build();
 
-            HttpClient client = HttpClient.newHttpClient();
-            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            HttpResponse<String> response = outboundHttpGateway.send(OutboundHttpGateway.Upstream.XENDIT, request, true);
 
-            ObjectMapper objectMapper = new ObjectMapper();
             JsonNode responseBody = objectMapper.readTree(response.body());
 
             if (response.statusCode() != 200) {
                 String errorMessage = responseBody.has("message") ? 
                     responseBody.get("message").asText() : "Unknown error";
-                return ResponseEntity.status(response.statusCode())
-                        .body(Map.of("error", errorMessage, "paid", false));
+                return new Verification(response.statusCode(), Map.of("error", errorMessage, "paid", false), 0);
             }
 
             // Extract payment status from the response
             String status = responseBody.get("status").asText();
             String referenceId = responseBody.get("reference_id").asText();
-            
-            boolean isPaid = "SUCCEEDED".equalsIgnoreCase(status);
 
-            return ResponseEntity.ok(Map.of(
-                "paid", isPaid,
-                "status", status,
-                "charge_id", chargeId,
-                "reference_id", referenceId
-            ));
+            return paid(chargeId, status, referenceId);
 
         } catch (Exception e) {
             e.printStackTrace();
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body(Map.of("error", e.getMessage(), "paid", false));
+            return new Verification(HttpStatus.INTERNAL_SERVER_ERROR.value(),
+                    Map.of("error", String.valueOf(e.getMessage()), "paid", false), 0);
+        }
+    }
+
+    private Verification paid(String chargeId, String status, String referenceId) {
+        boolean isPaid = "SUCCEEDED".equalsIgnoreCase(status);
+        // Final statuses don't change, so they can be kept much longer than a pending one
+        long ttl = FINAL_STATUSES.contains(status.toUpperCase()) ? finalTtlMs : pendingTtlMs;
+        return new Verification(HttpStatus.OK.value(), Map.of(
+            "paid", isPaid,
+            "status", status,
+            "charge_id", chargeId,
+            "reference_id", referenceId
+        ), System.currentTimeMillis() + ttl);
+    }
+
+    // Returns what the cache now holds for the charge
+    private Verification remember(String chargeId, Verification verification) {
+        if (cache.size() >= MAX_CACHED) {
+            long now = System.currentTimeMillis();
+            cache.values().removeIf(entry -> entry.expiresAt() <= now);
+        }
+        if (cache.size() < MAX_CACHED) {
+            // A late PENDING (webhook delivered out of order, or a lookup that started earlier) can't undo a final status
+            return cache.merge(chargeId, verification,
+                    (existing, incoming) -> existing.isFinal() && !incoming.isFinal() ? existing : incoming);
         }
+        return verification;
     }
 
     /**
@@ -0,0 +1,265 @@
+package com.capstone.campuseats.Service;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import com.capstone.campuseats.Entity.ProofUploadJob;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Uploads proof images to blob storage in the background.
+ *
+ * Callers spool the multipart files to local disk with prepare(), commit
+ * their order change (marking the fields in pendingUploads), then start()
+ * the jobs. Each file uploads on its own worker, and its URL is written to
+ * the job's targets when done. Jobs live in proof_upload_jobs until they
+ * succeed, so a failed or interrupted upload is retried with backoff,
+ * including after a restart as long as the spool directory survives.
+ * Spool files are host-local, so each instance only claims the jobs it
+ * spooled itself.
+ */
+@Service
+public class ProofUploadService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProofUploadService.class);
+
+    public static final String ORDERS = "orders";
+    public static final String REIMBURSEMENTS = "reimbursements";
+
+    private static final int MAX_ATTEMPTS = 8;
+    private static final long BASE_BACKOFF_SECONDS = 30;
+    // A job prepared but never started (the caller failed) is picked up by the retry scan after this
+    private static final long START_GRACE_SECONDS = 60;
+    private static final long STALE_CLAIM_MINUTES = 5;
+    private static final int QUEUE_CAPACITY = 200;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private OrderStateMachine orderStateMachine;
+
+    @Autowired
+    private BlobStorage blobStorage;
+
+    @Value("${campuseats.uploads.spool-dir:${java.io.tmpdir}/campuseats-uploads}")
+    private String spoolDir;
+
+    @Value("${campuseats.uploads.workers:4}")
+    private int workers;
+
+    // Must stay the same across restarts of an instance, like the spool directory; defaults to the hostname
+    @Value("${campuseats.uploads.host-id:}")
+    private String host;
+
+    private ThreadPoolExecutor executor;
+
+    /**
+     * A file to upload under blobName; its URL is written to each target.
+     */
+    public record ProofUpload(MultipartFile file, String blobName, List<ProofUploadJob.Target> targets) {
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        Files.createDirectories(Path.of(spoolDir));
+        if (host == null || host.isBlank()) {
+            host = InetAddress.getLocalHost().getHostName();
+        }
+        executor = new ThreadPoolExecutor(workers, workers, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(QUEUE_CAPACITY), runnable -> {
+                    Thread thread = new Thread(runnable, "proof-upload");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // Unfinished jobs stay in MongoDB and are retried on the next start
+        executor.shutdownNow();
+    }
+
+    public static ProofUploadJob.Target orderField(String orderId, String field) {
+        return new ProofUploadJob.Target(ORDERS, "_id", orderId, field, false);
+    }
+
+    public static ProofUploadJob.Target reimbursementField(String orderId, String field) {
+        // Looked up by order id since the reimbursement may be created after the job
+        return new ProofUploadJob.Target(REIMBURSEMENTS, "orderId", orderId, field, true);
+    }
+
+    /**
+     * Spools the files to disk and records a job for each, without starting them.
+     */
+    public List<ProofUploadJob> prepare(String orderId, List<ProofUpload> uploads) throws IOException {
+        List<ProofUploadJob> jobs = new ArrayList<>();
+        try {
+            for (ProofUpload upload : uploads) {
+                String id = UUID.randomUUID().toString();
+                Path spool = Path.of(spoolDir, id);
+                upload.file().transferTo(spool);
+
+                LocalDateTime now = LocalDateTime.now();
+                ProofUploadJob job = new ProofUploadJob(id, orderId, upload.blobName(), spool.toString(), host,
+                        upload.file().getContentType(), upload.targets(), ProofUploadJob.PENDING, 0, now.plusSeconds(START_GRACE_SECONDS),
+                        null, null, now);
+                jobs.add(mongoTemplate.insert(job));
+            }
+        } catch (IOException | RuntimeException e) {
+            discard(jobs);
+            throw e;
+        }
+        return jobs;
+    }
+
+    public void start(List<ProofUploadJob> jobs) {
+        jobs.forEach(job -> dispatch(job.getId()));
+    }
+
+    /**
+     * Drops prepared jobs, e.g. because the order change they belong to was rejected.
+     */
+    public void discard(List<ProofUploadJob> jobs) {
+        for (ProofUploadJob job : jobs) {
+            mongoTemplate.remove(new Query(Criteria.where("_id").is(job.getId())), ProofUploadJob.class);
+            deleteSpool(job);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${campuseats.uploads.retry-ms:15000}")
+    public void retryDue() {
+        LocalDateTime now = LocalDateTime.now();
+        Query due = new Query(ownedByThisHost().orOperator(
+                Criteria.where("state").is(ProofUploadJob.PENDING).and("nextAttemptAt").lte(now),
+                Criteria.where("state").is(ProofUploadJob.UPLOADING).and("claimedAt").lt(now.minusMinutes(STALE_CLAIM_MINUTES))))
+                .limit(QUEUE_CAPACITY);
+        due.fields().include("_id");
+        for (ProofUploadJob job : mongoTemplate.find(due, ProofUploadJob.class)) {
+            dispatch(job.getId());
+        }
+    }
+
+    private void dispatch(String jobId) {
+        try {
+            executor.execute(() -> run(jobId));
+        } catch (RejectedExecutionException e) {
+            // Queue full; the retry scan picks it up
+            logger.warn("Upload queue full, deferring job {}", jobId);
+        }
+    }
+
+    private void run(String jobId) {
+        LocalDateTime now = LocalDateTime.now();
+        // Claim the job so a second retry scan doesn't upload it twice; another host cannot see the spool file
+        Query claimable = new Query(ownedByThisHost().and("_id").is(jobId).orOperator(
+                Criteria.where("state").is(ProofUploadJob.PENDING),
+                Criteria.where("state").is(ProofUploadJob.UPLOADING).and("claimedAt").lt(now.minusMinutes(STALE_CLAIM_MINUTES))));
+        ProofUploadJob job = mongoTemplate.findAndModify(claimable,
+                new Update().set("state", ProofUploadJob.UPLOADING).set("claimedAt", now),
+                FindAndModifyOptions.options().returnNew(true), ProofUploadJob.class);
+        if (job == null) {
+            return;
+        }
+
+        try {
+            String url = blobStorage.upload(job.getBlobName(), Path.of(job.getSpoolPath()), job.getContentType());
+            for (ProofUploadJob.Target target : job.getTargets()) {
+                writeUrl(target, url);
+            }
+            mongoTemplate.remove(new Query(Criteria.where("_id").is(jobId)), ProofUploadJob.class);
+            deleteSpool(job);
+            logger.info("Uploaded {} for order {}", job.getBlobName(), job.getOrderId());
+        } catch (Exception e) {
+            int attempts = job.getAttempts() + 1;
+            boolean spoolLost = !Files.exists(Path.of(job.getSpoolPath()));
+            if (attempts >= MAX_ATTEMPTS || spoolLost) {
+                giveUp(job, attempts, e);
+            } else {
+                long backoff = BASE_BACKOFF_SECONDS << (attempts - 1);
+                mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(jobId)), new Update()
+                        .set("state", ProofUploadJob.PENDING)
+                        .set("attempts", attempts)
+                        .set("nextAttemptAt", LocalDateTime.now().plusSeconds(backoff))
+                        .set("lastError", e.getMessage()), ProofUploadJob.class);
+                logger.warn("Upload of {} failed (attempt {}), retrying in {}s: {}",
+                        job.getBlobName(), attempts, backoff, e.getMessage());
+            }
+        }
+    }
+
+    // Jobs spooled on this host; jobs recorded before hosts were tracked go to whichever instance claims them first
+    private Criteria ownedByThisHost() {
+        return Criteria.where("host").in(host, null);
+    }
+
+    private void writeUrl(ProofUploadJob.Target target, String url) {
+        Criteria guard = target.isOnlyIfEmpty() ? Criteria.where(target.getField()).in(null, "") : null;
+        if (!ORDERS.equals(target.getCollection())) {
+            Query query = new Query(Criteria.where(target.getKeyField()).is(target.getKeyValue()));
+            if (guard != null) {
+                query.addCriteria(guard);
+            }
+            mongoTemplate.updateFirst(query, new Update().set(target.getField(), url), target.getCollection());
+            return;
+        }
+        // Orders go through the state machine's field update so pollers see a new version
+        String orderId = target.getKeyValue();
+        boolean written = orderStateMachine.updateIf(orderId, guard,
+                new Update().set(target.getField(), url).pull("pendingUploads", target.getField())).isPresent();
+        if (!written) {
+            clearPending(target);
+        }
+    }
+
+    private void giveUp(ProofUploadJob job, int attempts, Exception e) {
+        logger.error("Giving up on upload {} for order {} after {} attempts: {}",
+                job.getBlobName(), job.getOrderId(), attempts, e.getMessage(), e);
+        mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(job.getId())), new Update()
+                .set("state", ProofUploadJob.FAILED)
+                .set("attempts", attempts)
+                .set("lastError", e.getMessage()), ProofUploadJob.class);
+        job.getTargets().stream()
+                .filter(target -> ORDERS.equals(target.getCollection()))
+                .forEach(this::clearPending);
+        deleteSpool(job);
+    }
+
+    private void clearPending(ProofUploadJob.Target target) {
+        orderStateMachine.updateIf(target.getKeyValue(), Criteria.where("pendingUploads").is(target.getField()),
+                new Update().pull("pendingUploads", target.getField()));
+    }
+
+    private void deleteSpool(ProofUploadJob job) {
+        try {
+            Files.deleteIfExists(Path.of(job.getSpoolPath()));
+        } catch (IOException e) {
+            logger.warn("Could not delete spool file {}: {}", job.getSpoolPath(), e.getMessage());
+        }
+    }
+}
@@ -1,22 +1,16 @@
 package com.capstone.campuseats.Service;
 
-import com.azure.storage.blob.BlobClient;
-import com.azure.storage.blob.BlobServiceClient;
-import com.azure.storage.blob.BlobServiceClientBuilder;
-import com.capstone.campuseats.Entity.DasherEntity;
 import com.capstone.campuseats.Entity.ReimburseEntity;
+import com.capstone.campuseats.Entity.WalletPostingType;
 import com.capstone.campuseats.Repository.DasherRepository;
 import com.capstone.campuseats.Repository.ReimburseRepository;
 import com.capstone.campuseats.config.CustomException;
-import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.*;
 
 @Service
@@ -31,20 +25,11 @@ public class ReimburseService {
         this.dasherRepository = dasherRepository;
     }
 
-    @Value("${spring.cloud.azure.storage.blob.container-name}")
-    private String containerName;
-
-    @Value("${azure.blob-storage.connection-string}")
-    private String connectionString;
-
-    private BlobServiceClient blobServiceClient;
+    @Autowired
+    private ContentAddressedStorage contentAddressedStorage;
 
-    @PostConstruct
-    public void init() {
-        blobServiceClient = new BlobServiceClientBuilder()
-                .connectionString(connectionString)
-                .buildClient();
-    }
+    @Autowired
+    private WalletService walletService;
 
     public List<ReimburseEntity> getAllReimburses(){return reimburseRepository.findAll();}
     public List<ReimburseEntity> getPendingReimburses() {
@@ -133,38 +118,22 @@ public class ReimburseService {
             reimburse.setCreatedAt(LocalDateTime.now());
         }
 
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
-        String formattedTimestamp = reimburse.getCreatedAt().format(formatter);
-        String sanitizedReimburseName = "reimburse/" + formattedTimestamp + "_" + userId;
-
-        // Upload main image
-        BlobClient blobClient = blobServiceClient
-                .getBlobContainerClient(containerName)
-                .getBlobClient(sanitizedReimburseName);
-        blobClient.upload(gcashQr.getInputStream(), gcashQr.getSize(), true);
+        // Upload main image; stored by content hash so a QR the dasher reuses is written once
+        String qrURL = contentAddressedStorage.store(gcashQr);
 
         // Upload location proof image
-        String sanitizedLocationProofName = "locationProof/" + formattedTimestamp + "_" + userId;
-        BlobClient locationProofBlobClient = blobServiceClient
-                .getBlobContainerClient(containerName)
-                .getBlobClient(sanitizedLocationProofName);
-        locationProofBlobClient.upload(locationProof.getInputStream(), locationProof.getSize(), true);
+        String locationProofUrl = contentAddressedStorage.store(locationProof);
 
         // Upload no show proof image
-        String sanitizedNoShowProofName = "noShowProof/" + formattedTimestamp + "_" + userId;
-        BlobClient noShowProofBlobClient = blobServiceClient
-                .getBlobContainerClient(containerName)
-                .getBlobClient(sanitizedNoShowProofName);
-        noShowProofBlobClient.upload(noShowProof.getInputStream(), noShowProof.getSize(), true);
+        String noShowProofUrl = contentAddressedStorage.store(noShowProof);
 
         // Generate unique ID and set reimburse entity fields
         String stringId = UUID.randomUUID().toString();
         reimburse.setId(stringId);
-        String qrURL = blobClient.getBlobUrl();
         reimburse.setStatus("pending");
         reimburse.setGcashQr(qrURL);
-        reimburse.setLocationProof(locationProofBlobClient.getBlobUrl());
-        reimburse.setNoShowProof(noShowProofBlobClient.getBlobUrl());
+        reimburse.setLocationProof(locationProofUrl);
+        reimburse.setNoShowProof(noShowProofUrl);
         reimburse.setCreatedAt(LocalDateTime.now());
 
         return reimburseRepository.save(reimburse);
@@ -188,22 +157,15 @@ public class ReimburseService {
                 return null;
             }
             
-            // Get the dasher
-            Optional<DasherEntity> dasherOptional = dasherRepository.findById(reimburse.getDasherId());
-            if (!dasherOptional.isPresent()) {
+            // Credit dasher wallet with the compensation amount in one $inc
+            float compensationAmount = (float) reimburse.getAmount();
+            OptionalDouble newBalance = walletService.adjust(WalletService.DASHER, reimburse.getDasherId(), compensationAmount,
+                    WalletPostingType.NO_SHOW_COMPENSATION, reimburse.getId());
+            if (newBalance.isEmpty()) {
                 System.out.println("❌ Cannot approve: Dasher not found with ID: " + reimburse.getDasherId());
                 return null;
             }
             
-            DasherEntity dasher = dasherOptional.get();
-            
-            // Credit dasher wallet with the compensation amount
-            float compensationAmount = (float) reimburse.getAmount();
-            float currentWallet = (float) dasher.getWallet();
-            float newBalance = currentWallet + compensationAmount;
-            dasher.setWallet(newBalance);
-            dasherRepository.save(dasher);
-            
             // Update reimbursement status
             reimburse.setStatus("paid");
             reimburse.setReferenceNumber(referenceNumber);
@@ -213,7 +175,7 @@ public class ReimburseService {
             System.out.println("   - Reimbursement ID: " + reimburseId);
             System.out.println("   - Dasher ID: " + reimburse.getDasherId());
             System.out.println("   - Compensation Amount: ₱" + compensationAmount);
-            System.out.println("   - Dasher New Wallet Balance: ₱" + dasher.getWallet());
+            System.out.println("   - Dasher New Wallet Balance: ₱" + newBalance.getAsDouble());
             System.out.println("   - Reference Number: " + referenceNumber);
             
             return reimburseRepository.save(reimburse);
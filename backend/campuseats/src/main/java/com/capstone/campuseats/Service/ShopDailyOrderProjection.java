@@ -0,0 +1,47 @@
+package com.capstone.campuseats.Service;
+
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import com.capstone.campuseats.Entity.OrderEvent;
+import com.capstone.campuseats.Entity.OrderStatus;
+
+/**
+ * Orders placed, completed and cancelled per shop per day, bucketed by the
+ * day the event happened. _id is "shopId|yyyy-MM-dd".
+ */
+@Component
+public class ShopDailyOrderProjection extends AbstractOrderProjection {
+
+    public static final String COLLECTION = "shop_daily_order_counts";
+
+    @Override
+    public String getName() {
+        return "shop-daily-order-counts";
+    }
+
+    @Override
+    public String getCollection() {
+        return COLLECTION;
+    }
+
+    @Override
+    public void apply(OrderEvent event) {
+        if (event.getShopId() == null) {
+            return;
+        }
+        Update update;
+        if (OrderEvent.PLACED.equals(event.getType())) {
+            update = new Update().inc("placed", 1);
+        } else if (event.entered(OrderStatus.COMPLETED)) {
+            update = new Update().inc("completed", 1).inc("revenue", event.getTotalPrice());
+        } else if (enteredCancelled(event)) {
+            update = new Update().inc("cancelled", 1);
+        } else {
+            return;
+        }
+        String day = event.getCreatedAt().format(DAY);
+        update.set("shopId", event.getShopId()).set("day", day);
+        applyOnce(event.getShopId() + "|" + day, event.getOffset(), update);
+    }
+}
@@ -2,30 +2,29 @@ package com.capstone.campuseats.Service;
 
 import java.io.IOException;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
-import com.capstone.campuseats.Entity.OrderEntity;
 import com.capstone.campuseats.Entity.UserEntity;
 import com.capstone.campuseats.Repository.OrderRepository;
 import com.capstone.campuseats.Repository.UserRepository;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
-import com.azure.storage.blob.BlobClient;
-import com.azure.storage.blob.BlobServiceClient;
-import com.azure.storage.blob.BlobServiceClientBuilder;
 import com.capstone.campuseats.Entity.ShopEntity;
+import com.capstone.campuseats.Entity.WalletPostingType;
 import com.capstone.campuseats.Repository.ShopRepository;
 import com.capstone.campuseats.config.CustomException;
 
-import jakarta.annotation.PostConstruct;
 
 @Service
 public class ShopService {
@@ -38,13 +37,14 @@ public class ShopService {
     @Autowired
     private LivestreamChatService livestreamChatService;
 
-    @Value("${spring.cloud.azure.storage.blob.container-name}")
-    private String containerName;
+    @Autowired
+    private ImageVariantService imageVariantService;
 
-    @Value("${azure.blob-storage.connection-string}")
-    private String connectionString;
+    @Autowired
+    private WalletService walletService;
 
-    private BlobServiceClient blobServiceClient;
+    @Autowired
+    private MongoTemplate mongoTemplate;
 
     @Autowired
     public ShopService(ShopRepository shopRepository, UserRepository userRepository, OrderRepository orderRepository) {
@@ -53,14 +53,6 @@ public class ShopService {
         this.orderRepository = orderRepository;
     }
 
-
-    @PostConstruct
-    public void init() {
-        blobServiceClient = new BlobServiceClientBuilder()
-                .connectionString(connectionString)
-                .buildClient();
-    }
-
     public List<ShopEntity> getAllShops() {
         return shopRepository.findAll();
     }
@@ -87,23 +79,10 @@ public class ShopService {
             shop.setCreatedAt(LocalDateTime.now());
         }
 
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
-        String formattedTimestamp = shop.getCreatedAt().format(formatter);
-        System.out.println("timestamp: " + formattedTimestamp);
-
-        String sanitizedShopName = shop.getName().replaceAll("[^a-zA-Z0-9-_\\.]", "_");
-
-        String blobFilename = "shop/" + formattedTimestamp + "_" + sanitizedShopName;
-
-        BlobClient blobClient = blobServiceClient
-                .getBlobContainerClient(containerName)
-                .getBlobClient(blobFilename);
+        ImageVariantService.StoredImage stored = imageVariantService.store(image, ImageVariantService.Profile.SHOP_BANNER);
 
-        blobClient.upload(image.getInputStream(), image.getSize(), true);
-
-        String imageUrl = blobClient.getBlobUrl();
-
-        shop.setImageUrl(imageUrl);
+        shop.setImageUrl(stored.url());
+        shop.setImageVariants(stored.variants());
         shop.setWallet(0);
         shop.setStatus("pending");
         shop.setCreatedAt(LocalDateTime.now());
@@ -111,46 +90,37 @@ public class ShopService {
     }
 
     public ShopEntity updateShop(String shopId, ShopEntity shop, MultipartFile image) throws IOException {
-        Optional<ShopEntity> optionalShop = shopRepository.findById(shopId);
-        if (optionalShop.isEmpty()) {
+        if (!shopRepository.existsById(shopId)) {
             throw new CustomException("Shop not found.");
         }
 
-        ShopEntity existingShop = optionalShop.get();
+        // Only the form's fields are $set; saving the whole document would write a stale wallet over
+        // concurrent $inc's (payouts, top-ups, cashouts) that landed while the image was processed
+        Update update = new Update()
+                .set("name", shop.getName())
+                .set("desc", shop.getDesc())
+                .set("address", shop.getAddress())
+                .set("googleLink", shop.getGoogleLink())
+                .set("categories", shop.getCategories())
+                .set("timeOpen", shop.getTimeOpen())
+                .set("timeClose", shop.getTimeClose())
+                .set("gcashName", shop.getGcashName())
+                .set("gcashNumber", shop.getGcashNumber())
+                .set("acceptGCASH", shop.isAcceptGCASH());
 
         if (image != null) {
-            // Format the timestamp
-            DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
-            String formattedTimestamp = LocalDateTime.now().format(formatter);
-            System.out.println("timestamp: " + formattedTimestamp);
-            // Sanitize shop name (optional)
-            String sanitizedShopName = shop.getName().replaceAll("[^a-zA-Z0-9-_\\.]", "_");
-
-            // Create the blob filename
-            String blobFilename = "shop/" + formattedTimestamp + "_" + sanitizedShopName;
-
-            BlobClient blobClient = blobServiceClient
-                    .getBlobContainerClient(containerName)
-                    .getBlobClient(blobFilename);
+            ImageVariantService.StoredImage stored = imageVariantService.store(image, ImageVariantService.Profile.SHOP_BANNER);
 
-            blobClient.upload(image.getInputStream(), image.getSize(), true);
-
-            String imageUrl = blobClient.getBlobUrl();
-            existingShop.setImageUrl(imageUrl);
+            update.set("imageUrl", stored.url());
+            update.set("imageVariants", stored.variants());
         }
 
-        existingShop.setName(shop.getName());
-        existingShop.setDesc(shop.getDesc());
-        existingShop.setAddress(shop.getAddress());
-        existingShop.setGoogleLink(shop.getGoogleLink());
-        existingShop.setCategories(shop.getCategories());
-        existingShop.setTimeOpen(shop.getTimeOpen());
-        existingShop.setTimeClose(shop.getTimeClose());
-        existingShop.setGcashName(shop.getGcashName());
-        existingShop.setGcashNumber(shop.getGcashNumber());
-        existingShop.setAcceptGCASH(shop.isAcceptGCASH());
-
-        return shopRepository.save(existingShop);
+        ShopEntity updatedShop = mongoTemplate.findAndModify(new Query(Criteria.where("_id").is(shopId)), update,
+                FindAndModifyOptions.options().returnNew(true), ShopEntity.class);
+        if (updatedShop == null) {
+            throw new CustomException("Shop not found.");
+        }
+        return updatedShop;
     }
 
     public List<ShopEntity> getActiveShops() {
@@ -214,46 +184,24 @@ public class ShopService {
 
 
     public boolean updateShopStatus(String shopId, String status) {
-        Optional<ShopEntity> shopOptional = shopRepository.findById(shopId);
-        if (shopOptional.isPresent()) {
-            ShopEntity shop = shopOptional.get();
-            shop.setStatus(status);
-            shopRepository.save(shop);
-            return true;
-        }
-        return false;
+        return setField(shopId, "status", status);
     }
 
     public boolean updateShopDeliveryFee(String shopId, float deliveryFee) {
-        Optional<ShopEntity> shopOptional = shopRepository.findById(shopId);
-        if (shopOptional.isPresent()) {
-            ShopEntity shop = shopOptional.get();
-            shop.setDeliveryFee(deliveryFee);
-            shopRepository.save(shop);
-            return true;
-        }
-        return false;
+        return setField(shopId, "deliveryFee", deliveryFee);
     }
 
     public boolean updateShopWallet(String shopId, float totalPrice) {
-        Optional<ShopEntity> shopOptional = shopRepository.findById(shopId);
-        if (shopOptional.isPresent()) {
-            ShopEntity shop = shopOptional.get();
-            shop.setWallet(shop.getWallet() + totalPrice);
-            shopRepository.save(shop);
-            return true;
-        }
-        return false;
+        return updateShopWallet(shopId, totalPrice, WalletPostingType.ADJUSTMENT, null);
     }
 
-    public List<ShopEntity> getTopShopsByCompletedOrders() {
-        // Step 1: Fetch all orders and group them by shopId, count the completed orders for each shop
-        List<OrderEntity> orders = orderRepository.findAll();
+    public boolean updateShopWallet(String shopId, float totalPrice, WalletPostingType type, String reference) {
+        return walletService.adjust(WalletService.SHOP, shopId, totalPrice, type, reference).isPresent();
+    }
 
-        // Create a map to store the count of completed orders per shopId
-        Map<String, Long> shopOrderCountMap = orders.stream()
-                .filter(order -> "completed".equals(order.getStatus()))
-                .collect(Collectors.groupingBy(OrderEntity::getShopId, Collectors.counting()));
+    public List<ShopEntity> getTopShopsByCompletedOrders() {
+        // Step 1: Count the completed orders for each shop inside MongoDB, archived orders included
+        Map<String, Long> shopOrderCountMap = completedOrderCountsByShop();
 
         // Step 2: Fetch all shops and associate them with their completed order count
         List<ShopEntity> shops = shopRepository.findAll();
@@ -274,13 +222,8 @@ public class ShopService {
     }
 
     public List<ShopEntity> getTopShopsByCompletedOrdersAndCampus(String campusId) {
-        // Step 1: Fetch all orders and group them by shopId, count the completed orders for each shop
-        List<OrderEntity> orders = orderRepository.findAll();
-
-        // Create a map to store the count of completed orders per shopId
-        Map<String, Long> shopOrderCountMap = orders.stream()
-                .filter(order -> "completed".equals(order.getStatus()))
-                .collect(Collectors.groupingBy(OrderEntity::getShopId, Collectors.counting()));
+        // Step 1: Count the completed orders for each shop inside MongoDB, archived orders included
+        Map<String, Long> shopOrderCountMap = completedOrderCountsByShop();
 
         // Step 2: Fetch shops by campus (or all if campusId is null)
         List<ShopEntity> shops;
@@ -304,15 +247,12 @@ public class ShopService {
         return shops;
     }
 
+    private Map<String, Long> completedOrderCountsByShop() {
+        return orderRepository.countBy("shopId", Criteria.where("status").is("completed"), OrderArchiveService.ARCHIVE_COLLECTION);
+    }
+
     public boolean updateStreamUrl(String shopId, String streamUrl) {
-        Optional<ShopEntity> shopOptional = shopRepository.findById(shopId);
-        if (shopOptional.isPresent()) {
-            ShopEntity shop = shopOptional.get();
-            shop.setStreamUrl(streamUrl);
-            shopRepository.save(shop);
-            return true;
-        }
-        return false;
+        return setField(shopId, "streamUrl", streamUrl);
     }
 
     public String getStreamUrl(String shopId) {
@@ -348,12 +288,7 @@ public class ShopService {
      * @return true if the status was updated successfully, false if shop not found
      */
     public boolean updateStreamingStatus(String shopId, boolean isStreaming) {
-        Optional<ShopEntity> shopOptional = shopRepository.findById(shopId);
-        if (shopOptional.isPresent()) {
-            ShopEntity shop = shopOptional.get();
-            shop.setIsStreaming(isStreaming);
-            shopRepository.save(shop);
-            
+        if (setField(shopId, "isStreaming", isStreaming)) {
             // When stream ends, clean up chat messages and viewers
             if (!isStreaming) {
                 String channelName = "shop_" + shopId;
@@ -383,20 +318,16 @@ public class ShopService {
      * This method is called from CashoutService when a cashout status is changed to 'accepted'
      * 
      * @param shopId The ID of the shop to update
-     * @param amount The cashout amount to deduct from the shop's wallet
-     * @return true if the wallet was updated successfully, false otherwise
+     * @param amount The cashout amount to deduct from the shop's wallet (negative to refund)
+     * @param cashoutId The cashout the ledger postings refer to
+     * @return true if the wallet was updated successfully, false if the shop doesn't exist
+     * @throws CustomException if the wallet doesn't cover the amount
      */
-    public boolean updateShopWalletForCashout(String shopId, double amount) {
-        Optional<ShopEntity> shopOptional = shopRepository.findById(shopId);
-        if (shopOptional.isPresent()) {
-            ShopEntity shop = shopOptional.get();
-            // Ensure wallet doesn't go negative
-            double newBalance = Math.max(0.0, shop.getWallet() - amount);
-            shop.setWallet(newBalance);
-            shopRepository.save(shop);
-            return true;
+    public boolean updateShopWalletForCashout(String shopId, double amount, String cashoutId) {
+        if (amount > 0) {
+            return walletService.debit(WalletService.SHOP, shopId, amount, WalletPostingType.CASHOUT, cashoutId).isPresent();
         }
-        return false;
+        return walletService.adjust(WalletService.SHOP, shopId, -amount, WalletPostingType.CASHOUT_REFUND, cashoutId).isPresent();
     }
 
     /**
@@ -407,14 +338,7 @@ public class ShopService {
      * @return true if assignment was successful, false otherwise
      */
     public boolean assignCampus(String shopId, String campusId) {
-        Optional<ShopEntity> shopOptional = shopRepository.findById(shopId);
-        if (shopOptional.isPresent()) {
-            ShopEntity shop = shopOptional.get();
-            shop.setCampusId(campusId);
-            shopRepository.save(shop);
-            return true;
-        }
-        return false;
+        return setField(shopId, "campusId", campusId);
     }
 
     /**
@@ -425,18 +349,17 @@ public class ShopService {
      * @return true if update was successful, false otherwise
      */
     public boolean updateSubscriptionStatus(String shopId, boolean subscriptionStatus) {
-        Optional<ShopEntity> shopOptional = shopRepository.findById(shopId);
-        if (shopOptional.isPresent()) {
-            ShopEntity shop = shopOptional.get();
-            shop.setSubscriptionStatus(subscriptionStatus);
-            shopRepository.save(shop);
+        if (setField(shopId, "subscriptionStatus", subscriptionStatus)) {
             System.out.println("Updated subscription status for shop " + shopId + " to " + subscriptionStatus);
             return true;
         }
         System.err.println("Shop not found: " + shopId);
         return false;
     }
-}
 
-// public ShopEntity updateShop(ShopEntity shop) {
-// return shopRepository.save(shop);
\ No newline at end of file
+    // Sets one field without rewriting the document, so a concurrent wallet $inc isn't overwritten
+    private boolean setField(String shopId, String field, Object value) {
+        return mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(shopId)),
+                new Update().set(field, value), ShopEntity.class).getMatchedCount() > 0;
+    }
+}
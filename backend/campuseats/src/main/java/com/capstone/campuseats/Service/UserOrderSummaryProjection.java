@@ -0,0 +1,47 @@
+package com.capstone.campuseats.Service;
+
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import com.capstone.campuseats.Entity.OrderEvent;
+import com.capstone.campuseats.Entity.OrderStatus;
+
+/**
+ * Per-customer order counts and spend, one document per uid.
+ */
+@Component
+public class UserOrderSummaryProjection extends AbstractOrderProjection {
+
+    public static final String COLLECTION = "user_order_summaries";
+
+    @Override
+    public String getName() {
+        return "user-order-summaries";
+    }
+
+    @Override
+    public String getCollection() {
+        return COLLECTION;
+    }
+
+    @Override
+    public void apply(OrderEvent event) {
+        if (event.getUid() == null) {
+            return;
+        }
+        Update update;
+        if (OrderEvent.PLACED.equals(event.getType())) {
+            update = new Update().inc("ordersPlaced", 1).set("lastOrderAt", event.getCreatedAt());
+        } else if (event.entered(OrderStatus.COMPLETED)) {
+            update = new Update().inc("ordersCompleted", 1)
+                    .inc("totalSpent", event.getTotalPrice() + event.getDeliveryFee());
+        } else if (enteredCancelled(event)) {
+            update = new Update().inc("ordersCancelled", 1);
+        } else if (event.entered(OrderStatus.NO_SHOW)) {
+            update = new Update().inc("noShows", 1);
+        } else {
+            return;
+        }
+        applyOnce(event.getUid(), event.getOffset(), update.set("uid", event.getUid()));
+    }
+}
@@ -1,8 +1,6 @@
 package com.capstone.campuseats.Service;
 
 import java.io.IOException;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.Date;
 import java.util.List;
 import java.util.Optional;
@@ -16,9 +14,6 @@ import org.springframework.stereotype.Service;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.web.multipart.MultipartFile;
 
-import com.azure.storage.blob.BlobClient;
-import com.azure.storage.blob.BlobServiceClient;
-import com.azure.storage.blob.BlobServiceClientBuilder;
 import com.capstone.campuseats.Controller.NotificationController;
 import com.capstone.campuseats.Entity.ConfirmationEntity;
 import com.capstone.campuseats.Entity.UserEntity;
@@ -27,7 +22,6 @@ import com.capstone.campuseats.Repository.UserRepository;
 import com.capstone.campuseats.config.CustomException;
 import com.capstone.campuseats.config.EmailUtils;
 
-import jakarta.annotation.PostConstruct;
 
 @Service
 public class UserService {
@@ -55,20 +49,8 @@ public class UserService {
     @Autowired
     private VerificationCodeService verificationCodeService;
 
-    @Value("${spring.cloud.azure.storage.blob.container-name}")
-    private String containerName;
-
-    @Value("${azure.blob-storage.connection-string}")
-    private String connectionString;
-
-    private BlobServiceClient blobServiceClient;
-
-    @PostConstruct
-    public void init() {
-        blobServiceClient = new BlobServiceClientBuilder()
-                .connectionString(connectionString)
-                .buildClient();
-    }
+    @Autowired
+    private ImageVariantService imageVariantService;
 
     public String sendVerificationCode(String to, String verificationCode, boolean isMobile) {
         return brevoEmailService.sendVerificationCode(to, verificationCode, isMobile);
@@ -460,21 +442,10 @@ public class UserService {
         UserEntity existingUser = optionalUser.get();
 
         if (image != null && !image.isEmpty()) {
-            // Format the timestamp
-            DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
-            String formattedTimestamp = LocalDateTime.now().format(formatter);
-
-            // Create the blob filename
-            String blobFilename = "profile/" + formattedTimestamp + "_" + userId;
-
-            BlobClient blobClient = blobServiceClient
-                    .getBlobContainerClient(containerName)
-                    .getBlobClient(blobFilename);
-
-            blobClient.upload(image.getInputStream(), image.getSize(), true);
+            ImageVariantService.StoredImage stored = imageVariantService.store(image, ImageVariantService.Profile.PROFILE_PICTURE);
 
-            String profilePictureUrl = blobClient.getBlobUrl();
-            existingUser.setProfilePictureUrl(profilePictureUrl);
+            existingUser.setProfilePictureUrl(stored.url());
+            existingUser.setProfilePictureVariants(stored.variants());
 
             // Save and return updated user
             return userRepository.save(existingUser);
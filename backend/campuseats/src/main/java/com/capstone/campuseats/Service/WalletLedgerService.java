@@ -0,0 +1,373 @@
+package com.capstone.campuseats.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.ConditionalOperators;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.capstone.campuseats.Entity.WalletPosting;
+import com.capstone.campuseats.Entity.WalletSnapshot;
+import com.capstone.campuseats.config.CustomException;
+
+/**
+ * Reads over wallet_ledger, plus the nightly job that compacts each day's
+ * postings into one WalletSnapshot per account. A balance as of T is the
+ * last snapshot before T's day plus the postings after it, so reads never
+ * replay an account's whole history.
+ */
+@Service
+public class WalletLedgerService {
+
+    private static final Logger logger = LoggerFactory.getLogger(WalletLedgerService.class);
+
+    public static final int DEFAULT_LIMIT = 50;
+    public static final int MAX_LIMIT = 200;
+    private static final Set<String> ACCOUNT_TYPES = Set.of(WalletService.SHOP, WalletService.DASHER, "platform", "external");
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    // Runs after midnight so the previous day is closed
+    @Scheduled(cron = "${campuseats.ledger.snapshot-cron:0 15 0 * * *}")
+    public void snapshotOnSchedule() {
+        try {
+            int written = snapshotThrough(LocalDate.now().minusDays(1));
+            if (written > 0) {
+                logger.info("Wrote {} wallet snapshots", written);
+            }
+        } catch (Exception e) {
+            logger.error("Wallet snapshot failed: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Snapshots every day with postings after the last snapshotted day, up to
+     * and including lastDay. Snapshots are upserted by id, so an interrupted
+     * run is simply picked up again by the next one.
+     */
+    public int snapshotThrough(LocalDate lastDay) {
+        WalletSnapshot last = mongoTemplate.findOne(new Query().with(Sort.by(Sort.Direction.DESC, "day")).limit(1),
+                WalletSnapshot.class);
+        LocalDateTime from = last != null ? last.getDay().plusDays(1).atStartOfDay() : null;
+
+        int written = 0;
+        while (true) {
+            // Jump straight to the next day that has postings
+            Query query = from != null ? new Query(Criteria.where("createdAt").gte(from)) : new Query();
+            WalletPosting next = mongoTemplate.findOne(query
+                    .with(Sort.by(Sort.Direction.ASC, "createdAt")).limit(1), WalletPosting.class);
+            if (next == null || next.getCreatedAt().toLocalDate().isAfter(lastDay)) {
+                return written;
+            }
+            LocalDate day = next.getCreatedAt().toLocalDate();
+            written += snapshotDay(day);
+            from = day.plusDays(1).atStartOfDay();
+        }
+    }
+
+    private int snapshotDay(LocalDate day) {
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("createdAt").gte(day.atStartOfDay()).lt(day.plusDays(1).atStartOfDay())),
+                Aggregation.group("accountType", "accountId", "type")
+                        .sum("amount").as("total")
+                        .sum(ConditionalOperators.when(Criteria.where("amount").gt(0)).thenValueOf("amount").otherwise(0)).as("credits")
+                        .sum(ConditionalOperators.when(Criteria.where("amount").lt(0)).thenValueOf("amount").otherwise(0)).as("debits")
+                        .count().as("postings"));
+        List<Document> rows = mongoTemplate.aggregate(aggregation, WalletPosting.class, Document.class).getMappedResults();
+
+        Map<String, WalletSnapshot> snapshots = new LinkedHashMap<>();
+        for (Document row : rows) {
+            Document key = (Document) row.get("_id");
+            String accountType = key.getString("accountType");
+            String accountId = key.getString("accountId");
+            WalletSnapshot snapshot = snapshots.computeIfAbsent(snapshotId(accountType, accountId, day),
+                    id -> WalletSnapshot.builder().id(id).accountType(accountType).accountId(accountId).day(day)
+                            .totalsByType(new HashMap<>()).createdAt(LocalDateTime.now()).build());
+            snapshot.getTotalsByType().merge(key.getString("type"), number(row, "total"), Double::sum);
+            snapshot.setCredits(snapshot.getCredits() + number(row, "credits"));
+            snapshot.setDebits(snapshot.getDebits() + number(row, "debits"));
+            snapshot.setPostings(snapshot.getPostings() + ((Number) row.get("postings")).longValue());
+        }
+
+        for (WalletSnapshot snapshot : snapshots.values()) {
+            double opening = openingBalance(snapshot.getAccountType(), snapshot.getAccountId(), snapshot.getDay());
+            snapshot.setOpeningBalance(opening);
+            snapshot.setClosingBalance(opening + snapshot.getCredits() + snapshot.getDebits());
+            mongoTemplate.findAndReplace(new Query(Criteria.where("_id").is(snapshot.getId())), snapshot,
+                    FindAndReplaceOptions.options().upsert());
+        }
+        return snapshots.size();
+    }
+
+    /**
+     * Balance at the start of day: the previous snapshot's closing balance,
+     * or for an account's first day, the balance it had before the ledger
+     * existed.
+     */
+    private double openingBalance(String accountType, String accountId, LocalDate day) {
+        WalletSnapshot previous = mongoTemplate.findOne(new Query(accountCriteria(accountType, accountId).and("day").lt(day))
+                .with(Sort.by(Sort.Direction.DESC, "day")).limit(1), WalletSnapshot.class);
+        return previous != null ? previous.getClosingBalance() : preLedgerBalance(accountType, accountId);
+    }
+
+    // Wallets predate the ledger; the first posting's balanceAfter tells what they held before it
+    private double preLedgerBalance(String accountType, String accountId) {
+        WalletPosting first = mongoTemplate.findOne(new Query(accountCriteria(accountType, accountId))
+                .with(Sort.by(Sort.Direction.ASC, "createdAt", "_id")).limit(1), WalletPosting.class);
+        if (first != null) {
+            return first.getBalanceAfter() != null ? first.getBalanceAfter() - first.getAmount() : 0;
+        }
+        if (WalletService.SHOP.equals(accountType) || WalletService.DASHER.equals(accountType)) {
+            Query query = new Query(Criteria.where("_id").is(accountId));
+            query.fields().include("wallet");
+            Document account = mongoTemplate.findOne(query, Document.class,
+                    WalletService.SHOP.equals(accountType) ? "shops" : "dashers");
+            if (account == null) {
+                throw new CustomException("Account not found: " + accountType + " " + accountId);
+            }
+            Object wallet = account.get("wallet");
+            return wallet instanceof Number number ? number.doubleValue() : 0;
+        }
+        return 0;
+    }
+
+    public double balanceAsOf(String accountType, String accountId, LocalDateTime at) {
+        checkAccountType(accountType);
+        WalletSnapshot snapshot = mongoTemplate.findOne(
+                new Query(accountCriteria(accountType, accountId).and("day").lt(at.toLocalDate()))
+                        .with(Sort.by(Sort.Direction.DESC, "day")).limit(1), WalletSnapshot.class);
+
+        double balance;
+        Criteria tail = accountCriteria(accountType, accountId);
+        if (snapshot != null) {
+            balance = snapshot.getClosingBalance();
+            tail = tail.and("createdAt").gte(snapshot.getDay().plusDays(1).atStartOfDay()).lt(at);
+        } else {
+            balance = preLedgerBalance(accountType, accountId);
+            tail = tail.and("createdAt").lt(at);
+        }
+
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(tail),
+                Aggregation.group().sum("amount").as("total"));
+        Document sum = mongoTemplate.aggregate(aggregation, WalletPosting.class, Document.class).getUniqueMappedResult();
+        return sum != null ? balance + number(sum, "total") : balance;
+    }
+
+    /**
+     * Postings in [from, to), oldest first, with the balances at both ends on
+     * the first page. cursor is the nextCursor of the previous page.
+     */
+    public Map<String, Object> statement(String accountType, String accountId, LocalDateTime from, LocalDateTime to,
+            String cursor, Integer limit) {
+        checkAccountType(accountType);
+        if (from == null || to == null || !from.isBefore(to)) {
+            throw new CustomException("from must be before to.");
+        }
+        int pageSize = limit == null || limit <= 0 ? DEFAULT_LIMIT : Math.min(limit, MAX_LIMIT);
+
+        Criteria criteria = accountCriteria(accountType, accountId).and("createdAt").gte(from).lt(to);
+        if (cursor != null && !cursor.isEmpty()) {
+            String[] position = decodeCursor(cursor);
+            LocalDateTime createdAt = LocalDateTime.parse(position[0]);
+            criteria = new Criteria().andOperator(criteria, new Criteria().orOperator(
+                    Criteria.where("createdAt").gt(createdAt),
+                    Criteria.where("createdAt").is(createdAt).and("_id").gt(position[1])));
+        }
+        List<WalletPosting> postings = mongoTemplate.find(new Query(criteria)
+                .with(Sort.by(Sort.Direction.ASC, "createdAt", "_id")).limit(pageSize + 1), WalletPosting.class);
+        boolean hasMore = postings.size() > pageSize;
+        if (hasMore) {
+            postings = new ArrayList<>(postings.subList(0, pageSize));
+        }
+
+        Map<String, Object> page = new LinkedHashMap<>();
+        if (cursor == null || cursor.isEmpty()) {
+            page.put("openingBalance", balanceAsOf(accountType, accountId, from));
+            page.put("closingBalance", balanceAsOf(accountType, accountId, to));
+        }
+        page.put("postings", postings);
+        page.put("nextCursor", hasMore ? encodeCursor(postings.get(postings.size() - 1)) : null);
+        return page;
+    }
+
+    /**
+     * Per-day snapshots for one account, e.g. a dasher's earnings by day.
+     * Only closed days are snapshotted; today comes from statement().
+     */
+    public List<WalletSnapshot> daily(String accountType, String accountId, LocalDate from, LocalDate to) {
+        checkAccountType(accountType);
+        return mongoTemplate.find(new Query(accountCriteria(accountType, accountId).and("day").gte(from).lte(to))
+                .with(Sort.by(Sort.Direction.ASC, "day")), WalletSnapshot.class);
+    }
+
+    /**
+     * Totals over snapshotted days, per account type and per posting type.
+     * Every entry posts to two accounts with opposite signs, so imbalance
+     * should be 0. Both legs are written together, though, so a lost ledger
+     * write doesn't show there; walletDrift compares each shop and dasher
+     * wallet with its ledger balance (last snapshot plus the postings after
+     * it) and lists the accounts that disagree.
+     */
+    public Map<String, Object> reconciliation(LocalDate from, LocalDate to) {
+        List<WalletSnapshot> snapshots = mongoTemplate.find(
+                new Query(Criteria.where("day").gte(from).lte(to)), WalletSnapshot.class);
+
+        Map<String, Map<String, Double>> byAccountType = new LinkedHashMap<>();
+        double imbalance = 0;
+        for (WalletSnapshot snapshot : snapshots) {
+            Map<String, Double> totals = byAccountType.computeIfAbsent(snapshot.getAccountType(), type -> new HashMap<>());
+            totals.merge("credits", snapshot.getCredits(), Double::sum);
+            totals.merge("debits", snapshot.getDebits(), Double::sum);
+            snapshot.getTotalsByType().forEach((type, total) -> totals.merge(type, total, Double::sum));
+            imbalance += snapshot.getCredits() + snapshot.getDebits();
+        }
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("from", from);
+        report.put("to", to);
+        report.put("accountTypes", byAccountType);
+        report.put("imbalance", Math.round(imbalance * 100) / 100.0);
+        report.put("walletDrift", walletDrift());
+        return report;
+    }
+
+    // A wallet change in flight between its $inc and its postings shows up briefly; recheck before acting on one
+    private List<Map<String, Object>> walletDrift() {
+        LocalDateTime now = LocalDateTime.now();
+        List<Map<String, Object>> drift = new ArrayList<>();
+        for (String accountType : List.of(WalletService.SHOP, WalletService.DASHER)) {
+            String collection = WalletService.SHOP.equals(accountType) ? "shops" : "dashers";
+            List<String> accountIds = mongoTemplate.findDistinct(new Query(Criteria.where("accountType").is(accountType)),
+                    "accountId", WalletPosting.class, String.class);
+            if (accountIds.isEmpty()) {
+                continue;
+            }
+            Map<String, Double> ledgerBalances = ledgerBalances(accountType, accountIds, now);
+            Query query = new Query(Criteria.where("_id").in(accountIds));
+            query.fields().include("wallet");
+            for (Document account : mongoTemplate.find(query, Document.class, collection)) {
+                String accountId = account.get("_id").toString();
+                double ledger = ledgerBalances.getOrDefault(accountId, 0.0);
+                double wallet = number(account, "wallet");
+                if (Math.abs(wallet - ledger) >= 0.005) {
+                    Map<String, Object> row = new LinkedHashMap<>();
+                    row.put("accountType", accountType);
+                    row.put("accountId", accountId);
+                    row.put("wallet", wallet);
+                    row.put("ledger", Math.round(ledger * 100) / 100.0);
+                    row.put("drift", Math.round((wallet - ledger) * 100) / 100.0);
+                    drift.add(row);
+                }
+            }
+        }
+        return drift;
+    }
+
+    /**
+     * balanceAsOf(accountType, id, at) for many accounts of one type, in three
+     * aggregations whatever the number of accounts: the latest closed snapshot
+     * of each, the postings after it, and for accounts without a snapshot the
+     * first posting (their pre-ledger balance).
+     */
+    private Map<String, Double> ledgerBalances(String accountType, List<String> accountIds, LocalDateTime at) {
+        // Grouped by accountId, so each result's id is the account id
+        Aggregation latestSnapshots = Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("accountType").is(accountType).and("accountId").in(accountIds)
+                        .and("day").lt(at.toLocalDate())),
+                Aggregation.sort(Sort.by(Sort.Direction.ASC, "accountId").and(Sort.by(Sort.Direction.DESC, "day"))),
+                Aggregation.group("accountId").first("day").as("day").first("closingBalance").as("closingBalance"));
+        List<WalletSnapshot> snapshots = mongoTemplate.aggregate(latestSnapshots, WalletSnapshot.class, WalletSnapshot.class)
+                .getMappedResults();
+
+        Map<String, Double> balances = new HashMap<>();
+        List<Criteria> tails = new ArrayList<>();
+        for (WalletSnapshot snapshot : snapshots) {
+            balances.put(snapshot.getId(), snapshot.getClosingBalance());
+            tails.add(Criteria.where("accountId").is(snapshot.getId())
+                    .and("createdAt").gte(snapshot.getDay().plusDays(1).atStartOfDay()).lt(at));
+        }
+        List<String> unsnapshotted = accountIds.stream().filter(id -> !balances.containsKey(id)).toList();
+        if (!unsnapshotted.isEmpty()) {
+            tails.add(Criteria.where("accountId").in(unsnapshotted).and("createdAt").lt(at));
+
+            Aggregation firstPostings = Aggregation.newAggregation(
+                    Aggregation.match(Criteria.where("accountType").is(accountType).and("accountId").in(unsnapshotted)),
+                    Aggregation.sort(Sort.by(Sort.Direction.ASC, "accountId", "createdAt", "_id")),
+                    Aggregation.group("accountId").first("balanceAfter").as("balanceAfter").first("amount").as("amount"));
+            for (Document first : mongoTemplate.aggregate(firstPostings, WalletPosting.class, Document.class).getMappedResults()) {
+                Object balanceAfter = first.get("balanceAfter");
+                balances.put(first.get("_id").toString(), balanceAfter instanceof Number number
+                        ? number.doubleValue() - number(first, "amount") : 0.0);
+            }
+        }
+
+        Aggregation tailSums = Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("accountType").is(accountType).orOperator(tails)),
+                Aggregation.group("accountId").sum("amount").as("total"));
+        for (Document sum : mongoTemplate.aggregate(tailSums, WalletPosting.class, Document.class).getMappedResults()) {
+            balances.merge(sum.get("_id").toString(), number(sum, "total"), Double::sum);
+        }
+        return balances;
+    }
+
+    private static Criteria accountCriteria(String accountType, String accountId) {
+        return Criteria.where("accountType").is(accountType).and("accountId").is(accountId);
+    }
+
+    private static void checkAccountType(String accountType) {
+        if (!ACCOUNT_TYPES.contains(accountType)) {
+            throw new CustomException("Unknown account type: " + accountType);
+        }
+    }
+
+    private static String snapshotId(String accountType, String accountId, LocalDate day) {
+        return accountType + ":" + accountId + ":" + day;
+    }
+
+    private static double number(Document document, String field) {
+        Object value = document.get(field);
+        return value instanceof Number number ? number.doubleValue() : 0;
+    }
+
+    // Cursor format: base64url("<createdAt ISO>|<postingId>")
+    private static String encodeCursor(WalletPosting posting) {
+        String raw = posting.getCreatedAt().toString() + "|" + posting.getId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String[] decodeCursor(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = raw.indexOf('|');
+            if (separator <= 0 || separator == raw.length() - 1) {
+                throw new CustomException("Invalid cursor");
+            }
+            LocalDateTime.parse(raw.substring(0, separator));
+            return new String[] { raw.substring(0, separator), raw.substring(separator + 1) };
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            throw new CustomException("Invalid cursor");
+        }
+    }
+}
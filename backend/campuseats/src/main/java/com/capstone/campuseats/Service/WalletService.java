@@ -0,0 +1,218 @@
+package com.capstone.campuseats.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalDouble;
+import java.util.UUID;
+
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.capstone.campuseats.Entity.WalletPosting;
+import com.capstone.campuseats.Entity.WalletPostingType;
+import com.capstone.campuseats.config.CustomException;
+
+/**
+ * Shop and dasher wallet changes. Each change is one findAndModify that
+ * $inc's the wallet and returns the new balance, so concurrent top-ups,
+ * completions and cashouts can't overwrite each other the way a load,
+ * add and save() could. The wallet update event is sent with the balance
+ * the database returned.
+ *
+ * Every change is also written to wallet_ledger as typed postings (see
+ * WalletPosting), right after the $inc and with the balance it returned.
+ * If that write fails outside a transaction, the $inc is undone and the
+ * change fails, so the caller can retry without applying it twice.
+ *
+ * Inside a Mongo transaction (order completion) the $inc and its postings
+ * commit or roll back together, and the wallet update event waits for the
+ * commit so clients never see a balance that was rolled back.
+ */
+@Service
+public class WalletService {
+
+    private static final Logger logger = LoggerFactory.getLogger(WalletService.class);
+
+    public static final String SHOP = "shop";
+    public static final String DASHER = "dasher";
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private WebSocketNotificationService webSocketNotificationService;
+
+    /**
+     * Adds delta (negative to debit) and returns the new balance, or empty if
+     * the account doesn't exist. The balance may go negative; dashers carry
+     * COD admin fees as a negative balance.
+     */
+    public OptionalDouble adjust(String accountType, String accountId, double delta, WalletPostingType type, String reference) {
+        return apply(accountType, accountId, lines(type, delta), reference, false, null);
+    }
+
+    /**
+     * Applies several typed amounts as one $inc, e.g. a COD completion that
+     * owes both an admin fee and earlier no-show charges.
+     */
+    public OptionalDouble adjust(String accountType, String accountId, Map<WalletPostingType, Double> lines, String reference) {
+        return apply(accountType, accountId, lines, reference, false, null);
+    }
+
+    /**
+     * Debits amount only if the balance covers it. Returns empty if the
+     * account doesn't exist and throws if the balance is too low.
+     */
+    public OptionalDouble debit(String accountType, String accountId, double amount, WalletPostingType type, String reference) {
+        OptionalDouble balance = apply(accountType, accountId, lines(type, -amount), reference, true, null);
+        if (balance.isEmpty() && exists(accountType, accountId)) {
+            throw new CustomException("Insufficient wallet balance.");
+        }
+        return balance;
+    }
+
+    /**
+     * Credits a gateway top-up at most once per charge. The charge id is
+     * checked against and added to the account's appliedCharges in the same
+     * findAndModify as the $inc, so concurrent deliveries of one charge
+     * can't both credit it. Returns false if the charge was already applied
+     * and throws if the account doesn't exist.
+     */
+    public boolean topUp(String accountType, String accountId, double amount, String chargeId) {
+        OptionalDouble balance = apply(accountType, accountId, lines(WalletPostingType.TOPUP, amount), chargeId, false, chargeId);
+        if (balance.isEmpty() && !exists(accountType, accountId)) {
+            throw new CustomException("Account not found: " + accountType + " " + accountId);
+        }
+        return balance.isPresent();
+    }
+
+    private OptionalDouble apply(String accountType, String accountId, Map<WalletPostingType, Double> lines,
+            String reference, boolean nonNegative, String chargeId) {
+        double delta = lines.values().stream().mapToDouble(Double::doubleValue).sum();
+        Criteria criteria = Criteria.where("_id").is(accountId);
+        if (nonNegative && delta < 0) {
+            criteria = criteria.and("wallet").gte(-delta);
+        }
+        Update update = new Update().inc("wallet", delta);
+        if (chargeId != null) {
+            criteria = criteria.and("appliedCharges").ne(chargeId);
+            update.addToSet("appliedCharges", chargeId);
+        }
+        Query query = new Query(criteria);
+        query.fields().include("wallet");
+        Document account = mongoTemplate.findAndModify(query, update,
+                FindAndModifyOptions.options().returnNew(true), Document.class, collection(accountType));
+        if (account == null) {
+            return OptionalDouble.empty();
+        }
+        double balance = ((Number) account.get("wallet")).doubleValue();
+        try {
+            post(accountType, accountId, lines, reference, balance - delta);
+        } catch (RuntimeException e) {
+            if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+                // Without a transaction nothing rolls the $inc back, so reverse it here
+                undo(accountType, accountId, delta, reference, chargeId, e);
+            }
+            throw e;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    webSocketNotificationService.sendWalletUpdate(accountId, accountType, balance);
+                }
+            });
+        } else {
+            webSocketNotificationService.sendWalletUpdate(accountId, accountType, balance);
+        }
+        return OptionalDouble.of(balance);
+    }
+
+    // Two legs per line: the wallet, and the type's contra account with the opposite sign
+    private void post(String accountType, String accountId, Map<WalletPostingType, Double> lines, String reference,
+            double balanceBefore) {
+        LocalDateTime now = LocalDateTime.now();
+        List<WalletPosting> postings = new ArrayList<>(lines.size() * 2);
+        double balance = balanceBefore;
+        for (Map.Entry<WalletPostingType, Double> line : lines.entrySet()) {
+            WalletPostingType type = line.getKey();
+            double amount = line.getValue();
+            if (amount == 0) {
+                continue;
+            }
+            balance += amount;
+            String entryId = UUID.randomUUID().toString();
+            postings.add(WalletPosting.builder().id(UUID.randomUUID().toString()).entryId(entryId)
+                    .accountType(accountType).accountId(accountId).type(type).amount(amount).balanceAfter(balance)
+                    .reference(reference).createdAt(now).build());
+            postings.add(WalletPosting.builder().id(UUID.randomUUID().toString()).entryId(entryId)
+                    .accountType(type.getContraAccountType()).accountId(type.getContraAccountId()).type(type).amount(-amount)
+                    .reference(reference).createdAt(now).build());
+        }
+        if (postings.isEmpty()) {
+            return;
+        }
+        try {
+            mongoTemplate.insertAll(postings);
+        } catch (RuntimeException e) {
+            if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+                // insertAll may have written some legs before failing
+                List<String> ids = postings.stream().map(WalletPosting::getId).toList();
+                mongoTemplate.remove(new Query(Criteria.where("_id").in(ids)), WalletPosting.class);
+            }
+            throw e;
+        }
+    }
+
+    private void undo(String accountType, String accountId, double delta, String reference, String chargeId,
+            RuntimeException cause) {
+        logger.error("Wallet ledger write failed for {} {} (ref {}), reversing {}: {}", accountType, accountId, reference,
+                delta, cause.getMessage(), cause);
+        Update update = new Update().inc("wallet", -delta);
+        if (chargeId != null) {
+            // So the retry can apply the charge
+            update.pull("appliedCharges", chargeId);
+        }
+        try {
+            mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(accountId)), update, collection(accountType));
+        } catch (RuntimeException e) {
+            // Wallet and ledger now disagree; WalletLedgerService.reconciliation reports the drift
+            logger.error("Could not reverse {} on {} {} (ref {}): {}", delta, accountType, accountId, reference,
+                    e.getMessage(), e);
+        }
+    }
+
+    private boolean exists(String accountType, String accountId) {
+        return mongoTemplate.exists(new Query(Criteria.where("_id").is(accountId)), collection(accountType));
+    }
+
+    private static Map<WalletPostingType, Double> lines(WalletPostingType type, double amount) {
+        Map<WalletPostingType, Double> lines = new EnumMap<>(WalletPostingType.class);
+        lines.put(type, amount);
+        return lines;
+    }
+
+    private static String collection(String accountType) {
+        switch (accountType) {
+            case SHOP:
+                return "shops";
+            case DASHER:
+                return "dashers";
+            default:
+                throw new IllegalArgumentException("Unknown wallet account type: " + accountType);
+        }
+    }
+}
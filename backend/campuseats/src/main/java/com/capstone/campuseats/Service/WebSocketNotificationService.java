@@ -1,6 +1,7 @@
 package com.capstone.campuseats.Service;
 
 import com.capstone.campuseats.Entity.OrderEntity;
+import com.capstone.campuseats.Entity.OrderLocation;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -22,10 +23,24 @@ public class WebSocketNotificationService {
     @Autowired
     private ObjectMapper objectMapper;
 
+    // Set while ChangeStreamEventService is pushing order and wallet changes itself
+    private volatile boolean changeStreamDriven;
+
+    public void setChangeStreamDriven(boolean changeStreamDriven) {
+        this.changeStreamDriven = changeStreamDriven;
+    }
+
     /**
-     * Send order status update to specific order subscribers
+     * Send order status update to specific order subscribers.
+     * No-op when the change stream pipeline publishes order changes.
      */
     public void sendOrderUpdate(OrderEntity order) {
+        if (!changeStreamDriven) {
+            publishOrderUpdate(order);
+        }
+    }
+
+    public void publishOrderUpdate(OrderEntity order) {
         try {
             Map<String, Object> orderUpdate = new HashMap<>();
             orderUpdate.put("orderId", order.getId());
@@ -154,9 +169,74 @@ public class WebSocketNotificationService {
     }
 
     /**
-     * Send wallet update notification to a specific user
+     * Tell all dashers that an order has been claimed so they drop it from their incoming lists
+     */
+    public void sendOrderTakenToDashers(String orderId, String dasherId) {
+        try {
+            Map<String, Object> orderTaken = new HashMap<>();
+            orderTaken.put("orderId", orderId);
+            orderTaken.put("dasherId", dasherId);
+            orderTaken.put("timestamp", System.currentTimeMillis());
+            orderTaken.put("type", "ORDER_TAKEN");
+
+            String destination = "/topic/dashers/order-taken";
+
+            logger.info("Sending order taken notification to {}: Order {}", destination, orderId);
+            messagingTemplate.convertAndSend(destination, orderTaken);
+
+        } catch (Exception e) {
+            logger.error("Error sending order taken notification via WebSocket: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Tell a dasher who lost a claim that the order is gone
+     */
+    public void sendOrderTakenToSpecificDasher(String dasherId, String orderId) {
+        try {
+            Map<String, Object> orderTaken = new HashMap<>();
+            orderTaken.put("orderId", orderId);
+            orderTaken.put("timestamp", System.currentTimeMillis());
+            orderTaken.put("type", "ORDER_TAKEN");
+
+            String destination = "/topic/dasher/" + dasherId + "/order-taken";
+
+            logger.info("Sending order taken notification to dasher {} at {}: Order {}", dasherId, destination, orderId);
+            messagingTemplate.convertAndSend(destination, orderTaken);
+
+        } catch (Exception e) {
+            logger.error("Error sending order taken notification to dasher via WebSocket: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Send a dispatch board change (order added, updated or removed) to the dashers of a campus
+     */
+    public void sendDispatchBoardDelta(String campusId, Map<String, Object> delta) {
+        try {
+            String destination = campusId == null || campusId.isEmpty()
+                    ? "/topic/dashers/board"
+                    : "/topic/dashers/campus/" + campusId + "/board";
+
+            logger.info("Sending dispatch board {} for order {} to {}", delta.get("type"), delta.get("orderId"), destination);
+            messagingTemplate.convertAndSend(destination, delta);
+
+        } catch (Exception e) {
+            logger.error("Error sending dispatch board update via WebSocket: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Send wallet update notification to a specific user.
+     * No-op when the change stream pipeline publishes wallet changes.
      */
     public void sendWalletUpdate(String userId, String accountType, double newWalletBalance) {
+        if (!changeStreamDriven) {
+            publishWalletUpdate(userId, accountType, newWalletBalance);
+        }
+    }
+
+    public void publishWalletUpdate(String userId, String accountType, double newWalletBalance) {
         try {
             Map<String, Object> walletUpdate = new HashMap<>();
             walletUpdate.put("userId", userId);
@@ -175,6 +255,29 @@ public class WebSocketNotificationService {
         }
     }
 
+    /**
+     * Send a customer or dasher location change to the order's subscribers
+     */
+    public void publishLocationUpdate(OrderLocation location) {
+        try {
+            Map<String, Object> locationUpdate = new HashMap<>();
+            locationUpdate.put("orderId", location.getOrderId());
+            locationUpdate.put("userType", location.getUserType());
+            locationUpdate.put("latitude", location.getLatitude());
+            locationUpdate.put("longitude", location.getLongitude());
+            locationUpdate.put("timestamp", System.currentTimeMillis());
+            locationUpdate.put("type", "LOCATION_UPDATE");
+
+            String destination = "/topic/orders/" + location.getOrderId() + "/location/" + location.getUserType();
+
+            logger.debug("Sending location update to {}", destination);
+            messagingTemplate.convertAndSend(destination, locationUpdate);
+
+        } catch (Exception e) {
+            logger.error("Error sending location update via WebSocket: {}", e.getMessage(), e);
+        }
+    }
+
     /**
      * Send profile update notification to a specific user
      */
@@ -0,0 +1,352 @@
+package com.capstone.campuseats.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.capstone.campuseats.Entity.WalletPosting;
+import com.capstone.campuseats.Entity.WalletPostingType;
+import com.capstone.campuseats.Entity.XenditWebhookEvent;
+import com.capstone.campuseats.config.CustomException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Takes Xendit webhooks off the request thread.
+ *
+ * accept() only writes the payload to a local spool file and hands it to a
+ * worker, so the webhook is acknowledged without waiting on MongoDB. A
+ * worker then records the event in xendit_webhook_events under its
+ * "<event>:<charge id>" key (a redelivery just bumps deliveries), claims it
+ * and applies it. Events are applied at most once: the claim moves each
+ * event out of received once, and WalletService.topUp credits a charge
+ * only if the wallet hasn't recorded it yet, in the same update as the
+ * $inc. Failures are retried with backoff and end up in state failed, the
+ * dead-letter list.
+ */
+@Service
+public class XenditWebhookService {
+
+    private static final Logger logger = LoggerFactory.getLogger(XenditWebhookService.class);
+
+    private static final int MAX_ATTEMPTS = 5;
+    private static final long BASE_BACKOFF_SECONDS = 10;
+    private static final long STALE_CLAIM_MINUTES = 5;
+    private static final int QUEUE_CAPACITY = 500;
+    private static final String SPOOL_SUFFIX = ".json";
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private WalletService walletService;
+
+    @Autowired
+    private PaymentVerificationService paymentVerificationService;
+
+    @Value("${campuseats.webhooks.spool-dir:${java.io.tmpdir}/campuseats-webhooks}")
+    private String spoolDir;
+
+    @Value("${campuseats.webhooks.workers:2}")
+    private int workers;
+
+    private ThreadPoolExecutor executor;
+
+    // Spool files handed to a worker and not yet ingested, so the retry scan doesn't queue them again
+    private final Set<Path> queuedSpools = ConcurrentHashMap.newKeySet();
+
+    @PostConstruct
+    public void init() throws IOException {
+        Files.createDirectories(Path.of(spoolDir));
+        executor = new ThreadPoolExecutor(workers, workers, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(QUEUE_CAPACITY), runnable -> {
+                    Thread thread = new Thread(runnable, "xendit-webhook");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // Spooled and unprocessed events are picked up again on the next start
+        executor.shutdownNow();
+    }
+
+    /**
+     * Spools the webhook and queues it; returns the event key. Only touches
+     * local disk, so it stays fast when MongoDB is slow.
+     */
+    public String accept(Map<String, Object> payload) throws IOException {
+        String id = eventKey(payload);
+        byte[] body = objectMapper.writeValueAsBytes(Map.of(
+                "id", id, "receivedAt", LocalDateTime.now().toString(), "payload", payload));
+
+        // Written under a temporary name and moved, so the spool scan never reads half a file
+        Path spool = Path.of(spoolDir, UUID.randomUUID() + SPOOL_SUFFIX);
+        Path temp = Path.of(spoolDir, spool.getFileName() + ".tmp");
+        Files.write(temp, body);
+        Files.move(temp, spool, StandardCopyOption.ATOMIC_MOVE);
+
+        dispatchIngest(spool);
+
+        // Polls waiting on this charge are answered from here on, before the event is even processed
+        Object event = payload.get("event");
+        if (event instanceof String name && name.startsWith("ewallet.charge.") && payload.get("data") instanceof Map<?, ?> data) {
+            Object status = data.get("status");
+            Object referenceId = data.get("reference_id");
+            paymentVerificationService.recordWebhookStatus(chargeId(payload), status != null ? status.toString() : null,
+                    referenceId != null ? referenceId.toString() : "");
+        }
+        return id;
+    }
+
+    /**
+     * Events that gave up after MAX_ATTEMPTS, newest first.
+     */
+    public List<XenditWebhookEvent> getDeadLetters(int limit) {
+        return mongoTemplate.find(new Query(Criteria.where("state").is(XenditWebhookEvent.FAILED))
+                .with(Sort.by(Sort.Direction.DESC, "receivedAt")).limit(limit), XenditWebhookEvent.class);
+    }
+
+    /**
+     * Queues a dead-lettered event again. Top-ups already in the ledger are
+     * still skipped, so replaying is safe.
+     */
+    public void replay(String id) {
+        XenditWebhookEvent event = mongoTemplate.findAndModify(
+                new Query(Criteria.where("_id").is(id).and("state").is(XenditWebhookEvent.FAILED)),
+                new Update().set("state", XenditWebhookEvent.RECEIVED).set("attempts", 0)
+                        .set("nextAttemptAt", LocalDateTime.now()).unset("lastError"),
+                XenditWebhookEvent.class);
+        if (event == null) {
+            throw new CustomException("No failed webhook event with id " + id);
+        }
+        dispatch(() -> process(id));
+    }
+
+    @Scheduled(fixedDelayString = "${campuseats.webhooks.retry-ms:10000}")
+    public void retryDue() {
+        // Spool files left by a full queue or a restart
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(Path.of(spoolDir), "*" + SPOOL_SUFFIX)) {
+            for (Path spool : files) {
+                dispatchIngest(spool);
+            }
+        } catch (IOException e) {
+            logger.error("Could not scan webhook spool {}: {}", spoolDir, e.getMessage());
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        Query due = new Query(new Criteria().orOperator(
+                Criteria.where("state").is(XenditWebhookEvent.RECEIVED).and("nextAttemptAt").lte(now),
+                Criteria.where("state").is(XenditWebhookEvent.PROCESSING).and("claimedAt").lt(now.minusMinutes(STALE_CLAIM_MINUTES))))
+                .limit(QUEUE_CAPACITY);
+        due.fields().include("_id");
+        for (XenditWebhookEvent event : mongoTemplate.find(due, XenditWebhookEvent.class)) {
+            dispatch(() -> process(event.getId()));
+        }
+    }
+
+    private void dispatch(Runnable task) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            // Queue full; the retry scan picks it up
+            logger.warn("Webhook queue full, deferring to the retry scan");
+        }
+    }
+
+    private void dispatchIngest(Path spool) {
+        if (!queuedSpools.add(spool)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    ingest(spool);
+                } finally {
+                    queuedSpools.remove(spool);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            queuedSpools.remove(spool);
+            logger.warn("Webhook queue full, deferring to the retry scan");
+        }
+    }
+
+    // Moves a spooled webhook into MongoDB, then processes it
+    private void ingest(Path spool) {
+        Map<String, Object> spooled;
+        try {
+            spooled = objectMapper.readValue(Files.readAllBytes(spool), new TypeReference<Map<String, Object>>() {
+            });
+        } catch (NoSuchFileException e) {
+            return; // another worker already ingested it
+        } catch (IOException e) {
+            logger.error("Unreadable webhook spool file {}: {}", spool, e.getMessage());
+            return;
+        }
+
+        String id = (String) spooled.get("id");
+        @SuppressWarnings("unchecked")
+        Map<String, Object> payload = (Map<String, Object>) spooled.get("payload");
+        LocalDateTime receivedAt = LocalDateTime.parse((String) spooled.get("receivedAt"));
+        try {
+            mongoTemplate.insert(new XenditWebhookEvent(id, (String) payload.get("event"), chargeId(payload), payload,
+                    XenditWebhookEvent.RECEIVED, 1, 0, receivedAt, null, null, null, receivedAt, null));
+        } catch (DuplicateKeyException e) {
+            mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(id)), new Update().inc("deliveries", 1),
+                    XenditWebhookEvent.class);
+            logger.info("Duplicate delivery of webhook {}", id);
+        }
+
+        try {
+            Files.deleteIfExists(spool);
+        } catch (IOException e) {
+            logger.warn("Could not delete webhook spool file {}: {}", spool, e.getMessage());
+        }
+        process(id);
+    }
+
+    private void process(String id) {
+        LocalDateTime now = LocalDateTime.now();
+        // Claim the event so the retry scan on this or another instance doesn't apply it twice
+        Query claimable = new Query(Criteria.where("_id").is(id).orOperator(
+                Criteria.where("state").is(XenditWebhookEvent.RECEIVED).and("nextAttemptAt").lte(now),
+                Criteria.where("state").is(XenditWebhookEvent.PROCESSING).and("claimedAt").lt(now.minusMinutes(STALE_CLAIM_MINUTES))));
+        XenditWebhookEvent event = mongoTemplate.findAndModify(claimable,
+                new Update().set("state", XenditWebhookEvent.PROCESSING).set("claimedAt", now),
+                FindAndModifyOptions.options().returnNew(true), XenditWebhookEvent.class);
+        if (event == null) {
+            return;
+        }
+
+        try {
+            String outcome = apply(event);
+            mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(id)), new Update()
+                    .set("state", XenditWebhookEvent.DONE)
+                    .set("outcome", outcome)
+                    .set("processedAt", LocalDateTime.now())
+                    .unset("lastError"), XenditWebhookEvent.class);
+            logger.info("Webhook {}: {}", id, outcome);
+        } catch (Exception e) {
+            int attempts = event.getAttempts() + 1;
+            Update update = new Update().set("attempts", attempts).set("lastError", e.getMessage());
+            if (attempts >= MAX_ATTEMPTS) {
+                update.set("state", XenditWebhookEvent.FAILED);
+                logger.error("Giving up on webhook {} after {} attempts: {}", id, attempts, e.getMessage(), e);
+            } else {
+                long backoff = BASE_BACKOFF_SECONDS << (attempts - 1);
+                update.set("state", XenditWebhookEvent.RECEIVED).set("nextAttemptAt", LocalDateTime.now().plusSeconds(backoff));
+                logger.warn("Webhook {} failed (attempt {}), retrying in {}s: {}", id, attempts, backoff, e.getMessage());
+            }
+            mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(id)), update, XenditWebhookEvent.class);
+        }
+    }
+
+    /**
+     * Applies the event and returns a short description of what it did.
+     */
+    @SuppressWarnings("unchecked")
+    private String apply(XenditWebhookEvent event) {
+        if (!"ewallet.charge.succeeded".equals(event.getEvent())) {
+            return "ignored " + event.getEvent();
+        }
+        Map<String, Object> data = (Map<String, Object>) event.getPayload().get("data");
+        Map<String, Object> metadata = data != null ? (Map<String, Object>) data.get("metadata") : null;
+        if (!"SUCCEEDED".equals(data != null ? data.get("status") : null) || metadata == null) {
+            return "ignored: not a succeeded charge with metadata";
+        }
+
+        String paymentType = (String) metadata.get("type");
+        if ("topup".equals(paymentType)) {
+            return applyTopup(event.getChargeId(), metadata);
+        }
+        if ("order".equals(paymentType)) {
+            // Order payments are confirmed when the order completes
+            return "order payment for " + metadata.get("orderId");
+        }
+        return "ignored payment type " + paymentType;
+    }
+
+    private String applyTopup(String chargeId, Map<String, Object> metadata) {
+        String dasherId = (String) metadata.get("dasherId");
+        String shopId = (String) metadata.get("shopId");
+        Object amountValue = metadata.get("amount");
+        if (amountValue == null) {
+            throw new CustomException("Topup metadata has no amount");
+        }
+        double amount = Double.parseDouble(amountValue.toString());
+
+        if (dasherId != null && !dasherId.isEmpty()) {
+            if (alreadyApplied(WalletService.DASHER, dasherId, chargeId)
+                    || !walletService.topUp(WalletService.DASHER, dasherId, amount, chargeId)) {
+                return "dasher topup already applied";
+            }
+            return "dasher " + dasherId + " topped up " + amount;
+        }
+        if (shopId != null && !shopId.isEmpty()) {
+            if (alreadyApplied(WalletService.SHOP, shopId, chargeId)
+                    || !walletService.topUp(WalletService.SHOP, shopId, (float) amount, chargeId)) {
+                return "shop topup already applied";
+            }
+            return "shop " + shopId + " topped up " + amount;
+        }
+        throw new CustomException("No dasherId or shopId provided for topup");
+    }
+
+    // Top-ups credited before wallets tracked appliedCharges are only recorded in the ledger
+    private boolean alreadyApplied(String accountType, String accountId, String chargeId) {
+        return chargeId != null && mongoTemplate.exists(new Query(Criteria.where("accountType").is(accountType)
+                .and("accountId").is(accountId).and("type").is(WalletPostingType.TOPUP).and("reference").is(chargeId)),
+                WalletPosting.class);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static String chargeId(Map<String, Object> payload) {
+        Object data = payload.get("data");
+        Object id = data instanceof Map ? ((Map<String, Object>) data).get("id") : null;
+        return id != null ? id.toString() : null;
+    }
+
+    // Events without a charge id are keyed by their content, which still dedupes exact redeliveries
+    private String eventKey(Map<String, Object> payload) throws IOException {
+        String chargeId = chargeId(payload);
+        String key = chargeId != null ? chargeId
+                : ContentAddressedStorage.sha256(objectMapper.writeValueAsString(payload).getBytes(StandardCharsets.UTF_8));
+        return payload.get("event") + ":" + key;
+    }
+}
@@ -0,0 +1,12 @@
+package com.capstone.campuseats.config;
+
+/**
+ * Thrown when an order changed underneath a request, e.g. a status transition
+ * whose expected current status no longer matches. Controllers map it to 409.
+ */
+public class OrderConflictException extends RuntimeException {
+
+    public OrderConflictException(String message) {
+        super(message);
+    }
+}
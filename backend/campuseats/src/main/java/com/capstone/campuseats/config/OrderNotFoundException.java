@@ -0,0 +1,12 @@
+package com.capstone.campuseats.config;
+
+/**
+ * Thrown when a request names an order that doesn't exist. Controllers map
+ * it to 404.
+ */
+public class OrderNotFoundException extends RuntimeException {
+
+    public OrderNotFoundException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,21 @@
+package com.capstone.campuseats.config;
+
+import org.springframework.data.mongodb.core.mapping.event.AbstractMongoEventListener;
+import org.springframework.data.mongodb.core.mapping.event.BeforeConvertEvent;
+import org.springframework.stereotype.Component;
+
+import com.capstone.campuseats.Entity.OrderEntity;
+
+/**
+ * Keeps the derived statusCode/phase fields in step with status on every save,
+ * including orders built through the builder, which bypasses setStatus.
+ */
+@Component
+public class OrderPhaseListener extends AbstractMongoEventListener<OrderEntity> {
+
+    @Override
+    public void onBeforeConvert(BeforeConvertEvent<OrderEntity> event) {
+        OrderEntity order = event.getSource();
+        order.setStatus(order.getStatus());
+    }
+}
@@ -101,9 +101,11 @@ public class SecurityConfig {
                 "x-auth-token",
                 "ngrok-skip-browser-warning",
                 "cache-control",
-                "pragma"
+                "pragma",
+                "idempotency-key",
+                "if-none-match"
         ));
-        configuration.setExposedHeaders(List.of("x-auth-token"));
+        configuration.setExposedHeaders(List.of("x-auth-token", "idempotent-replayed", "etag"));
         configuration.setAllowCredentials(true);
 
         UrlBasedCorsConfigurationSource source = new UrlBasedCorsConfigurationSource();
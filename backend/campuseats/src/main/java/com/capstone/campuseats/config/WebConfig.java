@@ -1,16 +1,24 @@
 package com.capstone.campuseats.config;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
+import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
+import com.capstone.campuseats.Service.LocalBlobStorage;
+
 @Configuration
 public class WebConfig implements WebMvcConfigurer {
 
     @Value("${cors.allowed.origins}")
     private String allowedOrigins;
 
+    // Only present when campuseats.storage.backend=local
+    @Autowired(required = false)
+    private LocalBlobStorage localBlobStorage;
+
     @Override
     public void addCorsMappings(CorsRegistry registry) {
         registry.addMapping("/api/**")
@@ -19,4 +27,12 @@ public class WebConfig implements WebMvcConfigurer {
                 .allowedMethods("GET", "POST", "PUT", "DELETE", "OPTIONS")
                 .allowedHeaders("*");
     }
+
+    @Override
+    public void addResourceHandlers(ResourceHandlerRegistry registry) {
+        if (localBlobStorage != null) {
+            registry.addResourceHandler("/files/**")
+                    .addResourceLocations(localBlobStorage.getRoot().toUri().toString());
+        }
+    }
 }
@@ -3,7 +3,7 @@ package com.capstone.campuseats;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
 
-@SpringBootTest
+@SpringBootTest(properties = "campuseats.http.stub=true")
 class CampuseatsApplicationTests {
 
 	@Test
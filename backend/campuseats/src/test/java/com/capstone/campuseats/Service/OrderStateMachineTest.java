@@ -0,0 +1,131 @@
+package com.capstone.campuseats.Service;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import com.capstone.campuseats.Entity.OrderPhase;
+import com.capstone.campuseats.Entity.OrderStatus;
+
+class OrderStateMachineTest {
+
+    private static boolean can(String from, String to) {
+        return OrderStateMachine.canTransition(OrderStatus.fromValue(from), OrderStatus.fromValue(to));
+    }
+
+    @Test
+    void terminalStatusesCannotBeReapplied() {
+        for (OrderStatus status : OrderStatus.values()) {
+            if (status.getPhase() == OrderPhase.TERMINAL) {
+                assertFalse(OrderStateMachine.canTransition(status, status), status + " -> " + status);
+            }
+        }
+    }
+
+    @Test
+    void activeAndDisputedStatusesCanBeRetried() {
+        assertTrue(can("active_toShop", "active_toShop"));
+        assertTrue(can("active_waiting_for_confirmation", "active_waiting_for_confirmation"));
+        assertTrue(can("active_waiting_for_no_show_confirmation", "active_waiting_for_no_show_confirmation"));
+    }
+
+    @Test
+    void terminalStatusesAreFinal() {
+        for (OrderStatus from : OrderStatus.values()) {
+            if (from.getPhase() != OrderPhase.TERMINAL || from == OrderStatus.NO_SHOW) {
+                continue;
+            }
+            for (OrderStatus to : OrderStatus.values()) {
+                assertFalse(OrderStateMachine.canTransition(from, to), from + " -> " + to);
+            }
+        }
+        assertTrue(can("no-show", "no-show-resolved"));
+        assertFalse(can("no-show", "completed"));
+        assertFalse(can("completed", "active_waiting_for_dasher"));
+        assertFalse(can("cancelled_by_customer", "completed"));
+    }
+
+    @Test
+    void nothingGoesBackToWaitingForShop() {
+        for (OrderStatus from : OrderStatus.values()) {
+            if (from != OrderStatus.ACTIVE_WAITING_FOR_SHOP) {
+                assertFalse(OrderStateMachine.canTransition(from, OrderStatus.ACTIVE_WAITING_FOR_SHOP), from.toString());
+            }
+        }
+    }
+
+    @Test
+    void happyPath() {
+        String[] path = {"active_waiting_for_shop", "active_waiting_for_dasher", "active_toShop", "active_preparing",
+                "active_ready_for_pickup", "active_pickedUp", "active_onTheWay", "active_delivered",
+                "active_waiting_for_confirmation", "completed"};
+        for (int i = 1; i < path.length; i++) {
+            assertTrue(can(path[i - 1], path[i]), path[i - 1] + " -> " + path[i]);
+        }
+    }
+
+    @Test
+    void shopAndDasherStepsBeforePickupInEitherOrder() {
+        assertTrue(can("active_waiting_for_shop", "active_shop_confirmed"));
+        assertTrue(can("active_waiting_for_dasher", "active_preparing"));
+        assertTrue(can("active_preparing", "active_toShop"));
+        assertTrue(can("active_ready_for_pickup", "active_toShop"));
+        assertTrue(can("active_toShop", "active_waiting_for_dasher"));
+    }
+
+    @Test
+    void onlyDeliveredOrdersComplete() {
+        assertFalse(can("active_waiting_for_shop", "completed"));
+        assertFalse(can("active_waiting_for_dasher", "completed"));
+        assertFalse(can("active_toShop", "completed"));
+        assertFalse(can("active_ready_for_pickup", "completed"));
+        assertTrue(can("active_delivered", "completed"));
+        assertTrue(can("active_waiting_for_confirmation", "completed"));
+        assertTrue(can("active_waiting_for_no_show_confirmation", "completed"));
+    }
+
+    @Test
+    void noGoingBackAfterPickup() {
+        for (String from : new String[] {"active_pickedUp", "active_onTheWay", "active_dasher_arrived",
+                "active_delivered", "active_waiting_for_confirmation"}) {
+            assertFalse(can(from, "active_waiting_for_dasher"), from);
+            assertFalse(can(from, "active_toShop"), from);
+            assertFalse(can(from, "active_preparing"), from);
+            assertFalse(can(from, "active_ready_for_pickup"), from);
+        }
+        assertFalse(can("active_delivered", "active_onTheWay"));
+        assertFalse(can("active_waiting_for_confirmation", "active_delivered"));
+    }
+
+    @Test
+    void cancellations() {
+        assertTrue(can("active_waiting_for_shop", "cancelled_by_customer"));
+        assertTrue(can("active_waiting_for_shop", "declined"));
+        assertTrue(can("active_toShop", "active_waiting_for_cancel_confirmation"));
+        assertTrue(can("active_preparing", "active_waiting_for_shop_cancel_confirmation"));
+        assertTrue(can("active_waiting_for_cancel_confirmation", "cancelled_by_customer"));
+        assertTrue(can("active_waiting_for_shop_cancel_confirmation", "cancelled_by_shop"));
+        assertFalse(can("active_waiting_for_cancel_confirmation", "completed"));
+        assertFalse(can("active_delivered", "cancelled_by_shop"));
+    }
+
+    @Test
+    void noShows() {
+        assertTrue(can("active_dasher_arrived", "no-show"));
+        assertTrue(can("active_waiting_for_confirmation", "no-show"));
+        assertTrue(can("active_onTheWay", "active_waiting_for_no_show_confirmation"));
+        assertTrue(can("active_waiting_for_no_show_confirmation", "dasher-no-show"));
+        assertTrue(can("dasher-no-show", "refunded"));
+        assertFalse(can("active_waiting_for_shop", "no-show"));
+        assertFalse(can("dasher-no-show", "active_onTheWay"));
+    }
+
+    @Test
+    void legacySpellingsFollowTheirCanonicalStatus() {
+        assertTrue(can("no_show", "no-show-resolved"));
+        assertFalse(can("cancelled_by_user", "completed"));
+        assertTrue(can("active_toCustomer", "completed"));
+        assertFalse(can("active_toCustomer", "active_waiting_for_shop"));
+    }
+}
@@ -22,6 +22,24 @@ const useAdminData = () => {
   return context;
 };
 
+// Past orders are read in pages of list-view fields (GET /orders?view=summary) rather than as one full list
+const ORDER_PAGE_SIZE = 100;
+
+const fetchPastOrders = async () => {
+  const orders = [];
+  let cursor = null;
+  do {
+    const params = { statusGroup: 'past', limit: ORDER_PAGE_SIZE, view: 'summary' };
+    if (cursor) {
+      params.cursor = cursor;
+    }
+    const { data } = await axios.get('/orders', { params });
+    orders.push(...data.orders);
+    cursor = data.hasMore ? data.nextCursor : null;
+  } while (cursor);
+  return orders;
+};
+
 // Data Provider Component to fetch and cache shared data
 const AdminDataProvider = ({ children }) => {
   const [sharedData, setSharedData] = useState({
@@ -47,14 +65,13 @@ const AdminDataProvider = ({ children }) => {
 
     try {
       // Fetch all data in parallel
-      const [orderResponse, shopResponse, dasherResponse, userResponse] = await Promise.all([
-        axios.get('/orders/completed-orders'),
+      const [orders, shopResponse, dasherResponse, userResponse] = await Promise.all([
+        fetchPastOrders(),
         axios.get('/shops/pending-lists'),
         axios.get('/dashers/pending-lists'),
         axios.get('/users')
       ]);
 
-      const orders = orderResponse.data.completedOrders;
       const { pendingShops, nonPendingShops } = shopResponse.data;
       const { pendingDashers, nonPendingDashers } = dasherResponse.data;
       const users = userResponse.data;
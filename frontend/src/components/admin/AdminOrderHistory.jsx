@@ -1,9 +1,13 @@
-import { useEffect, useState } from "react";
+import { useEffect, useRef, useState } from "react";
 import { toast } from "sonner"; // Assuming you're using sonner for toast notifications
 import { useAuth } from "../../utils/AuthContext";
 import axios from "../../utils/axiosConfig";
 import "../css/AdminOrderHistory.css";
 
+// Order history is paged from GET /orders (newest first); the next page loads on demand
+const HISTORY_PAGE_SIZE = 50;
+const ACTIVE_PAGE_SIZE = 100;
+
 const AdminOrderHistory = () => {
     const { currentUser } = useAuth();
     const [completedOrders, setCompletedOrders] = useState([]);
@@ -12,64 +16,69 @@ const AdminOrderHistory = () => {
     const [deleteLoading, setDeleteLoading] = useState(false);
     const [showDeleteModal, setShowDeleteModal] = useState(false);
     const [orderToDelete, setOrderToDelete] = useState(null);
+    const [historyCursor, setHistoryCursor] = useState(null);
+    const [loadingMore, setLoadingMore] = useState(false);
+    const lookups = useRef({ userMap: new Map(), dashers: [] });
 
     useEffect(() => {
         fetchCompletedOrders();
     }, []);
 
+    const fetchOrderPage = async (statusGroup, limit, cursor) => {
+        const params = { statusGroup, limit, view: 'summary' };
+        if (cursor) {
+            params.cursor = cursor;
+        }
+        const response = await axios.get('/orders', { params });
+        return response.data;
+    };
+
+    // Active orders are few at any time, so every page of them is loaded
+    const fetchAllActiveOrders = async () => {
+        const orders = [];
+        let cursor = null;
+        do {
+            const page = await fetchOrderPage('active', ACTIVE_PAGE_SIZE, cursor);
+            orders.push(...page.orders);
+            cursor = page.hasMore ? page.nextCursor : null;
+        } while (cursor);
+        return orders;
+    };
+
+    const withPeople = (order) => {
+        const { userMap, dashers } = lookups.current;
+        const userData = userMap.get(order.uid) || null;
+
+        let dasher = null;
+        const dasherData = dashers.find(d => d.id === order.dasherId);
+        if (dasherData) {
+            dasher = userMap.get(dasherData.id) || null;
+        }
+
+        return { ...order, userData, dasher };
+    };
+
     const fetchCompletedOrders = async () => {
         setLoading(true); 
         try {
             // Fetch all data in parallel for better performance
-            const [ordersResponse, dashersResponse, usersResponse] = await Promise.all([
-                axios.get('/orders/completed-orders'),
+            const [active, historyPage, dashersResponse, usersResponse] = await Promise.all([
+                fetchAllActiveOrders(),
+                fetchOrderPage('past', HISTORY_PAGE_SIZE),
                 axios.get('/dashers'),
                 axios.get('/users')
             ]);
 
-            const { completedOrders, activeOrders } = ordersResponse.data;
-            const dashers = dashersResponse.data;
-            const allUsers = usersResponse.data;
-            
             // Create user map for O(1) lookups instead of N individual API calls
-            const userMap = new Map(allUsers.map(user => [user.id, user]));
-            
-            // Process completed orders with cached user data
-            const completedOrdersData = completedOrders.map(order => {
-                const userData = userMap.get(order.uid) || null;
-                
-                let dasher = null;
-                const dasherData = dashers.find(d => d.id === order.dasherId);
-                if (dasherData) {
-                    dasher = userMap.get(dasherData.id) || null;
-                }
-                
-                return { ...order, userData, dasher };
-            });
-            
-            // Process active orders with cached user data
-            const activeOrdersData = activeOrders.map(order => {
-                const userData = userMap.get(order.uid) || null;
-                
-                let dasher = null;
-                const dasherData = dashers.find(d => d.id === order.dasherId);
-                if (dasherData) {
-                    dasher = userMap.get(dasherData.id) || null;
-                }
-                
-                return { ...order, userData, dasher };
-            });
-            
-            // Sort both arrays by createdAt timestamp (latest first)
-            const sortByDate = (a, b) => {
-                // Handle both Firestore timestamp format and direct timestamp
-                const dateA = a.createdAt?.seconds ? a.createdAt.seconds * 1000 : new Date(a.createdAt).getTime();
-                const dateB = b.createdAt?.seconds ? b.createdAt.seconds * 1000 : new Date(b.createdAt).getTime();
-                return dateB - dateA; // Descending order (latest first)
+            lookups.current = {
+                userMap: new Map(usersResponse.data.map(user => [user.id, user])),
+                dashers: dashersResponse.data
             };
-            
-            setCompletedOrders(completedOrdersData.sort(sortByDate));
-            setActiveOrders(activeOrdersData.sort(sortByDate));
+
+            // Pages come back newest first
+            setCompletedOrders(historyPage.orders.map(withPeople));
+            setHistoryCursor(historyPage.hasMore ? historyPage.nextCursor : null);
+            setActiveOrders(active.map(withPeople));
         } catch (error) {
             console.error('Error fetching completed orders:', error);
             toast.error("Failed to load orders");
@@ -78,6 +87,22 @@ const AdminOrderHistory = () => {
         }
     };
 
+    const loadMoreHistory = async () => {
+        if (!historyCursor) return;
+
+        setLoadingMore(true);
+        try {
+            const page = await fetchOrderPage('past', HISTORY_PAGE_SIZE, historyCursor);
+            setCompletedOrders(prevOrders => [...prevOrders, ...page.orders.map(withPeople)]);
+            setHistoryCursor(page.hasMore ? page.nextCursor : null);
+        } catch (error) {
+            console.error('Error fetching more orders:', error);
+            toast.error("Failed to load more orders");
+        } finally {
+            setLoadingMore(false);
+        }
+    };
+
     const initiateDeleteOrder = (order) => {
         setOrderToDelete(order);
         setShowDeleteModal(true);
@@ -288,6 +313,17 @@ const AdminOrderHistory = () => {
                                 </table>
                             </div>
                         </div>
+                        {historyCursor && (
+                            <div className="flex justify-center mt-4">
+                                <button
+                                    className="px-6 py-2 bg-[#BC4A4D] text-white rounded-lg font-semibold hover:bg-[#a03e41] transition-colors shadow-md disabled:opacity-50"
+                                    onClick={loadMoreHistory}
+                                    disabled={loadingMore}
+                                >
+                                    {loadingMore ? 'Loading...' : 'Load more'}
+                                </button>
+                            </div>
+                        )}
                     </>
                 ) : (
                     <div className="p-8 text-center bg-white rounded-xl border-2 border-gray-200 shadow-md">
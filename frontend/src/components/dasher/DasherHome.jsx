@@ -46,7 +46,7 @@ const DasherHome = () => {
         const fetchOrders = async () => {
             setLoading(true);
             try {
-                const ordersResponse = await axios.get(`/orders/dasher/all-orders-list/${currentUser.id}`);
+                const ordersResponse = await axios.get(`/orders/dasher/all-orders-list/${currentUser.id}?view=summary`);
                 if (!ordersResponse.data) {
                     throw new Error("Failed to fetch orders");
                 }
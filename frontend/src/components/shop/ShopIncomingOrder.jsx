@@ -51,7 +51,7 @@ const ShopIncomingOrder = () => {
   const fetchPastOrders = async () => {
     setIsLoading(true);
     try {
-      const response = await axios.get('/orders/past-orders');
+      const response = await axios.get('/orders/past-orders?view=summary');
       const pastOrdersWithShopData = await Promise.all(response.data.map(async (order) => {
         const shopDataResponse = await axios.get(`/shops/${order.shopId}`);
         const shopData = shopDataResponse.data;
@@ -71,7 +71,7 @@ const ShopIncomingOrder = () => {
     // Fetching ongoing orders for the logged-in shop
   const fetchOngoingOrders = async () => {
     try {
-      const response = await axios.get('/orders/ongoing-orders');
+      const response = await axios.get('/orders/ongoing-orders?view=summary');
       const ongoingOrdersWithShopData = await Promise.all(response.data.map(async (order) => {
         const shopDataResponse = await axios.get(`/shops/${order.shopId}`);
         const shopData = shopDataResponse.data;
@@ -70,7 +70,7 @@ useEffect(() => {
 
     const fetchOrders = async () => {
         try {
-            const ordersResponse = await axios.get(`/orders/user/${currentUser.id}`);
+            const ordersResponse = await axios.get(`/orders/user/${currentUser.id}?view=summary`);
             if (ordersResponse.status !== 200) {
                 throw new Error("Failed to fetch orders");
             }
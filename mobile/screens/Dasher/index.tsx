@@ -205,23 +205,12 @@ export default function DasherHome() {
           dasher.status === "inactive"
       );
 
-      // Fetch all completed orders
-      const orderResponse = await axios.get(`${API_URL}/api/orders/completed-orders`, {
+      // Completed order counts per dasher, archived orders included
+      const countsResponse = await axios.get(`${API_URL}/api/orders/completed-counts/dashers`, {
         headers: { 'Authorization': token }
       });
 
-      const allOrders = orderResponse.data.completedOrders;
-      const completedOrders = allOrders.filter((order: any) => order.status === 'completed');
-
-      // Count completed orders for each dasher
-      const dasherOrderCounts: { [key: string]: number } = completedOrders.reduce((acc: any, order: any) => {
-        const dasherId = order.dasherId;
-        if (!acc[dasherId]) {
-          acc[dasherId] = 0;
-        }
-        acc[dasherId]++;
-        return acc;
-      }, {});
+      const dasherOrderCounts: { [key: string]: number } = countsResponse.data || {};
 
       // Map dashers with their completed order counts and sort
       const dashersWithCounts = realDashers